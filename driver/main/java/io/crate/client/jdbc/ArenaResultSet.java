@@ -0,0 +1,874 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.core.BaseConnection;
+import org.postgresql.jdbc.PgArray;
+import org.postgresql.util.PGobject;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Result set whose rows are stored in a {@link RowArena}, in the text format in which they were received.
+ * <p>
+ * Values of types which are decoded by the driver itself are kept as bytes only. For other types, like
+ * arrays and objects, only the objects created by the source result set are kept and the arena holds
+ * NULL for them. As a {@link RawRow}, the values of the current row are slices of the arena, or copies
+ * of them if the arena spilled its values to a file; the text of objects is encoded when it is read.
+ */
+class ArenaResultSet extends ReadOnlyResultSet implements RawRow, EpochTimestamps {
+
+    private final CrateStatement statement;
+    // the statement returned by getStatement, a statement of another connection may wrap the one above
+    private final Statement owner;
+    private final ResultSetMetaData metaData;
+    // the statement which returned this result
+    private final String sql;
+    private ResultSetMetaData crateMetaData;
+    private final int type;
+    private final int holdability;
+    private final int[] columnTypes;
+    private RowArena arena;
+    // objects of the columns which are not decoded from bytes, null for the other columns
+    private Object[][] objects;
+    private int rowCount;
+    private ColumnIndex columnIndex;
+    private final int stringCacheSize;
+    private final StringDictionary[] dictionaries;
+    // whether the objects are shared with other result sets, see detach()
+    private final boolean shared;
+    // the encoded text of the object at objectTextRow and objectTextColumn, see objectText(int)
+    private byte[] objectText;
+    private int objectTextRow = -1;
+    private int objectTextColumn;
+    // the arrays the values of each column are copied into if the arena was spilled, see array(int)
+    private byte[][] spillBuffers;
+
+    private int row = -1;
+    private boolean wasNull;
+    private int fetchDirection = FETCH_FORWARD;
+    private int fetchSize;
+
+    ArenaResultSet(CrateStatement statement,
+                   ResultSetMetaData metaData,
+                   int type,
+                   int holdability,
+                   RowArena arena,
+                   Object[][] objects,
+                   int stringCacheSize) throws SQLException {
+        this(statement, statement, metaData, type, holdability, arena, objects, stringCacheSize, false);
+    }
+
+    private ArenaResultSet(CrateStatement statement,
+                           Statement owner,
+                           ResultSetMetaData metaData,
+                           int type,
+                           int holdability,
+                           RowArena arena,
+                           Object[][] objects,
+                           int stringCacheSize,
+                           boolean shared) throws SQLException {
+        this.statement = statement;
+        this.owner = owner;
+        this.metaData = metaData;
+        this.sql = statement == null ? null : statement.lastSql();
+        this.type = type;
+        this.holdability = holdability;
+        this.arena = arena;
+        this.objects = objects;
+        this.rowCount = arena.rowCount();
+        this.stringCacheSize = stringCacheSize;
+        this.shared = shared;
+        this.dictionaries = StringDictionary.forColumns(arena.columnCount(), stringCacheSize);
+        this.columnTypes = new int[arena.columnCount()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = metaData.getColumnType(i + 1);
+        }
+    }
+
+    /**
+     * Reads all remaining rows of the source into an arena and closes the source.
+     *
+     * @param stringCacheSize the size of the {@link StringDictionary} of each column, 0 to disable it.
+     */
+    static ArenaResultSet load(CrateStatement statement, ResultSet source, int stringCacheSize) throws SQLException {
+        return load(statement, source, null, stringCacheSize);
+    }
+
+    /**
+     * Like {@link #load(CrateStatement, ResultSet, int)}, but stores the rows in the given arena.
+     *
+     * @param arena the arena which is cleared and reused, it must have as many columns as the source. Null to
+     *              create a new one.
+     */
+    static ArenaResultSet load(CrateStatement statement,
+                               ResultSet source,
+                               RowArena arena,
+                               int stringCacheSize) throws SQLException {
+        ResultSetMetaData metaData = source.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        RawRow rawRow = RawRow.of(source);
+        boolean[] text = new boolean[columnCount];
+        Object[][] objects = new Object[columnCount][];
+        for (int i = 0; i < columnCount; i++) {
+            text[i] = !rawRow.isBinary(i + 1);
+            if (!isDecoded(metaData.getColumnType(i + 1))) {
+                objects[i] = new Object[16];
+            }
+        }
+        if (arena == null) {
+            arena = new RowArena(columnCount, 8192, statement == null ? 0 : statement.connection.spillThreshold());
+        } else {
+            arena.clear();
+        }
+        int rows = 0;
+        try {
+            while (source.next()) {
+                for (int i = 0; i < columnCount; i++) {
+                    int column = i + 1;
+                    if (objects[i] != null) {
+                        if (rows == objects[i].length) {
+                            objects[i] = Arrays.copyOf(objects[i], rows * 2);
+                        }
+                        objects[i][rows] = source.getObject(column);
+                        arena.addNull();
+                    } else if (text[i]) {
+                        byte[] value = rawRow.getRawArray(column);
+                        if (value == null) {
+                            arena.addNull();
+                        } else {
+                            arena.add(value, rawRow.getRawOffset(column), rawRow.getRawLength(column));
+                        }
+                    } else {
+                        String value = source.getString(column);
+                        if (value == null) {
+                            arena.addNull();
+                        } else {
+                            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                            arena.add(bytes, 0, bytes.length);
+                        }
+                    }
+                }
+                rows++;
+            }
+            return new ArenaResultSet(
+                statement, metaData, source.getType(), source.getHoldability(), arena, objects, stringCacheSize);
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * @return a new result set with its own cursor over the same rows, which are never modified.
+     */
+    ArenaResultSet view(CrateStatement statement, int type) throws SQLException {
+        return view(statement, statement, type);
+    }
+
+    /**
+     * Like {@link #view(CrateStatement, int)}, for a result which is handed out by another statement.
+     *
+     * @param owner the statement returned by {@link #getStatement()}.
+     */
+    ArenaResultSet view(CrateStatement statement, Statement owner, int type) throws SQLException {
+        checkClosed();
+        return new ArenaResultSet(
+            statement, owner, metaData, type, holdability, arena, objects, stringCacheSize, shared);
+    }
+
+    /**
+     * Returns a result set over the same rows which references neither the statement nor the connection, to be
+     * kept by the {@link ResultCache}. Its views hand out their own copy of every mutable object, and create
+     * arrays from their text for the connection of the view.
+     */
+    ArenaResultSet detach() throws SQLException {
+        checkClosed();
+        Object[][] detached = new Object[objects.length][];
+        for (int i = 0; i < objects.length; i++) {
+            if (objects[i] != null) {
+                detached[i] = new Object[rowCount];
+                for (int j = 0; j < rowCount; j++) {
+                    Object value = objects[i][j];
+                    // an array references the connection it was received on
+                    detached[i][j] = value instanceof Array ? value.toString() : copyOf(value);
+                }
+            }
+        }
+        return new ArenaResultSet(
+            null, null, DetachedMetaData.of(metaData), type, holdability, arena, detached, stringCacheSize, true);
+    }
+
+    /**
+     * @return a copy of the value if it can be modified by the caller, otherwise the value itself.
+     */
+    private static Object copyOf(Object value) throws PSQLException {
+        if (value instanceof PGobject) {
+            try {
+                return ((PGobject) value).clone();
+            } catch (CloneNotSupportedException e) {
+                throw new PSQLException("Unable to copy a cached value", PSQLState.UNEXPECTED_ERROR, e);
+            }
+        }
+        if (value instanceof Map) {
+            return new HashMap<>((Map<?, ?>) value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the object of a shared result set for the caller, see {@link #detach()}.
+     */
+    private Object unshare(int column, Object value) throws SQLException {
+        if (columnTypes[column] != Types.ARRAY || !(value instanceof String)) {
+            return copyOf(value);
+        }
+        if (statement == null || !statement.connection.delegate().isWrapperFor(BaseConnection.class)) {
+            throw new PSQLException("Arrays of a cached result can only be read through a statement",
+                PSQLState.OBJECT_NOT_IN_STATE);
+        }
+        BaseConnection connection = statement.connection.delegate().unwrap(BaseConnection.class);
+        int oid = connection.getTypeInfo().getPGType(metaData.getColumnTypeName(column + 1));
+        return new PgArray(connection, oid, (String) value);
+    }
+
+    /**
+     * @return the estimated number of bytes retained by the rows.
+     */
+    long retainedBytes() {
+        long bytes = arena == null ? 0 : arena.capacity();
+        if (objects != null) {
+            for (Object[] column : objects) {
+                if (column != null) {
+                    // a reference and a small object per value
+                    bytes += column.length * 32L;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return true if values of the given {@link Types} are decoded from their text representation.
+     */
+    private static boolean isDecoded(int type) {
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void checkClosed() throws PSQLException {
+        if (arena == null) {
+            throw new PSQLException("This ResultSet is closed.", PSQLState.OBJECT_NOT_IN_STATE);
+        }
+    }
+
+    private void checkScrollable() throws SQLException {
+        checkClosed();
+        if (type == TYPE_FORWARD_ONLY) {
+            throw new PSQLException(
+                "Operation requires a scrollable ResultSet, but this ResultSet is FORWARD_ONLY.",
+                PSQLState.INVALID_CURSOR_STATE);
+        }
+    }
+
+    /**
+     * @return the 0-based column number after checking the cursor position and the index.
+     */
+    private int column(int columnIndex) throws PSQLException {
+        checkClosed();
+        if (row < 0 || row >= rowCount) {
+            throw new PSQLException(
+                "ResultSet not positioned properly, perhaps you need to call next.", PSQLState.INVALID_CURSOR_STATE);
+        }
+        if (columnIndex < 1 || columnIndex > columnTypes.length) {
+            throw new PSQLException(
+                String.format("The column index is out of range: %d, number of columns: %d.",
+                    columnIndex, columnTypes.length),
+                PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        return columnIndex - 1;
+    }
+
+    /**
+     * @return the length of the value, -1 if it is NULL.
+     */
+    private int length(int column) {
+        int length;
+        if (objects[column] == null) {
+            length = arena.length(row, column);
+        } else {
+            byte[] text = objectText(column);
+            length = text == null ? -1 : text.length;
+        }
+        wasNull = length < 0;
+        return length;
+    }
+
+    /**
+     * @return the array holding the value, which is overwritten once the value of the column in another row is
+     * read if the arena was spilled.
+     */
+    private byte[] array(int column) {
+        if (objects[column] != null) {
+            return objectText(column);
+        }
+        if (!arena.isSpilled()) {
+            return arena.data();
+        }
+        if (spillBuffers == null) {
+            spillBuffers = new byte[columnTypes.length][];
+        }
+        spillBuffers[column] = arena.array(row, column, spillBuffers[column]);
+        return spillBuffers[column];
+    }
+
+    private int arrayOffset(int column) {
+        return objects[column] == null ? arena.arrayOffset(row, column) : 0;
+    }
+
+    /**
+     * @return the text of the object of the current row, encoded as UTF-8, null if it is NULL.
+     */
+    private byte[] objectText(int column) {
+        if (row != objectTextRow || column != objectTextColumn) {
+            Object value = objects[column][row];
+            objectText = value == null ? null : value.toString().getBytes(StandardCharsets.UTF_8);
+            objectTextRow = row;
+            objectTextColumn = column;
+        }
+        return objectText;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        checkClosed();
+        if (row < rowCount) {
+            row++;
+        }
+        return row < rowCount;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        arena = null;
+        objects = null;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return arena == null;
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return wasNull;
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        if (objects[column] != null) {
+            Object value = objects[column][row];
+            wasNull = value == null;
+            return value == null ? null : value.toString();
+        }
+        int length = length(column);
+        if (length < 0) {
+            return null;
+        }
+        return StringDictionary.toString(
+            dictionaries, stringCacheSize, column, array(column), arrayOffset(column), length);
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        return length >= 0 && TextDecoder.toBoolean(array(column), arrayOffset(column), length);
+    }
+
+    private long getLong(int columnIndex, String typeName, long min, long max) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        if (length < 0) {
+            return 0;
+        }
+        return TextDecoder.toLong(array(column), arrayOffset(column), length, typeName, min, max);
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        return (byte) getLong(columnIndex, "byte", Byte.MIN_VALUE, Byte.MAX_VALUE);
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        return (short) getLong(columnIndex, "short", Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        return (int) getLong(columnIndex, "int", Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        return getLong(columnIndex, "long", Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        if (length < 0) {
+            return 0;
+        }
+        return TextDecoder.toFloat(array(column), arrayOffset(column), length, "float");
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        if (length < 0) {
+            return 0;
+        }
+        return TextDecoder.toDouble(array(column), arrayOffset(column), length, "double");
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        if (length < 0) {
+            return null;
+        }
+        return TextDecoder.toBigDecimal(array(column), arrayOffset(column), length);
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        if (length < 0) {
+            return null;
+        }
+        byte[] array = array(column);
+        int offset = arrayOffset(column);
+        switch (columnTypes[column]) {
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return TextDecoder.toBytes(array, offset, length);
+            default:
+                return Arrays.copyOfRange(array, offset, offset + length);
+        }
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        if (length < 0) {
+            return null;
+        }
+        return TextDecoder.toDate(array(column), arrayOffset(column), length, cal);
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        if (length < 0) {
+            return null;
+        }
+        return TextDecoder.toTime(array(column), arrayOffset(column), length, cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        if (length < 0) {
+            return null;
+        }
+        return TextDecoder.toTimestamp(array(column), arrayOffset(column), length, cal);
+    }
+
+    @Override
+    public long getEpochMillis(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        return length < 0 ? 0 : TextDecoder.toEpochMillis(array(column), arrayOffset(column), length, null);
+    }
+
+    @Override
+    public long getEpochMicros(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        int length = length(column);
+        return length < 0 ? 0 : TextDecoder.toEpochMicros(array(column), arrayOffset(column), length, null);
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        Object value = getObject(columnIndex);
+        if (value == null || value instanceof Array) {
+            return (Array) value;
+        }
+        throw cannotConvert(Array.class, columnIndex);
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        if (objects[column] != null) {
+            Object value = objects[column][row];
+            wasNull = value == null;
+            return shared && value != null ? unshare(column, value) : value;
+        }
+        if (arena.length(row, column) < 0) {
+            wasNull = true;
+            return null;
+        }
+        switch (columnTypes[column]) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return getBoolean(columnIndex);
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return getInt(columnIndex);
+            case Types.BIGINT:
+                return getLong(columnIndex);
+            case Types.REAL:
+                return getFloat(columnIndex);
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return getDouble(columnIndex);
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return getBigDecimal(columnIndex);
+            case Types.DATE:
+                return getDate(columnIndex);
+            case Types.TIME:
+                return getTime(columnIndex);
+            case Types.TIMESTAMP:
+                return getTimestamp(columnIndex);
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return getBytes(columnIndex);
+            default:
+                return getString(columnIndex);
+        }
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        if (type == null) {
+            throw new PSQLException("Invalid conversion target type: null", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        Object value;
+        if (type == String.class) {
+            value = getString(columnIndex);
+        } else if (type == Integer.class) {
+            value = getInt(columnIndex);
+        } else if (type == Long.class) {
+            value = getLong(columnIndex);
+        } else if (type == Short.class) {
+            value = getShort(columnIndex);
+        } else if (type == Byte.class) {
+            value = getByte(columnIndex);
+        } else if (type == Double.class) {
+            value = getDouble(columnIndex);
+        } else if (type == Float.class) {
+            value = getFloat(columnIndex);
+        } else if (type == Boolean.class) {
+            value = getBoolean(columnIndex);
+        } else if (type == BigDecimal.class) {
+            value = getBigDecimal(columnIndex);
+        } else if (type == byte[].class) {
+            value = getBytes(columnIndex);
+        } else if (type == Date.class) {
+            value = getDate(columnIndex);
+        } else if (type == Time.class) {
+            value = getTime(columnIndex);
+        } else if (type == Timestamp.class) {
+            value = getTimestamp(columnIndex);
+        } else if (type == LocalDate.class) {
+            Date date = getDate(columnIndex);
+            value = date == null ? null : date.toLocalDate();
+        } else if (type == LocalTime.class) {
+            Time time = getTime(columnIndex);
+            value = time == null ? null : time.toLocalTime();
+        } else if (type == LocalDateTime.class) {
+            Timestamp timestamp = getTimestamp(columnIndex);
+            value = timestamp == null ? null : timestamp.toLocalDateTime();
+        } else if (type == Instant.class || type == OffsetDateTime.class) {
+            int column = column(columnIndex);
+            int length = length(column);
+            if (length < 0) {
+                return null;
+            }
+            value = type == Instant.class
+                ? TextDecoder.toInstant(array(column), arrayOffset(column), length, null)
+                : TextDecoder.toOffsetDateTime(array(column), arrayOffset(column), length, null);
+        } else {
+            value = getObject(columnIndex);
+            if (value != null && !type.isInstance(value)) {
+                throw cannotConvert(type, columnIndex);
+            }
+        }
+        return wasNull ? null : type.cast(value);
+    }
+
+    private PSQLException cannotConvert(Class<?> type, int columnIndex) throws SQLException {
+        return new PSQLException(
+            String.format("conversion to %s from %s not supported", type, metaData.getColumnTypeName(columnIndex)),
+            PSQLState.INVALID_PARAMETER_VALUE);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        checkClosed();
+        if (statement == null) {
+            return metaData;
+        }
+        if (crateMetaData == null) {
+            crateMetaData = statement.metaData(metaData, sql);
+        }
+        return crateMetaData;
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        checkClosed();
+        if (columnIndex == null) {
+            columnIndex = statement.columnIndex(metaData);
+        }
+        return columnIndex.find(columnLabel);
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        checkClosed();
+        return row < 0 && rowCount > 0;
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        checkClosed();
+        return row >= rowCount && rowCount > 0;
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        checkClosed();
+        return row == 0 && rowCount > 0;
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        checkClosed();
+        return row == rowCount - 1 && rowCount > 0;
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        checkScrollable();
+        row = -1;
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        checkScrollable();
+        row = rowCount;
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        return absolute(1);
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        return absolute(-1);
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        checkClosed();
+        return row >= 0 && row < rowCount ? row + 1 : 0;
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        checkScrollable();
+        int target = row > 0 ? row - 1 : rowCount + row;
+        if (target < 0) {
+            this.row = -1;
+            return false;
+        }
+        if (target >= rowCount) {
+            this.row = rowCount;
+            return false;
+        }
+        this.row = target;
+        return true;
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        checkScrollable();
+        int target = (int) Math.max(-1, Math.min(rowCount, (long) row + rows));
+        row = target;
+        return target >= 0 && target < rowCount;
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        checkScrollable();
+        if (row >= 0) {
+            row--;
+        }
+        return row >= 0;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        checkClosed();
+        if (direction != FETCH_FORWARD) {
+            checkScrollable();
+        }
+        fetchDirection = direction;
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        checkClosed();
+        return fetchDirection;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        checkClosed();
+        if (rows < 0) {
+            throw new PSQLException("Fetch size must be a value greater to or equal to 0.", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        fetchSize = rows;
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        checkClosed();
+        return fetchSize;
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        checkClosed();
+        return type;
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        checkClosed();
+        return holdability;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnTypes.length;
+    }
+
+    @Override
+    public boolean isBinary(int columnIndex) throws SQLException {
+        checkClosed();
+        return false;
+    }
+
+    @Override
+    public byte[] getRawArray(int columnIndex) throws SQLException {
+        int column = column(columnIndex);
+        return length(column) < 0 ? null : array(column);
+    }
+
+    @Override
+    public int getRawOffset(int columnIndex) throws SQLException {
+        return arrayOffset(column(columnIndex));
+    }
+
+    @Override
+    public int getRawLength(int columnIndex) throws SQLException {
+        return length(column(columnIndex));
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        checkClosed();
+        return owner;
+    }
+}
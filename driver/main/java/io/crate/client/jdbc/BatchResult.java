@@ -0,0 +1,115 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+
+/**
+ * The per row outcome of the last batch executed by a {@link CratePreparedStatement} or
+ * {@link CrateStatement}.
+ * <p>
+ * Rows are numbered from 0 in the order they have been added to the batch.
+ */
+public final class BatchResult {
+
+    private final int[] updateCounts;
+    private final int[] failedRows;
+    private final String[] errorMessages;
+    private final BatchUpdateException failure;
+
+    BatchResult(int[] updateCounts, int[] failedRows, String[] errorMessages, BatchUpdateException failure) {
+        this.updateCounts = updateCounts;
+        this.failedRows = failedRows;
+        this.errorMessages = errorMessages;
+        this.failure = failure;
+    }
+
+    /**
+     * @return the number of rows of the batch.
+     */
+    public int size() {
+        return updateCounts.length;
+    }
+
+    /**
+     * @return the update count of every row, {@link Statement#EXECUTE_FAILED} for rows which failed.
+     */
+    public int[] getUpdateCounts() {
+        return updateCounts.clone();
+    }
+
+    public boolean hasFailures() {
+        return failedRows.length > 0;
+    }
+
+    public int getFailedCount() {
+        return failedRows.length;
+    }
+
+    /**
+     * @return the numbers of the rows which failed, in ascending order.
+     */
+    public int[] getFailedRows() {
+        return failedRows.clone();
+    }
+
+    /**
+     * Returns the error reported for a row which failed.
+     * <p>
+     * CrateDB reports the rows of a bulk operation which failed individually without a reason,
+     * in that case there is no error message for the row.
+     *
+     * @return the error message or null if the row succeeded or no message is known.
+     */
+    public String getErrorMessage(int row) {
+        for (int i = 0; i < failedRows.length; i++) {
+            if (failedRows[i] == row) {
+                return errorMessages[i];
+            }
+            if (failedRows[i] > row) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the exception to throw to the caller of {@code executeBatch}.
+     * <p>
+     * Rows which CrateDB reports as failed within a successful bulk operation are returned as
+     * {@link Statement#EXECUTE_FAILED} update counts, like CrateDB's own JDBC driver did, and do
+     * not cause an exception.
+     *
+     * @return the exception, null if the batch has been executed.
+     */
+    BatchUpdateException toException() {
+        if (failure == null) {
+            return null;
+        }
+        BatchUpdateException e = new BatchUpdateException(
+            failure.getMessage(), failure.getSQLState(), failure.getErrorCode(), getUpdateCounts(), failure);
+        e.setNextException(failure.getNextException());
+        return e;
+    }
+}
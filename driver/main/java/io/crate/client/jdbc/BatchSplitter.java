@@ -0,0 +1,247 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the rows of a batch, splits them into chunks by row count and by estimated payload
+ * size and decodes the per row results of CrateDB.
+ * <p>
+ * A chunk is executed as soon as it reaches one of the limits, so that the rows of a huge
+ * batch are never buffered all at once. The update counts of all chunks are collected in
+ * order and returned once the caller executes the batch. Rows which CrateDB reports as failed
+ * within a bulk operation are returned as {@link Statement#EXECUTE_FAILED}; only a chunk which
+ * could not be executed makes the batch end with one {@link BatchUpdateException}.
+ * <p>
+ * Chunks following a failed chunk are still executed, as CrateDB has no transaction which
+ * would discard them anyway.
+ */
+final class BatchSplitter {
+
+    /**
+     * CrateDB executes the rows of a prepared statement batch as a bulk operation and reports
+     * every row which failed with this row count instead of failing the whole batch.
+     */
+    private static final int BULK_ROW_FAILED = -2;
+
+    private final int maxRows;
+    private final long maxBytes;
+    private final boolean decodeBulkResults;
+
+    // the rows of the pending chunk which can be retried, shorter if the last ones cannot
+    private final List<ParameterRow> pending = new ArrayList<>();
+    // the parameters of the pending rows, reused for the next chunk
+    private final ParameterBuffer buffer = new ParameterBuffer(64);
+    private int pendingRows;
+    private long pendingBytes;
+
+    private int[] updateCounts = new int[16];
+    private int numUpdateCounts;
+    private BatchUpdateException failure;
+
+    private List<ParameterRow> failedParameters = new ArrayList<>();
+    private List<ParameterRow> lastFailedParameters = new ArrayList<>();
+    private int[] failedRows = new int[4];
+    private String[] errorMessages = new String[4];
+    private int numFailedRows;
+
+    /**
+     * @param decodeBulkResults whether the row counts are the ones of a CrateDB bulk operation.
+     */
+    BatchSplitter(int maxRows, long maxBytes, boolean decodeBulkResults) {
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.decodeBulkResults = decodeBulkResults;
+    }
+
+    /**
+     * @return the buffer for the parameters of the rows which are added, which is cleared once they are executed.
+     */
+    ParameterBuffer parameters() {
+        return buffer;
+    }
+
+    /**
+     * Registers a row which has been added to the batch of the statement.
+     *
+     * @param row the parameters of the row, null if the row cannot be retried.
+     * @return true if the pending chunk reached one of the limits, so that it has to be executed with
+     * {@link #flush(Statement)}.
+     */
+    boolean add(long rowBytes, ParameterRow row) {
+        if (row != null) {
+            while (pending.size() < pendingRows) {
+                pending.add(null);
+            }
+            pending.add(row);
+        }
+        pendingRows++;
+        pendingBytes += rowBytes;
+        return (maxRows > 0 && pendingRows >= maxRows) || (maxBytes > 0 && pendingBytes >= maxBytes);
+    }
+
+    /**
+     * Executes the remaining chunk and returns the result of all rows added since the last call.
+     */
+    BatchResult finish(Statement statement) throws SQLException {
+        flush(statement);
+        return result(failure);
+    }
+
+    /**
+     * Ends the batch after a chunk could not be executed, see {@link #flush(Statement)}.
+     *
+     * @return the result of the rows added since the last call, whose failure carries the update counts of the
+     * chunks which have been executed.
+     */
+    BatchResult abort(SQLException cause) {
+        BatchUpdateException failure = new BatchUpdateException(
+            cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), Arrays.copyOf(updateCounts, numUpdateCounts),
+            cause);
+        return result(failure);
+    }
+
+    private BatchResult result(BatchUpdateException failure) {
+        BatchResult result = new BatchResult(
+            Arrays.copyOf(updateCounts, numUpdateCounts),
+            Arrays.copyOf(failedRows, numFailedRows),
+            Arrays.copyOf(errorMessages, numFailedRows),
+            failure);
+        List<ParameterRow> failed = failedParameters;
+        failedParameters = lastFailedParameters;
+        lastFailedParameters = failed;
+        clear();
+        return result;
+    }
+
+    /**
+     * @return the parameters of the rows which failed in the last executed batch, in batch order.
+     */
+    List<ParameterRow> lastFailedParameters() {
+        return lastFailedParameters;
+    }
+
+    /**
+     * Discards all state. Chunks which have already been executed cannot be undone.
+     */
+    void clear() {
+        pending.clear();
+        buffer.clear();
+        pendingRows = 0;
+        pendingBytes = 0;
+        numUpdateCounts = 0;
+        failure = null;
+        failedParameters.clear();
+        numFailedRows = 0;
+    }
+
+    /**
+     * Executes the pending chunk. If it fails with another exception than a {@link BatchUpdateException}, its rows
+     * are regarded as failed and the exception is thrown, the batch should then be ended with
+     * {@link #abort(SQLException)}.
+     */
+    void flush(Statement statement) throws SQLException {
+        if (pendingRows == 0) {
+            return;
+        }
+        int rows = pendingRows;
+        int offset = numUpdateCounts;
+        String message = null;
+        // the row of the chunk the message belongs to, the rows after it have not been executed
+        int failedAt = -1;
+        SQLException error = null;
+        try {
+            try {
+                append(statement.executeBatch(), rows, Statement.SUCCESS_NO_INFO);
+            } catch (BatchUpdateException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                message = e.getMessage();
+                failedAt = firstExecuteFailed(e.getUpdateCounts(), rows);
+                append(e.getUpdateCounts(), rows, Statement.EXECUTE_FAILED);
+            } catch (SQLException e) {
+                // the outcome of the rows is unknown, so they can be retried
+                error = e;
+                message = e.getMessage();
+                failedAt = 0;
+                append(null, rows, Statement.EXECUTE_FAILED);
+            }
+            for (int i = 0; i < rows; i++) {
+                if (updateCounts[offset + i] == Statement.EXECUTE_FAILED) {
+                    ParameterRow row = i < pending.size() ? pending.get(i) : null;
+                    addFailedRow(offset + i, i == failedAt ? message : null, row);
+                }
+            }
+        } finally {
+            pending.clear();
+            buffer.clear();
+            pendingRows = 0;
+            pendingBytes = 0;
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static int firstExecuteFailed(int[] counts, int rows) {
+        int available = counts == null ? 0 : Math.min(counts.length, rows);
+        for (int i = 0; i < available; i++) {
+            if (counts[i] == Statement.EXECUTE_FAILED) {
+                return i;
+            }
+        }
+        return available;
+    }
+
+    private void append(int[] counts, int rows, int missing) {
+        if (numUpdateCounts + rows > updateCounts.length) {
+            updateCounts = Arrays.copyOf(updateCounts, Math.max(updateCounts.length * 2, numUpdateCounts + rows));
+        }
+        int available = counts == null ? 0 : Math.min(counts.length, rows);
+        for (int i = 0; i < available; i++) {
+            int count = counts[i];
+            updateCounts[numUpdateCounts + i] =
+                decodeBulkResults && count == BULK_ROW_FAILED ? Statement.EXECUTE_FAILED : count;
+        }
+        Arrays.fill(updateCounts, numUpdateCounts + available, numUpdateCounts + rows, missing);
+        numUpdateCounts += rows;
+    }
+
+    private void addFailedRow(int row, String message, ParameterRow parameters) {
+        if (numFailedRows == failedRows.length) {
+            failedRows = Arrays.copyOf(failedRows, numFailedRows * 2);
+            errorMessages = Arrays.copyOf(errorMessages, numFailedRows * 2);
+        }
+        failedRows[numFailedRows] = row;
+        errorMessages[numFailedRows] = message;
+        numFailedRows++;
+        failedParameters.add(parameters == null ? null : parameters.detachFrom(buffer));
+    }
+}
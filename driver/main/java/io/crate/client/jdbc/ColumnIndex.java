@@ -0,0 +1,104 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Case insensitive mapping of column labels to column indexes, which resolves them like pgjdbc does.
+ * <p>
+ * {@link CrateStatement} keeps the index of its last result, so that repeated executions of the same query
+ * do not build it again as long as the labels of the columns do not change.
+ */
+final class ColumnIndex {
+
+    private final String[] labels;
+    private final boolean sanitiserDisabled;
+    // also holds the labels which were looked up with a different case
+    private final Map<String, Integer> indexes;
+
+    private ColumnIndex(String[] labels, boolean sanitiserDisabled) {
+        this.labels = labels;
+        this.sanitiserDisabled = sanitiserDisabled;
+        this.indexes = new ConcurrentHashMap<>(labels.length * 2);
+        // the first of several columns with the same label wins
+        for (int i = labels.length - 1; i >= 0; i--) {
+            indexes.put(sanitiserDisabled ? labels[i] : labels[i].toLowerCase(Locale.US), i + 1);
+        }
+    }
+
+    /**
+     * @param sanitiserDisabled if the labels are kept as they are, like pgjdbc does with
+     *                          {@code disableColumnSanitiser}, instead of being lower cased.
+     */
+    static ColumnIndex of(ResultSetMetaData metaData, boolean sanitiserDisabled) throws SQLException {
+        String[] labels = new String[metaData.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+        }
+        return new ColumnIndex(labels, sanitiserDisabled);
+    }
+
+    /**
+     * @return true if the index applies to a result with the given columns.
+     */
+    boolean matches(ResultSetMetaData metaData, boolean sanitiserDisabled) throws SQLException {
+        if (this.sanitiserDisabled != sanitiserDisabled || labels.length != metaData.getColumnCount()) {
+            return false;
+        }
+        for (int i = 0; i < labels.length; i++) {
+            if (!labels[i].equals(metaData.getColumnLabel(i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the 1-based index of the column.
+     */
+    int find(String columnLabel) throws PSQLException {
+        Integer index = indexes.get(columnLabel);
+        if (index != null) {
+            return index;
+        }
+        index = indexes.get(columnLabel.toLowerCase(Locale.US));
+        if (index == null) {
+            index = indexes.get(columnLabel.toUpperCase(Locale.US));
+        }
+        if (index == null) {
+            throw new PSQLException(
+                String.format("The column name %s was not found in this ResultSet.", columnLabel),
+                PSQLState.UNDEFINED_COLUMN);
+        }
+        indexes.put(columnLabel, index);
+        return index;
+    }
+}
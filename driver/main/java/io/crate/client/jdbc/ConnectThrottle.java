@@ -0,0 +1,200 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.HostSpec;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control for new connections, shared by all connections of the process.
+ * <p>
+ * The number of concurrent connection attempts per host can be limited, and a host which could not be
+ * reached is skipped for a jittered, exponentially growing time, so that the attempts of many clients do
+ * not pile up on a host which is restarting.
+ * <p>
+ * A host which could not be reached is also regarded as down for {@code hostRecheckSeconds}, like pgjdbc does
+ * with its {@link org.postgresql.hostchooser.GlobalHostStatusTracker}, whose state cannot be read by other
+ * packages. Down hosts are skipped without an attempt, and if all hosts are down, connecting fails at once.
+ */
+final class ConnectThrottle {
+
+    static final ConnectThrottle GLOBAL = new ConnectThrottle(System::currentTimeMillis, new Random());
+
+    /**
+     * Backoff after the first failure, it doubles with every further failure up to the configured maximum.
+     */
+    static final long INITIAL_BACKOFF_MILLIS = 100;
+
+    interface HostConnector {
+        Connection connect(HostSpec host) throws SQLException;
+    }
+
+    private final LongSupplier clock;
+    private final Random random;
+    private final Map<HostSpec, HostState> states = new ConcurrentHashMap<>();
+
+    ConnectThrottle(LongSupplier clock, Random random) {
+        this.clock = clock;
+        this.random = random;
+    }
+
+    private static final class HostState {
+
+        private int failures;
+        private long backoffUntil;
+        private long downUntil;
+        private Semaphore attempts;
+        private int maxAttempts;
+
+        synchronized boolean isBackingOff(long now) {
+            return now < backoffUntil;
+        }
+
+        synchronized boolean isDown(long now) {
+            return now < downUntil;
+        }
+
+        synchronized Semaphore attempts(int max) {
+            if (attempts == null || maxAttempts != max) {
+                attempts = new Semaphore(max);
+                maxAttempts = max;
+            }
+            return attempts;
+        }
+
+        synchronized void succeeded() {
+            failures = 0;
+            backoffUntil = 0;
+            downUntil = 0;
+        }
+
+        synchronized void failed(long now, long maxBackoff, long hostRecheckMillis, Random random) {
+            downUntil = now + hostRecheckMillis;
+            failures++;
+            long backoff = Math.min(maxBackoff, INITIAL_BACKOFF_MILLIS << Math.min(failures - 1, 30));
+            // between half and the full backoff, so that clients which failed at the same time retry at different times
+            backoffUntil = now + backoff / 2 + (long) (random.nextDouble() * (backoff - backoff / 2));
+        }
+    }
+
+    /**
+     * Tries the hosts in the given order and returns the first connection which could be established.
+     *
+     * @param maxAttemptsPerHost the number of concurrent attempts per host, 0 for no limit.
+     * @param maxBackoff         the maximum time in milliseconds a host is skipped after connecting to it failed,
+     *                           0 to never skip hosts.
+     * @param hostRecheckMillis  the time in milliseconds a host is regarded as down after connecting to it failed.
+     * @param waitMillis         how long to wait for an attempt of a host which is at its limit, before it is
+     *                           skipped, 0 to wait without limit.
+     */
+    Connection connect(HostSpec[] hosts,
+                       int maxAttemptsPerHost,
+                       long maxBackoff,
+                       long hostRecheckMillis,
+                       long waitMillis,
+                       HostConnector connector) throws SQLException {
+        SQLException lastError = null;
+        int down = 0;
+        for (HostSpec host : hosts) {
+            HostState state = states.computeIfAbsent(host, h -> new HostState());
+            long now = clock.getAsLong();
+            if (state.isDown(now)) {
+                down++;
+                continue;
+            }
+            if (maxBackoff > 0 && state.isBackingOff(now)) {
+                continue;
+            }
+            Semaphore attempts = maxAttemptsPerHost > 0 ? state.attempts(maxAttemptsPerHost) : null;
+            if (attempts != null && !acquire(attempts, waitMillis)) {
+                continue;
+            }
+            try {
+                Connection connection = connector.connect(host);
+                state.succeeded();
+                return connection;
+            } catch (SQLException e) {
+                if (isConnectionFailure(e)) {
+                    state.failed(clock.getAsLong(), maxBackoff, hostRecheckMillis, random);
+                }
+                lastError = e;
+            } finally {
+                if (attempts != null) {
+                    attempts.release();
+                }
+            }
+        }
+        if (lastError != null) {
+            throw lastError;
+        }
+        if (down == hosts.length) {
+            throw new PSQLException(
+                "Could not connect to any host, all of them are marked down.", PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+        }
+        throw new PSQLException(
+            "Could not connect to any host, all of them recently failed or are busy with other connection attempts.",
+            PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+    }
+
+    /**
+     * Marks the given host as down and lets it back off as if connecting to it failed, for example because an
+     * established connection to it broke.
+     */
+    void failed(HostSpec host, long maxBackoff, long hostRecheckMillis) {
+        states.computeIfAbsent(host, h -> new HostState())
+            .failed(clock.getAsLong(), maxBackoff, hostRecheckMillis, random);
+    }
+
+    private static boolean acquire(Semaphore attempts, long waitMillis) throws PSQLException {
+        try {
+            if (waitMillis > 0) {
+                return attempts.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+            }
+            attempts.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PSQLException(
+                "Interrupted while waiting to connect.", PSQLState.CONNECTION_UNABLE_TO_CONNECT, e);
+        }
+    }
+
+    /**
+     * @return true if the host could not be reached or the connection to it broke. Only those failures cause a
+     * backoff, not for example authentication errors.
+     */
+    static boolean isConnectionFailure(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+}
@@ -0,0 +1,855 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import io.crate.client.jdbc.copy.CrateCopyManager;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.postgresql.PGProperty;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.fastpath.Fastpath;
+import org.postgresql.jdbc.AutoSave;
+import org.postgresql.jdbc.PreferQueryMode;
+import org.postgresql.largeobject.LargeObjectManager;
+import org.postgresql.replication.PGReplicationConnection;
+import org.postgresql.util.HostSpec;
+import org.postgresql.util.PGobject;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Wraps the pgjdbc connection if any {@link CrateProperty} is set, so that the statements created from it
+ * can apply the CrateDB specific behaviour which is configured by those properties.
+ * <p>
+ * The {@link PGConnection} methods are passed on to the pgjdbc connection, except for {@link #getCopyAPI()}.
+ */
+public class CrateConnection implements Connection, PGConnection {
+
+    /**
+     * Establishes a new connection to another host than the one of the given connection.
+     */
+    interface Reconnector {
+
+        /**
+         * @param failed true if the given connection broke, so that its host is regarded as unreachable.
+         */
+        Connection connect(Connection current, boolean failed) throws SQLException;
+    }
+
+    // replaced by a failover, which can be run by any thread which uses a statement of this connection
+    private volatile Connection delegate;
+    // serializes failovers, so that the statements which broke at the same time open only one connection
+    private final Object failoverLock = new Object();
+    private final Reconnector reconnector;
+    private final boolean failoverReadOnly;
+    private final long hedgeDelayNanos;
+    private final int hedgePercentile;
+    // the connection to another host which hedged queries are sent to, created on first use
+    private Connection hedgeConnection;
+    private final ResultCache resultCache;
+    // whether the connection stopped using the result cache because it was closed
+    private boolean resultCacheReleased;
+    private final long resultCacheTtlNanos;
+    private final Pattern resultCachePattern;
+    // created by the first meta data lookup, most connections never need it
+    private volatile TableColumns tableColumns;
+    // created by the first getCopyAPI call
+    private CrateCopyManager copyManager;
+    // the schema of the session, looked up on first use if it was not set with setSchema
+    private String currentSchema;
+    // the session settings which are applied again after a failover
+    private boolean autoCommit = true;
+    private boolean readOnly;
+    private String schema;
+    private final int batchMaxRows;
+    private final long batchMaxBytes;
+    private final boolean rewriteBatchedInserts;
+    private final boolean compactResults;
+    private final int stringCacheSize;
+    private final boolean decodeText;
+    private final boolean sharedQueryTimeouts;
+    private final boolean cacheTableColumns;
+    private final boolean columnSanitiserDisabled;
+    private final boolean binaryJson;
+    private final int scrollWindowSize;
+    private final long spillThreshold;
+    // whether the server supports scrollable cursors, looked up on first use
+    private Boolean scrollCursors;
+    // whether the server rejected MOVE, which CursorResultSet counts the rows of a cursor with
+    private boolean moveUnsupported;
+
+    CrateConnection(Connection delegate, Properties properties) throws SQLException {
+        this(delegate, properties, null);
+    }
+
+    /**
+     * @param reconnector used to replace the connection if it broke while executing a read-only query and to
+     *                    connect to another host for hedged queries, null to do neither.
+     */
+    CrateConnection(Connection delegate, Properties properties, Reconnector reconnector) throws SQLException {
+        this.delegate = delegate;
+        this.reconnector = reconnector;
+        this.failoverReadOnly = CrateProperty.FAILOVER_READ_ONLY.getBoolean(properties);
+        this.hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(CrateProperty.HEDGE_DELAY.getLong(properties));
+        this.hedgePercentile = CrateProperty.HEDGE_PERCENTILE.getInt(properties);
+        long resultCacheSize = CrateProperty.RESULT_CACHE_SIZE.getLong(properties);
+        this.resultCache = resultCacheSize > 0 ? ResultCache.of(dataSource(properties), resultCacheSize) : null;
+        this.resultCacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(CrateProperty.RESULT_CACHE_TTL.getLong(properties));
+        this.resultCachePattern = resultCachePattern(properties);
+        this.readOnly = PGProperty.READ_ONLY.getBoolean(properties);
+        this.batchMaxRows = CrateProperty.BATCH_MAX_ROWS.getInt(properties);
+        this.batchMaxBytes = CrateProperty.BATCH_MAX_BYTES.getLong(properties);
+        this.rewriteBatchedInserts = PGProperty.REWRITE_BATCHED_INSERTS.getBoolean(properties);
+        this.compactResults = CrateProperty.COMPACT_RESULTS.getBoolean(properties);
+        this.stringCacheSize = CrateProperty.STRING_CACHE_SIZE.getInt(properties);
+        this.decodeText = CrateProperty.DECODE_TEXT.getBoolean(properties);
+        this.sharedQueryTimeouts = CrateProperty.SHARED_QUERY_TIMEOUTS.getBoolean(properties);
+        this.cacheTableColumns = CrateProperty.CACHE_TABLE_COLUMNS.getBoolean(properties);
+        this.columnSanitiserDisabled = PGProperty.DISABLE_COLUMN_SANITISER.getBoolean(properties);
+        this.binaryJson = CrateProperty.BINARY_JSON.getBoolean(properties);
+        if (binaryJson) {
+            JsonParameter.enableBinarySend(delegate);
+        }
+        this.scrollWindowSize = CrateProperty.SCROLL_WINDOW_SIZE.getInt(properties);
+        this.spillThreshold = CrateProperty.SPILL_THRESHOLD.getLong(properties);
+    }
+
+    int batchMaxRows() {
+        return batchMaxRows;
+    }
+
+    long batchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * Returns whether the row counts of a batch of the statement are the ones of a CrateDB bulk operation.
+     * <p>
+     * pgjdbc rewrites a batch of inserts into one multi row insert if reWriteBatchedInserts is set and reports
+     * SUCCESS_NO_INFO for each of its rows, which is the same value CrateDB reports for a failed row.
+     */
+    boolean decodeBulkResults(String sql) {
+        return !rewriteBatchedInserts || !sql.trim().regionMatches(true, 0, "insert", 0, 6);
+    }
+
+    boolean compactResults() {
+        return compactResults;
+    }
+
+    boolean binaryJson() {
+        return binaryJson;
+    }
+
+    int stringCacheSize() {
+        return stringCacheSize;
+    }
+
+    boolean decodeText() {
+        return decodeText;
+    }
+
+    boolean sharedQueryTimeouts() {
+        return sharedQueryTimeouts;
+    }
+
+    boolean cacheTableColumns() {
+        return cacheTableColumns;
+    }
+
+    boolean columnSanitiserDisabled() {
+        return columnSanitiserDisabled;
+    }
+
+    private static String dataSource(Properties properties) {
+        return PGProperty.USER.get(properties) + "@" + properties.getProperty("PGHOST") + ":"
+               + properties.getProperty("PGPORT") + "/" + properties.getProperty("PGDBNAME");
+    }
+
+    private static Pattern resultCachePattern(Properties properties) throws PSQLException {
+        String pattern = CrateProperty.RESULT_CACHE_PATTERN.get(properties);
+        if (pattern == null || pattern.isEmpty()) {
+            return null;
+        }
+        try {
+            return Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+        } catch (PatternSyntaxException e) {
+            throw new PSQLException(
+                String.format("%s parameter value must be a regular expression but was: %s",
+                    CrateProperty.RESULT_CACHE_PATTERN.getName(), pattern),
+                PSQLState.INVALID_PARAMETER_VALUE, e);
+        }
+    }
+
+    /**
+     * @return the cache of the results of this connection, null if results are not cached.
+     */
+    ResultCache resultCache() {
+        return resultCache;
+    }
+
+    long resultCacheTtlNanos() {
+        return resultCacheTtlNanos;
+    }
+
+    /**
+     * @return true if the results of the given query are cached unless the statement decides otherwise.
+     */
+    boolean isResultCached(String sql) {
+        return resultCachePattern != null && resultCachePattern.matcher(sql).find();
+    }
+
+    /**
+     * @return the schema set with {@link #setSchema}, null if it was not changed.
+     */
+    String schema() {
+        return schema;
+    }
+
+    /**
+     * @return the schema of unqualified table names.
+     */
+    String currentSchema() throws SQLException {
+        if (schema != null) {
+            return schema;
+        }
+        if (currentSchema == null) {
+            currentSchema = delegate.getSchema();
+        }
+        return currentSchema;
+    }
+
+    synchronized TableColumns tableColumns() {
+        if (tableColumns == null) {
+            tableColumns = new TableColumns(System::nanoTime);
+        }
+        return tableColumns;
+    }
+
+    /**
+     * Removes the table columns which may have been changed by the given statement, see
+     * {@link TableColumns#invalidate(String)}. Nothing is cached before the first meta data lookup.
+     */
+    void invalidateTableColumns(String sql) {
+        TableColumns columns = tableColumns;
+        if (columns != null) {
+            columns.invalidate(sql);
+        }
+    }
+
+    boolean failoverReadOnly() {
+        return failoverReadOnly;
+    }
+
+    int scrollWindowSize() {
+        return scrollWindowSize;
+    }
+
+    long spillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * @return true if the server supports {@code DECLARE ... SCROLL CURSOR}, which CrateDB does since 5.1.0.
+     */
+    synchronized boolean supportsScrollCursors() throws SQLException {
+        if (scrollCursors == null) {
+            scrollCursors = isCrateVersionAtLeast(delegate.getMetaData(), "5.1.0");
+        }
+        return scrollCursors;
+    }
+
+    synchronized boolean supportsMove() {
+        return !moveUnsupported;
+    }
+
+    synchronized void moveUnsupported() {
+        moveUnsupported = true;
+    }
+
+    /**
+     * Compares the version returned by {@code getCrateVersion()} of the meta data of the pgjdbc fork, which is
+     * looked up reflectively. The version of other servers is not known, so it is regarded as too old.
+     */
+    static boolean isCrateVersionAtLeast(DatabaseMetaData metaData, String version) throws SQLException {
+        try {
+            Object crateVersion = metaData.getClass().getMethod("getCrateVersion").invoke(metaData);
+            return crateVersion != null
+                   && !(Boolean) crateVersion.getClass().getMethod("before", String.class).invoke(crateVersion, version);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return false;
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new PSQLException("Cannot determine the version of CrateDB", PSQLState.UNEXPECTED_ERROR, e.getCause());
+        }
+    }
+
+    Connection delegate() {
+        return delegate;
+    }
+
+    boolean isHedged() {
+        return reconnector != null && (hedgeDelayNanos > 0 || hedgePercentile > 0);
+    }
+
+    /**
+     * @return true if queries may be executed more than once, so that their parameters must be kept.
+     */
+    boolean replaysQueries() {
+        return failoverReadOnly || isHedged();
+    }
+
+    boolean isReadOnlyQuery(String sql) {
+        return readOnly || Replay.isReadOnly(sql);
+    }
+
+    /**
+     * @return true if the given query may be executed once more on a new connection after it failed.
+     */
+    boolean isReplayable(SQLException failure, String sql) {
+        return failoverReadOnly
+               && reconnector != null
+               && ConnectThrottle.isConnectionFailure(failure)
+               && isReadOnlyQuery(sql);
+    }
+
+    /**
+     * @return the time after which a query of this connection is hedged, the configured percentile of the
+     * latencies of its host if enough of them are known, otherwise the configured delay. 0 if it is not hedged.
+     */
+    long hedgeDelayNanos() {
+        if (hedgePercentile > 0) {
+            long percentile = LatencyTracker.GLOBAL.percentileNanos(hostOf(delegate), hedgePercentile);
+            if (percentile > 0) {
+                return percentile;
+            }
+        }
+        return hedgeDelayNanos;
+    }
+
+    /**
+     * @return the connection to another host which hedged queries are sent to.
+     */
+    synchronized Connection hedgeConnection() throws SQLException {
+        if (hedgeConnection == null || hedgeConnection.isClosed()) {
+            hedgeConnection = applySettings(reconnector.connect(delegate, false));
+        }
+        return hedgeConnection;
+    }
+
+    /**
+     * Drops the hedge connection if it broke, so that the next hedged query connects again.
+     */
+    synchronized void hedgeFailed(Connection connection, SQLException failure) {
+        if (connection == hedgeConnection && ConnectThrottle.isConnectionFailure(failure)) {
+            hedgeConnection = null;
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // the connection is broken anyway
+            }
+        }
+    }
+
+    /**
+     * @return the host the given pgjdbc connection is connected to, null if it is not known.
+     */
+    static HostSpec hostOf(Connection connection) {
+        return connection instanceof BaseConnection
+            ? ((BaseConnection) connection).getQueryExecutor().getHostSpec()
+            : null;
+    }
+
+    /**
+     * Replaces the broken connection by a new connection to another host, with the same session settings.
+     * Statements created before keep working, but only read-only queries move over to the new connection.
+     *
+     * @param failed the connection which broke.
+     * @return the new connection, which another thread may have opened already.
+     */
+    Connection failover(Connection failed) throws SQLException {
+        Connection replacement;
+        synchronized (failoverLock) {
+            if (delegate != failed) {
+                return delegate;
+            }
+            replacement = applySettings(reconnector.connect(failed, true));
+            delegate = replacement;
+        }
+        synchronized (this) {
+            scrollCursors = null;
+            moveUnsupported = false;
+        }
+        try {
+            failed.close();
+        } catch (SQLException ignored) {
+            // the connection is broken anyway
+        }
+        return replacement;
+    }
+
+    private Connection applySettings(Connection connection) throws SQLException {
+        try {
+            connection.setAutoCommit(autoCommit);
+            connection.setReadOnly(readOnly);
+            if (schema != null) {
+                connection.setSchema(schema);
+            }
+            if (binaryJson) {
+                JsonParameter.enableBinarySend(connection);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return new CrateStatement(this, delegate.createStatement());
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return new CratePreparedStatement(this, delegate.prepareStatement(sql), sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return delegate.prepareCall(sql);
+    }
+
+    @Override
+    public String nativeSQL(String sql) throws SQLException {
+        return delegate.nativeSQL(sql);
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        delegate.setAutoCommit(autoCommit);
+        this.autoCommit = autoCommit;
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        return delegate.getAutoCommit();
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        delegate.commit();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        delegate.rollback();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        synchronized (this) {
+            if (hedgeConnection != null) {
+                hedgeConnection.close();
+                hedgeConnection = null;
+            }
+            if (resultCache != null && !resultCacheReleased) {
+                resultCacheReleased = true;
+                resultCache.release();
+            }
+        }
+        delegate.close();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return delegate.getMetaData();
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        delegate.setReadOnly(readOnly);
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        return delegate.isReadOnly();
+    }
+
+    @Override
+    public void setCatalog(String catalog) throws SQLException {
+        delegate.setCatalog(catalog);
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return delegate.getCatalog();
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        delegate.setTransactionIsolation(level);
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return delegate.getTransactionIsolation();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate.clearWarnings();
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new CrateStatement(this, delegate.createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+        throws SQLException {
+        return new CratePreparedStatement(
+            this, delegate.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return delegate.prepareCall(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return delegate.getTypeMap();
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        delegate.setTypeMap(map);
+    }
+
+    @Override
+    public void setHoldability(int holdability) throws SQLException {
+        delegate.setHoldability(holdability);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return delegate.getHoldability();
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return delegate.setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        return delegate.setSavepoint(name);
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        delegate.rollback(savepoint);
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        delegate.releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+        throws SQLException {
+        return new CrateStatement(
+            this, delegate.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+            String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+        throws SQLException {
+        return new CratePreparedStatement(
+            this, delegate.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(
+            String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+        throws SQLException {
+        return delegate.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return new CratePreparedStatement(this, delegate.prepareStatement(sql, autoGeneratedKeys), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return new CratePreparedStatement(this, delegate.prepareStatement(sql, columnIndexes), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return new CratePreparedStatement(this, delegate.prepareStatement(sql, columnNames), sql);
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return delegate.createClob();
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return delegate.createBlob();
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return delegate.createNClob();
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return delegate.createSQLXML();
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        return delegate.isValid(timeout);
+    }
+
+    @Override
+    public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        delegate.setClientInfo(name, value);
+    }
+
+    @Override
+    public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        delegate.setClientInfo(properties);
+    }
+
+    @Override
+    public String getClientInfo(String name) throws SQLException {
+        return delegate.getClientInfo(name);
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return delegate.getClientInfo();
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        return delegate.createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        return delegate.createStruct(typeName, attributes);
+    }
+
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        delegate.setSchema(schema);
+        this.schema = schema;
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        return delegate.getSchema();
+    }
+
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        delegate.abort(executor);
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+        delegate.setNetworkTimeout(executor, milliseconds);
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return delegate.getNetworkTimeout();
+    }
+
+    private PGConnection pgConnection() {
+        return (PGConnection) delegate;
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object elements) throws SQLException {
+        return pgConnection().createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public PGNotification[] getNotifications() throws SQLException {
+        return pgConnection().getNotifications();
+    }
+
+    @Override
+    public PGNotification[] getNotifications(int timeoutMillis) throws SQLException {
+        return pgConnection().getNotifications(timeoutMillis);
+    }
+
+    /**
+     * @return a {@link CrateCopyManager} which loads the data through this connection, as CrateDB does not
+     * support the COPY sub-protocol of PostgreSQL.
+     */
+    @Override
+    public synchronized CopyManager getCopyAPI() throws SQLException {
+        if (copyManager == null) {
+            copyManager = new CrateCopyManager(this);
+        }
+        return copyManager;
+    }
+
+    @Override
+    public LargeObjectManager getLargeObjectAPI() throws SQLException {
+        return pgConnection().getLargeObjectAPI();
+    }
+
+    @Override
+    @Deprecated
+    public Fastpath getFastpathAPI() throws SQLException {
+        return pgConnection().getFastpathAPI();
+    }
+
+    @Override
+    @Deprecated
+    public void addDataType(String type, String className) {
+        pgConnection().addDataType(type, className);
+    }
+
+    @Override
+    public void addDataType(String type, Class<? extends PGobject> klass) throws SQLException {
+        pgConnection().addDataType(type, klass);
+    }
+
+    @Override
+    public void setPrepareThreshold(int threshold) {
+        pgConnection().setPrepareThreshold(threshold);
+    }
+
+    @Override
+    public int getPrepareThreshold() {
+        return pgConnection().getPrepareThreshold();
+    }
+
+    @Override
+    public void setDefaultFetchSize(int fetchSize) throws SQLException {
+        pgConnection().setDefaultFetchSize(fetchSize);
+    }
+
+    @Override
+    public int getDefaultFetchSize() {
+        return pgConnection().getDefaultFetchSize();
+    }
+
+    @Override
+    public int getBackendPID() {
+        return pgConnection().getBackendPID();
+    }
+
+    @Override
+    public String escapeIdentifier(String identifier) throws SQLException {
+        return pgConnection().escapeIdentifier(identifier);
+    }
+
+    @Override
+    public String escapeLiteral(String literal) throws SQLException {
+        return pgConnection().escapeLiteral(literal);
+    }
+
+    @Override
+    public PreferQueryMode getPreferQueryMode() {
+        return pgConnection().getPreferQueryMode();
+    }
+
+    @Override
+    public AutoSave getAutosave() {
+        return pgConnection().getAutosave();
+    }
+
+    @Override
+    public void setAutosave(AutoSave autoSave) {
+        pgConnection().setAutosave(autoSave);
+    }
+
+    @Override
+    public PGReplicationConnection getReplicationAPI() {
+        return pgConnection().getReplicationAPI();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+}
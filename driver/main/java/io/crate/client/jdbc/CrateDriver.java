@@ -22,10 +22,22 @@
 
 package io.crate.client.jdbc;
 
+import org.postgresql.PGProperty;
+import org.postgresql.hostchooser.GlobalHostStatusTracker;
+import org.postgresql.hostchooser.HostStatus;
+import org.postgresql.util.HostSpec;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+import org.postgresql.util.URLCoder;
+
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 public class CrateDriver extends org.postgresql.Driver {
@@ -62,7 +74,131 @@ public class CrateDriver extends org.postgresql.Driver {
         if (psqlUrl == null) {
             return null;
         }
-        return super.connect(psqlUrl, info);
+        Properties props = parseURL(psqlUrl, info);
+        Connection connection = connectToHost(psqlUrl, info, props);
+        if (connection == null || props == null || !CrateProperty.isAnyPresent(props)) {
+            return connection;
+        }
+        try {
+            CrateConnection.Reconnector reconnector =
+                (current, failed) -> reconnect(current, failed, psqlUrl, info, props);
+            CrateConnection crateConnection = new CrateConnection(connection, props, reconnector);
+            int multiplexed = CrateProperty.MULTIPLEX_CONNECTIONS.getInt(props);
+            if (multiplexed > 0) {
+                return new MultiplexedConnection(
+                    crateConnection, multiplexed, () -> openPhysical(psqlUrl, info, props, reconnector));
+            }
+            return crateConnection;
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens another physical connection of a {@link MultiplexedConnection}.
+     */
+    private CrateConnection openPhysical(String psqlUrl,
+                                         Properties info,
+                                         Properties props,
+                                         CrateConnection.Reconnector reconnector) throws SQLException {
+        Connection connection = connectToHost(psqlUrl, info, props);
+        if (connection == null) {
+            throw new PSQLException("Could not open another connection.", PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+        }
+        try {
+            return new CrateConnection(connection, props, reconnector);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private Connection connectToHost(String psqlUrl, Properties info, Properties props) throws SQLException {
+        return props != null && isThrottled(props)
+            ? connectThrottled(hostSpecs(props), props)
+            : super.connect(psqlUrl, info);
+    }
+
+    /**
+     * Connects to another host than the one of the current connection. If the current connection broke, its host
+     * is marked as unreachable, otherwise it is left out of the hosts which are tried.
+     */
+    private Connection reconnect(Connection current,
+                                 boolean failed,
+                                 String psqlUrl,
+                                 Properties info,
+                                 Properties props) throws SQLException {
+        HostSpec currentHost = CrateConnection.hostOf(current);
+        if (failed) {
+            if (currentHost != null) {
+                GlobalHostStatusTracker.reportHostStatus(currentHost, HostStatus.ConnectFail);
+                ConnectThrottle.GLOBAL.failed(
+                    currentHost, CrateProperty.CONNECT_MAX_BACKOFF.getLong(props), hostRecheckMillis(props));
+            }
+            return connectToHost(psqlUrl, info, props);
+        }
+        List<HostSpec> others = new ArrayList<>(Arrays.asList(hostSpecs(props)));
+        others.remove(currentHost);
+        if (others.isEmpty()) {
+            throw new PSQLException("There is no other host to connect to.", PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+        }
+        HostSpec[] hosts = others.toArray(new HostSpec[0]);
+        if (isThrottled(props)) {
+            return connectThrottled(hosts, props);
+        }
+        StringBuilder url = new StringBuilder(PSQL_PREFIX_LONG);
+        for (HostSpec host : hosts) {
+            if (url.length() > PSQL_PREFIX_LONG.length()) {
+                url.append(',');
+            }
+            url.append(host.getHost()).append(':').append(host.getPort());
+        }
+        url.append('/').append(URLCoder.encode(props.getProperty("PGDBNAME", "")));
+        return super.connect(url.toString(), props);
+    }
+
+    private static boolean isThrottled(Properties props) throws SQLException {
+        return CrateProperty.CONNECT_MAX_PER_HOST.getInt(props) > 0
+               || CrateProperty.CONNECT_MAX_BACKOFF.getLong(props) > 0;
+    }
+
+    /**
+     * Connects to one host after the other through the {@link ConnectThrottle}, instead of letting pgjdbc try
+     * all of them within a single attempt.
+     */
+    private Connection connectThrottled(HostSpec[] hosts, Properties props) throws SQLException {
+        if (PGProperty.LOAD_BALANCE_HOSTS.getBoolean(props)) {
+            List<HostSpec> shuffled = Arrays.asList(hosts);
+            Collections.shuffle(shuffled);
+        }
+        String database = URLCoder.encode(props.getProperty("PGDBNAME", ""));
+        return ConnectThrottle.GLOBAL.connect(
+            hosts,
+            CrateProperty.CONNECT_MAX_PER_HOST.getInt(props),
+            CrateProperty.CONNECT_MAX_BACKOFF.getLong(props),
+            hostRecheckMillis(props),
+            PGProperty.CONNECT_TIMEOUT.getInt(props) * 1000L,
+            host -> super.connect(
+                PSQL_PREFIX_LONG + host.getHost() + ":" + host.getPort() + "/" + database, props)
+        );
+    }
+
+    private static long hostRecheckMillis(Properties props) throws SQLException {
+        return PGProperty.HOST_RECHECK_SECONDS.getInt(props) * 1000L;
+    }
+
+    /**
+     * Taken from {@link org.postgresql.Driver}, where it is private.
+     */
+    private static HostSpec[] hostSpecs(Properties props) {
+        String[] hosts = props.getProperty("PGHOST").split(",");
+        String[] ports = props.getProperty("PGPORT").split(",");
+        HostSpec[] hostSpecs = new HostSpec[hosts.length];
+        for (int i = 0; i < hostSpecs.length; ++i) {
+            hostSpecs[i] = new HostSpec(hosts[i], Integer.parseInt(ports[i]));
+        }
+        return hostSpecs;
     }
 
     /*
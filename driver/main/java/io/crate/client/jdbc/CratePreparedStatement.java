@@ -0,0 +1,708 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Prepared statement handed out by {@link CrateConnection}, which delegates to the pgjdbc
+ * prepared statement.
+ * <p>
+ * Keeps track of the bound parameters, so that batches can be split by their estimated payload
+ * size. The rows of a batch are only kept until they have been executed if they can be retried, see
+ * {@link #setRetryEnabled(boolean)}.
+ */
+public class CratePreparedStatement extends CrateStatement implements PreparedStatement {
+
+    private static final ParameterRow.Binder UNREPLAYABLE = statement -> {
+        throw new SQLFeatureNotSupportedException("Rows with stream parameters cannot be retried");
+    };
+
+    private PreparedStatement delegate;
+    private final String sql;
+
+    /**
+     * Marks parameters whose values are not suitable as part of a {@link ResultCache.Key}.
+     */
+    private static final Object UNCACHEABLE = new Object();
+
+    // the current parameters, see ParameterBuffer
+    private byte[] kinds = new byte[8];
+    private long[] values = new long[8];
+    private Object[] objects = new Object[8];
+    private int width;
+    private long[] parameterBytes = new long[8];
+    // the values of the parameters as part of a cache key, only kept if results are cached
+    private Object[] cacheValues;
+    private long rowBytes;
+    // the buffer maps are serialized into if they are sent as binary json, created on first use
+    private JsonParameter.Buffer jsonBuffer;
+    // the parameters of the last query, which are bound again if it is replayed
+    private ParameterRow queryParameters;
+    // whether the rows of a batch are kept, so that the failed ones can be retried
+    private boolean retryEnabled;
+
+    CratePreparedStatement(CrateConnection connection, PreparedStatement delegate, String sql) {
+        super(connection, delegate, connection.decodeBulkResults(sql));
+        this.delegate = delegate;
+        this.sql = sql;
+        if (connection.resultCache() != null) {
+            cacheValues = new Object[kinds.length];
+        }
+    }
+
+    /**
+     * Keeps the parameters of the rows which are added to the batch from now on until they have been executed,
+     * so that the failed ones can be retried with {@link #retryFailedRows()}. Disabled by default, as pgjdbc
+     * already holds every row of the batch.
+     */
+    public void setRetryEnabled(boolean enabled) {
+        retryEnabled = enabled;
+    }
+
+    /**
+     * Executes the rows which failed in the last executed batch once more, as a new batch. Only rows which have
+     * been added while retries were enabled, see {@link #setRetryEnabled(boolean)}, can be retried.
+     * <p>
+     * The rows are added in the order in which they appeared in the failed batch, so that the
+     * update counts returned correspond to {@link BatchResult#getFailedRows()} of the previous
+     * {@link #getBatchResult()}. Rows which fail again are returned as {@link java.sql.Statement#EXECUTE_FAILED}
+     * and can be retried by calling this method again. The current batch and parameters are replaced.
+     *
+     * @return the update counts of the retried rows.
+     * @throws java.sql.BatchUpdateException if the retried rows could not be executed.
+     * @throws SQLFeatureNotSupportedException if any failed row has not been kept.
+     */
+    public int[] retryFailedRows() throws SQLException {
+        List<ParameterRow> rows = new ArrayList<>(batchSplitter.lastFailedParameters());
+        clearBatch();
+        for (ParameterRow row : rows) {
+            if (row == null) {
+                throw new SQLFeatureNotSupportedException(
+                    "The failed rows cannot be retried, retries were not enabled when they were added");
+            }
+            row.bind(delegate);
+            delegate.addBatch();
+            addToBatch(row.bytes(), row);
+        }
+        clearParameters();
+        return executeBatch();
+    }
+
+    private void bind(int parameterIndex, long bytes, Object value, ParameterRow.Binder binder) {
+        bind(parameterIndex, bytes, value, null, binder);
+    }
+
+    /**
+     * @param value     the value of the parameter, which is part of the key of a cached result.
+     * @param qualifier anything else which changes how the value is sent, like its type, null if nothing does.
+     */
+    private void bind(int parameterIndex, long bytes, Object value, Object qualifier, ParameterRow.Binder binder) {
+        if (set(parameterIndex, bytes, ParameterBuffer.BINDER, 0, binder) && cacheValues != null) {
+            cache(parameterIndex, value, qualifier);
+        }
+    }
+
+    /**
+     * Stores a parameter value without a binder, see {@link ParameterBuffer}.
+     *
+     * @return false if the index is invalid, which pgjdbc reports.
+     */
+    private boolean set(int parameterIndex, long bytes, byte kind, long value, Object object) {
+        if (parameterIndex < 1) {
+            return false;
+        }
+        if (parameterIndex > kinds.length) {
+            int length = Math.max(parameterIndex, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, length);
+            values = Arrays.copyOf(values, length);
+            objects = Arrays.copyOf(objects, length);
+            parameterBytes = Arrays.copyOf(parameterBytes, length);
+            if (cacheValues != null) {
+                cacheValues = Arrays.copyOf(cacheValues, length);
+            }
+        }
+        int i = parameterIndex - 1;
+        kinds[i] = kind;
+        values[i] = value;
+        objects[i] = object;
+        width = Math.max(width, parameterIndex);
+        // every value is prefixed with its length in the Bind message
+        bytes += 4;
+        rowBytes += bytes - parameterBytes[i];
+        parameterBytes[i] = bytes;
+        return true;
+    }
+
+    private void cache(int parameterIndex, Object value, Object qualifier) {
+        Object cacheValue = cacheValue(value);
+        cacheValues[parameterIndex - 1] = qualifier == null || cacheValue == UNCACHEABLE
+            ? cacheValue
+            : Arrays.asList(cacheValue, qualifier);
+    }
+
+    /**
+     * @return an immutable copy of the given parameter value, {@link #UNCACHEABLE} for values which are mutable
+     * or cannot be compared.
+     */
+    private static Object cacheValue(Object value) {
+        if (value == null
+            || value instanceof String
+            || value instanceof Boolean
+            || value instanceof Integer
+            || value instanceof Long
+            || value instanceof Short
+            || value instanceof Byte
+            || value instanceof Double
+            || value instanceof Float
+            || value instanceof BigDecimal
+            || value instanceof BigInteger
+            || value instanceof URL
+            || value instanceof UUID
+            || value instanceof TemporalAccessor) {
+            return value;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            return Arrays.asList(Timestamp.class, timestamp.getTime(), timestamp.getNanos());
+        }
+        if (value instanceof java.util.Date) {
+            return Arrays.asList(value.getClass(), ((java.util.Date) value).getTime());
+        }
+        return UNCACHEABLE;
+    }
+
+    private static String timeZone(Calendar calendar) {
+        return calendar == null ? null : calendar.getTimeZone().getID();
+    }
+
+    @Override
+    ResultCache.Key cacheKey(String sql) throws SQLException {
+        for (Object value : cacheValues) {
+            if (value == UNCACHEABLE) {
+                return null;
+            }
+        }
+        return new ResultCache.Key(connection.schema(), sql, delegate.getMaxRows(), cacheValues.clone());
+    }
+
+    @Override
+    String batchSql() {
+        return sql;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        if (connection.replaysQueries()) {
+            ParameterBuffer parameters = new ParameterBuffer(width);
+            queryParameters = new ParameterRow(parameters, parameters.add(kinds, values, objects, width), rowBytes);
+        }
+        return query(sql);
+    }
+
+    @Override
+    Statement createDelegate(Connection connection, int type, int concurrency, int holdability) throws SQLException {
+        return connection.prepareStatement(sql, type, concurrency, holdability);
+    }
+
+    @Override
+    void setDelegate(Statement delegate) {
+        super.setDelegate(delegate);
+        this.delegate = (PreparedStatement) delegate;
+    }
+
+    @Override
+    ResultSet executeDelegate(String sql) throws SQLException {
+        return delegate.executeQuery();
+    }
+
+    @Override
+    void declareCursor(Connection connection, String declaration) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(declaration)) {
+            for (int i = 0; i < width; i++) {
+                ParameterBuffer.bind(statement, i + 1, kinds[i], values[i], objects[i]);
+            }
+            statement.execute();
+        }
+    }
+
+    /**
+     * Stream parameters cannot be bound again, so queries using them are neither replayed nor hedged.
+     */
+    @Override
+    ResultSet executeAgain(Statement statement, String sql) throws SQLException {
+        PreparedStatement preparedStatement = (PreparedStatement) statement;
+        queryParameters.bind(preparedStatement);
+        return preparedStatement.executeQuery();
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        try {
+            return withTimeout(delegate::executeUpdate);
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        if (set(parameterIndex, 0, ParameterBuffer.NULL, sqlType, null) && cacheValues != null) {
+            cache(parameterIndex, null, null);
+        }
+        delegate.setNull(parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        if (set(parameterIndex, 1, ParameterBuffer.BOOLEAN, x ? 1 : 0, null) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setBoolean(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        if (set(parameterIndex, 4, ParameterBuffer.BYTE, x, null) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setByte(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        if (set(parameterIndex, 6, ParameterBuffer.SHORT, x, null) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setShort(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        if (set(parameterIndex, 11, ParameterBuffer.INT, x, null) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setInt(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        if (set(parameterIndex, 20, ParameterBuffer.LONG, x, null) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        if (set(parameterIndex, 15, ParameterBuffer.FLOAT, Float.floatToRawIntBits(x), null) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setFloat(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        if (set(parameterIndex, 24, ParameterBuffer.DOUBLE, Double.doubleToRawLongBits(x), null) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        if (set(parameterIndex, PayloadSize.of(x), ParameterBuffer.BIG_DECIMAL, 0, x) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setBigDecimal(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        if (set(parameterIndex, PayloadSize.of(x), ParameterBuffer.STRING, 0, x) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setString(parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setBytes(parameterIndex, x));
+        delegate.setBytes(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setDate(parameterIndex, x));
+        delegate.setDate(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setTime(parameterIndex, x));
+        delegate.setTime(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        if (set(parameterIndex, PayloadSize.of(x), ParameterBuffer.TIMESTAMP, 0, x) && cacheValues != null) {
+            cache(parameterIndex, x, null);
+        }
+        delegate.setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setUnicodeStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        delegate.clearParameters();
+        Arrays.fill(kinds, ParameterBuffer.UNSET);
+        Arrays.fill(objects, null);
+        width = 0;
+        Arrays.fill(parameterBytes, 0L);
+        if (cacheValues != null) {
+            Arrays.fill(cacheValues, null);
+        }
+        rowBytes = 0;
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, targetSqlType, s -> s.setObject(parameterIndex, x, targetSqlType));
+        delegate.setObject(parameterIndex, x, targetSqlType);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        if (x instanceof Map && connection.binaryJson()) {
+            setMap(parameterIndex, (Map<?, ?>) x);
+            return;
+        }
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setObject(parameterIndex, x));
+        delegate.setObject(parameterIndex, x);
+    }
+
+    /**
+     * Streams the map as JSON into a buffer of this statement, which is sent as it is.
+     */
+    private void setMap(int parameterIndex, Map<?, ?> map) throws SQLException {
+        if (jsonBuffer == null) {
+            jsonBuffer = new JsonParameter.Buffer();
+        }
+        JsonParameter.Buffer buffer = jsonBuffer;
+        JsonParameter.bind(delegate, parameterIndex, map, buffer);
+        bind(parameterIndex, buffer.size(), map, s -> JsonParameter.bind(s, parameterIndex, map, buffer));
+    }
+
+    /**
+     * Binds a JSON value which is UTF-8 encoded already, for example to an {@code object} column. If the
+     * {@code binaryJson} connection property is set, the bytes are sent as they are, otherwise they are decoded
+     * to a string first.
+     * <p>
+     * The array must not be modified before the statement has been executed.
+     */
+    public void setJson(int parameterIndex, byte[] json) throws SQLException {
+        if (json == null) {
+            setNull(parameterIndex, Types.OTHER);
+            return;
+        }
+        setJson(parameterIndex, ByteBuffer.wrap(json), json);
+    }
+
+    /**
+     * Like {@link #setJson(int, byte[])}, with the remaining bytes of the buffer. Its position is not changed.
+     */
+    public void setJson(int parameterIndex, ByteBuffer json) throws SQLException {
+        if (json == null) {
+            setNull(parameterIndex, Types.OTHER);
+            return;
+        }
+        setJson(parameterIndex, json.slice(), UNCACHEABLE);
+    }
+
+    private void setJson(int parameterIndex, ByteBuffer json, Object cacheValue) throws SQLException {
+        bind(parameterIndex, json.remaining(), cacheValue, "json",
+            s -> s.setObject(parameterIndex, new JsonParameter(json)));
+        delegate.setObject(parameterIndex, new JsonParameter(json));
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        if (Replay.isReadOnly(sql)) {
+            executeQuery();
+            return true;
+        }
+        try {
+            return withTimeout(delegate::execute);
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        delegate.addBatch();
+        if (!retryEnabled) {
+            addToBatch(rowBytes, null);
+            return;
+        }
+        ParameterBuffer parameters = batchSplitter.parameters();
+        addToBatch(rowBytes, new ParameterRow(parameters, parameters.add(kinds, values, objects, width), rowBytes));
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setRef(parameterIndex, x));
+        delegate.setRef(parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setBlob(parameterIndex, x));
+        delegate.setBlob(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setClob(parameterIndex, x));
+        delegate.setClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setArray(parameterIndex, x));
+        delegate.setArray(parameterIndex, x);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        ResultSetMetaData metaData = delegate.getMetaData();
+        return metaData == null ? null : metaData(metaData, sql);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, timeZone(cal), s -> s.setDate(parameterIndex, x, cal));
+        delegate.setDate(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, timeZone(cal), s -> s.setTime(parameterIndex, x, cal));
+        delegate.setTime(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, timeZone(cal), s -> s.setTimestamp(parameterIndex, x, cal));
+        delegate.setTimestamp(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        bind(parameterIndex, 0, null, s -> s.setNull(parameterIndex, sqlType, typeName));
+        delegate.setNull(parameterIndex, sqlType, typeName);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setURL(parameterIndex, x));
+        delegate.setURL(parameterIndex, x);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        return delegate.getParameterMetaData();
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, s -> s.setRowId(parameterIndex, x));
+        delegate.setRowId(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(value), value, s -> s.setNString(parameterIndex, value));
+        delegate.setNString(parameterIndex, value);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setNCharacterStream(parameterIndex, value, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(value), value, s -> s.setNClob(parameterIndex, value));
+        delegate.setNClob(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setBlob(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setNClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(xmlObject), xmlObject, s -> s.setSQLXML(parameterIndex, xmlObject));
+        delegate.setSQLXML(parameterIndex, xmlObject);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        bind(parameterIndex, PayloadSize.of(x), x, Arrays.asList(targetSqlType, scaleOrLength),
+            s -> s.setObject(parameterIndex, x, targetSqlType, scaleOrLength));
+        delegate.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        bind(parameterIndex, length, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        bind(parameterIndex, 0, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setAsciiStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        bind(parameterIndex, 0, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setBinaryStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        bind(parameterIndex, 0, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setCharacterStream(parameterIndex, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+        bind(parameterIndex, 0, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setNCharacterStream(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        bind(parameterIndex, 0, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setClob(parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+        bind(parameterIndex, 0, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setBlob(parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        bind(parameterIndex, 0, UNCACHEABLE, UNREPLAYABLE);
+        delegate.setNClob(parameterIndex, reader);
+    }
+}
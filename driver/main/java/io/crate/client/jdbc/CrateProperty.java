@@ -0,0 +1,221 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.util.Properties;
+
+/**
+ * Connection properties which are handled by the CrateDB driver itself rather than by
+ * {@link org.postgresql.Driver}.
+ * <p>
+ * If none of them is set, the driver hands out the plain pgjdbc connection. Otherwise every feature has its
+ * own property, with defaults which keep the behaviour of pgjdbc.
+ */
+public enum CrateProperty {
+
+    /**
+     * Maximum number of rows a single {@code executeBatch} round trip may contain.
+     */
+    BATCH_MAX_ROWS("batchMaxRows", "0",
+        "Split batches into chunks of at most this many rows, 0 means no limit"),
+
+    /**
+     * Maximum estimated payload size in bytes of a single {@code executeBatch} round trip.
+     */
+    BATCH_MAX_BYTES("batchMaxBytes", "0",
+        "Split batches into chunks of at most this many estimated payload bytes, 0 means no limit"),
+
+    /**
+     * Copy results which are received completely into a {@link RowArena}.
+     */
+    COMPACT_RESULTS("compactResults", "false",
+        "Store fully received results in one compact buffer instead of an array per value"),
+
+    /**
+     * Number of distinct strings per column which are cached by a {@link StringDictionary}.
+     */
+    STRING_CACHE_SIZE("stringCacheSize", "0",
+        "Return the same String instance for repeated values, caching up to this many strings per column, 0 disables it"),
+
+    /**
+     * Decode strings, numbers, booleans and timestamps in text format from the received bytes, see
+     * {@link TextDecoder}.
+     */
+    DECODE_TEXT("decodeText", "false",
+        "Decode strings, numbers, booleans and timestamps from the received bytes instead of letting pgjdbc build them"),
+
+    /**
+     * Maximum number of concurrent connection attempts per host, see {@link ConnectThrottle}.
+     */
+    CONNECT_MAX_PER_HOST("connectMaxPerHost", "0",
+        "Limit the number of concurrent connection attempts to each host, 0 means no limit"),
+
+    /**
+     * Upper bound in milliseconds of the time a host is skipped after connecting to it failed.
+     */
+    CONNECT_MAX_BACKOFF("connectMaxBackoff", "0",
+        "Skip a host which could not be reached for an exponentially growing time of at most this many milliseconds, 0 disables it"),
+
+    /**
+     * Replay read-only queries on a new connection if their connection broke, see {@link Replay}.
+     */
+    FAILOVER_READ_ONLY("failoverReadOnly", "false",
+        "Reconnect to another host and execute read-only queries once more if their connection broke"),
+
+    /**
+     * Time in milliseconds after which a read-only query is sent to another host as well, see {@link HedgedQuery}.
+     */
+    HEDGE_DELAY("hedgeDelay", "0",
+        "Send read-only queries which did not return within this many milliseconds to another host as well, 0 disables it"),
+
+    /**
+     * Percentile of the latencies of a host after which a read-only query is sent to another host as well.
+     */
+    HEDGE_PERCENTILE("hedgePercentile", "0",
+        "Send read-only queries which took longer than this percentile of the latencies of their host to another host as well, 0 disables it"),
+
+    /**
+     * Maximum estimated size in bytes of the {@link ResultCache} of the connections to the same database.
+     */
+    RESULT_CACHE_SIZE("resultCacheSize", "0",
+        "Cache the results of read-only queries up to this many estimated bytes, 0 disables it"),
+
+    /**
+     * Time in milliseconds for which cached results are used.
+     */
+    RESULT_CACHE_TTL("resultCacheTtl", "1000",
+        "Use cached results for at most this many milliseconds"),
+
+    /**
+     * Regular expression which selects the queries whose results are cached.
+     */
+    RESULT_CACHE_PATTERN("resultCachePattern", null,
+        "Cache the results of the read-only queries which contain a match of this regular expression"),
+
+    /**
+     * Enforce query timeouts with the shared timing wheel of {@link QueryTimeouts}.
+     */
+    SHARED_QUERY_TIMEOUTS("sharedQueryTimeouts", "false",
+        "Enforce query timeouts with one timing wheel for all connections instead of a timer task per query"),
+
+    /**
+     * Answer table related result set meta data from the {@link TableColumns} snapshot of the connection.
+     */
+    CACHE_TABLE_COLUMNS("cacheTableColumns", "false",
+        "Answer the table name and nullability of result columns from a snapshot of information_schema.columns"),
+
+    /**
+     * Send maps and values bound with {@code setJson} as binary {@code json}, see {@link JsonParameter}.
+     */
+    BINARY_JSON("binaryJson", "false",
+        "Send maps and pre-serialized JSON bound to prepared statements as binary json, without building a string"),
+
+    /**
+     * Number of rows of a scrollable result set which are held by the client, see {@link CursorResultSet}.
+     */
+    SCROLL_WINDOW_SIZE("scrollWindowSize", "0",
+        "Read scrollable results through a server-side cursor, holding at most this many rows in memory, 0 disables it"),
+
+    /**
+     * Size in bytes after which the rows buffered in a {@link RowArena} are moved into a {@link SpillFile}.
+     */
+    SPILL_THRESHOLD("spillThreshold", "0",
+        "Move the rows of results which are buffered by the driver into a memory-mapped temporary file once they exceed this many bytes, 0 disables it"),
+
+    /**
+     * Number of physical connections a {@link MultiplexedConnection} spreads its statements over.
+     */
+    MULTIPLEX_CONNECTIONS("multiplexConnections", "0",
+        "Hand out a connection which many threads can use at once, whose statements are spread over this many physical connections, 0 disables it");
+
+    private final String name;
+    private final String defaultValue;
+    private final String description;
+
+    CrateProperty(String name, String defaultValue, String description) {
+        this.name = name;
+        this.defaultValue = defaultValue;
+        this.description = description;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDefaultValue() {
+        return defaultValue;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String get(Properties properties) {
+        return properties.getProperty(name, defaultValue);
+    }
+
+    public boolean isPresent(Properties properties) {
+        return properties.getProperty(name) != null;
+    }
+
+    public boolean getBoolean(Properties properties) {
+        return Boolean.parseBoolean(get(properties));
+    }
+
+    public int getInt(Properties properties) throws PSQLException {
+        String value = get(properties);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new PSQLException(
+                String.format("%s parameter value must be an integer but was: %s", name, value),
+                PSQLState.INVALID_PARAMETER_VALUE, e);
+        }
+    }
+
+    public long getLong(Properties properties) throws PSQLException {
+        String value = get(properties);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new PSQLException(
+                String.format("%s parameter value must be a long but was: %s", name, value),
+                PSQLState.INVALID_PARAMETER_VALUE, e);
+        }
+    }
+
+    /**
+     * @return true if any CrateDB specific property is set, which requires the connection to be wrapped.
+     */
+    static boolean isAnyPresent(Properties properties) {
+        for (CrateProperty property : values()) {
+            if (property.isPresent(properties)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,1243 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.jdbc.PgResultSet;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Result set handed out by {@link CrateStatement}, which delegates to the pgjdbc result set.
+ * <p>
+ * Unwrapping it to {@link RawRow} gives access to the values as they were received.
+ * <p>
+ * If the {@code decodeText} connection property is set, strings, numbers, booleans and timestamps in text format
+ * are decoded from the received bytes by the driver itself, without building an intermediate string. Strings are
+ * returned from a {@link StringDictionary} if the {@code stringCacheSize} property is set. Timestamps are
+ * returned as {@link EpochTimestamps} in any case.
+ */
+public class CrateResultSet implements ResultSet, EpochTimestamps {
+
+    private final CrateStatement statement;
+    private ResultSet delegate;
+    private final int stringCacheSize;
+    // the number of rows read so far, which are skipped if the query is replayed
+    private long rowsRead;
+    private RawRow rawRow;
+    private static final byte BOOLEAN = 1;
+    private static final byte NUMBER = 2;
+    private static final byte TIMESTAMP = 3;
+
+    private Boolean readsRawValues;
+    private boolean decodesStrings;
+    // the kind of each column which is decoded by the driver, 0 for the others
+    private byte[] kinds;
+    private StringDictionary[] dictionaries;
+    private ColumnIndex columnIndex;
+    // the statement which returned this result
+    private final String sql;
+    private ResultSetMetaData metaData;
+
+    /**
+     * @param stringCacheSize the size of the {@link StringDictionary} of each column, 0 to disable it.
+     */
+    CrateResultSet(CrateStatement statement, ResultSet delegate, int stringCacheSize) {
+        this.statement = statement;
+        this.delegate = delegate;
+        this.stringCacheSize = stringCacheSize;
+        this.sql = statement.lastSql();
+    }
+
+    private RawRow rawRow() throws SQLException {
+        if (rawRow == null) {
+            rawRow = RawRow.of(delegate);
+        }
+        return rawRow;
+    }
+
+    /**
+     * Values are only decoded by the driver if it is configured to do so and the row of the pgjdbc result set can
+     * be read directly.
+     */
+    private boolean readsRawValues() throws SQLException {
+        if (readsRawValues == null) {
+            boolean decodeText = statement.connection.decodeText();
+            readsRawValues = (decodeText || stringCacheSize > 0)
+                             && delegate.isWrapperFor(PgResultSet.class)
+                             && PgRawRow.readsRowDirectly();
+            if (readsRawValues) {
+                ResultSetMetaData metaData = delegate.getMetaData();
+                kinds = new byte[metaData.getColumnCount()];
+                if (decodeText) {
+                    for (int i = 0; i < kinds.length; i++) {
+                        kinds[i] = kind(metaData.getColumnType(i + 1));
+                    }
+                }
+                // pgjdbc shortens strings if a max field size is set, so those are left to it
+                decodesStrings = statement.getMaxFieldSize() == 0;
+                dictionaries = StringDictionary.forColumns(kinds.length, stringCacheSize);
+            }
+        }
+        return readsRawValues;
+    }
+
+    private static byte kind(int type) {
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return NUMBER;
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return TIMESTAMP;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return the raw row if the column is of the given kind and in text format, null if the value is left to pgjdbc.
+     */
+    private RawRow textValue(int columnIndex, byte kind) throws SQLException {
+        if (readsRawValues()
+            && columnIndex >= 1
+            && columnIndex <= kinds.length
+            && kinds[columnIndex - 1] == kind
+            && !rawRow().isBinary(columnIndex)) {
+            return rawRow;
+        }
+        return null;
+    }
+
+    private long toLong(RawRow row, int columnIndex, String type, long min, long max) throws SQLException {
+        byte[] value = row.getRawArray(columnIndex);
+        return value == null
+            ? 0
+            : TextDecoder.toLong(value, row.getRawOffset(columnIndex), row.getRawLength(columnIndex), type, min, max);
+    }
+
+    @Override
+    public long getEpochMillis(int columnIndex) throws SQLException {
+        RawRow row = textValue(columnIndex, TIMESTAMP);
+        if (row == null) {
+            Timestamp timestamp = delegate.getTimestamp(columnIndex);
+            return timestamp == null ? 0 : timestamp.getTime();
+        }
+        byte[] value = row.getRawArray(columnIndex);
+        return value == null
+            ? 0
+            : TextDecoder.toEpochMillis(value, row.getRawOffset(columnIndex), row.getRawLength(columnIndex), null);
+    }
+
+    @Override
+    public long getEpochMicros(int columnIndex) throws SQLException {
+        RawRow row = textValue(columnIndex, TIMESTAMP);
+        if (row == null) {
+            Timestamp timestamp = delegate.getTimestamp(columnIndex);
+            return timestamp == null ? 0 : TextDecoder.toEpochMicros(timestamp);
+        }
+        byte[] value = row.getRawArray(columnIndex);
+        return value == null
+            ? 0
+            : TextDecoder.toEpochMicros(value, row.getRawOffset(columnIndex), row.getRawLength(columnIndex), null);
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        boolean hasNext;
+        try {
+            hasNext = delegate.next();
+        } catch (SQLException e) {
+            // only results which are fetched in batches can fail here, the columns of the replayed query are the same
+            delegate = statement.replay(e, rowsRead);
+            rawRow = null;
+            hasNext = delegate.next();
+        }
+        if (hasNext) {
+            rowsRead++;
+        }
+        return hasNext;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        delegate.close();
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return delegate.wasNull();
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        if (!readsRawValues() || !decodesStrings || rawRow().isBinary(columnIndex)) {
+            return delegate.getString(columnIndex);
+        }
+        byte[] value = rawRow.getRawArray(columnIndex);
+        if (value == null) {
+            return null;
+        }
+        return StringDictionary.toString(dictionaries, stringCacheSize, columnIndex - 1,
+            value, rawRow.getRawOffset(columnIndex), rawRow.getRawLength(columnIndex));
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        RawRow row = textValue(columnIndex, BOOLEAN);
+        if (row == null) {
+            return delegate.getBoolean(columnIndex);
+        }
+        byte[] value = row.getRawArray(columnIndex);
+        return value != null
+               && TextDecoder.toBoolean(value, row.getRawOffset(columnIndex), row.getRawLength(columnIndex));
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        RawRow row = textValue(columnIndex, NUMBER);
+        if (row == null) {
+            return delegate.getByte(columnIndex);
+        }
+        return (byte) toLong(row, columnIndex, "byte", Byte.MIN_VALUE, Byte.MAX_VALUE);
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        RawRow row = textValue(columnIndex, NUMBER);
+        if (row == null) {
+            return delegate.getShort(columnIndex);
+        }
+        return (short) toLong(row, columnIndex, "short", Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        RawRow row = textValue(columnIndex, NUMBER);
+        if (row == null) {
+            return delegate.getInt(columnIndex);
+        }
+        return (int) toLong(row, columnIndex, "int", Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        RawRow row = textValue(columnIndex, NUMBER);
+        if (row == null) {
+            return delegate.getLong(columnIndex);
+        }
+        return toLong(row, columnIndex, "long", Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        RawRow row = textValue(columnIndex, NUMBER);
+        if (row == null) {
+            return delegate.getFloat(columnIndex);
+        }
+        byte[] value = row.getRawArray(columnIndex);
+        return value == null
+            ? 0
+            : TextDecoder.toFloat(value, row.getRawOffset(columnIndex), row.getRawLength(columnIndex), "float");
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        RawRow row = textValue(columnIndex, NUMBER);
+        if (row == null) {
+            return delegate.getDouble(columnIndex);
+        }
+        byte[] value = row.getRawArray(columnIndex);
+        return value == null
+            ? 0
+            : TextDecoder.toDouble(value, row.getRawOffset(columnIndex), row.getRawLength(columnIndex), "double");
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        return delegate.getBigDecimal(columnIndex, scale);
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        return delegate.getBytes(columnIndex);
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        return delegate.getDate(columnIndex);
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        return delegate.getTime(columnIndex);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        return getTimestamp(columnIndex, null);
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        return delegate.getAsciiStream(columnIndex);
+    }
+
+    @Override
+    public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+        return delegate.getUnicodeStream(columnIndex);
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        return delegate.getBinaryStream(columnIndex);
+    }
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return getBoolean(findColumn(columnLabel));
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        return getByte(findColumn(columnLabel));
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        return getShort(findColumn(columnLabel));
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        return getFloat(findColumn(columnLabel));
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel), scale);
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        return getBytes(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        return getDate(findColumn(columnLabel));
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        return getTime(findColumn(columnLabel));
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        return getTimestamp(findColumn(columnLabel), null);
+    }
+
+    @Override
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        return getAsciiStream(findColumn(columnLabel));
+    }
+
+    @Override
+    public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+        return getUnicodeStream(findColumn(columnLabel));
+    }
+
+    @Override
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        return getBinaryStream(findColumn(columnLabel));
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate.clearWarnings();
+    }
+
+    @Override
+    public String getCursorName() throws SQLException {
+        return delegate.getCursorName();
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        if (metaData == null) {
+            metaData = statement.metaData(delegate.getMetaData(), sql);
+        }
+        return metaData;
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        return delegate.getObject(columnIndex);
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        if (delegate.isClosed()) {
+            throw new PSQLException("This ResultSet is closed.", PSQLState.OBJECT_NOT_IN_STATE);
+        }
+        if (columnIndex == null) {
+            columnIndex = statement.columnIndex(delegate.getMetaData());
+        }
+        return columnIndex.find(columnLabel);
+    }
+
+    @Override
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        return delegate.getCharacterStream(columnIndex);
+    }
+
+    @Override
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        return getCharacterStream(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        return delegate.getBigDecimal(columnIndex);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        return delegate.isBeforeFirst();
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        return delegate.isAfterLast();
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        return delegate.isFirst();
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        return delegate.isLast();
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        delegate.beforeFirst();
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        delegate.afterLast();
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        return delegate.first();
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        return delegate.last();
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        return delegate.getRow();
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        return delegate.absolute(row);
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        return delegate.relative(rows);
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        return delegate.previous();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        delegate.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return delegate.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        delegate.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return delegate.getFetchSize();
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        return delegate.getType();
+    }
+
+    @Override
+    public int getConcurrency() throws SQLException {
+        return delegate.getConcurrency();
+    }
+
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        return delegate.rowUpdated();
+    }
+
+    @Override
+    public boolean rowInserted() throws SQLException {
+        return delegate.rowInserted();
+    }
+
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        return delegate.rowDeleted();
+    }
+
+    @Override
+    public void updateNull(int columnIndex) throws SQLException {
+        delegate.updateNull(columnIndex);
+    }
+
+    @Override
+    public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+        delegate.updateBoolean(columnIndex, x);
+    }
+
+    @Override
+    public void updateByte(int columnIndex, byte x) throws SQLException {
+        delegate.updateByte(columnIndex, x);
+    }
+
+    @Override
+    public void updateShort(int columnIndex, short x) throws SQLException {
+        delegate.updateShort(columnIndex, x);
+    }
+
+    @Override
+    public void updateInt(int columnIndex, int x) throws SQLException {
+        delegate.updateInt(columnIndex, x);
+    }
+
+    @Override
+    public void updateLong(int columnIndex, long x) throws SQLException {
+        delegate.updateLong(columnIndex, x);
+    }
+
+    @Override
+    public void updateFloat(int columnIndex, float x) throws SQLException {
+        delegate.updateFloat(columnIndex, x);
+    }
+
+    @Override
+    public void updateDouble(int columnIndex, double x) throws SQLException {
+        delegate.updateDouble(columnIndex, x);
+    }
+
+    @Override
+    public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
+        delegate.updateBigDecimal(columnIndex, x);
+    }
+
+    @Override
+    public void updateString(int columnIndex, String x) throws SQLException {
+        delegate.updateString(columnIndex, x);
+    }
+
+    @Override
+    public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+        delegate.updateBytes(columnIndex, x);
+    }
+
+    @Override
+    public void updateDate(int columnIndex, Date x) throws SQLException {
+        delegate.updateDate(columnIndex, x);
+    }
+
+    @Override
+    public void updateTime(int columnIndex, Time x) throws SQLException {
+        delegate.updateTime(columnIndex, x);
+    }
+
+    @Override
+    public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
+        delegate.updateTimestamp(columnIndex, x);
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException {
+        delegate.updateAsciiStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException {
+        delegate.updateBinaryStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException {
+        delegate.updateCharacterStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
+        delegate.updateObject(columnIndex, x, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x) throws SQLException {
+        delegate.updateObject(columnIndex, x);
+    }
+
+    @Override
+    public void updateNull(String columnLabel) throws SQLException {
+        updateNull(findColumn(columnLabel));
+    }
+
+    @Override
+    public void updateBoolean(String columnLabel, boolean x) throws SQLException {
+        updateBoolean(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateByte(String columnLabel, byte x) throws SQLException {
+        updateByte(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateShort(String columnLabel, short x) throws SQLException {
+        updateShort(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateInt(String columnLabel, int x) throws SQLException {
+        updateInt(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateLong(String columnLabel, long x) throws SQLException {
+        updateLong(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateFloat(String columnLabel, float x) throws SQLException {
+        updateFloat(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateDouble(String columnLabel, double x) throws SQLException {
+        updateDouble(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
+        updateBigDecimal(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateString(String columnLabel, String x) throws SQLException {
+        updateString(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+        updateBytes(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateDate(String columnLabel, Date x) throws SQLException {
+        updateDate(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateTime(String columnLabel, Time x) throws SQLException {
+        updateTime(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
+        updateTimestamp(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, int length) throws SQLException {
+        updateAsciiStream(findColumn(columnLabel), x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, int length) throws SQLException {
+        updateBinaryStream(findColumn(columnLabel), x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader, int length) throws SQLException {
+        updateCharacterStream(findColumn(columnLabel), reader, length);
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
+        updateObject(findColumn(columnLabel), x, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x) throws SQLException {
+        updateObject(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void insertRow() throws SQLException {
+        delegate.insertRow();
+    }
+
+    @Override
+    public void updateRow() throws SQLException {
+        delegate.updateRow();
+    }
+
+    @Override
+    public void deleteRow() throws SQLException {
+        delegate.deleteRow();
+    }
+
+    @Override
+    public void refreshRow() throws SQLException {
+        delegate.refreshRow();
+    }
+
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        delegate.cancelRowUpdates();
+    }
+
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        delegate.moveToInsertRow();
+    }
+
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        delegate.moveToCurrentRow();
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        return statement;
+    }
+
+    @Override
+    public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
+        return delegate.getObject(columnIndex, map);
+    }
+
+    @Override
+    public Ref getRef(int columnIndex) throws SQLException {
+        return delegate.getRef(columnIndex);
+    }
+
+    @Override
+    public Blob getBlob(int columnIndex) throws SQLException {
+        return delegate.getBlob(columnIndex);
+    }
+
+    @Override
+    public Clob getClob(int columnIndex) throws SQLException {
+        return delegate.getClob(columnIndex);
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        return delegate.getArray(columnIndex);
+    }
+
+    @Override
+    public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
+        return getObject(findColumn(columnLabel), map);
+    }
+
+    @Override
+    public Ref getRef(String columnLabel) throws SQLException {
+        return getRef(findColumn(columnLabel));
+    }
+
+    @Override
+    public Blob getBlob(String columnLabel) throws SQLException {
+        return getBlob(findColumn(columnLabel));
+    }
+
+    @Override
+    public Clob getClob(String columnLabel) throws SQLException {
+        return getClob(findColumn(columnLabel));
+    }
+
+    @Override
+    public Array getArray(String columnLabel) throws SQLException {
+        return getArray(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        return delegate.getDate(columnIndex, cal);
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        return getDate(findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        return delegate.getTime(columnIndex, cal);
+    }
+
+    @Override
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        return getTime(findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        RawRow row = textValue(columnIndex, TIMESTAMP);
+        if (row == null) {
+            return delegate.getTimestamp(columnIndex, cal);
+        }
+        byte[] value = row.getRawArray(columnIndex);
+        return value == null
+            ? null
+            : TextDecoder.toTimestamp(value, row.getRawOffset(columnIndex), row.getRawLength(columnIndex), cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        return getTimestamp(findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public URL getURL(int columnIndex) throws SQLException {
+        return delegate.getURL(columnIndex);
+    }
+
+    @Override
+    public URL getURL(String columnLabel) throws SQLException {
+        return getURL(findColumn(columnLabel));
+    }
+
+    @Override
+    public void updateRef(int columnIndex, Ref x) throws SQLException {
+        delegate.updateRef(columnIndex, x);
+    }
+
+    @Override
+    public void updateRef(String columnLabel, Ref x) throws SQLException {
+        updateRef(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, Blob x) throws SQLException {
+        delegate.updateBlob(columnIndex, x);
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, Blob x) throws SQLException {
+        updateBlob(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Clob x) throws SQLException {
+        delegate.updateClob(columnIndex, x);
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Clob x) throws SQLException {
+        updateClob(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateArray(int columnIndex, Array x) throws SQLException {
+        delegate.updateArray(columnIndex, x);
+    }
+
+    @Override
+    public void updateArray(String columnLabel, Array x) throws SQLException {
+        updateArray(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public RowId getRowId(int columnIndex) throws SQLException {
+        return delegate.getRowId(columnIndex);
+    }
+
+    @Override
+    public RowId getRowId(String columnLabel) throws SQLException {
+        return getRowId(findColumn(columnLabel));
+    }
+
+    @Override
+    public void updateRowId(int columnIndex, RowId x) throws SQLException {
+        delegate.updateRowId(columnIndex, x);
+    }
+
+    @Override
+    public void updateRowId(String columnLabel, RowId x) throws SQLException {
+        updateRowId(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return delegate.getHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void updateNString(int columnIndex, String nString) throws SQLException {
+        delegate.updateNString(columnIndex, nString);
+    }
+
+    @Override
+    public void updateNString(String columnLabel, String nString) throws SQLException {
+        updateNString(findColumn(columnLabel), nString);
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, NClob nClob) throws SQLException {
+        delegate.updateNClob(columnIndex, nClob);
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, NClob nClob) throws SQLException {
+        updateNClob(findColumn(columnLabel), nClob);
+    }
+
+    @Override
+    public NClob getNClob(int columnIndex) throws SQLException {
+        return delegate.getNClob(columnIndex);
+    }
+
+    @Override
+    public NClob getNClob(String columnLabel) throws SQLException {
+        return getNClob(findColumn(columnLabel));
+    }
+
+    @Override
+    public SQLXML getSQLXML(int columnIndex) throws SQLException {
+        return delegate.getSQLXML(columnIndex);
+    }
+
+    @Override
+    public SQLXML getSQLXML(String columnLabel) throws SQLException {
+        return getSQLXML(findColumn(columnLabel));
+    }
+
+    @Override
+    public void updateSQLXML(int columnIndex, SQLXML xmlObject) throws SQLException {
+        delegate.updateSQLXML(columnIndex, xmlObject);
+    }
+
+    @Override
+    public void updateSQLXML(String columnLabel, SQLXML xmlObject) throws SQLException {
+        updateSQLXML(findColumn(columnLabel), xmlObject);
+    }
+
+    @Override
+    public String getNString(int columnIndex) throws SQLException {
+        return delegate.getNString(columnIndex);
+    }
+
+    @Override
+    public String getNString(String columnLabel) throws SQLException {
+        return getNString(findColumn(columnLabel));
+    }
+
+    @Override
+    public Reader getNCharacterStream(int columnIndex) throws SQLException {
+        return delegate.getNCharacterStream(columnIndex);
+    }
+
+    @Override
+    public Reader getNCharacterStream(String columnLabel) throws SQLException {
+        return getNCharacterStream(findColumn(columnLabel));
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        delegate.updateNCharacterStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader, long length) throws SQLException {
+        updateNCharacterStream(findColumn(columnLabel), reader, length);
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException {
+        delegate.updateAsciiStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, long length) throws SQLException {
+        delegate.updateBinaryStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        delegate.updateCharacterStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, long length) throws SQLException {
+        updateAsciiStream(findColumn(columnLabel), x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, long length) throws SQLException {
+        updateBinaryStream(findColumn(columnLabel), x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader, long length) throws SQLException {
+        updateCharacterStream(findColumn(columnLabel), reader, length);
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream, long length) throws SQLException {
+        delegate.updateBlob(columnIndex, inputStream, length);
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream, long length) throws SQLException {
+        updateBlob(findColumn(columnLabel), inputStream, length);
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader, long length) throws SQLException {
+        delegate.updateClob(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader, long length) throws SQLException {
+        updateClob(findColumn(columnLabel), reader, length);
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader, long length) throws SQLException {
+        delegate.updateNClob(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader, long length) throws SQLException {
+        updateNClob(findColumn(columnLabel), reader, length);
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException {
+        delegate.updateNCharacterStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader) throws SQLException {
+        updateNCharacterStream(findColumn(columnLabel), reader);
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException {
+        delegate.updateAsciiStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException {
+        delegate.updateBinaryStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x) throws SQLException {
+        delegate.updateCharacterStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException {
+        updateAsciiStream(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException {
+        updateBinaryStream(findColumn(columnLabel), x);
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader) throws SQLException {
+        updateCharacterStream(findColumn(columnLabel), reader);
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream) throws SQLException {
+        delegate.updateBlob(columnIndex, inputStream);
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream) throws SQLException {
+        updateBlob(findColumn(columnLabel), inputStream);
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader) throws SQLException {
+        delegate.updateClob(columnIndex, reader);
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader) throws SQLException {
+        updateClob(findColumn(columnLabel), reader);
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader) throws SQLException {
+        delegate.updateNClob(columnIndex, reader);
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader) throws SQLException {
+        updateNClob(findColumn(columnLabel), reader);
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        RawRow row = type == Instant.class || type == OffsetDateTime.class ? textValue(columnIndex, TIMESTAMP) : null;
+        if (row == null) {
+            return delegate.getObject(columnIndex, type);
+        }
+        byte[] value = row.getRawArray(columnIndex);
+        if (value == null) {
+            return null;
+        }
+        int offset = row.getRawOffset(columnIndex);
+        int length = row.getRawLength(columnIndex);
+        return type.cast(type == Instant.class
+            ? TextDecoder.toInstant(value, offset, length, null)
+            : TextDecoder.toOffsetDateTime(value, offset, length, null));
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        return getObject(findColumn(columnLabel), type);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        if (iface == RawRow.class) {
+            return iface.cast(rawRow());
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || iface == RawRow.class || delegate.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.jdbc.PgResultSetMetaData;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Meta data of the results of {@link CrateStatement}, which delegates to the meta data of pgjdbc.
+ * <p>
+ * pgjdbc answers {@link #isNullable}, {@link #getTableName}, {@link #isAutoIncrement} and
+ * {@link #getColumnTypeName} with a query on the catalog tables of PostgreSQL per result. Here they are answered
+ * from the {@link TableColumns} snapshot of the connection instead, which is loaded with one query for all tables
+ * of a result the first time they are needed. A column is attributed to a table of the query if it is the only one
+ * which has a column of that name. CrateDB has no auto increment columns.
+ */
+final class CrateResultSetMetaData implements ResultSetMetaData {
+
+    private static final MethodHandle PG_TYPE = pgTypeGetter();
+
+    private final CrateConnection connection;
+    private final ResultSetMetaData delegate;
+    private final String sql;
+    // the table of each column, null until resolved and for columns which are not attributed to a table
+    private TableColumns.TableName[] tables;
+    private int[] nullable;
+
+    CrateResultSetMetaData(CrateConnection connection, ResultSetMetaData delegate, String sql) {
+        this.connection = connection;
+        this.delegate = delegate;
+        this.sql = sql;
+    }
+
+    /**
+     * {@code getPGType} returns the type name without looking up whether the column is auto increment.
+     */
+    private static MethodHandle pgTypeGetter() {
+        try {
+            Method method = PgResultSetMetaData.class.getDeclaredMethod("getPGType", int.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void resolve() throws SQLException {
+        if (tables != null) {
+            return;
+        }
+        int columnCount = delegate.getColumnCount();
+        TableColumns.TableName[] resolved = new TableColumns.TableName[columnCount];
+        int[] resolvedNullable = new int[columnCount];
+        Arrays.fill(resolvedNullable, columnNullableUnknown);
+        List<TableColumns.TableName> names = sql == null
+            ? List.of()
+            : TableColumns.tables(sql, connection.currentSchema());
+        if (!names.isEmpty()) {
+            Map<TableColumns.TableName, Map<String, Boolean>> columns =
+                connection.tableColumns().columns(connection.delegate(), names);
+            for (int i = 0; i < columnCount; i++) {
+                String label = delegate.getColumnLabel(i + 1);
+                for (TableColumns.TableName name : names) {
+                    Boolean isNullable = columns.get(name).get(label);
+                    if (isNullable == null) {
+                        continue;
+                    }
+                    if (resolved[i] != null) {
+                        // ambiguous
+                        resolved[i] = null;
+                        resolvedNullable[i] = columnNullableUnknown;
+                        break;
+                    }
+                    resolved[i] = name;
+                    resolvedNullable[i] = isNullable ? columnNullable : columnNoNulls;
+                }
+            }
+        }
+        nullable = resolvedNullable;
+        tables = resolved;
+    }
+
+    private TableColumns.TableName table(int column) throws SQLException {
+        checkColumn(column);
+        resolve();
+        return tables[column - 1];
+    }
+
+    private void checkColumn(int column) throws SQLException {
+        // lets pgjdbc report an invalid index
+        if (column < 1 || column > delegate.getColumnCount()) {
+            delegate.getColumnLabel(column);
+        }
+    }
+
+    @Override
+    public int getColumnCount() throws SQLException {
+        return delegate.getColumnCount();
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) throws SQLException {
+        checkColumn(column);
+        return false;
+    }
+
+    @Override
+    public boolean isCaseSensitive(int column) throws SQLException {
+        return delegate.isCaseSensitive(column);
+    }
+
+    @Override
+    public boolean isSearchable(int column) throws SQLException {
+        return delegate.isSearchable(column);
+    }
+
+    @Override
+    public boolean isCurrency(int column) throws SQLException {
+        return delegate.isCurrency(column);
+    }
+
+    @Override
+    public int isNullable(int column) throws SQLException {
+        checkColumn(column);
+        resolve();
+        return nullable[column - 1];
+    }
+
+    @Override
+    public boolean isSigned(int column) throws SQLException {
+        return delegate.isSigned(column);
+    }
+
+    @Override
+    public int getColumnDisplaySize(int column) throws SQLException {
+        return delegate.getColumnDisplaySize(column);
+    }
+
+    @Override
+    public String getColumnLabel(int column) throws SQLException {
+        return delegate.getColumnLabel(column);
+    }
+
+    @Override
+    public String getColumnName(int column) throws SQLException {
+        return delegate.getColumnName(column);
+    }
+
+    @Override
+    public String getSchemaName(int column) throws SQLException {
+        TableColumns.TableName table = table(column);
+        return table == null ? "" : table.schema;
+    }
+
+    @Override
+    public int getPrecision(int column) throws SQLException {
+        return delegate.getPrecision(column);
+    }
+
+    @Override
+    public int getScale(int column) throws SQLException {
+        return delegate.getScale(column);
+    }
+
+    @Override
+    public String getTableName(int column) throws SQLException {
+        TableColumns.TableName table = table(column);
+        return table == null ? "" : table.name;
+    }
+
+    @Override
+    public String getCatalogName(int column) throws SQLException {
+        return delegate.getCatalogName(column);
+    }
+
+    @Override
+    public int getColumnType(int column) throws SQLException {
+        return delegate.getColumnType(column);
+    }
+
+    @Override
+    public String getColumnTypeName(int column) throws SQLException {
+        return pgType(delegate, column);
+    }
+
+    /**
+     * @return the type name of the column, without looking up whether it is auto increment if the meta data is the
+     * one of pgjdbc.
+     */
+    static String pgType(ResultSetMetaData metaData, int column) throws SQLException {
+        if (PG_TYPE != null && metaData instanceof PgResultSetMetaData) {
+            try {
+                return (String) PG_TYPE.invoke(metaData, column);
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new PSQLException("Unable to read the type of the column", PSQLState.UNEXPECTED_ERROR, t);
+            }
+        }
+        return metaData.getColumnTypeName(column);
+    }
+
+    @Override
+    public boolean isReadOnly(int column) throws SQLException {
+        return delegate.isReadOnly(column);
+    }
+
+    @Override
+    public boolean isWritable(int column) throws SQLException {
+        return delegate.isWritable(column);
+    }
+
+    @Override
+    public boolean isDefinitelyWritable(int column) throws SQLException {
+        return delegate.isDefinitelyWritable(column);
+    }
+
+    @Override
+    public String getColumnClassName(int column) throws SQLException {
+        return delegate.getColumnClassName(column);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+}
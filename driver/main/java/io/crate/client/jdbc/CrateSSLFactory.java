@@ -0,0 +1,183 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.PGProperty;
+import org.postgresql.ssl.LibPQFactory;
+import org.postgresql.util.PSQLException;
+
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * SSL socket factory which shares one initialized {@link LibPQFactory} between all connections with the same
+ * SSL properties. Use it by setting the {@code sslfactory} connection property to this class.
+ * <p>
+ * pgjdbc creates a new {@link javax.net.ssl.SSLContext} for every connection, so every connection does a full
+ * handshake. A shared context keeps the sessions of previous connections by host and port, which allows
+ * reconnects to resume them, and the certificates and keys are only loaded once.
+ * <p>
+ * This factory extends {@link LibPQFactory} so that pgjdbc reports the errors of the key manager of the shared
+ * factory, see {@link #throwKeyManagerException()}. The context of the super class is initialized without any
+ * files and is never used.
+ */
+public class CrateSSLFactory extends LibPQFactory {
+
+    /**
+     * Maximum number of distinct SSL configurations whose factories are kept.
+     */
+    static final int MAX_FACTORIES = 16;
+
+    private static final Map<Map<String, String>, LibPQFactory> FACTORIES =
+        new LinkedHashMap<Map<String, String>, LibPQFactory>(MAX_FACTORIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Map<String, String>, LibPQFactory> eldest) {
+                return size() > MAX_FACTORIES;
+            }
+        };
+
+    private static final AtomicLong HANDSHAKES = new AtomicLong();
+    private static final AtomicLong HANDSHAKE_NANOS = new AtomicLong();
+    private static final LongAccumulator MAX_HANDSHAKE_NANOS = new LongAccumulator(Math::max, 0);
+
+    private final LibPQFactory shared;
+
+    public CrateSSLFactory(Properties info) throws PSQLException {
+        super(withoutFiles());
+        shared = factory(info);
+        _factory = shared;
+    }
+
+    /**
+     * @return the properties the super class is initialized with, which neither load a certificate nor a key.
+     */
+    private static Properties withoutFiles() {
+        Properties properties = new Properties();
+        PGProperty.SSL_MODE.set(properties, "require");
+        PGProperty.SSL_CERT.set(properties, "");
+        PGProperty.SSL_KEY.set(properties, "");
+        return properties;
+    }
+
+    private static LibPQFactory factory(Properties info) throws PSQLException {
+        Map<String, String> key = sslProperties(info);
+        synchronized (FACTORIES) {
+            LibPQFactory factory = FACTORIES.get(key);
+            if (factory == null) {
+                factory = new LibPQFactory(info);
+                FACTORIES.put(key, factory);
+            }
+            return factory;
+        }
+    }
+
+    /**
+     * @return all properties which may configure the SSL context, these are the ones starting with {@code ssl}.
+     * The password is replaced by its hash, so that it is not kept by the cache.
+     */
+    static Map<String, String> sslProperties(Properties info) {
+        Map<String, String> properties = new TreeMap<>();
+        for (String name : info.stringPropertyNames()) {
+            if (name.equals(PGProperty.SSL_PASSWORD.getName())) {
+                properties.put(name, sha256(info.getProperty(name)));
+            } else if (name.startsWith("ssl")) {
+                properties.put(name, info.getProperty(name));
+            }
+        }
+        return properties;
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    LibPQFactory delegate() {
+        return shared;
+    }
+
+    /**
+     * pgjdbc calls this once the handshake completed, as the key manager does not fail the handshake if it cannot
+     * load the certificate or the key. The errors are the ones of the shared factory.
+     */
+    @Override
+    public void throwKeyManagerException() throws PSQLException {
+        shared.throwKeyManagerException();
+    }
+
+    /**
+     * pgjdbc starts the handshake right after creating the socket, the time until it completes is recorded.
+     */
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        Socket sslSocket = _factory.createSocket(socket, host, port, autoClose);
+        if (sslSocket instanceof SSLSocket) {
+            long start = System.nanoTime();
+            ((SSLSocket) sslSocket).addHandshakeCompletedListener(event -> recordHandshake(System.nanoTime() - start));
+        }
+        return sslSocket;
+    }
+
+    static void recordHandshake(long nanos) {
+        HANDSHAKES.incrementAndGet();
+        HANDSHAKE_NANOS.addAndGet(nanos);
+        MAX_HANDSHAKE_NANOS.accumulate(nanos);
+    }
+
+    /**
+     * @return the number of completed handshakes of connections using this factory.
+     */
+    public static long getHandshakeCount() {
+        return HANDSHAKES.get();
+    }
+
+    /**
+     * @return the total time spent in the handshakes counted by {@link #getHandshakeCount()}.
+     */
+    public static long getHandshakeNanos() {
+        return HANDSHAKE_NANOS.get();
+    }
+
+    /**
+     * @return the time of the slowest handshake.
+     */
+    public static long getMaxHandshakeNanos() {
+        return MAX_HANDSHAKE_NANOS.get();
+    }
+}
@@ -0,0 +1,818 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.HostSpec;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * Statement handed out by {@link CrateConnection}, which delegates to the pgjdbc statement.
+ */
+public class CrateStatement implements Statement {
+
+    final CrateConnection connection;
+    final BatchSplitter batchSplitter;
+    private Statement delegate;
+    private BatchResult batchResult;
+    // the last query if it may be replayed after a failover, null otherwise
+    private String replayableQuery;
+    // the statement on the hedge connection which returned the current result, if the hedge won
+    private Statement hedgeStatement;
+    // whether results are cached, null to decide by the pattern of the connection
+    private Boolean resultCacheEnabled;
+    // the current result if it is served from the cache
+    private ResultSet cachedResultSet;
+    // the current result if it is read through a server-side cursor
+    private CursorResultSet cursorResultSet;
+    // a cursor which getMoreResults was told to keep open, closed by the next execution
+    private CursorResultSet keptCursor;
+    // whether getMoreResults moved past the result of the cache, a cursor or a hedge, which have no further results
+    private boolean noMoreResults;
+    private ResultSet resultSetDelegate;
+    private ResultSet resultSet;
+    private ColumnIndex columnIndex;
+    private int queryTimeout;
+    // the last statement which was executed, whose result is described by the meta data
+    private String lastSql;
+
+    /**
+     * An execution of the delegate, see {@link #withTimeout}.
+     */
+    interface Execution<T> {
+        T execute() throws SQLException;
+    }
+
+    CrateStatement(CrateConnection connection, Statement delegate) {
+        this(connection, delegate, false);
+    }
+
+    /**
+     * @param decodeBulkResults whether the row counts of a batch are the ones of a CrateDB bulk operation.
+     */
+    CrateStatement(CrateConnection connection, Statement delegate, boolean decodeBulkResults) {
+        this.connection = connection;
+        this.delegate = delegate;
+        this.batchSplitter = new BatchSplitter(
+            connection.batchMaxRows(), connection.batchMaxBytes(), decodeBulkResults);
+    }
+
+    /**
+     * @return the per row outcome of the last executed batch, null if no batch has been executed yet.
+     */
+    public BatchResult getBatchResult() {
+        return batchResult;
+    }
+
+    /**
+     * Wraps the current result of the delegate, repeated calls for the same result return the same wrapper.
+     */
+    ResultSet wrap(ResultSet rs) throws SQLException {
+        if (rs == null) {
+            return null;
+        }
+        if (rs != resultSetDelegate) {
+            resultSetDelegate = rs;
+            resultSet = connection.compactResults() && isReceivedCompletely(rs)
+                ? ArenaResultSet.load(this, rs, connection.stringCacheSize())
+                : new CrateResultSet(this, rs, connection.stringCacheSize());
+        }
+        return resultSet;
+    }
+
+    /**
+     * @return the column index of a result of this statement, which is reused as long as the columns do not change.
+     */
+    ColumnIndex columnIndex(ResultSetMetaData metaData) throws SQLException {
+        ColumnIndex index = columnIndex;
+        boolean sanitiserDisabled = connection.columnSanitiserDisabled();
+        if (index == null || !index.matches(metaData, sanitiserDisabled)) {
+            index = ColumnIndex.of(metaData, sanitiserDisabled);
+            columnIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * @return the statement which was executed last, null if it is not known.
+     */
+    String lastSql() {
+        return lastSql;
+    }
+
+    /**
+     * @param sql the statement which returned the result, null if it is not known.
+     * @return meta data which answers table related calls without querying the catalog if the
+     * {@code cacheTableColumns} connection property is set, see {@link CrateResultSetMetaData}.
+     */
+    ResultSetMetaData metaData(ResultSetMetaData metaData, String sql) {
+        // detached meta data does not know the tables of the columns
+        return connection.cacheTableColumns() || metaData instanceof DetachedMetaData
+            ? new CrateResultSetMetaData(connection, metaData, sql)
+            : metaData;
+    }
+
+    /**
+     * Executes a query of this statement. It is hedged and replayed after a failover if the connection is
+     * configured to do so.
+     */
+    ResultSet query(String sql) throws SQLException {
+        lastSql = sql;
+        closeHedge();
+        closeCursor();
+        cachedResultSet = null;
+        noMoreResults = false;
+        if (isScrolledThroughCursor(sql)) {
+            replayableQuery = null;
+            cursorResultSet = CursorResultSet.open(
+                this, connection.delegate(), sql, connection.scrollWindowSize(), connection.stringCacheSize());
+            return cursorResultSet;
+        }
+        replayableQuery = connection.failoverReadOnly() ? sql : null;
+        ResultCache cache = connection.resultCache();
+        ResultCache.Key key = cache != null && isResultCached(sql) ? cacheKey(sql) : null;
+        if (key == null) {
+            return wrap(executeWithFailover(sql));
+        }
+        ArenaResultSet cached = cache.get(key, connection.resultCacheTtlNanos());
+        if (cached == null) {
+            long generation = cache.generation();
+            ResultSet rs = executeWithFailover(sql);
+            if (!isReceivedCompletely(rs)) {
+                return wrap(rs);
+            }
+            ArenaResultSet loaded = ArenaResultSet.load(this, rs, connection.stringCacheSize());
+            cache.put(key, loaded.detach(), generation);
+            cached = loaded;
+        }
+        cachedResultSet = cached.view(this, delegate.getResultSetType());
+        return cachedResultSet;
+    }
+
+    /**
+     * @return true if the result of the query is scrollable and should be read through a {@link CursorResultSet}.
+     */
+    private boolean isScrolledThroughCursor(String sql) throws SQLException {
+        return connection.scrollWindowSize() > 0
+               && delegate.getResultSetType() == ResultSet.TYPE_SCROLL_INSENSITIVE
+               && Replay.isCursorQuery(sql)
+               && connection.supportsScrollCursors();
+    }
+
+    /**
+     * Declares a cursor for the query of this statement, see {@link CursorResultSet}.
+     */
+    void declareCursor(Connection connection, String declaration) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(declaration);
+        }
+    }
+
+    private void closeCursor() {
+        closeQuietly(cursorResultSet);
+        cursorResultSet = null;
+        closeQuietly(keptCursor);
+        keptCursor = null;
+    }
+
+    private static void closeQuietly(CursorResultSet cursor) {
+        if (cursor != null) {
+            try {
+                cursor.close();
+            } catch (SQLException ignored) {
+                // the cursor is closed by the server together with the session anyway
+            }
+        }
+    }
+
+    private ResultSet executeWithFailover(String sql) throws SQLException {
+        return withTimeout(() -> {
+            try {
+                return connection.isHedged() && connection.isReadOnlyQuery(sql)
+                    ? executeHedged(sql)
+                    : executeDelegate(sql);
+            } catch (SQLException e) {
+                return replay(e, 0);
+            }
+        });
+    }
+
+    /**
+     * Runs the given execution and cancels it if it exceeds the query timeout, see {@link QueryTimeouts}.
+     */
+    <T> T withTimeout(Execution<T> execution) throws SQLException {
+        if (queryTimeout == 0) {
+            return execution.execute();
+        }
+        QueryTimeouts.Timeout timeout = QueryTimeouts.GLOBAL.schedule(this, queryTimeout * 1000L);
+        try {
+            return execution.execute();
+        } catch (SQLException e) {
+            if (timeout.hasExpired()) {
+                throw new PSQLException(
+                    "The query was cancelled after the query timeout of " + queryTimeout + " seconds.",
+                    PSQLState.QUERY_CANCELED, e);
+            }
+            throw e;
+        } finally {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Caches the results of the read-only queries of this statement, see {@link ResultCache}. Only has an effect
+     * if the {@code resultCacheSize} connection property is set. By default, the results of the queries which
+     * match the {@code resultCachePattern} connection property are cached.
+     */
+    public void setResultCacheEnabled(boolean enabled) {
+        resultCacheEnabled = enabled;
+    }
+
+    private boolean isResultCached(String sql) throws SQLException {
+        boolean enabled = resultCacheEnabled == null ? connection.isResultCached(sql) : resultCacheEnabled;
+        // pgjdbc shortens values if a max field size is set, which must not be served to other statements
+        return enabled && Replay.isReadOnly(sql) && delegate.getMaxFieldSize() == 0;
+    }
+
+    /**
+     * @return the key of the result of the given query, null if it cannot be cached.
+     */
+    ResultCache.Key cacheKey(String sql) throws SQLException {
+        return new ResultCache.Key(connection.schema(), sql, delegate.getMaxRows(), null);
+    }
+
+    /**
+     * Called after anything but a query was executed. Removes the cached results and table columns which may have
+     * been changed by the given statement, all of them if it is null.
+     */
+    void executed(String sql) {
+        lastSql = sql;
+        closeHedge();
+        closeCursor();
+        cachedResultSet = null;
+        noMoreResults = false;
+        connection.invalidateTableColumns(sql);
+        ResultCache cache = connection.resultCache();
+        if (cache != null && (sql == null || !Replay.isReadOnly(sql))) {
+            cache.invalidate(sql);
+        }
+    }
+
+    /**
+     * @return the statement of the rows of the batch if they all have the same, null otherwise.
+     */
+    String batchSql() {
+        return null;
+    }
+
+    /**
+     * Sends the query to another host as well if it did not return in time, see {@link HedgedQuery}.
+     */
+    private ResultSet executeHedged(String sql) throws SQLException {
+        HostSpec host = CrateConnection.hostOf(connection.delegate());
+        long delay = connection.hedgeDelayNanos();
+        long start = System.nanoTime();
+        if (delay <= 0) {
+            ResultSet rs = executeDelegate(sql);
+            LatencyTracker.GLOBAL.record(host, System.nanoTime() - start);
+            return rs;
+        }
+        Statement primary = delegate;
+        HedgedQuery hedge = HedgedQuery.schedule(primary, delay, new HedgedQuery.Execution() {
+
+            private Connection hedgeConnection;
+
+            @Override
+            public Statement createStatement() throws SQLException {
+                hedgeConnection = connection.hedgeConnection();
+                return recreate(primary, hedgeConnection);
+            }
+
+            @Override
+            public ResultSet execute(Statement statement) throws SQLException {
+                long hedgeStart = System.nanoTime();
+                try {
+                    ResultSet rs = executeAgain(statement, sql);
+                    long nanos = System.nanoTime() - hedgeStart;
+                    LatencyTracker.GLOBAL.record(CrateConnection.hostOf(hedgeConnection), nanos);
+                    return rs;
+                } catch (SQLException e) {
+                    connection.hedgeFailed(hedgeConnection, e);
+                    throw e;
+                }
+            }
+        });
+        ResultSet rs;
+        try {
+            rs = executeDelegate(sql);
+        } catch (SQLException e) {
+            ResultSet hedged = hedge.primaryFailed();
+            if (hedged == null) {
+                throw e;
+            }
+            hedgeStatement = hedged.getStatement();
+            return hedged;
+        }
+        if (hedge.primaryReturned()) {
+            LatencyTracker.GLOBAL.record(host, System.nanoTime() - start);
+        } else {
+            // the hedge won, but the primary returned before it was cancelled
+            ResultSet hedged = hedge.awaitHedge();
+            if (hedged != null) {
+                closeQuietly(hedged.getStatement());
+            }
+        }
+        return rs;
+    }
+
+    /**
+     * Closes the statement of the last hedged query which returned a result.
+     */
+    private void closeHedge() {
+        if (hedgeStatement != null) {
+            closeQuietly(hedgeStatement);
+            hedgeStatement = null;
+        }
+    }
+
+    /**
+     * Executes the last query once more with a new delegate on a new connection, after its connection broke.
+     * A query is replayed at most once per execution, so that a query which breaks every node it runs on
+     * cannot take down all of them.
+     *
+     * @param skip the number of rows which have already been read and are skipped, only possible if the rows
+     *             are sorted by unique keys, see {@link Replay#sortedScan(String)}.
+     * @return the result of the replayed query.
+     * @throws SQLException the given failure if the query cannot be replayed or the replay failed.
+     */
+    ResultSet replay(SQLException failure, long skip) throws SQLException {
+        String sql = replayableQuery;
+        Replay.SortedScan scan = sql != null && skip > 0 ? Replay.sortedScan(sql) : null;
+        if (sql == null || !connection.isReplayable(failure, sql) || (skip > 0 && scan == null)) {
+            throw failure;
+        }
+        replayableQuery = null;
+        try {
+            Statement failed = delegate;
+            // statements created before a failover only need to move over to the new connection
+            Connection target = connection.failover(failed.getConnection());
+            setDelegate(recreate(failed, target));
+            closeQuietly(failed);
+            if (scan != null && !scan.hasUniqueKeys(target)) {
+                throw new PSQLException(
+                    "The rows which have been read cannot be skipped, the query is not sorted by a unique key",
+                    PSQLState.INVALID_CURSOR_STATE);
+            }
+            ResultSet rs = executeAgain(delegate, sql);
+            for (long i = 0; i < skip && rs.next(); i++) {
+                // skip the rows which have already been read
+            }
+            return rs;
+        } catch (SQLException e) {
+            failure.addSuppressed(e);
+            throw failure;
+        }
+    }
+
+    static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // its result is not used anymore or its connection is broken anyway
+        }
+    }
+
+    /**
+     * @return a statement like the given one on another connection.
+     */
+    private Statement recreate(Statement statement, Connection connection) throws SQLException {
+        Statement replacement = createDelegate(connection,
+            statement.getResultSetType(), statement.getResultSetConcurrency(), statement.getResultSetHoldability());
+        replacement.setFetchSize(statement.getFetchSize());
+        replacement.setMaxRows(statement.getMaxRows());
+        replacement.setMaxFieldSize(statement.getMaxFieldSize());
+        replacement.setQueryTimeout(statement.getQueryTimeout());
+        return replacement;
+    }
+
+    /**
+     * Creates the statement which replaces the delegate after a failover or executes a hedged query.
+     */
+    Statement createDelegate(Connection connection, int type, int concurrency, int holdability) throws SQLException {
+        return connection.createStatement(type, concurrency, holdability);
+    }
+
+    void setDelegate(Statement delegate) {
+        this.delegate = delegate;
+    }
+
+    ResultSet executeDelegate(String sql) throws SQLException {
+        return delegate.executeQuery(sql);
+    }
+
+    /**
+     * Executes the last query with a statement created by {@link #createDelegate}.
+     */
+    ResultSet executeAgain(Statement statement, String sql) throws SQLException {
+        return statement.executeQuery(sql);
+    }
+
+    /**
+     * pgjdbc only uses a cursor for forward-only results of statements with a fetch size outside of auto-commit mode.
+     */
+    private boolean isReceivedCompletely(ResultSet rs) throws SQLException {
+        return delegate.getFetchSize() == 0
+               || connection.getAutoCommit()
+               || rs.getType() != ResultSet.TYPE_FORWARD_ONLY
+               || rs.getHoldability() == ResultSet.HOLD_CURSORS_OVER_COMMIT;
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        return query(sql);
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        try {
+            return withTimeout(() -> delegate.executeUpdate(sql));
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        closeHedge();
+        closeCursor();
+        delegate.close();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return delegate.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        delegate.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return delegate.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        delegate.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        delegate.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return connection.sharedQueryTimeouts() ? queryTimeout : delegate.getQueryTimeout();
+    }
+
+    /**
+     * If the {@code sharedQueryTimeouts} connection property is set, the timeout is enforced by
+     * {@link QueryTimeouts} instead of the timer of pgjdbc.
+     */
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        if (!connection.sharedQueryTimeouts()) {
+            delegate.setQueryTimeout(seconds);
+            return;
+        }
+        if (seconds < 0) {
+            throw new PSQLException(
+                "Query timeout must be a value greater than or equals to 0.", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        queryTimeout = seconds;
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        delegate.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        delegate.setCursorName(name);
+    }
+
+    /**
+     * Read-only queries are executed like {@link #executeQuery(String)}, so that they are replayed, hedged, cached
+     * and scrolled through a cursor as well.
+     */
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        if (Replay.isReadOnly(sql)) {
+            query(sql);
+            return true;
+        }
+        try {
+            return withTimeout(() -> delegate.execute(sql));
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        if (noMoreResults) {
+            return null;
+        }
+        if (cursorResultSet != null) {
+            return cursorResultSet;
+        }
+        if (cachedResultSet != null) {
+            return cachedResultSet;
+        }
+        if (hedgeStatement != null) {
+            // the result of the last query is the one of the hedge
+            return resultSet;
+        }
+        return wrap(delegate.getResultSet());
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        if (noMoreResults || !isDelegateResultCurrent()) {
+            return -1;
+        }
+        return delegate.getUpdateCount();
+    }
+
+    /**
+     * @return false if the current result is not the one of the delegate, but was served from the cache, a cursor
+     * or a hedge.
+     */
+    private boolean isDelegateResultCurrent() {
+        return cursorResultSet == null && cachedResultSet == null && hedgeStatement == null;
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return getMoreResults(CLOSE_CURRENT_RESULT);
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        delegate.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return delegate.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        delegate.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return delegate.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return delegate.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return delegate.getResultSetType();
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        delegate.addBatch(sql);
+        addToBatch(sql.length(), null);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        delegate.clearBatch();
+        batchSplitter.clear();
+    }
+
+    /**
+     * Registers a row which has been added to the batch of the delegate and executes the pending chunk once it is
+     * full, see {@link BatchSplitter}.
+     *
+     * @param row the parameters of the row, null if the row cannot be retried.
+     */
+    void addToBatch(long rowBytes, ParameterRow row) throws SQLException {
+        if (batchSplitter.add(rowBytes, row)) {
+            executeChunks(() -> {
+                batchSplitter.flush(delegate);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Runs an execution of the chunks of the batch within the query timeout. If a chunk could not be executed,
+     * the batch is ended and a {@link BatchUpdateException} with the update counts of the executed chunks is thrown.
+     */
+    private <T> T executeChunks(Execution<T> execution) throws SQLException {
+        try {
+            return withTimeout(execution);
+        } catch (SQLException e) {
+            batchResult = batchSplitter.abort(e);
+            throw batchResult.toException();
+        }
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        try {
+            batchResult = executeChunks(() -> batchSplitter.finish(delegate));
+        } finally {
+            executed(batchSql());
+        }
+        BatchUpdateException failure = batchResult.toException();
+        if (failure != null) {
+            throw failure;
+        }
+        return batchResult.getUpdateCounts();
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Results served from the cache, a cursor or a hedge are the only result of their query.
+     */
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        if (noMoreResults) {
+            return false;
+        }
+        if (isDelegateResultCurrent()) {
+            return delegate.getMoreResults(current);
+        }
+        if (current == KEEP_CURRENT_RESULT) {
+            keptCursor = cursorResultSet;
+        } else {
+            closeHedge();
+            closeQuietly(cursorResultSet);
+            if (cachedResultSet != null) {
+                cachedResultSet.close();
+            }
+        }
+        cursorResultSet = null;
+        cachedResultSet = null;
+        noMoreResults = true;
+        return false;
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return new CrateResultSet(this, delegate.getGeneratedKeys(), connection.stringCacheSize());
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        try {
+            return withTimeout(() -> delegate.executeUpdate(sql, autoGeneratedKeys));
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        try {
+            return withTimeout(() -> delegate.executeUpdate(sql, columnIndexes));
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        try {
+            return withTimeout(() -> delegate.executeUpdate(sql, columnNames));
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        try {
+            return withTimeout(() -> delegate.execute(sql, autoGeneratedKeys));
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        try {
+            return withTimeout(() -> delegate.execute(sql, columnIndexes));
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        try {
+            return withTimeout(() -> delegate.execute(sql, columnNames));
+        } finally {
+            executed(sql);
+        }
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return delegate.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        delegate.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return delegate.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        delegate.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return delegate.isCloseOnCompletion();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+}
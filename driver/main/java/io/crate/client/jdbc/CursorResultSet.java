@@ -0,0 +1,565 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scrollable result set which reads its rows through a server-side {@code SCROLL CURSOR} and holds only a
+ * window of them, instead of receiving the whole result.
+ * <p>
+ * The window is stored in a {@link RowArena} which is reused whenever the cursor moves outside of it. Moving
+ * forward loads the window starting at the target row, moving backward the window ending at it. The number of
+ * rows is only known once the end was reached. If it is needed before, for example by {@link #last()}, it is
+ * counted with a single {@code MOVE FORWARD ALL}. If the server does not support {@code MOVE}, it is searched
+ * with {@code FETCH ABSOLUTE} instead, each of which returns at most one row, which takes about
+ * {@code 2 * log2(rows)} round trips.
+ * <p>
+ * The cursor is declared {@code WITH HOLD}, so that it can be used in auto-commit mode. It is closed together
+ * with the result set.
+ */
+final class CursorResultSet extends ReadOnlyResultSet implements RawRow, EpochTimestamps {
+
+    private static final AtomicLong CURSOR_IDS = new AtomicLong();
+
+    private final CrateStatement statement;
+    // executes the FETCH and CLOSE commands of the cursor
+    private final Statement fetches;
+    private final String name;
+    private final int windowSize;
+    private final int stringCacheSize;
+    private RowArena arena;
+    private ArenaResultSet window;
+    private ResultSetMetaData metaData;
+    private int windowStart;
+    private int windowRows;
+    // the 1-based row the server-side cursor is positioned on, 0 before the first row, -1 if it is not known
+    private long position;
+    // the number of rows which are known to exist
+    private int knownRows;
+    // the number of rows, -1 until the end was reached
+    private int total = -1;
+
+    private int row = -1;
+    private boolean closed;
+    private int fetchDirection = FETCH_FORWARD;
+    private int fetchSize;
+
+    private CursorResultSet(CrateStatement statement,
+                            Statement fetches,
+                            String name,
+                            int windowSize,
+                            int stringCacheSize) {
+        this.statement = statement;
+        this.fetches = fetches;
+        this.name = name;
+        this.windowSize = windowSize;
+        this.stringCacheSize = stringCacheSize;
+    }
+
+    /**
+     * Declares a cursor for the given query on the given connection and reads the first window.
+     *
+     * @param sql a query for which {@link Replay#isCursorQuery(String)} is true.
+     */
+    static CursorResultSet open(CrateStatement statement,
+                                Connection connection,
+                                String sql,
+                                int windowSize,
+                                int stringCacheSize) throws SQLException {
+        String name = "crate_scroll_" + CURSOR_IDS.incrementAndGet();
+        statement.declareCursor(
+            connection, "DECLARE " + name + " INSENSITIVE SCROLL CURSOR WITH HOLD FOR " + withoutSemicolon(sql));
+        Statement fetches = null;
+        try {
+            fetches = connection.createStatement(TYPE_SCROLL_INSENSITIVE, CONCUR_READ_ONLY);
+            CursorResultSet rs = new CursorResultSet(statement, fetches, name, windowSize, stringCacheSize);
+            rs.load(0);
+            return rs;
+        } catch (SQLException e) {
+            try (Statement close = fetches == null ? connection.createStatement() : fetches) {
+                close.execute("CLOSE " + name);
+            } catch (SQLException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+    }
+
+    private static String withoutSemicolon(String sql) {
+        int end = sql.length();
+        while (end > 0 && (sql.charAt(end - 1) == ';' || Character.isWhitespace(sql.charAt(end - 1)))) {
+            end--;
+        }
+        return sql.substring(0, end);
+    }
+
+    /**
+     * Replaces the window by the rows starting at the given 0-based row.
+     */
+    private void load(int start) throws SQLException {
+        // whether all rows before the start exist, so that a short window marks the end of the result
+        boolean startExists = position == start || exists(start) || start == 0;
+        ResultSet rs = fetches.executeQuery("FETCH FORWARD " + windowSize + " FROM " + name);
+        if (arena == null) {
+            arena = new RowArena(rs.getMetaData().getColumnCount(), 8192);
+        }
+        window = ArenaResultSet.load(statement, rs, arena, stringCacheSize);
+        windowStart = start;
+        windowRows = arena.rowCount();
+        if (windowRows == windowSize) {
+            position = (long) start + windowRows;
+            knownRows = Math.max(knownRows, start + windowRows);
+        } else if (startExists) {
+            total = start + windowRows;
+            knownRows = total;
+            position = total + 1L;
+        } else {
+            position = -1;
+        }
+    }
+
+    /**
+     * Positions the server-side cursor on the given 1-based row.
+     *
+     * @return true if the row exists.
+     */
+    private boolean exists(long row) throws SQLException {
+        try (ResultSet rs = fetches.executeQuery("FETCH ABSOLUTE " + row + " FROM " + name)) {
+            if (rs.next()) {
+                position = row;
+                knownRows = (int) Math.max(knownRows, row);
+                return true;
+            }
+        }
+        position = row == 0 ? 0 : -1;
+        return false;
+    }
+
+    /**
+     * @return the number of rows, counted with {@link #move()} or searched with single row fetches if the end has
+     * not been reached yet.
+     */
+    private int total() throws SQLException {
+        if (total < 0) {
+            long moved = move();
+            if (moved >= 0) {
+                total = (int) Math.min(moved, Integer.MAX_VALUE);
+                knownRows = total;
+                position = total + 1L;
+                return total;
+            }
+            long low = knownRows;
+            long high = low + 1;
+            // grows exponentially until a row which does not exist is found, then bisects
+            while (high <= Integer.MAX_VALUE && exists(high)) {
+                low = high;
+                high *= 2;
+            }
+            high = Math.min(high, Integer.MAX_VALUE + 1L);
+            while (high - low > 1) {
+                long middle = (low + high) >>> 1;
+                if (exists(middle)) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            total = (int) low;
+            knownRows = total;
+        }
+        return total;
+    }
+
+    /**
+     * Moves the server-side cursor after the last row.
+     *
+     * @return the number of rows, -1 if the server does not support {@code MOVE}.
+     */
+    private long move() throws SQLException {
+        CrateConnection connection = statement.connection;
+        if (!connection.supportsMove()) {
+            return -1;
+        }
+        try {
+            if (position < 0) {
+                fetches.executeUpdate("MOVE ABSOLUTE 0 FROM " + name);
+                position = 0;
+            }
+            return position + fetches.executeUpdate("MOVE FORWARD ALL FROM " + name);
+        } catch (SQLException e) {
+            if (PSQLState.isConnectionError(e.getSQLState())) {
+                throw e;
+            }
+            connection.moveUnsupported();
+            position = -1;
+            return -1;
+        }
+    }
+
+    /**
+     * Moves to the given 0-based row, loading the window which contains it if necessary.
+     *
+     * @return true if the row exists, otherwise the result set is positioned before the first or after the
+     * last row.
+     */
+    private boolean moveTo(long target) throws SQLException {
+        checkClosed();
+        if (target < 0) {
+            row = -1;
+            return false;
+        }
+        if ((total >= 0 && target >= total) || target > Integer.MAX_VALUE) {
+            row = total();
+            return false;
+        }
+        int next = (int) target;
+        if (next < windowStart || next >= windowStart + windowRows) {
+            load(next < windowStart ? Math.max(0, next - windowSize + 1) : next);
+            if (next >= windowStart + windowRows) {
+                row = total();
+                return false;
+            }
+        }
+        row = next;
+        window.absolute(next - windowStart + 1);
+        return true;
+    }
+
+    private void checkClosed() throws PSQLException {
+        if (closed) {
+            throw new PSQLException("This ResultSet is closed.", PSQLState.OBJECT_NOT_IN_STATE);
+        }
+    }
+
+    /**
+     * @return the window positioned on the current row.
+     */
+    private ArenaResultSet current() throws PSQLException {
+        checkClosed();
+        if (row < windowStart || row >= windowStart + windowRows) {
+            throw new PSQLException(
+                "ResultSet not positioned properly, perhaps you need to call next.", PSQLState.INVALID_CURSOR_STATE);
+        }
+        return window;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        return moveTo(row + 1L);
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        return moveTo(row - 1L);
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        checkClosed();
+        if (row == 0) {
+            this.row = -1;
+            return false;
+        }
+        return moveTo(row > 0 ? row - 1L : (long) total() + row);
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        return moveTo((long) row + rows);
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        return absolute(1);
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        return absolute(-1);
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        checkClosed();
+        row = -1;
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        checkClosed();
+        row = total();
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        checkClosed();
+        // the first window is read when the cursor is opened, so an empty result has no known rows
+        return row < 0 && knownRows > 0;
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        checkClosed();
+        return total > 0 && row >= total;
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        checkClosed();
+        return row == 0 && windowRows > 0;
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        checkClosed();
+        if (row < 0 || (total >= 0 && row >= total) || row + 1 < windowStart + windowRows) {
+            return false;
+        }
+        return row == total() - 1;
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        checkClosed();
+        return row >= 0 && (total < 0 || row < total) ? row + 1 : 0;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        window = null;
+        arena = null;
+        try (Statement close = fetches) {
+            close.execute("CLOSE " + name);
+        }
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        checkClosed();
+        return window.wasNull();
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        return current().getString(columnIndex);
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        return current().getBoolean(columnIndex);
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        return current().getByte(columnIndex);
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        return current().getShort(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        return current().getInt(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        return current().getLong(columnIndex);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        return current().getFloat(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        return current().getDouble(columnIndex);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        return current().getBigDecimal(columnIndex);
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        return current().getBytes(columnIndex);
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        return current().getDate(columnIndex, cal);
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        return current().getTime(columnIndex, cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        return current().getTimestamp(columnIndex, cal);
+    }
+
+    @Override
+    public long getEpochMillis(int columnIndex) throws SQLException {
+        return current().getEpochMillis(columnIndex);
+    }
+
+    @Override
+    public long getEpochMicros(int columnIndex) throws SQLException {
+        return current().getEpochMicros(columnIndex);
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        return current().getArray(columnIndex);
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        return current().getObject(columnIndex);
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        return current().getObject(columnIndex, type);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        checkClosed();
+        if (metaData == null) {
+            metaData = window.getMetaData();
+        }
+        return metaData;
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        checkClosed();
+        return window.findColumn(columnLabel);
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        checkClosed();
+        fetchDirection = direction;
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        checkClosed();
+        return fetchDirection;
+    }
+
+    /**
+     * The window size is set by the {@code scrollWindowSize} connection property, the fetch size is only kept.
+     */
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        checkClosed();
+        if (rows < 0) {
+            throw new PSQLException("Fetch size must be a value greater to or equal to 0.", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        fetchSize = rows;
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        checkClosed();
+        return fetchSize;
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        checkClosed();
+        return TYPE_SCROLL_INSENSITIVE;
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        checkClosed();
+        return HOLD_CURSORS_OVER_COMMIT;
+    }
+
+    @Override
+    public int getColumnCount() throws SQLException {
+        checkClosed();
+        return window.getColumnCount();
+    }
+
+    @Override
+    public boolean isBinary(int columnIndex) throws SQLException {
+        checkClosed();
+        return false;
+    }
+
+    @Override
+    public byte[] getRawArray(int columnIndex) throws SQLException {
+        return current().getRawArray(columnIndex);
+    }
+
+    @Override
+    public int getRawOffset(int columnIndex) throws SQLException {
+        return current().getRawOffset(columnIndex);
+    }
+
+    @Override
+    public int getRawLength(int columnIndex) throws SQLException {
+        return current().getRawLength(columnIndex);
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        checkClosed();
+        return statement;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Meta data of a result kept by the {@link ResultCache}, which holds no reference to the connection the result was
+ * received on.
+ * <p>
+ * Only the attributes which pgjdbc derives from the type of a column are copied. The table, the nullability and
+ * the auto increment flag of a column are answered by the {@link CrateResultSetMetaData} which wraps this meta data
+ * for the connection the result is read on.
+ */
+final class DetachedMetaData implements ResultSetMetaData {
+
+    private final String[] labels;
+    private final String[] names;
+    private final int[] types;
+    private final String[] typeNames;
+    private final String[] classNames;
+    private final int[] precisions;
+    private final int[] scales;
+    private final int[] displaySizes;
+    private final boolean[] caseSensitive;
+    private final boolean[] signed;
+    private final boolean[] currency;
+
+    private DetachedMetaData(int columnCount) {
+        labels = new String[columnCount];
+        names = new String[columnCount];
+        types = new int[columnCount];
+        typeNames = new String[columnCount];
+        classNames = new String[columnCount];
+        precisions = new int[columnCount];
+        scales = new int[columnCount];
+        displaySizes = new int[columnCount];
+        caseSensitive = new boolean[columnCount];
+        signed = new boolean[columnCount];
+        currency = new boolean[columnCount];
+    }
+
+    static DetachedMetaData of(ResultSetMetaData metaData) throws SQLException {
+        if (metaData instanceof DetachedMetaData) {
+            return (DetachedMetaData) metaData;
+        }
+        DetachedMetaData detached = new DetachedMetaData(metaData.getColumnCount());
+        for (int i = 0; i < detached.labels.length; i++) {
+            int column = i + 1;
+            detached.labels[i] = metaData.getColumnLabel(column);
+            detached.names[i] = metaData.getColumnName(column);
+            detached.types[i] = metaData.getColumnType(column);
+            detached.typeNames[i] = CrateResultSetMetaData.pgType(metaData, column);
+            detached.classNames[i] = metaData.getColumnClassName(column);
+            detached.precisions[i] = metaData.getPrecision(column);
+            detached.scales[i] = metaData.getScale(column);
+            detached.displaySizes[i] = metaData.getColumnDisplaySize(column);
+            detached.caseSensitive[i] = metaData.isCaseSensitive(column);
+            detached.signed[i] = metaData.isSigned(column);
+            detached.currency[i] = metaData.isCurrency(column);
+        }
+        return detached;
+    }
+
+    private int index(int column) throws PSQLException {
+        if (column < 1 || column > labels.length) {
+            throw new PSQLException(
+                String.format("The column index is out of range: %d, number of columns: %d.", column, labels.length),
+                PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        return column - 1;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return labels.length;
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) throws SQLException {
+        index(column);
+        return false;
+    }
+
+    @Override
+    public boolean isCaseSensitive(int column) throws SQLException {
+        return caseSensitive[index(column)];
+    }
+
+    @Override
+    public boolean isSearchable(int column) throws SQLException {
+        index(column);
+        return true;
+    }
+
+    @Override
+    public boolean isCurrency(int column) throws SQLException {
+        return currency[index(column)];
+    }
+
+    @Override
+    public int isNullable(int column) throws SQLException {
+        index(column);
+        return columnNullableUnknown;
+    }
+
+    @Override
+    public boolean isSigned(int column) throws SQLException {
+        return signed[index(column)];
+    }
+
+    @Override
+    public int getColumnDisplaySize(int column) throws SQLException {
+        return displaySizes[index(column)];
+    }
+
+    @Override
+    public String getColumnLabel(int column) throws SQLException {
+        return labels[index(column)];
+    }
+
+    @Override
+    public String getColumnName(int column) throws SQLException {
+        return names[index(column)];
+    }
+
+    @Override
+    public String getSchemaName(int column) throws SQLException {
+        index(column);
+        return "";
+    }
+
+    @Override
+    public int getPrecision(int column) throws SQLException {
+        return precisions[index(column)];
+    }
+
+    @Override
+    public int getScale(int column) throws SQLException {
+        return scales[index(column)];
+    }
+
+    @Override
+    public String getTableName(int column) throws SQLException {
+        index(column);
+        return "";
+    }
+
+    @Override
+    public String getCatalogName(int column) throws SQLException {
+        index(column);
+        return "";
+    }
+
+    @Override
+    public int getColumnType(int column) throws SQLException {
+        return types[index(column)];
+    }
+
+    @Override
+    public String getColumnTypeName(int column) throws SQLException {
+        return typeNames[index(column)];
+    }
+
+    @Override
+    public boolean isReadOnly(int column) throws SQLException {
+        index(column);
+        return false;
+    }
+
+    @Override
+    public boolean isWritable(int column) throws SQLException {
+        index(column);
+        return true;
+    }
+
+    @Override
+    public boolean isDefinitelyWritable(int column) throws SQLException {
+        index(column);
+        return false;
+    }
+
+    @Override
+    public String getColumnClassName(int column) throws SQLException {
+        return classNames[index(column)];
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new PSQLException(
+            String.format("Cannot unwrap to %s", iface.getName()), PSQLState.INVALID_PARAMETER_TYPE);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads timestamps of the current row as primitive values, without creating {@link java.sql.Timestamp} objects.
+ * <p>
+ * Like {@link RawRow}, a result set can be unwrapped to it if any of the CrateDB specific connection
+ * properties is set. Like the getters of the result set, the methods update {@link ResultSet#wasNull()}.
+ */
+public interface EpochTimestamps {
+
+    /**
+     * @return the milliseconds since the epoch, like {@code getTimestamp(columnIndex).getTime()}, 0 if the value is
+     *         NULL.
+     */
+    long getEpochMillis(int columnIndex) throws SQLException;
+
+    /**
+     * @return the microseconds since the epoch, 0 if the value is NULL. {@link Long#MAX_VALUE} and
+     *         {@link Long#MIN_VALUE} stand for {@code infinity} and {@code -infinity}.
+     */
+    long getEpochMicros(int columnIndex) throws SQLException;
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a query once more on a connection to another host if its first execution did not return within a
+ * delay. The execution which returns first wins, the other one is cancelled.
+ * <p>
+ * The first execution runs on the thread of the caller, which reports its outcome with
+ * {@link #primaryReturned()} or {@link #primaryFailed()}. The hedge runs on a daemon thread.
+ */
+final class HedgedQuery implements Runnable {
+
+    /**
+     * Creates and executes the statement of the hedge.
+     */
+    interface Execution {
+
+        Statement createStatement() throws SQLException;
+
+        ResultSet execute(Statement statement) throws SQLException;
+    }
+
+    private static final ScheduledExecutorService TIMER =
+        Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("crate-hedge-timer"));
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(DaemonThreads.named("crate-hedge"));
+
+    private static final int PENDING = 0;
+    private static final int PRIMARY_WON = 1;
+    private static final int HEDGE_WON = 2;
+
+    private final Statement primary;
+    private final Execution execution;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private volatile Future<?> scheduled;
+    private volatile Statement hedge;
+    // set once the hedge finished, guarded by this
+    private boolean finished;
+    private ResultSet result;
+
+    private HedgedQuery(Statement primary, Execution execution) {
+        this.primary = primary;
+        this.execution = execution;
+    }
+
+    /**
+     * Starts the hedge after the given delay, unless the primary execution returned before.
+     */
+    static HedgedQuery schedule(Statement primary, long delayNanos, Execution execution) {
+        HedgedQuery query = new HedgedQuery(primary, execution);
+        query.scheduled = TIMER.schedule(() -> WORKERS.execute(query), delayNanos, TimeUnit.NANOSECONDS);
+        return query;
+    }
+
+    @Override
+    public void run() {
+        Statement statement = null;
+        ResultSet rs = null;
+        try {
+            if (state.get() == PENDING) {
+                statement = execution.createStatement();
+                hedge = statement;
+                // the primary may have returned before the hedge could be cancelled
+                if (state.get() == PENDING) {
+                    rs = execution.execute(statement);
+                }
+            }
+        } catch (SQLException ignored) {
+            // the primary execution reports its own failure
+        }
+        boolean won = rs != null && state.compareAndSet(PENDING, HEDGE_WON);
+        if (won) {
+            cancelQuietly(primary);
+        } else if (statement != null) {
+            CrateStatement.closeQuietly(statement);
+        }
+        synchronized (this) {
+            result = won ? rs : null;
+            finished = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return true if the result of the primary execution is used, false if the hedge won, whose result must be
+     * used instead.
+     */
+    boolean primaryReturned() {
+        if (state.compareAndSet(PENDING, PRIMARY_WON)) {
+            scheduled.cancel(false);
+            Statement statement = hedge;
+            if (statement != null) {
+                cancelQuietly(statement);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the result of the hedge if it won, which may have been the cause of the failure, null if the
+     * failure of the primary execution must be reported.
+     */
+    ResultSet primaryFailed() throws SQLException {
+        if (primaryReturned()) {
+            return null;
+        }
+        return awaitHedge();
+    }
+
+    /**
+     * @return the result of the hedge, which won.
+     */
+    synchronized ResultSet awaitHedge() throws SQLException {
+        while (!finished) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PSQLException(
+                    "Interrupted while waiting for the hedged query.", PSQLState.QUERY_CANCELED, e);
+            }
+        }
+        return result;
+    }
+
+    private static void cancelQuietly(Statement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException ignored) {
+            // the query completes anyway
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A {@code json} parameter whose value is UTF-8 encoded already.
+ * <p>
+ * If the {@code binaryJson} connection property is set, pgjdbc sends the bytes in the binary format, which
+ * for {@code json} is the text itself, so the value is never turned into a {@link String}. Otherwise it is
+ * decoded and sent as text like any other {@link PGobject}.
+ */
+final class JsonParameter extends PGobject implements PGBinaryObject {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The types which pgjdbc encodes in the binary format itself, and may send in that format depending on the
+     * {@code binaryTransfer} connection properties.
+     */
+    private static final int[] BINARY_SEND_OIDS = {
+        Oid.BYTEA, Oid.INT2, Oid.INT4, Oid.INT8, Oid.FLOAT4, Oid.FLOAT8, Oid.TIME, Oid.DATE, Oid.TIMETZ,
+        Oid.TIMESTAMP, Oid.TIMESTAMPTZ, Oid.INT2_ARRAY, Oid.INT4_ARRAY, Oid.INT8_ARRAY, Oid.FLOAT4_ARRAY,
+        Oid.FLOAT8_ARRAY, Oid.VARCHAR_ARRAY, Oid.TEXT_ARRAY, Oid.POINT, Oid.BOX, Oid.UUID
+    };
+
+    /**
+     * Holds the mapper, so that enabling binary json while connecting does not initialize jackson-databind.
+     */
+    private static final class Mapper {
+
+        static final ObjectMapper INSTANCE = new ObjectMapper();
+    }
+
+    // the value, instead of the String value of PGobject which stays null
+    private transient ByteBuffer json;
+
+    JsonParameter(ByteBuffer json) {
+        setType("json");
+        this.json = json;
+    }
+
+    /**
+     * Reusable buffer for serialized values.
+     */
+    static final class Buffer extends ByteArrayOutputStream {
+
+        ByteBuffer contents() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * Serializes the given object, usually a {@link java.util.Map}, with a streaming generator into the given
+     * buffer and binds it. pgjdbc copies the bytes when binding, so the buffer can be reused afterwards.
+     */
+    static void bind(PreparedStatement statement, int parameterIndex, Object object, Buffer buffer)
+        throws SQLException {
+        buffer.reset();
+        try {
+            Mapper.INSTANCE.writeValue(buffer, object);
+        } catch (IOException e) {
+            throw new PSQLException("Cannot serialize the parameter to JSON", PSQLState.INVALID_PARAMETER_VALUE, e);
+        }
+        statement.setObject(parameterIndex, new JsonParameter(buffer.contents()));
+    }
+
+    /**
+     * Makes pgjdbc send {@code json} parameters in the binary format, in addition to the types it sends in that
+     * format already.
+     * <p>
+     * pgjdbc can only replace the set of types which are sent in binary, and has no getter for it. So the types
+     * which pgjdbc can encode itself are kept as they are, and {@code json} is the only type which is added.
+     */
+    static void enableBinarySend(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(BaseConnection.class)) {
+            return;
+        }
+        BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+        Set<Integer> oids = new HashSet<>();
+        for (int oid : BINARY_SEND_OIDS) {
+            if (pgConnection.binaryTransferSend(oid)) {
+                oids.add(oid);
+            }
+        }
+        oids.add(Oid.JSON);
+        pgConnection.getQueryExecutor().setBinarySendOids(oids);
+    }
+
+    @Override
+    public String getValue() {
+        return json == null ? null : StandardCharsets.UTF_8.decode(json.duplicate()).toString();
+    }
+
+    @Override
+    public void setValue(String value) {
+        json = value == null ? null : ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void setByteValue(byte[] value, int offset) {
+        json = ByteBuffer.wrap(value, offset, value.length - offset);
+    }
+
+    @Override
+    public int lengthInBytes() {
+        return json == null ? 0 : json.remaining();
+    }
+
+    @Override
+    public void toBytes(byte[] bytes, int offset) {
+        if (json != null) {
+            json.duplicate().get(bytes, offset, json.remaining());
+        }
+    }
+
+    /**
+     * Like {@link PGobject#equals(Object)}, equal to any {@link PGobject} whose value is the same text.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PGobject && Objects.equals(getValue(), ((PGobject) obj).getValue());
+    }
+
+    @Override
+    public int hashCode() {
+        String value = getValue();
+        return value == null ? 0 : value.hashCode();
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        JsonParameter clone = (JsonParameter) super.clone();
+        clone.json = json == null ? null : json.duplicate();
+        return clone;
+    }
+
+    /**
+     * Serialized as a plain {@link PGobject}, because the buffer is not serializable.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        PGobject object = new PGobject();
+        object.setType(type);
+        try {
+            object.setValue(getValue());
+        } catch (SQLException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+        return object;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.HostSpec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies of the queries sent to each host, shared by all connections of the process.
+ * <p>
+ * The latencies of a host are counted in logarithmic buckets, four per power of two, so a percentile is accurate
+ * to about 20%. The counts are halved regularly, so that old samples fade out.
+ */
+final class LatencyTracker {
+
+    static final LatencyTracker GLOBAL = new LatencyTracker();
+
+    /**
+     * Percentiles are only estimated after this many samples of a host.
+     */
+    static final int MIN_SAMPLES = 100;
+
+    /**
+     * The counts of a host are halved whenever it has this many samples.
+     */
+    static final int DECAY_SAMPLES = 2048;
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final Map<HostSpec, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private static final class Histogram {
+
+        private final int[] counts = new int[BUCKETS];
+        private int total;
+
+        synchronized void record(int bucket) {
+            counts[bucket]++;
+            total++;
+            if (total >= DECAY_SAMPLES) {
+                total = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] >>= 1;
+                    total += counts[i];
+                }
+            }
+        }
+
+        synchronized int bucketOf(double percentile) {
+            if (total < MIN_SAMPLES) {
+                return -1;
+            }
+            long rank = (long) Math.ceil(percentile / 100 * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i;
+                }
+            }
+            return counts.length - 1;
+        }
+    }
+
+    void record(HostSpec host, long nanos) {
+        if (host != null) {
+            histograms.computeIfAbsent(host, h -> new Histogram()).record(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        }
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the estimated latency of the given percentile in nanoseconds, -1 if the host has too few samples.
+     */
+    long percentileNanos(HostSpec host, double percentile) {
+        Histogram histogram = host == null ? null : histograms.get(host);
+        int bucket = histogram == null ? -1 : histogram.bucketOf(percentile);
+        return bucket < 0 ? -1 : TimeUnit.MICROSECONDS.toNanos(upperBound(bucket));
+    }
+
+    static int bucket(long micros) {
+        long value = Math.max(micros, SUB_BUCKETS);
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return exponent * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the smallest value in microseconds which is larger than all values of the bucket.
+     */
+    static long upperBound(int bucket) {
+        int exponent = bucket / SUB_BUCKETS;
+        int subBucket = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+}
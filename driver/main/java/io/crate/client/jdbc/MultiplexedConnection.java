@@ -0,0 +1,566 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection which many threads can use at once, handed out by the driver if the {@code multiplexConnections}
+ * connection property is set.
+ * <p>
+ * Each execution of one of its statements is queued on the physical connection with the fewest pending
+ * executions, runs once the executions queued before it are done and receives its result completely. So
+ * the physical connection is free again once the execution returns, and the caller reads the rows from
+ * memory. The physical connections are opened on first use and opened again if they broke.
+ * <p>
+ * CrateDB has no transactions, so the connection is always in auto-commit mode. Session settings made with
+ * {@link #setSchema(String)} and {@link #setReadOnly(boolean)} apply to all physical connections.
+ */
+final class MultiplexedConnection implements Connection {
+
+    /**
+     * Opens a physical connection.
+     */
+    interface Opener {
+        CrateConnection open() throws SQLException;
+    }
+
+    /**
+     * An execution on a physical connection, see {@link #execute(Execution)}.
+     */
+    interface Execution<T> {
+        T execute(CrateConnection connection) throws SQLException;
+    }
+
+    private static final class Slot {
+
+        // fair, so that executions run in the order they were queued
+        private final ReentrantLock lock = new ReentrantLock(true);
+        // the executions which hold or wait for the lock, guarded by the multiplexed connection
+        private int pending;
+        // written while holding the lock, read without it to prefer opened connections
+        private volatile CrateConnection connection;
+    }
+
+    private final Opener opener;
+    private final Slot[] slots;
+    // the slot whose pending executions are compared first, so that idle connections take turns
+    private int next;
+    private volatile boolean closed;
+    private volatile boolean readOnly;
+    private volatile String schema;
+
+    /**
+     * @param first the first physical connection, which has been opened already.
+     */
+    MultiplexedConnection(CrateConnection first, int size, Opener opener) {
+        this.opener = opener;
+        this.slots = new Slot[Math.max(size, 1)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+        slots[0].connection = first;
+    }
+
+    /**
+     * Runs the given execution on the physical connection with the fewest pending executions, after the
+     * executions queued on it before.
+     */
+    <T> T execute(Execution<T> execution) throws SQLException {
+        Slot slot = acquire();
+        try {
+            CrateConnection connection = slot.connection;
+            if (connection == null) {
+                connection = open();
+                slot.connection = connection;
+            }
+            try {
+                return execution.execute(connection);
+            } finally {
+                if (connection.isClosed()) {
+                    // broken, the next execution opens a new one
+                    slot.connection = null;
+                }
+            }
+        } finally {
+            release(slot);
+        }
+    }
+
+    private Slot acquire() throws SQLException {
+        Slot slot;
+        synchronized (this) {
+            checkClosed();
+            slot = slots[next];
+            for (int i = 1; i < slots.length; i++) {
+                Slot candidate = slots[(next + i) % slots.length];
+                if (candidate.pending < slot.pending
+                    || (candidate.pending == slot.pending && slot.connection == null && candidate.connection != null)) {
+                    slot = candidate;
+                }
+            }
+            next = (next + 1) % slots.length;
+            slot.pending++;
+        }
+        try {
+            slot.lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (this) {
+                slot.pending--;
+            }
+            throw new PSQLException("Interrupted while waiting for a connection", PSQLState.QUERY_CANCELED, e);
+        }
+        return slot;
+    }
+
+    private void release(Slot slot) {
+        slot.lock.unlock();
+        synchronized (this) {
+            slot.pending--;
+        }
+    }
+
+    private CrateConnection open() throws SQLException {
+        CrateConnection connection = opener.open();
+        try {
+            connection.setReadOnly(readOnly);
+            if (schema != null) {
+                connection.setSchema(schema);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * Applies a session setting to every physical connection which is open.
+     */
+    private void applyToAll(Execution<Void> setting) throws SQLException {
+        checkClosed();
+        for (Slot slot : slots) {
+            slot.lock.lock();
+            try {
+                CrateConnection connection = slot.connection;
+                if (connection != null && !connection.isClosed()) {
+                    setting.execute(connection);
+                }
+            } finally {
+                slot.lock.unlock();
+            }
+        }
+    }
+
+    private void checkClosed() throws PSQLException {
+        if (closed) {
+            throw new PSQLException("This connection has been closed.", PSQLState.CONNECTION_DOES_NOT_EXIST);
+        }
+    }
+
+    private static PSQLException autoCommitOnly() {
+        return new PSQLException(
+            "Multiplexed connections are always in auto-commit mode.", PSQLState.NOT_IMPLEMENTED);
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Callable statements are not supported by CrateDB");
+    }
+
+    @Override
+    public String nativeSQL(String sql) throws SQLException {
+        return execute(connection -> connection.nativeSQL(sql));
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        checkClosed();
+        if (!autoCommit) {
+            throw autoCommitOnly();
+        }
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        checkClosed();
+        return true;
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        checkClosed();
+        throw autoCommitOnly();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        checkClosed();
+        throw autoCommitOnly();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        SQLException failure = null;
+        for (Slot slot : slots) {
+            slot.lock.lock();
+            try {
+                CrateConnection connection = slot.connection;
+                slot.connection = null;
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            } finally {
+                slot.lock.unlock();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    /**
+     * @return the meta data of one of the physical connections, whose queries are not queued.
+     */
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return execute(Connection::getMetaData);
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        this.readOnly = readOnly;
+        applyToAll(connection -> {
+            connection.setReadOnly(readOnly);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        checkClosed();
+        return readOnly;
+    }
+
+    @Override
+    public void setCatalog(String catalog) throws SQLException {
+        checkClosed();
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return execute(Connection::getCatalog);
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        applyToAll(connection -> {
+            connection.setTransactionIsolation(level);
+            return null;
+        });
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return execute(Connection::getTransactionIsolation);
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        checkClosed();
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        checkClosed();
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return createStatement(resultSetType, resultSetConcurrency, ResultSet.CLOSE_CURSORS_AT_COMMIT);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+        throws SQLException {
+        return prepareStatement(sql, resultSetType, resultSetConcurrency, ResultSet.CLOSE_CURSORS_AT_COMMIT);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return prepareCall(sql);
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return execute(Connection::getTypeMap);
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Type maps are not supported by multiplexed connections");
+    }
+
+    @Override
+    public void setHoldability(int holdability) throws SQLException {
+        checkClosed();
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        checkClosed();
+        return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        checkClosed();
+        throw autoCommitOnly();
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        checkClosed();
+        throw autoCommitOnly();
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        checkClosed();
+        throw autoCommitOnly();
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        checkClosed();
+        throw autoCommitOnly();
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+        throws SQLException {
+        checkClosed();
+        return new MultiplexedStatement(this, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+        String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        checkClosed();
+        return new MultiplexedPreparedStatement(this, sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public CallableStatement prepareCall(
+        String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return prepareCall(sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS) {
+            throw generatedKeysNotSupported();
+        }
+        return prepareStatement(sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        throw generatedKeysNotSupported();
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        throw generatedKeysNotSupported();
+    }
+
+    static SQLFeatureNotSupportedException generatedKeysNotSupported() {
+        return new SQLFeatureNotSupportedException("Generated keys are not supported by multiplexed connections");
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return execute(Connection::createClob);
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return execute(Connection::createBlob);
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return execute(Connection::createNClob);
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return execute(Connection::createSQLXML);
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        if (timeout < 0) {
+            throw new PSQLException("Invalid timeout (" + timeout + "<0).", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        return !closed && execute(connection -> connection.isValid(timeout));
+    }
+
+    @Override
+    public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        // not supported by CrateDB, pgjdbc ignores it as well
+    }
+
+    @Override
+    public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        // not supported by CrateDB, pgjdbc ignores it as well
+    }
+
+    @Override
+    public String getClientInfo(String name) throws SQLException {
+        return execute(connection -> connection.getClientInfo(name));
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return execute(Connection::getClientInfo);
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        return execute(connection -> connection.createArrayOf(typeName, elements));
+    }
+
+    @Override
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        return execute(connection -> connection.createStruct(typeName, attributes));
+    }
+
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        this.schema = schema;
+        applyToAll(connection -> {
+            connection.setSchema(schema);
+            return null;
+        });
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        String current = schema;
+        return current != null ? current : execute(Connection::getSchema);
+    }
+
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        if (executor == null) {
+            throw new PSQLException("Executor must not be null.", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        executor.execute(() -> {
+            try {
+                close();
+            } catch (SQLException ignored) {
+                // the connections are abandoned anyway
+            }
+        });
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+        applyToAll(connection -> {
+            connection.setNetworkTimeout(executor, milliseconds);
+            return null;
+        });
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return execute(Connection::getNetworkTimeout);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new PSQLException(
+            String.format("Cannot unwrap to %s", iface.getName()), PSQLState.INVALID_PARAMETER_TYPE);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
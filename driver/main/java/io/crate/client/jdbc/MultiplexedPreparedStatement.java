@@ -0,0 +1,430 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Prepared statement of a {@link MultiplexedConnection}. The parameters are kept until an execution, which
+ * prepares the statement on the physical connection it borrowed and binds them there. pgjdbc reuses its
+ * server-side statement if the same SQL is prepared on that connection again.
+ */
+final class MultiplexedPreparedStatement extends MultiplexedStatement implements PreparedStatement {
+
+    private static final ParameterRow.Binder[] NO_PARAMETERS = new ParameterRow.Binder[0];
+
+    private final String sql;
+    private final List<ParameterRow.Binder[]> batch = new ArrayList<>();
+    private ParameterRow.Binder[] parameters = NO_PARAMETERS;
+
+    MultiplexedPreparedStatement(MultiplexedConnection connection,
+                                 String sql,
+                                 int resultSetType,
+                                 int resultSetConcurrency,
+                                 int resultSetHoldability) {
+        super(connection, resultSetType, resultSetConcurrency, resultSetHoldability);
+        this.sql = sql;
+    }
+
+    private void set(int parameterIndex, ParameterRow.Binder binder) throws SQLException {
+        checkClosed();
+        if (parameterIndex > parameters.length) {
+            parameters = Arrays.copyOf(parameters, Math.max(parameterIndex, parameters.length * 2));
+        }
+        parameters[parameterIndex - 1] = binder;
+    }
+
+    private static void bind(PreparedStatement statement, ParameterRow.Binder[] parameters) throws SQLException {
+        for (ParameterRow.Binder binder : parameters) {
+            if (binder != null) {
+                binder.bind(statement);
+            }
+        }
+    }
+
+    private <T> T executePrepared(Execution<CratePreparedStatement, T> execution) throws SQLException {
+        ParameterRow.Binder[] row = parameters;
+        return execute(
+            physical -> (CratePreparedStatement) physical.prepareStatement(sql),
+            statement -> {
+                bind(statement, row);
+                return execution.execute(statement);
+            });
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        executePrepared(CratePreparedStatement::execute);
+        return queryResult();
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        return executePrepared(CratePreparedStatement::executeUpdate);
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        return executePrepared(CratePreparedStatement::execute);
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        checkClosed();
+        batch.add(parameters.clone());
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        super.clearBatch();
+        batch.clear();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        checkClosed();
+        List<ParameterRow.Binder[]> rows = new ArrayList<>(batch);
+        batch.clear();
+        return execute(
+            physical -> (CratePreparedStatement) physical.prepareStatement(sql),
+            statement -> {
+                for (ParameterRow.Binder[] row : rows) {
+                    bind(statement, row);
+                    statement.addBatch();
+                }
+                return statement.executeBatch();
+            });
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        checkClosed();
+        parameters = NO_PARAMETERS;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        super.close();
+        batch.clear();
+        parameters = NO_PARAMETERS;
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        checkClosed();
+        return connection.execute(physical -> {
+            try (PreparedStatement statement = physical.prepareStatement(sql)) {
+                return statement.getMetaData();
+            }
+        });
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        checkClosed();
+        return connection.execute(physical -> {
+            try (PreparedStatement statement = physical.prepareStatement(sql)) {
+                return statement.getParameterMetaData();
+            }
+        });
+    }
+
+    /**
+     * See {@link CratePreparedStatement#setJson(int, byte[])}.
+     */
+    public void setJson(int parameterIndex, byte[] json) throws SQLException {
+        set(parameterIndex, s -> ((CratePreparedStatement) s).setJson(parameterIndex, json));
+    }
+
+    /**
+     * See {@link CratePreparedStatement#setJson(int, ByteBuffer)}.
+     */
+    public void setJson(int parameterIndex, ByteBuffer json) throws SQLException {
+        ByteBuffer value = json == null ? null : json.slice();
+        set(parameterIndex, s -> ((CratePreparedStatement) s).setJson(parameterIndex, value));
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        set(parameterIndex, s -> s.setNull(parameterIndex, sqlType));
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        set(parameterIndex, s -> s.setBoolean(parameterIndex, x));
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        set(parameterIndex, s -> s.setByte(parameterIndex, x));
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        set(parameterIndex, s -> s.setShort(parameterIndex, x));
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        set(parameterIndex, s -> s.setInt(parameterIndex, x));
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        set(parameterIndex, s -> s.setLong(parameterIndex, x));
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        set(parameterIndex, s -> s.setFloat(parameterIndex, x));
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        set(parameterIndex, s -> s.setDouble(parameterIndex, x));
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        set(parameterIndex, s -> s.setBigDecimal(parameterIndex, x));
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        set(parameterIndex, s -> s.setString(parameterIndex, x));
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        set(parameterIndex, s -> s.setBytes(parameterIndex, x));
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        set(parameterIndex, s -> s.setDate(parameterIndex, x));
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        set(parameterIndex, s -> s.setTime(parameterIndex, x));
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        set(parameterIndex, s -> s.setTimestamp(parameterIndex, x));
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        set(parameterIndex, s -> s.setAsciiStream(parameterIndex, x, length));
+    }
+
+    @Override
+    @Deprecated
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        set(parameterIndex, s -> s.setUnicodeStream(parameterIndex, x, length));
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        set(parameterIndex, s -> s.setBinaryStream(parameterIndex, x, length));
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        set(parameterIndex, s -> s.setObject(parameterIndex, x, targetSqlType));
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        set(parameterIndex, s -> s.setObject(parameterIndex, x));
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        set(parameterIndex, s -> s.setCharacterStream(parameterIndex, reader, length));
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        set(parameterIndex, s -> s.setRef(parameterIndex, x));
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        set(parameterIndex, s -> s.setBlob(parameterIndex, x));
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        set(parameterIndex, s -> s.setClob(parameterIndex, x));
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        set(parameterIndex, s -> s.setArray(parameterIndex, x));
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        set(parameterIndex, s -> s.setDate(parameterIndex, x, cal));
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        set(parameterIndex, s -> s.setTime(parameterIndex, x, cal));
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        set(parameterIndex, s -> s.setTimestamp(parameterIndex, x, cal));
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        set(parameterIndex, s -> s.setNull(parameterIndex, sqlType, typeName));
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        set(parameterIndex, s -> s.setURL(parameterIndex, x));
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        set(parameterIndex, s -> s.setRowId(parameterIndex, x));
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException {
+        set(parameterIndex, s -> s.setNString(parameterIndex, value));
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+        set(parameterIndex, s -> s.setNCharacterStream(parameterIndex, value, length));
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        set(parameterIndex, s -> s.setNClob(parameterIndex, value));
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        set(parameterIndex, s -> s.setClob(parameterIndex, reader, length));
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        set(parameterIndex, s -> s.setBlob(parameterIndex, inputStream, length));
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        set(parameterIndex, s -> s.setNClob(parameterIndex, reader, length));
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+        set(parameterIndex, s -> s.setSQLXML(parameterIndex, xmlObject));
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        set(parameterIndex, s -> s.setObject(parameterIndex, x, targetSqlType, scaleOrLength));
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        set(parameterIndex, s -> s.setAsciiStream(parameterIndex, x, length));
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        set(parameterIndex, s -> s.setBinaryStream(parameterIndex, x, length));
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        set(parameterIndex, s -> s.setCharacterStream(parameterIndex, reader, length));
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        set(parameterIndex, s -> s.setAsciiStream(parameterIndex, x));
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        set(parameterIndex, s -> s.setBinaryStream(parameterIndex, x));
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        set(parameterIndex, s -> s.setCharacterStream(parameterIndex, reader));
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+        set(parameterIndex, s -> s.setNCharacterStream(parameterIndex, value));
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        set(parameterIndex, s -> s.setClob(parameterIndex, reader));
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+        set(parameterIndex, s -> s.setBlob(parameterIndex, inputStream));
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        set(parameterIndex, s -> s.setNClob(parameterIndex, reader));
+    }
+}
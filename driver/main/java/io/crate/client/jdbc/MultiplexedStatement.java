@@ -0,0 +1,466 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statement of a {@link MultiplexedConnection}. Every execution borrows one of the physical connections, runs
+ * on a statement of it which is closed afterwards and copies the result into a {@link RowArena}, unless it is
+ * one already. The copy is moved into a {@link SpillFile} once it exceeds the spill threshold of the physical
+ * connection, or {@link #SPILL_THRESHOLD} if none is set, so that it does not double the heap needed for large
+ * results. pgjdbc still receives each result completely on the heap before it is copied.
+ * <p>
+ * {@link ResultSet#getStatement()} of its results returns this statement.
+ */
+class MultiplexedStatement implements Statement {
+
+    // the size in bytes after which a copied result is spilled if the physical connection sets no threshold
+    static final long SPILL_THRESHOLD = 64L << 20;
+
+    /**
+     * Creates the statement of a physical connection for one execution.
+     */
+    interface Factory<S extends CrateStatement> {
+        S create(CrateConnection connection) throws SQLException;
+    }
+
+    /**
+     * An execution on the statement of a physical connection.
+     */
+    interface Execution<S extends CrateStatement, T> {
+        T execute(S statement) throws SQLException;
+    }
+
+    final MultiplexedConnection connection;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int resultSetHoldability;
+    private final List<String> batch = new ArrayList<>();
+    // the statement of a physical connection while it executes, which is cancelled by cancel()
+    private volatile Statement executing;
+    private volatile boolean closed;
+    private ResultSet resultSet;
+    private long updateCount = -1;
+    private int maxRows;
+    private int maxFieldSize;
+    private int queryTimeout;
+    private int fetchSize;
+    private boolean escapeProcessing = true;
+    private boolean poolable;
+    private boolean closeOnCompletion;
+
+    MultiplexedStatement(MultiplexedConnection connection,
+                         int resultSetType,
+                         int resultSetConcurrency,
+                         int resultSetHoldability) {
+        this.connection = connection;
+        this.resultSetType = resultSetType;
+        this.resultSetConcurrency = resultSetConcurrency;
+        this.resultSetHoldability = resultSetHoldability;
+    }
+
+    /**
+     * Runs the execution on a new statement of one of the physical connections and keeps its result.
+     */
+    <S extends CrateStatement, T> T execute(Factory<S> factory, Execution<S, T> execution) throws SQLException {
+        checkClosed();
+        closeResultSet();
+        updateCount = -1;
+        return connection.execute(physical -> {
+            try (S statement = factory.create(physical)) {
+                statement.setMaxRows(maxRows);
+                statement.setMaxFieldSize(maxFieldSize);
+                statement.setQueryTimeout(queryTimeout);
+                statement.setFetchSize(fetchSize);
+                statement.setEscapeProcessing(escapeProcessing);
+                executing = statement;
+                try {
+                    T result = execution.execute(statement);
+                    ResultSet rs = statement.getResultSet();
+                    if (rs == null) {
+                        updateCount = statement.getUpdateCount();
+                    } else {
+                        // the rows have to be read before the connection is used by the next execution
+                        ArenaResultSet arena = rs instanceof ArenaResultSet
+                            ? (ArenaResultSet) rs
+                            : ArenaResultSet.load(
+                                statement, rs, spillingArena(physical, rs), physical.stringCacheSize());
+                        resultSet = arena.view(statement, this, resultSetType);
+                    }
+                    return result;
+                } finally {
+                    executing = null;
+                }
+            }
+        });
+    }
+
+    private static RowArena spillingArena(CrateConnection physical, ResultSet rs) throws SQLException {
+        long threshold = physical.spillThreshold() > 0 ? physical.spillThreshold() : SPILL_THRESHOLD;
+        return new RowArena(rs.getMetaData().getColumnCount(), 8192, threshold);
+    }
+
+    private <T> T executeStatement(Execution<CrateStatement, T> execution) throws SQLException {
+        // the rows are read completely anyway, so the physical statement never needs to scroll
+        return execute(physical -> (CrateStatement) physical.createStatement(), execution);
+    }
+
+    void checkClosed() throws PSQLException {
+        if (closed) {
+            throw new PSQLException("This statement has been closed.", PSQLState.OBJECT_NOT_IN_STATE);
+        }
+    }
+
+    private void closeResultSet() throws SQLException {
+        if (resultSet != null) {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+
+    ResultSet queryResult() throws SQLException {
+        if (resultSet == null) {
+            throw new PSQLException("No results were returned by the query.", PSQLState.NO_DATA);
+        }
+        return resultSet;
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        executeStatement(statement -> statement.execute(sql));
+        return queryResult();
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        return executeStatement(statement -> statement.executeUpdate(sql));
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        batch.clear();
+        closeResultSet();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        checkClosed();
+        return maxFieldSize;
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        checkClosed();
+        if (max < 0) {
+            throw new PSQLException(
+                "The maximum field size must be a value greater than or equal to 0.", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        maxFieldSize = max;
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        checkClosed();
+        return maxRows;
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        checkClosed();
+        if (max < 0) {
+            throw new PSQLException(
+                "Maximum number of rows must be a value grater than or equal to 0.", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        maxRows = max;
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        checkClosed();
+        escapeProcessing = enable;
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        checkClosed();
+        return queryTimeout;
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        checkClosed();
+        if (seconds < 0) {
+            throw new PSQLException(
+                "Query timeout must be a value greater than or equals to 0.", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        queryTimeout = seconds;
+    }
+
+    /**
+     * Cancels the execution of this statement if it is running, executions which are still queued are not
+     * affected.
+     */
+    @Override
+    public void cancel() throws SQLException {
+        Statement statement = executing;
+        if (statement != null) {
+            statement.cancel();
+        }
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        checkClosed();
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        checkClosed();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        checkClosed();
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return executeStatement(statement -> statement.execute(sql));
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        checkClosed();
+        return resultSet;
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        checkClosed();
+        return updateCount > Integer.MAX_VALUE ? Statement.SUCCESS_NO_INFO : (int) updateCount;
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        checkClosed();
+        return updateCount;
+    }
+
+    /**
+     * @return false, statements of CrateDB return a single result.
+     */
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return getMoreResults(Statement.CLOSE_CURRENT_RESULT);
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        checkClosed();
+        if (current != Statement.KEEP_CURRENT_RESULT) {
+            closeResultSet();
+        }
+        resultSet = null;
+        updateCount = -1;
+        return false;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        checkClosed();
+        if (direction != ResultSet.FETCH_FORWARD
+            && direction != ResultSet.FETCH_REVERSE
+            && direction != ResultSet.FETCH_UNKNOWN) {
+            throw new PSQLException("Invalid fetch direction constant: " + direction, PSQLState.INVALID_PARAMETER_VALUE);
+        }
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        checkClosed();
+        return ResultSet.FETCH_FORWARD;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        checkClosed();
+        if (rows < 0) {
+            throw new PSQLException("Fetch size must be a value greater to or equal to 0.", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        fetchSize = rows;
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        checkClosed();
+        return fetchSize;
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        checkClosed();
+        return resultSetConcurrency;
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        checkClosed();
+        return resultSetType;
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        checkClosed();
+        batch.add(sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        checkClosed();
+        batch.clear();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        checkClosed();
+        List<String> statements = new ArrayList<>(batch);
+        batch.clear();
+        return executeStatement(statement -> {
+            for (String sql : statements) {
+                statement.addBatch(sql);
+            }
+            return statement.executeBatch();
+        });
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkClosed();
+        return connection;
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        throw MultiplexedConnection.generatedKeysNotSupported();
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS) {
+            throw MultiplexedConnection.generatedKeysNotSupported();
+        }
+        return executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        throw MultiplexedConnection.generatedKeysNotSupported();
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        throw MultiplexedConnection.generatedKeysNotSupported();
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS) {
+            throw MultiplexedConnection.generatedKeysNotSupported();
+        }
+        return execute(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        throw MultiplexedConnection.generatedKeysNotSupported();
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        throw MultiplexedConnection.generatedKeysNotSupported();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        checkClosed();
+        return resultSetHoldability;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        checkClosed();
+        this.poolable = poolable;
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        checkClosed();
+        return poolable;
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        checkClosed();
+        closeOnCompletion = true;
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        checkClosed();
+        return closeOnCompletion;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new PSQLException(
+            String.format("Cannot unwrap to %s", iface.getName()), PSQLState.INVALID_PARAMETER_TYPE);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+/**
+ * The parameters of the rows of a prepared statement batch, stored in flat arrays which are reused for the
+ * next batch.
+ * <p>
+ * Numbers and booleans are stored as the bits of a {@code long}, strings, decimals and timestamps as they are.
+ * Only other values need a {@link ParameterRow.Binder}, so that binding a row of a batch usually allocates
+ * nothing but the values which the caller passed in already.
+ */
+final class ParameterBuffer {
+
+    static final byte UNSET = 0;
+    static final byte NULL = 1;
+    static final byte BOOLEAN = 2;
+    static final byte BYTE = 3;
+    static final byte SHORT = 4;
+    static final byte INT = 5;
+    static final byte LONG = 6;
+    static final byte FLOAT = 7;
+    static final byte DOUBLE = 8;
+    static final byte STRING = 9;
+    static final byte BIG_DECIMAL = 10;
+    static final byte TIMESTAMP = 11;
+    static final byte BINDER = 12;
+
+    private byte[] kinds;
+    private long[] values;
+    private Object[] objects;
+    private int size;
+    // the start of every row, followed by the end of the last row
+    private int[] rowOffsets = new int[9];
+    private int rows;
+
+    ParameterBuffer(int capacity) {
+        kinds = new byte[capacity];
+        values = new long[capacity];
+        objects = new Object[capacity];
+    }
+
+    /**
+     * Appends a row with the given parameters.
+     *
+     * @param width the number of parameters of the row.
+     * @return the index of the row.
+     */
+    int add(byte[] kinds, long[] values, Object[] objects, int width) {
+        if (size + width > this.kinds.length) {
+            int capacity = Math.max(this.kinds.length * 2, size + width);
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.objects = Arrays.copyOf(this.objects, capacity);
+        }
+        if (rows + 2 > rowOffsets.length) {
+            rowOffsets = Arrays.copyOf(rowOffsets, rowOffsets.length * 2);
+        }
+        System.arraycopy(kinds, 0, this.kinds, size, width);
+        System.arraycopy(values, 0, this.values, size, width);
+        System.arraycopy(objects, 0, this.objects, size, width);
+        size += width;
+        rows++;
+        rowOffsets[rows] = size;
+        return rows - 1;
+    }
+
+    /**
+     * @return a buffer with a copy of the given row only, which is not affected by {@link #clear()}.
+     */
+    ParameterBuffer copy(int row) {
+        int offset = rowOffsets[row];
+        int width = rowOffsets[row + 1] - offset;
+        ParameterBuffer copy = new ParameterBuffer(width);
+        System.arraycopy(kinds, offset, copy.kinds, 0, width);
+        System.arraycopy(values, offset, copy.values, 0, width);
+        System.arraycopy(objects, offset, copy.objects, 0, width);
+        copy.size = width;
+        copy.rows = 1;
+        copy.rowOffsets[1] = width;
+        return copy;
+    }
+
+    /**
+     * Binds the parameters of the given row to the statement, whose parameters have been cleared.
+     */
+    void bind(int row, PreparedStatement statement) throws SQLException {
+        int offset = rowOffsets[row];
+        int end = rowOffsets[row + 1];
+        for (int i = offset; i < end; i++) {
+            bind(statement, i - offset + 1, kinds[i], values[i], objects[i]);
+        }
+    }
+
+    static void bind(PreparedStatement statement, int parameterIndex, byte kind, long value, Object object)
+        throws SQLException {
+        switch (kind) {
+            case UNSET:
+                break;
+            case NULL:
+                statement.setNull(parameterIndex, (int) value);
+                break;
+            case BOOLEAN:
+                statement.setBoolean(parameterIndex, value != 0);
+                break;
+            case BYTE:
+                statement.setByte(parameterIndex, (byte) value);
+                break;
+            case SHORT:
+                statement.setShort(parameterIndex, (short) value);
+                break;
+            case INT:
+                statement.setInt(parameterIndex, (int) value);
+                break;
+            case LONG:
+                statement.setLong(parameterIndex, value);
+                break;
+            case FLOAT:
+                statement.setFloat(parameterIndex, Float.intBitsToFloat((int) value));
+                break;
+            case DOUBLE:
+                statement.setDouble(parameterIndex, Double.longBitsToDouble(value));
+                break;
+            case STRING:
+                statement.setString(parameterIndex, (String) object);
+                break;
+            case BIG_DECIMAL:
+                statement.setBigDecimal(parameterIndex, (BigDecimal) object);
+                break;
+            case TIMESTAMP:
+                statement.setTimestamp(parameterIndex, (Timestamp) object);
+                break;
+            case BINDER:
+                ((ParameterRow.Binder) object).bind(statement);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown parameter kind " + kind);
+        }
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * Discards all rows and keeps the arrays for the next batch.
+     */
+    void clear() {
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+        rows = 0;
+    }
+}
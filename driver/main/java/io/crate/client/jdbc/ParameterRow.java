@@ -0,0 +1,79 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * The parameters of one row of a prepared statement batch, which can be bound again to
+ * retry the row.
+ */
+final class ParameterRow {
+
+    /**
+     * Binds a single parameter value to a statement.
+     */
+    interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    private final ParameterBuffer buffer;
+    private final int row;
+    private final long bytes;
+
+    ParameterRow(ParameterBuffer buffer, int row, long bytes) {
+        this.buffer = buffer;
+        this.row = row;
+        this.bytes = bytes;
+    }
+
+    /**
+     * A row whose parameters are bound by the given binders, one per parameter.
+     */
+    ParameterRow(Binder[] binders, long bytes) {
+        this(new ParameterBuffer(binders.length), 0, bytes);
+        byte[] kinds = new byte[binders.length];
+        for (int i = 0; i < binders.length; i++) {
+            kinds[i] = binders[i] == null ? ParameterBuffer.UNSET : ParameterBuffer.BINDER;
+        }
+        buffer.add(kinds, new long[binders.length], binders, binders.length);
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return a copy of this row if it is stored in the given buffer, which stays valid once that buffer is
+     * reused, this row otherwise.
+     */
+    ParameterRow detachFrom(ParameterBuffer shared) {
+        return buffer == shared ? new ParameterRow(buffer.copy(row), 0, bytes) : this;
+    }
+
+    void bind(PreparedStatement statement) throws SQLException {
+        statement.clearParameters();
+        buffer.bind(row, statement);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Rough estimation of the number of bytes a parameter value occupies on the wire.
+ * <p>
+ * pgjdbc sends parameters in text format, so values are estimated by the length of their
+ * text representation. The estimation only has to be good enough to keep the size of a
+ * batch in bounds, it is not meant to be exact.
+ */
+final class PayloadSize {
+
+    private static final int TEMPORAL = 32;
+    private static final int UNKNOWN = 16;
+
+    private PayloadSize() {
+    }
+
+    static long of(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            // bytea is sent hex encoded
+            return 2L + 2L * ((byte[]) value).length;
+        }
+        if (value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof Number) {
+            return value instanceof Integer || value instanceof Short || value instanceof Byte ? 11 : 24;
+        }
+        if (value instanceof java.util.Date || value instanceof java.time.temporal.Temporal) {
+            return TEMPORAL;
+        }
+        if (value instanceof Map) {
+            long bytes = 2;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += of(entry.getKey()) + of(entry.getValue()) + 4;
+            }
+            return bytes;
+        }
+        if (value instanceof Collection) {
+            long bytes = 2;
+            for (Object element : (Collection<?>) value) {
+                bytes += of(element) + 1;
+            }
+            return bytes;
+        }
+        if (value instanceof Object[]) {
+            long bytes = 2;
+            for (Object element : (Object[]) value) {
+                bytes += of(element) + 1;
+            }
+            return bytes;
+        }
+        if (value instanceof Array) {
+            try {
+                return of(((Array) value).getArray());
+            } catch (SQLException e) {
+                return UNKNOWN;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.PGResultSetMetaData;
+import org.postgresql.core.Oid;
+import org.postgresql.jdbc.PgResultSet;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * {@link RawRow} of a {@link PgResultSet}, which reads the received values of the current row
+ * directly from the result set.
+ * <p>
+ * pgjdbc receives every value into an array of its own, so the offset of a value is always 0.
+ */
+final class PgRawRow implements RawRow {
+
+    private static final MethodHandle THIS_ROW = thisRowGetter();
+    private static final MethodHandle CHECK_RESULT_SET = checkResultSet();
+
+    private final PgResultSet rs;
+    private final int[] formats;
+    private final boolean[] bytea;
+
+    private static MethodHandle thisRowGetter() {
+        try {
+            Field field = PgResultSet.class.getDeclaredField("this_row");
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(field);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // not accessible, fall back to the public API
+            return null;
+        }
+    }
+
+    /**
+     * {@code checkResultSet} validates the cursor and the column and sets the {@code wasNull} flag.
+     */
+    private static MethodHandle checkResultSet() {
+        try {
+            Method method = PgResultSet.class.getDeclaredMethod("checkResultSet", int.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the values are read from the row of the result set, false if they are copied.
+     */
+    static boolean readsRowDirectly() {
+        return THIS_ROW != null && CHECK_RESULT_SET != null;
+    }
+
+    PgRawRow(PgResultSet rs) throws SQLException {
+        this.rs = rs;
+        PGResultSetMetaData metaData = rs.getMetaData().unwrap(PGResultSetMetaData.class);
+        int columnCount = rs.getMetaData().getColumnCount();
+        formats = new int[columnCount];
+        bytea = new boolean[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            formats[i] = metaData.getFormat(i + 1);
+            bytea[i] = rs.getColumnOID(i + 1) == Oid.BYTEA;
+        }
+    }
+
+    @Override
+    public int getColumnCount() {
+        return formats.length;
+    }
+
+    @Override
+    public boolean isBinary(int columnIndex) throws SQLException {
+        checkColumnIndex(columnIndex);
+        return formats[columnIndex - 1] == 1;
+    }
+
+    @Override
+    public byte[] getRawArray(int columnIndex) throws SQLException {
+        checkColumnIndex(columnIndex);
+        if (readsRowDirectly()) {
+            try {
+                CHECK_RESULT_SET.invokeExact(rs, columnIndex);
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new PSQLException("Unable to read the current row", PSQLState.UNEXPECTED_ERROR, t);
+            }
+            return thisRow()[columnIndex - 1];
+        }
+        if (bytea[columnIndex - 1] && formats[columnIndex - 1] == 0) {
+            // getBytes would decode the escaped text representation
+            String value = rs.getString(columnIndex);
+            return value == null ? null : value.getBytes(StandardCharsets.US_ASCII);
+        }
+        return rs.getBytes(columnIndex);
+    }
+
+    @Override
+    public int getRawOffset(int columnIndex) throws SQLException {
+        checkColumnIndex(columnIndex);
+        return 0;
+    }
+
+    /**
+     * Reads the row without {@code checkResultSet}, so that it only runs once if the array is read as well.
+     */
+    @Override
+    public int getRawLength(int columnIndex) throws SQLException {
+        byte[] value;
+        if (readsRowDirectly()) {
+            checkColumnIndex(columnIndex);
+            value = thisRow()[columnIndex - 1];
+        } else {
+            value = getRawArray(columnIndex);
+        }
+        return value == null ? -1 : value.length;
+    }
+
+    /**
+     * Checks the cursor and the column only once per value, as the offset is always 0.
+     */
+    @Override
+    public ByteBuffer getRawValue(int columnIndex) throws SQLException {
+        byte[] array = getRawArray(columnIndex);
+        return array == null ? null : ByteBuffer.wrap(array).asReadOnlyBuffer();
+    }
+
+    private byte[][] thisRow() throws SQLException {
+        byte[][] row;
+        try {
+            row = (byte[][]) THIS_ROW.invokeExact(rs);
+        } catch (Throwable t) {
+            throw new PSQLException("Unable to read the current row", PSQLState.UNEXPECTED_ERROR, t);
+        }
+        if (row == null) {
+            throw new PSQLException(
+                "ResultSet not positioned properly, perhaps you need to call next.", PSQLState.INVALID_CURSOR_STATE);
+        }
+        return row;
+    }
+
+    private void checkColumnIndex(int columnIndex) throws PSQLException {
+        if (columnIndex < 1 || columnIndex > formats.length) {
+            throw new PSQLException(
+                String.format("The column index is out of range: %d, number of columns: %d.", columnIndex, formats.length),
+                PSQLState.INVALID_PARAMETER_VALUE);
+        }
+    }
+}
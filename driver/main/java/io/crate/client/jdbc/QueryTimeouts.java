@@ -0,0 +1,291 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Cancels statements which exceed their query timeout, shared by all connections of the process.
+ * <p>
+ * pgjdbc schedules a task on a {@link java.util.Timer} for every execution with a timeout. Here the timeouts
+ * are kept in a hashed timing wheel instead: scheduling and cancelling a timeout only enqueues it, and a single
+ * thread moves it into its slot and expires it, with a resolution of one tick.
+ * <p>
+ * Every cancel request still opens a new connection, as the protocol requires. The requests are sent by
+ * {@link #MAX_CONCURRENT_CANCELS} threads only, so that many timeouts which expire at once open at most that many
+ * connections at the same time to a cluster which is slow already. The other requests wait in the queue of the
+ * threads, which holds at most one request per execution that is still running: a request whose execution
+ * returned before it was sent is dropped.
+ */
+final class QueryTimeouts {
+
+    static final int MAX_CONCURRENT_CANCELS = 4;
+
+    static final QueryTimeouts GLOBAL = new QueryTimeouts(
+        () -> System.nanoTime() / 1_000_000,
+        100,
+        512,
+        Executors.newFixedThreadPool(MAX_CONCURRENT_CANCELS, DaemonThreads.named("crate-query-cancel")),
+        true);
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    // the cancel request is queued
+    private static final int EXPIRED = 2;
+    // the cancel request is being sent or has been sent
+    private static final int CANCELLING = 3;
+
+    private final LongSupplier clock;
+    private final long tickMillis;
+    private final Timeout[] slots;
+    private final int mask;
+    private final Executor cancels;
+    private final boolean background;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final long origin;
+    // only accessed by the thread which expires the timeouts
+    private long tick;
+
+    /**
+     * @param slots      the number of slots of the wheel, a power of two.
+     * @param background whether a daemon thread expires the timeouts, otherwise {@link #expire()} has to be called.
+     */
+    QueryTimeouts(LongSupplier clock, long tickMillis, int slots, Executor cancels, boolean background) {
+        assert Integer.bitCount(slots) == 1 : "the number of slots must be a power of two";
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.slots = new Timeout[slots];
+        this.mask = slots - 1;
+        this.cancels = cancels;
+        this.background = background;
+        this.origin = clock.getAsLong();
+    }
+
+    /**
+     * A scheduled timeout, which is linked into the list of its slot.
+     */
+    static final class Timeout implements Runnable {
+
+        private final QueryTimeouts timeouts;
+        private final Statement statement;
+        private final long deadlineTick;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // the following fields are only accessed by the thread which expires the timeouts
+        private long rounds;
+        private int slot = -1;
+        private Timeout previous;
+        private Timeout next;
+        // set once the statement has been cancelled, guarded by this
+        private boolean done;
+
+        private Timeout(QueryTimeouts timeouts, Statement statement, long deadlineTick) {
+            this.timeouts = timeouts;
+            this.statement = statement;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Called once the execution returned.
+         *
+         * @return false if the timeout expired and the statement has been cancelled.
+         */
+        boolean cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                timeouts.cancelled.add(this);
+                return true;
+            }
+            if (state.compareAndSet(EXPIRED, CANCELLED)) {
+                // the queued cancel request is dropped
+                return true;
+            }
+            // the cancel request must not hit the next execution of the statement
+            awaitCancelled();
+            return false;
+        }
+
+        /**
+         * @return true if the statement is being cancelled or has been cancelled because of the timeout.
+         */
+        boolean hasExpired() {
+            return state.get() == CANCELLING;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(EXPIRED, CANCELLING)) {
+                // the execution returned while the request was queued
+                return;
+            }
+            try {
+                statement.cancel();
+            } catch (SQLException ignored) {
+                // the execution returns anyway
+            } finally {
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized void awaitCancelled() {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Cancels the given statement once the timeout passed, unless the returned timeout is cancelled before.
+     */
+    Timeout schedule(Statement statement, long timeoutMillis) {
+        if (background && started.compareAndSet(false, true)) {
+            DaemonThreads.named("crate-query-timeouts").newThread(this::run).start();
+        }
+        long deadline = clock.getAsLong() - origin + timeoutMillis;
+        // round up, so that a timeout never expires early
+        Timeout timeout = new Timeout(this, statement, (deadline + tickMillis - 1) / tickMillis);
+        added.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (true) {
+            long sleep = (tick + 1) * tickMillis - (clock.getAsLong() - origin);
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException ignored) {
+                    // the thread of the shared instance runs as long as the process
+                }
+            }
+            expire();
+        }
+    }
+
+    /**
+     * Expires the timeouts of all ticks which passed since the last call.
+     */
+    void expire() {
+        long now = (clock.getAsLong() - origin) / tickMillis;
+        while (tick <= now) {
+            transferAdded();
+            removeCancelled();
+            expireSlot((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != PENDING) {
+                continue;
+            }
+            // timeouts whose deadline passed already expire with the current tick
+            long deadlineTick = Math.max(timeout.deadlineTick, tick);
+            timeout.rounds = (deadlineTick - tick) / slots.length;
+            link(timeout, (int) (deadlineTick & mask));
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.slot >= 0) {
+                unlink(timeout);
+            }
+        }
+    }
+
+    private void expireSlot(int slot) {
+        Timeout timeout = slots[slot];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds <= 0) {
+                unlink(timeout);
+                if (timeout.state.compareAndSet(PENDING, EXPIRED)) {
+                    cancels.execute(timeout);
+                }
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private void link(Timeout timeout, int slot) {
+        Timeout head = slots[slot];
+        timeout.slot = slot;
+        timeout.next = head;
+        if (head != null) {
+            head.previous = timeout;
+        }
+        slots[slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.previous == null) {
+            slots[timeout.slot] = timeout.next;
+        } else {
+            timeout.previous.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.slot = -1;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    /**
+     * @return the number of timeouts which are in the wheel, not counting the ones which have just been scheduled.
+     */
+    int size() {
+        int size = 0;
+        for (Timeout head : slots) {
+            for (Timeout timeout = head; timeout != null; timeout = timeout.next) {
+                size++;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.jdbc.PgResultSet;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Low level access to the values of the current row of a result set, exactly as they were
+ * received from CrateDB and without decoding or copying them.
+ * <p>
+ * A value is described by the array holding it, its offset and its length. Whether it is in the
+ * text or the binary format of the PostgreSQL wire protocol is told by {@link #isBinary(int)}.
+ * Neither the array nor the buffers returned by {@link #getRawValue(int)} must be modified and
+ * they are only valid until the cursor of the result set is moved.
+ * <pre>
+ *     RawRow row = RawRow.of(resultSet);
+ *     while (resultSet.next()) {
+ *         producer.send(row.getRawValue(1));
+ *     }
+ * </pre>
+ */
+public interface RawRow {
+
+    /**
+     * @return the raw row view of the result set, which must be a result set of this driver.
+     */
+    static RawRow of(ResultSet rs) throws SQLException {
+        if (rs.isWrapperFor(RawRow.class)) {
+            return rs.unwrap(RawRow.class);
+        }
+        if (rs.isWrapperFor(PgResultSet.class)) {
+            return new PgRawRow(rs.unwrap(PgResultSet.class));
+        }
+        throw new PSQLException("Raw rows are only available for result sets of CrateDB", PSQLState.WRONG_OBJECT_TYPE);
+    }
+
+    int getColumnCount() throws SQLException;
+
+    /**
+     * @return true if the value of the column is in binary format, false if it is in text format.
+     */
+    boolean isBinary(int columnIndex) throws SQLException;
+
+    /**
+     * Like the getters of the result set, this updates {@link ResultSet#wasNull()}. The array must not be
+     * modified, and it may be reused for the value of the same column once the result set is moved.
+     *
+     * @return the array holding the value, null if the value is NULL.
+     */
+    byte[] getRawArray(int columnIndex) throws SQLException;
+
+    /**
+     * @return the offset of the value within {@link #getRawArray(int)}.
+     */
+    int getRawOffset(int columnIndex) throws SQLException;
+
+    /**
+     * @return the length of the value in bytes, -1 if the value is NULL.
+     */
+    int getRawLength(int columnIndex) throws SQLException;
+
+    /**
+     * @return a read-only buffer containing the value, null if the value is NULL.
+     */
+    default ByteBuffer getRawValue(int columnIndex) throws SQLException {
+        byte[] array = getRawArray(columnIndex);
+        if (array == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(array, getRawOffset(columnIndex), getRawLength(columnIndex)).slice().asReadOnlyBuffer();
+    }
+}
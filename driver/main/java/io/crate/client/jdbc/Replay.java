@@ -0,0 +1,341 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides which queries may be executed once more on another host after their connection broke.
+ */
+final class Replay {
+
+    // marks a token which was a quoted identifier, so that it is never taken for a keyword
+    private static final char QUOTED = '"';
+    // stands for everything within a pair of parentheses
+    private static final String PARENTHESES = "()";
+    // clauses after which a query may have more rows than the table it reads, or after which the table ends
+    private static final Set<String> NOT_A_SCAN = new HashSet<>(Arrays.asList(
+        "distinct", "join", "group", "having", "window", "union", "intersect", "except", "unnest"));
+
+    private Replay() {
+    }
+
+    /**
+     * @return true if the query is a single statement which only reads data, so that executing it again has
+     * no other effect than returning the rows again.
+     */
+    static boolean isReadOnly(String sql) {
+        int start = skipComments(sql);
+        int end = sql.length();
+        while (end > start && (sql.charAt(end - 1) == ';' || Character.isWhitespace(sql.charAt(end - 1)))) {
+            end--;
+        }
+        // a semicolon inside a string literal makes the query look like multiple statements, which is safe
+        if (sql.lastIndexOf(';', end - 1) >= start) {
+            return false;
+        }
+        int keywordEnd = start;
+        while (keywordEnd < end && Character.isLetter(sql.charAt(keywordEnd))) {
+            keywordEnd++;
+        }
+        switch (sql.substring(start, keywordEnd).toLowerCase(Locale.ENGLISH)) {
+            case "select":
+            case "values":
+            case "with":
+            case "show":
+            case "explain":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the query is a single statement which only reads data and which a cursor can be declared
+     * for, which excludes {@code SHOW} and {@code EXPLAIN}.
+     */
+    static boolean isCursorQuery(String sql) {
+        if (!isReadOnly(sql)) {
+            return false;
+        }
+        int start = skipComments(sql);
+        return !sql.regionMatches(true, start, "show", 0, 4) && !sql.regionMatches(true, start, "explain", 0, 7);
+    }
+
+    /**
+     * A query which reads a single table and sorts its rows in the outermost ORDER BY clause, so that rows which
+     * have already been read can be skipped when it is executed once more, if the sort keys are unique.
+     */
+    static final class SortedScan {
+
+        private final String schema;
+        private final String table;
+        private final List<String> keys;
+
+        SortedScan(String schema, String table, List<String> keys) {
+            this.schema = schema;
+            this.table = table;
+            this.keys = keys;
+        }
+
+        List<String> keys() {
+            return keys;
+        }
+
+        /**
+         * Looks up the primary key of the table with a query on the given connection, as CrateDB's hidden
+         * {@code _id} column is the only other unique key.
+         *
+         * @return true if the sort keys contain the {@code _id} column or all columns of the primary key.
+         */
+        boolean hasUniqueKeys(Connection connection) throws SQLException {
+            if (keys.contains("_id")) {
+                return true;
+            }
+            String sql = "SELECT column_name FROM information_schema.key_column_usage WHERE table_name = ? AND "
+                + (schema == null ? "table_schema = current_schema()" : "table_schema = ?");
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, table);
+                if (schema != null) {
+                    statement.setString(2, schema);
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    boolean hasPrimaryKey = false;
+                    while (rs.next()) {
+                        if (!keys.contains(rs.getString(1))) {
+                            return false;
+                        }
+                        hasPrimaryKey = true;
+                    }
+                    return hasPrimaryKey;
+                }
+            }
+        }
+    }
+
+    /**
+     * Recognizes {@code SELECT ... FROM table [alias] [WHERE ...] ORDER BY column [, ...] [LIMIT ...]}, with sort
+     * keys that are plain columns of the table. ORDER BY clauses of subqueries and window functions are ignored.
+     *
+     * @return the table and the sort keys, null if the query is not a sorted scan of a single table.
+     */
+    static SortedScan sortedScan(String sql) {
+        List<String> tokens = topLevelTokens(sql);
+        if (tokens.isEmpty() || !tokens.get(0).equals("select")) {
+            return null;
+        }
+        for (String token : tokens) {
+            if (NOT_A_SCAN.contains(token)) {
+                return null;
+            }
+        }
+        int from = tokens.indexOf("from");
+        int orderBy = tokens.lastIndexOf("order");
+        if (from < 0 || orderBy <= from + 1 || orderBy + 1 == tokens.size() || !tokens.get(orderBy + 1).equals("by")) {
+            return null;
+        }
+        // FROM [schema.]table [[AS] alias] followed by WHERE or ORDER BY
+        int i = from + 1;
+        String schema = null;
+        String table = name(tokens, i++);
+        if (table != null && i + 1 < orderBy && tokens.get(i).equals(".")) {
+            schema = table;
+            table = name(tokens, i + 1);
+            i += 2;
+        }
+        if (table == null) {
+            return null;
+        }
+        if (tokens.get(i).equals("as")) {
+            i++;
+        }
+        if (i < orderBy && !tokens.get(i).equals("where") && name(tokens, i) != null) {
+            i++;
+        }
+        if (i < orderBy && !tokens.get(i).equals("where")) {
+            return null;
+        }
+        List<String> keys = sortKeys(tokens, orderBy + 2);
+        if (keys == null || isAlias(tokens.subList(1, from), keys)) {
+            return null;
+        }
+        return new SortedScan(schema, table, keys);
+    }
+
+    /**
+     * @return the columns of an ORDER BY clause, null if a sort key is not a plain column.
+     */
+    private static List<String> sortKeys(List<String> tokens, int start) {
+        List<String> keys = new ArrayList<>();
+        int i = start;
+        while (i < tokens.size()) {
+            String key = name(tokens, i++);
+            if (key == null) {
+                return null;
+            }
+            // a column qualified with the table or its alias
+            if (i + 1 < tokens.size() && tokens.get(i).equals(".")) {
+                key = name(tokens, i + 1);
+                if (key == null) {
+                    return null;
+                }
+                i += 2;
+            }
+            keys.add(key);
+            if (i < tokens.size() && (tokens.get(i).equals("asc") || tokens.get(i).equals("desc"))) {
+                i++;
+            }
+            if (i + 1 < tokens.size() && tokens.get(i).equals("nulls")) {
+                i += 2;
+            }
+            if (i == tokens.size() || tokens.get(i).equals("limit") || tokens.get(i).equals("offset")) {
+                return keys;
+            }
+            if (!tokens.get(i++).equals(",")) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if one of the keys is an alias of the select list, which may stand for any expression.
+     */
+    private static boolean isAlias(List<String> selectList, List<String> keys) {
+        for (int i = 1; i < selectList.size(); i++) {
+            String previous = selectList.get(i - 1);
+            String alias = name(selectList, i);
+            if (alias != null && keys.contains(alias) && !previous.equals(",") && !previous.equals(".")
+                && (i + 1 == selectList.size() || selectList.get(i + 1).equals(","))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the identifier at the given position, null if it is a symbol or out of range.
+     */
+    private static String name(List<String> tokens, int index) {
+        if (index >= tokens.size()) {
+            return null;
+        }
+        String token = tokens.get(index);
+        if (token.charAt(0) == QUOTED) {
+            return token.substring(1);
+        }
+        char first = token.charAt(0);
+        return Character.isLetter(first) || first == '_' ? token : null;
+    }
+
+    /**
+     * Splits the query into lower cased words and symbols, without comments and string literals. Everything
+     * within parentheses is replaced by a single {@value #PARENTHESES} token.
+     */
+    private static List<String> topLevelTokens(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int depth = 0;
+        int i = 0;
+        int length = sql.length();
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (sql.startsWith("--", i)) {
+                int newLine = sql.indexOf('\n', i);
+                i = newLine < 0 ? length : newLine + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int close = sql.indexOf("*/", i + 2);
+                i = close < 0 ? length : close + 2;
+            } else if (c == '\'' || c == '"') {
+                int end = i + 1;
+                StringBuilder quoted = new StringBuilder().append(QUOTED);
+                while (end < length) {
+                    if (sql.charAt(end) == c) {
+                        if (end + 1 < length && sql.charAt(end + 1) == c) {
+                            end++;
+                        } else {
+                            break;
+                        }
+                    }
+                    quoted.append(sql.charAt(end++));
+                }
+                if (depth == 0 && c == '"') {
+                    tokens.add(quoted.toString());
+                } else if (depth == 0) {
+                    tokens.add("''");
+                }
+                i = end + 1;
+            } else if (c == '(') {
+                if (depth++ == 0) {
+                    tokens.add(PARENTHESES);
+                }
+                i++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+                i++;
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                int end = i + 1;
+                while (end < length && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_')) {
+                    end++;
+                }
+                if (depth == 0) {
+                    tokens.add(sql.substring(i, end).toLowerCase(Locale.ENGLISH));
+                }
+                i = end;
+            } else {
+                if (depth == 0 && !Character.isWhitespace(c) && c != ';') {
+                    tokens.add(String.valueOf(c));
+                }
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int skipComments(String sql) {
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == '(') {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int newLine = sql.indexOf('\n', i);
+                i = newLine < 0 ? sql.length() : newLine + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int close = sql.indexOf("*/", i + 2);
+                i = close < 0 ? sql.length() : close + 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+}
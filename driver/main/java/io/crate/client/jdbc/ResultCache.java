@@ -0,0 +1,272 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Results of read-only queries, shared by all open connections to the same hosts and database as the same user
+ * which have the same cache size. The cache is discarded once the last of these connections is closed.
+ * <p>
+ * Entries expire after the time to live of the connection which looks them up, and the least recently used
+ * entries are evicted once the estimated size of all entries exceeds the limit. A write through any of the
+ * connections to the same hosts and database as the same user removes the entries of queries which mention the
+ * written table from all of their caches, or all entries if the table is not known.
+ * <p>
+ * Entries are {@link ArenaResultSet#detach() detached} from the statement and connection which received them.
+ */
+final class ResultCache {
+
+    // the caches of the open connections by data source and cache size, guarded by itself
+    private static final Map<String, Map<Long, ResultCache>> CACHES = new HashMap<>();
+
+    private static final String IDENTIFIER = "(?:\"(?:[^\"]|\"\")+\"|[\\w$]+)";
+    private static final Pattern WRITTEN_TABLE = Pattern.compile(
+        "^\\s*(?:insert\\s+into|update|delete\\s+from|copy"
+        + "|(?:drop|alter|refresh|optimize)\\s+table(?:\\s+if\\s+exists)?)"
+        + "\\s+(?:" + IDENTIFIER + "\\.)?(" + IDENTIFIER + ")",
+        Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Identifies a result by the query, its parameters and everything else which changes the rows.
+     */
+    static final class Key {
+
+        private final String schema;
+        private final String sql;
+        private final int maxRows;
+        private final Object[] parameters;
+
+        Key(String schema, String sql, int maxRows, Object[] parameters) {
+            this.schema = schema;
+            this.sql = sql;
+            this.maxRows = maxRows;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return maxRows == key.maxRows
+                   && sql.equals(key.sql)
+                   && Objects.equals(schema, key.schema)
+                   && Arrays.deepEquals(parameters, key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * sql.hashCode() + Objects.hashCode(schema)) + Arrays.deepHashCode(parameters) + maxRows;
+        }
+    }
+
+    private static final class Entry {
+
+        private final ArenaResultSet result;
+        private final long bytes;
+        private final long createdNanos;
+
+        Entry(ArenaResultSet result, long bytes, long createdNanos) {
+            this.result = result;
+            this.bytes = bytes;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    // null if the cache is not shared by connections
+    private final String dataSource;
+    private final long maxBytes;
+    // the connections which use the cache, guarded by CACHES
+    private int connections;
+    // in access order, so that the eldest entry is the least recently used one
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    // incremented by every write, results of queries which ran concurrently to a write are not cached
+    private long generation;
+
+    ResultCache(long maxBytes) {
+        this(null, maxBytes);
+    }
+
+    private ResultCache(String dataSource, long maxBytes) {
+        this.dataSource = dataSource;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cache for a connection, which must {@link #release()} it once it is closed.
+     *
+     * @param dataSource identifies the hosts, database and user of a connection.
+     * @param maxBytes   the size of the cache.
+     */
+    static ResultCache of(String dataSource, long maxBytes) {
+        synchronized (CACHES) {
+            ResultCache cache = CACHES.computeIfAbsent(dataSource, k -> new HashMap<>())
+                .computeIfAbsent(maxBytes, size -> new ResultCache(dataSource, size));
+            cache.connections++;
+            return cache;
+        }
+    }
+
+    /**
+     * Called by a connection which got the cache from {@link #of(String, long)} once it is closed. The cache is
+     * discarded with its last connection.
+     */
+    void release() {
+        synchronized (CACHES) {
+            if (dataSource == null || --connections > 0) {
+                return;
+            }
+            Map<Long, ResultCache> caches = CACHES.get(dataSource);
+            caches.remove(maxBytes);
+            if (caches.isEmpty()) {
+                CACHES.remove(dataSource);
+            }
+        }
+    }
+
+    static int openCaches() {
+        synchronized (CACHES) {
+            return CACHES.values().stream().mapToInt(Map::size).sum();
+        }
+    }
+
+    /**
+     * @return the cached result, null if there is none or it is older than the given time to live.
+     */
+    synchronized ArenaResultSet get(Key key, long ttlNanos) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.createdNanos > ttlNanos) {
+            remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches the result of a query which started at the given {@link #generation()}, unless a write happened
+     * meanwhile or the result is too large.
+     */
+    synchronized void put(Key key, ArenaResultSet result, long startGeneration) {
+        long resultBytes = result.retainedBytes();
+        if (startGeneration != generation || resultBytes > maxBytes) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(result, resultBytes, System.nanoTime()));
+        bytes += resultBytes;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Removes the results which may have been changed by the given statement from this cache and the caches of
+     * the same data source, all results if it is null.
+     */
+    void invalidate(String sql) {
+        List<ResultCache> caches;
+        synchronized (CACHES) {
+            Map<Long, ResultCache> bySize = dataSource == null ? null : CACHES.get(dataSource);
+            caches = bySize == null ? List.of(this) : new ArrayList<>(bySize.values());
+        }
+        for (ResultCache cache : caches) {
+            cache.invalidateEntries(sql);
+        }
+    }
+
+    private synchronized void invalidateEntries(String sql) {
+        generation++;
+        String table = sql == null ? null : writtenTable(sql);
+        if (table == null) {
+            entries.clear();
+            bytes = 0;
+            return;
+        }
+        Pattern mention = Pattern.compile(
+            "(?<![\\w$])\"?" + Pattern.quote(table) + "(?![\\w$])", Pattern.CASE_INSENSITIVE);
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (mention.matcher(entry.getKey().sql).find()) {
+                bytes -= entry.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the name of the table written by the given statement, without schema and quotes, null if it is
+     * not known.
+     */
+    static String writtenTable(String sql) {
+        Matcher matcher = WRITTEN_TABLE.matcher(sql);
+        if (!matcher.find()) {
+            return null;
+        }
+        String table = matcher.group(1);
+        if (table.startsWith("\"")) {
+            return table.substring(1, table.length() - 1).replace("\"\"", "\"");
+        }
+        return table.toLowerCase(Locale.ENGLISH);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+}
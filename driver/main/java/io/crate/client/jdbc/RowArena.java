@@ -0,0 +1,194 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.util.Arrays;
+
+/**
+ * Stores the values of many rows in one byte array, together with a table holding the offset and length of
+ * every value.
+ * <p>
+ * Compared to an array per value this keeps the number of objects constant, no matter how many
+ * rows and columns are stored. {@link #clear()} keeps the allocated arrays so that the arena can
+ * be reused for the next batch of rows.
+ * <p>
+ * If a spill threshold is set, the values are moved into a {@link SpillFile} once their size exceeds it, so
+ * that large results do not occupy the heap. Only the table of offsets stays on the heap then, and values
+ * are copied out of the file into a buffer of the reader when they are read.
+ */
+final class RowArena {
+
+    private static final int LENGTH_BITS = 31;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+    // values of a spilled arena may be stored at offsets up to 8 GiB
+    private static final long MAX_OFFSET = (1L << (64 - LENGTH_BITS)) - 1;
+
+    private final int columnCount;
+    private final long spillThreshold;
+    private byte[] data;
+    private int size;
+    private SpillFile spill;
+    // the offset of each value shifted by LENGTH_BITS, or-ed with its length + 1, which is 0 for NULL
+    private long[] cells;
+    private int cellCount;
+
+    RowArena(int columnCount, int initialCapacity) {
+        this(columnCount, initialCapacity, 0);
+    }
+
+    /**
+     * @param spillThreshold the size in bytes of the values after which they are moved into a temporary file,
+     *                       0 to keep them on the heap.
+     */
+    RowArena(int columnCount, int initialCapacity, long spillThreshold) {
+        this.columnCount = columnCount;
+        this.spillThreshold = spillThreshold;
+        this.data = new byte[Math.max(initialCapacity, 16)];
+        this.cells = new long[Math.max(columnCount, 1) * 16];
+    }
+
+    int columnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @return the number of complete rows.
+     */
+    int rowCount() {
+        return columnCount == 0 ? 0 : cellCount / columnCount;
+    }
+
+    /**
+     * @return the number of bytes allocated by the arena, including the values which were spilled to a file.
+     */
+    long capacity() {
+        return data.length + cells.length * 8L + (spill == null ? 0 : spill.size());
+    }
+
+    /**
+     * @return true if the values have been moved into a temporary file.
+     */
+    boolean isSpilled() {
+        return spill != null;
+    }
+
+    /**
+     * Adds the next value of the current row, a row is complete once a value was added for every column.
+     */
+    void add(byte[] value, int offset, int length) throws PSQLException {
+        if (spill == null && spillThreshold > 0 && (long) size + length > spillThreshold) {
+            spill = SpillFile.create();
+            spill.append(data, 0, size);
+            data = new byte[16];
+            size = 0;
+        }
+        if (spill != null) {
+            addCell(spill.append(value, offset, length), length);
+            return;
+        }
+        if (size + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+        }
+        System.arraycopy(value, offset, data, size, length);
+        addCell(size, length);
+        size += length;
+    }
+
+    void addNull() throws PSQLException {
+        addCell(0, -1);
+    }
+
+    private void addCell(long offset, int length) throws PSQLException {
+        if (offset > MAX_OFFSET) {
+            throw new PSQLException(
+                "The result is too large to be buffered, it exceeds " + MAX_OFFSET + " bytes",
+                PSQLState.OUT_OF_MEMORY);
+        }
+        if (cellCount == cells.length) {
+            cells = Arrays.copyOf(cells, cells.length * 2);
+        }
+        cells[cellCount] = offset << LENGTH_BITS | (length + 1L);
+        cellCount++;
+    }
+
+    /**
+     * @return the array holding the values, unless they were spilled, see {@link #array(int, int, byte[])}.
+     */
+    byte[] data() {
+        return data;
+    }
+
+    /**
+     * @param row    0-based row number
+     * @param column 0-based column number
+     * @return the offset of the value in {@link #data()}, unless the values were spilled.
+     */
+    int offset(int row, int column) {
+        return (int) (cells[row * columnCount + column] >>> LENGTH_BITS);
+    }
+
+    /**
+     * @return the length of the value, -1 for NULL.
+     */
+    int length(int row, int column) {
+        return (int) (cells[row * columnCount + column] & LENGTH_MASK) - 1;
+    }
+
+    /**
+     * @param buffer the array to copy the value into if it was spilled, a larger one is allocated if it is null
+     *               or too small. The arena can be read concurrently if every reader uses its own buffer.
+     * @return an array holding the value at {@link #arrayOffset(int, int)}, which is {@link #data()}, or the
+     * buffer the value was copied into if it was spilled.
+     */
+    byte[] array(int row, int column, byte[] buffer) {
+        if (spill == null) {
+            return data;
+        }
+        long cell = cells[row * columnCount + column];
+        int length = Math.max((int) (cell & LENGTH_MASK) - 1, 0);
+        if (buffer == null || buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer == null ? 64 : buffer.length * 2)];
+        }
+        spill.read(cell >>> LENGTH_BITS, buffer, 0, length);
+        return buffer;
+    }
+
+    int arrayOffset(int row, int column) {
+        return spill == null ? offset(row, column) : 0;
+    }
+
+    /**
+     * Discards all rows. The arrays are kept, a file the values were spilled to is deleted.
+     */
+    void clear() {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+        size = 0;
+        cellCount = 0;
+    }
+}
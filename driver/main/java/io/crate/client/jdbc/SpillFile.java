@@ -0,0 +1,199 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Cleaner;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-only storage in a temporary file, which holds the values of a {@link RowArena} once they exceed the
+ * spill threshold.
+ * <p>
+ * The file is mapped into memory in segments, so that the values are written and read back without a system
+ * call per value and the operating system decides which of them stay in memory. It is unmapped and deleted
+ * once it is closed, which happens at the latest when the storage is garbage collected.
+ */
+final class SpillFile {
+
+    private static final int SEGMENT_BITS = 26;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final Cleaner CLEANER = Cleaner.create();
+    // unmaps a buffer right away instead of once it is garbage collected, null if the JRE does not allow it
+    private static final MethodHandle UNMAP = unmapper();
+
+    private final Mapping mapping;
+    private final Cleaner.Cleanable cleanable;
+    private long size;
+
+    private SpillFile(FileChannel channel) {
+        this.mapping = new Mapping(channel);
+        this.cleanable = CLEANER.register(this, mapping);
+    }
+
+    /**
+     * The channel and the mapped segments of the file, which must not reference the storage, so that the
+     * storage can become unreachable. Unmaps the segments and closes the channel once it is run.
+     */
+    private static final class Mapping implements Runnable {
+
+        private final FileChannel channel;
+        private MappedByteBuffer[] segments = new MappedByteBuffer[4];
+
+        Mapping(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void run() {
+            MappedByteBuffer[] mapped = segments;
+            segments = new MappedByteBuffer[0];
+            if (UNMAP != null) {
+                for (MappedByteBuffer segment : mapped) {
+                    if (segment != null) {
+                        try {
+                            UNMAP.invokeExact((ByteBuffer) segment);
+                        } catch (Throwable ignored) {
+                            // unmapped once it is garbage collected
+                        }
+                    }
+                }
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // the file is deleted by the operating system at the latest
+            }
+        }
+    }
+
+    private static MethodHandle unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates an empty file in the directory of {@code java.io.tmpdir}.
+     */
+    static SpillFile create() throws PSQLException {
+        Path path = null;
+        try {
+            path = Files.createTempFile("crate-jdbc-", ".spill");
+            return new SpillFile(FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE));
+        } catch (IOException e) {
+            if (path != null) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException deleteFailure) {
+                    e.addSuppressed(deleteFailure);
+                }
+            }
+            throw new PSQLException("Cannot create a file to spill the rows of the result to", PSQLState.IO_ERROR, e);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return the position the value was written to.
+     */
+    long append(byte[] value, int offset, int length) throws PSQLException {
+        long position = size;
+        while (length > 0) {
+            int segmentOffset = (int) (size & (SEGMENT_SIZE - 1));
+            MappedByteBuffer segment = segment((int) (size >>> SEGMENT_BITS));
+            int n = Math.min(length, SEGMENT_SIZE - segmentOffset);
+            segment.position(segmentOffset);
+            segment.put(value, offset, n);
+            offset += n;
+            length -= n;
+            size += n;
+        }
+        return position;
+    }
+
+    private MappedByteBuffer segment(int index) throws PSQLException {
+        if (index == mapping.segments.length) {
+            mapping.segments = Arrays.copyOf(mapping.segments, index * 2);
+        }
+        MappedByteBuffer segment = mapping.segments[index];
+        if (segment == null) {
+            try {
+                segment = mapping.channel.map(
+                    FileChannel.MapMode.READ_WRITE, (long) index * SEGMENT_SIZE, SEGMENT_SIZE);
+            } catch (IOException e) {
+                throw new PSQLException("Cannot spill the rows of the result to a file", PSQLState.IO_ERROR, e);
+            }
+            mapping.segments[index] = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * Copies the given range into the given array. Can be called concurrently, but not while values are appended.
+     */
+    void read(long position, byte[] target, int offset, int length) {
+        while (length > 0) {
+            int segmentOffset = (int) (position & (SEGMENT_SIZE - 1));
+            ByteBuffer segment = mapping.segments[(int) (position >>> SEGMENT_BITS)].duplicate();
+            int n = Math.min(length, SEGMENT_SIZE - segmentOffset);
+            segment.position(segmentOffset);
+            segment.get(target, offset, n);
+            offset += n;
+            length -= n;
+            position += n;
+        }
+    }
+
+    /**
+     * Unmaps and deletes the file. Values which have been read before stay valid, the storage must not be used
+     * anymore, as reading an unmapped segment crashes the JVM.
+     */
+    void close() {
+        cleanable.clean();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of the strings of one column, which returns the same {@link String} instance for
+ * repeated values instead of decoding them again.
+ * <p>
+ * Every value maps to a single slot, a value which maps to an occupied slot replaces the previous one.
+ * If too few lookups of the first {@link #SAMPLE_SIZE} are hits, the column is considered to have
+ * too many distinct values and the cache turns itself off.
+ */
+final class StringDictionary {
+
+    /**
+     * Longer values are rarely repeated and are always decoded.
+     */
+    static final int MAX_LENGTH = 64;
+
+    static final int SAMPLE_SIZE = 4096;
+
+    private byte[][] keys;
+    private String[] values;
+    private final int mask;
+    private int lookups;
+    private int hits;
+
+    StringDictionary(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        keys = new byte[capacity][];
+        values = new String[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return a dictionary per column, null if {@code size} is 0.
+     */
+    static StringDictionary[] forColumns(int columnCount, int size) {
+        return size > 0 ? new StringDictionary[columnCount] : null;
+    }
+
+    /**
+     * @param dictionaries the result of {@link #forColumns(int, int)}, the dictionary of the column is created on demand.
+     */
+    static String toString(StringDictionary[] dictionaries, int size, int column, byte[] value, int offset, int length) {
+        if (dictionaries == null) {
+            return TextDecoder.toString(value, offset, length);
+        }
+        StringDictionary dictionary = dictionaries[column];
+        if (dictionary == null) {
+            dictionary = new StringDictionary(size);
+            dictionaries[column] = dictionary;
+        }
+        return dictionary.get(value, offset, length);
+    }
+
+    String get(byte[] value, int offset, int length) {
+        if (keys == null || length > MAX_LENGTH) {
+            return TextDecoder.toString(value, offset, length);
+        }
+        int slot = hash(value, offset, length) & mask;
+        byte[] key = keys[slot];
+        lookups++;
+        if (key != null && Arrays.equals(key, 0, key.length, value, offset, offset + length)) {
+            hits++;
+            return values[slot];
+        }
+        String result = TextDecoder.toString(value, offset, length);
+        if (lookups == SAMPLE_SIZE && hits < SAMPLE_SIZE / 2) {
+            keys = null;
+            values = null;
+        } else {
+            keys[slot] = Arrays.copyOfRange(value, offset, offset + length);
+            values[slot] = result;
+        }
+        return result;
+    }
+
+    boolean isEnabled() {
+        return keys != null;
+    }
+
+    private static int hash(byte[] value, int offset, int length) {
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + value[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Snapshot of the columns of the tables which have been queried on a connection, loaded from
+ * {@code information_schema.columns}. It answers the table related calls of {@link CrateResultSetMetaData},
+ * for which pgjdbc queries the catalog tables of PostgreSQL for every result.
+ */
+final class TableColumns {
+
+    /**
+     * How long the columns of a table are used before they are loaded again, to pick up changes by other clients.
+     */
+    static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final String IDENTIFIER = "(\"(?:[^\"]|\"\")+\"|[a-zA-Z_][a-zA-Z0-9_$]*)";
+    private static final Pattern TABLE = Pattern.compile(
+        "\\b(?:from|join)\\s+" + IDENTIFIER + "(?:\\s*\\.\\s*" + IDENTIFIER + ")?",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern DDL = Pattern.compile("^\\s*(create|alter|drop)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final LongSupplier clock;
+    // guarded by this
+    private final Map<TableName, Table> tables = new HashMap<>();
+
+    TableColumns(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    static final class TableName {
+
+        final String schema;
+        final String name;
+
+        TableName(String schema, String name) {
+            this.schema = schema;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TableName that = (TableName) o;
+            return schema.equals(that.schema) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(schema, name);
+        }
+
+        @Override
+        public String toString() {
+            return schema + "." + name;
+        }
+    }
+
+    private static final class Table {
+
+        // nullability by column name
+        private final Map<String, Boolean> columns = new HashMap<>();
+        private final long loadedNanos;
+
+        private Table(long loadedNanos) {
+            this.loadedNanos = loadedNanos;
+        }
+    }
+
+    /**
+     * @return the tables which the given query reads from, in the order of appearance.
+     */
+    static List<TableName> tables(String sql, String defaultSchema) {
+        List<TableName> names = new ArrayList<>();
+        Matcher matcher = TABLE.matcher(sql);
+        while (matcher.find()) {
+            TableName name = matcher.group(2) == null
+                ? new TableName(defaultSchema, identifier(matcher.group(1)))
+                : new TableName(identifier(matcher.group(1)), identifier(matcher.group(2)));
+            if (name.schema != null && !names.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private static String identifier(String identifier) {
+        if (identifier.startsWith("\"")) {
+            return identifier.substring(1, identifier.length() - 1).replace("\"\"", "\"");
+        }
+        return identifier.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Loads the columns of the given tables which are not known yet, all of them with a single query.
+     *
+     * @return the nullability of the columns by table, tables which do not exist have no columns.
+     */
+    synchronized Map<TableName, Map<String, Boolean>> columns(Connection connection, List<TableName> names)
+        throws SQLException {
+        long now = clock.getAsLong();
+        List<TableName> missing = new ArrayList<>();
+        for (TableName name : names) {
+            Table table = tables.get(name);
+            if (table == null || now - table.loadedNanos > TTL_NANOS) {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            load(connection, missing, now);
+        }
+        Map<TableName, Map<String, Boolean>> columns = new HashMap<>();
+        for (TableName name : names) {
+            columns.put(name, tables.get(name).columns);
+        }
+        return columns;
+    }
+
+    private void load(Connection connection, List<TableName> names, long now) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+            "SELECT table_schema, table_name, column_name, is_nullable FROM information_schema.columns WHERE ");
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                sql.append(" OR ");
+            }
+            sql.append("(table_schema = ? AND table_name = ?)");
+        }
+        Map<TableName, Table> loaded = new HashMap<>();
+        for (TableName name : names) {
+            loaded.put(name, new Table(now));
+        }
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (TableName name : names) {
+                statement.setString(index++, name.schema);
+                statement.setString(index++, name.name);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    Table table = loaded.get(new TableName(rs.getString(1), rs.getString(2)));
+                    if (table != null) {
+                        table.columns.put(rs.getString(3), rs.getBoolean(4));
+                    }
+                }
+            }
+        }
+        tables.putAll(loaded);
+    }
+
+    /**
+     * Drops the snapshot if the given statement may have changed the columns of a table.
+     */
+    synchronized void invalidate(String sql) {
+        if (sql == null || DDL.matcher(sql).find()) {
+            tables.clear();
+        }
+    }
+}
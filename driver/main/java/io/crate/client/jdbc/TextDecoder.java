@@ -0,0 +1,596 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.postgresql.PGStatement;
+import org.postgresql.util.PGbytea;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Decodes values in the text format of the PostgreSQL wire protocol, given as a slice of a byte array.
+ */
+final class TextDecoder {
+
+    static final long MICROS_POSITIVE_INFINITY = Long.MAX_VALUE;
+    static final long MICROS_NEGATIVE_INFINITY = Long.MIN_VALUE;
+
+    // never returned by the timestamp parser, which only handles years with four digits, and by the integer
+    // parser, which leaves Long.MIN_VALUE + 1 to the fallback
+    private static final long NOT_PARSED = Long.MIN_VALUE + 1;
+    private static final long MICROS_PER_SECOND = 1_000_000;
+    private static final long SECONDS_PER_DAY = 86400;
+    private static final double[] DOUBLE_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+    private static final byte[] INFINITY = "infinity".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEGATIVE_INFINITY = "-infinity".getBytes(StandardCharsets.US_ASCII);
+
+    private TextDecoder() {
+    }
+
+    /**
+     * Values which only consist of ASCII characters, which is the common case, are copied as Latin-1 which
+     * skips the validation and the intermediate {@code char[]} of the general UTF-8 decoding.
+     */
+    static String toString(byte[] value, int offset, int length) {
+        return isAscii(value, offset, length)
+            ? new String(value, offset, length, StandardCharsets.ISO_8859_1)
+            : new String(value, offset, length, StandardCharsets.UTF_8);
+    }
+
+    static boolean isAscii(byte[] value, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (value[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean toBoolean(byte[] value, int offset, int length) throws PSQLException {
+        if (length == 1) {
+            // CrateDB sends t or f
+            byte b = value[offset];
+            if (b == 't' || b == '1') {
+                return true;
+            } else if (b == 'f' || b == '0') {
+                return false;
+            }
+        }
+        String s = toString(value, offset, length).trim();
+        if ("t".equalsIgnoreCase(s) || "true".equalsIgnoreCase(s) || "1".equals(s)
+            || "y".equalsIgnoreCase(s) || "yes".equalsIgnoreCase(s) || "on".equalsIgnoreCase(s)) {
+            return true;
+        }
+        if ("f".equalsIgnoreCase(s) || "false".equalsIgnoreCase(s) || "0".equals(s)
+            || "n".equalsIgnoreCase(s) || "no".equalsIgnoreCase(s) || "off".equalsIgnoreCase(s)) {
+            return false;
+        }
+        throw new PSQLException(String.format("Cannot cast to boolean: \"%s\"", s), PSQLState.CANNOT_COERCE);
+    }
+
+    /**
+     * Plain integers are parsed from the bytes, values with a fraction, an exponent or surrounding whitespace are
+     * parsed as a string and truncated.
+     */
+    static long toLong(byte[] value, int offset, int length, String type, long min, long max) throws PSQLException {
+        long result = parseLong(value, offset, length);
+        if (result != NOT_PARSED) {
+            if (result < min || result > max) {
+                throw badValue(type, toString(value, offset, length));
+            }
+            return result;
+        }
+        String s = toString(value, offset, length).trim();
+        try {
+            result = Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            // values with a fraction or an exponent are truncated
+            try {
+                result = new BigDecimal(s).toBigInteger().longValueExact();
+            } catch (NumberFormatException | ArithmeticException e2) {
+                throw badValue(type, s);
+            }
+        }
+        if (result < min || result > max) {
+            throw badValue(type, s);
+        }
+        return result;
+    }
+
+    /**
+     * @return the value, {@link #NOT_PARSED} if it is not a plain integer or does not fit into a long.
+     */
+    private static long parseLong(byte[] value, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = i < end && value[i] == '-';
+        if (negative || (i < end && value[i] == '+')) {
+            i++;
+        }
+        if (i == end || end - i > 19) {
+            return NOT_PARSED;
+        }
+        // accumulate negatively, which also covers Long.MIN_VALUE
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = value[i] - '0';
+            if (digit < 0 || digit > 9 || result < Long.MIN_VALUE / 10) {
+                return NOT_PARSED;
+            }
+            result *= 10;
+            if (result < Long.MIN_VALUE + digit) {
+                return NOT_PARSED;
+            }
+            result -= digit;
+        }
+        if (negative) {
+            return result;
+        }
+        return result == Long.MIN_VALUE ? NOT_PARSED : -result;
+    }
+
+    static double toDouble(byte[] value, int offset, int length, String type) throws PSQLException {
+        double result = parseDouble(value, offset, length, false);
+        if (!Double.isNaN(result)) {
+            return result;
+        }
+        String s = toString(value, offset, length).trim();
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw badValue(type, s);
+        }
+    }
+
+    static float toFloat(byte[] value, int offset, int length, String type) throws PSQLException {
+        float result = (float) parseDouble(value, offset, length, true);
+        if (!Float.isNaN(result)) {
+            return result;
+        }
+        String s = toString(value, offset, length).trim();
+        try {
+            return Float.parseFloat(s);
+        } catch (NumberFormatException e) {
+            throw badValue(type, s);
+        }
+    }
+
+    /**
+     * Clinger's fast path: if the decimal significand and the power of ten are both exactly representable, a single
+     * multiplication or division is correctly rounded. For floats the operation is done in float arithmetic,
+     * rounding a double result again could be off by one ulp.
+     *
+     * @return the value, NaN if it has to be parsed by {@link Double#parseDouble(String)}, which includes NaN itself.
+     */
+    private static double parseDouble(byte[] value, int offset, int length, boolean toFloat) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = i < end && value[i] == '-';
+        if (negative || (i < end && value[i] == '+')) {
+            i++;
+        }
+        long significand = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            byte b = value[i];
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (significand == 0 && b == '0') {
+                    // leading zeros do not count towards the precision
+                    if (fraction) {
+                        exponent--;
+                    }
+                    continue;
+                }
+                if (++digits > 18) {
+                    return Double.NaN;
+                }
+                significand = significand * 10 + (b - '0');
+                if (fraction) {
+                    exponent--;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else if ((b == 'e' || b == 'E') && anyDigit) {
+                int exponentLength = end - i - 1;
+                long exponentValue = exponentLength > 0 && exponentLength <= 4
+                    ? parseLong(value, i + 1, exponentLength)
+                    : NOT_PARSED;
+                if (exponentValue == NOT_PARSED) {
+                    return Double.NaN;
+                }
+                exponent += (int) exponentValue;
+                break;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (!anyDigit) {
+            return Double.NaN;
+        }
+        if (significand == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        double result;
+        if (toFloat) {
+            if (significand > 1L << 24 || exponent < -10 || exponent > 10) {
+                return Double.NaN;
+            }
+            float f = (float) significand;
+            result = exponent < 0 ? f / FLOAT_POWERS_OF_TEN[-exponent] : f * FLOAT_POWERS_OF_TEN[exponent];
+        } else {
+            if (significand > 1L << 53 || exponent < -22 || exponent > 22) {
+                return Double.NaN;
+            }
+            double d = (double) significand;
+            result = exponent < 0 ? d / DOUBLE_POWERS_OF_TEN[-exponent] : d * DOUBLE_POWERS_OF_TEN[exponent];
+        }
+        return negative ? -result : result;
+    }
+
+    static BigDecimal toBigDecimal(byte[] value, int offset, int length) throws PSQLException {
+        String s = toString(value, offset, length).trim();
+        try {
+            return new BigDecimal(s);
+        } catch (NumberFormatException e) {
+            throw badValue("BigDecimal", s);
+        }
+    }
+
+    /**
+     * Decodes the hex or escape format of {@code bytea}.
+     */
+    static byte[] toBytes(byte[] value, int offset, int length) throws SQLException {
+        return PGbytea.toBytes(Arrays.copyOfRange(value, offset, offset + length));
+    }
+
+    static PSQLException badValue(String type, String value) {
+        return new PSQLException(
+            String.format("Bad value for type %s : %s", type, value), PSQLState.NUMERIC_VALUE_OUT_OF_RANGE);
+    }
+
+    private static PSQLException badDateTime(String value) {
+        return new PSQLException(
+            String.format("Bad value for type timestamp/date/time: %s", value), PSQLState.BAD_DATETIME_FORMAT);
+    }
+
+    /**
+     * @param cal the calendar whose time zone is used if the value has no offset, the default time zone if null.
+     */
+    static Timestamp toTimestamp(byte[] value, int offset, int length, Calendar cal) throws PSQLException {
+        long micros = toEpochMicros(value, offset, length, cal);
+        if (micros == MICROS_POSITIVE_INFINITY) {
+            return new Timestamp(PGStatement.DATE_POSITIVE_INFINITY);
+        } else if (micros == MICROS_NEGATIVE_INFINITY) {
+            return new Timestamp(PGStatement.DATE_NEGATIVE_INFINITY);
+        }
+        Timestamp timestamp = new Timestamp(Math.floorDiv(micros, MICROS_PER_SECOND) * 1000);
+        timestamp.setNanos((int) Math.floorMod(micros, MICROS_PER_SECOND) * 1000);
+        return timestamp;
+    }
+
+    /**
+     * @return the instant, {@link Instant#MAX} or {@link Instant#MIN} for infinite values.
+     */
+    static Instant toInstant(byte[] value, int offset, int length, Calendar cal) throws PSQLException {
+        long micros = toEpochMicros(value, offset, length, cal);
+        if (micros == MICROS_POSITIVE_INFINITY) {
+            return Instant.MAX;
+        } else if (micros == MICROS_NEGATIVE_INFINITY) {
+            return Instant.MIN;
+        }
+        return Instant.ofEpochSecond(
+            Math.floorDiv(micros, MICROS_PER_SECOND), Math.floorMod(micros, MICROS_PER_SECOND) * 1000);
+    }
+
+    /**
+     * @return the date time in UTC, {@link OffsetDateTime#MAX} or {@link OffsetDateTime#MIN} for infinite values.
+     */
+    static OffsetDateTime toOffsetDateTime(byte[] value, int offset, int length, Calendar cal) throws PSQLException {
+        Instant instant = toInstant(value, offset, length, cal);
+        if (instant == Instant.MAX) {
+            return OffsetDateTime.MAX;
+        } else if (instant == Instant.MIN) {
+            return OffsetDateTime.MIN;
+        }
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+
+    /**
+     * @return the microseconds since the epoch of a timestamp decoded by pgjdbc.
+     */
+    static long toEpochMicros(Timestamp timestamp) {
+        long millis = timestamp.getTime();
+        if (millis == PGStatement.DATE_POSITIVE_INFINITY) {
+            return MICROS_POSITIVE_INFINITY;
+        } else if (millis == PGStatement.DATE_NEGATIVE_INFINITY) {
+            return MICROS_NEGATIVE_INFINITY;
+        }
+        return Math.floorDiv(millis, 1000) * MICROS_PER_SECOND + timestamp.getNanos() / 1000;
+    }
+
+    /**
+     * @return the milliseconds since the epoch, {@link PGStatement#DATE_POSITIVE_INFINITY} or
+     *         {@link PGStatement#DATE_NEGATIVE_INFINITY} for infinite values, like {@link Timestamp#getTime()}.
+     */
+    static long toEpochMillis(byte[] value, int offset, int length, Calendar cal) throws PSQLException {
+        long micros = toEpochMicros(value, offset, length, cal);
+        if (micros == MICROS_POSITIVE_INFINITY) {
+            return PGStatement.DATE_POSITIVE_INFINITY;
+        } else if (micros == MICROS_NEGATIVE_INFINITY) {
+            return PGStatement.DATE_NEGATIVE_INFINITY;
+        }
+        return Math.floorDiv(micros, 1000);
+    }
+
+    /**
+     * Parses timestamps in the format {@code yyyy-MM-dd[( |T)HH:mm:ss[.SSSSSS]][(Z|(+|-)HH[:mm[:ss]])]} without any
+     * allocation, other values are left to java.time.
+     *
+     * @return the microseconds since the epoch, {@link #MICROS_POSITIVE_INFINITY} or {@link #MICROS_NEGATIVE_INFINITY}
+     *         for infinite values.
+     */
+    static long toEpochMicros(byte[] value, int offset, int length, Calendar cal) throws PSQLException {
+        long micros = parseEpochMicros(value, offset, length, cal);
+        if (micros != NOT_PARSED) {
+            return micros;
+        }
+        return toEpochMicros(parseTimestamp(value, offset, length, cal));
+    }
+
+    private static long parseEpochMicros(byte[] value, int offset, int length, Calendar cal) {
+        if (matches(value, offset, length, INFINITY)) {
+            return MICROS_POSITIVE_INFINITY;
+        } else if (matches(value, offset, length, NEGATIVE_INFINITY)) {
+            return MICROS_NEGATIVE_INFINITY;
+        }
+        int end = offset + length;
+        if (length < 10 || value[offset + 4] != '-' || value[offset + 7] != '-') {
+            return NOT_PARSED;
+        }
+        int year = digits(value, offset, 4);
+        int month = digits(value, offset + 5, 2);
+        int day = digits(value, offset + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return NOT_PARSED;
+        }
+        long seconds = epochDay(year, month, day) * SECONDS_PER_DAY;
+        long micros = 0;
+        int i = offset + 10;
+        if (i < end) {
+            if (end - i < 9 || (value[i] != ' ' && value[i] != 'T') || value[i + 3] != ':' || value[i + 6] != ':') {
+                return NOT_PARSED;
+            }
+            int hour = digits(value, i + 1, 2);
+            int minute = digits(value, i + 4, 2);
+            int second = digits(value, i + 7, 2);
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+                return NOT_PARSED;
+            }
+            seconds += hour * 3600 + minute * 60 + second;
+            i += 9;
+            if (i < end && value[i] == '.') {
+                int digits = 0;
+                for (i++; i < end && value[i] >= '0' && value[i] <= '9'; i++, digits++) {
+                    // digits beyond microseconds are truncated
+                    if (digits < 6) {
+                        micros = micros * 10 + (value[i] - '0');
+                    }
+                }
+                if (digits == 0) {
+                    return NOT_PARSED;
+                }
+                for (; digits < 6; digits++) {
+                    micros *= 10;
+                }
+            }
+        }
+        if (i == end) {
+            ZoneRules rules = zone(cal).getRules();
+            if (!rules.isFixedOffset()) {
+                // the offset depends on the local time, which requires java.time
+                return NOT_PARSED;
+            }
+            seconds -= rules.getOffset(Instant.EPOCH).getTotalSeconds();
+        } else {
+            int offsetSeconds = parseOffset(value, i, end);
+            if (offsetSeconds == Integer.MIN_VALUE) {
+                return NOT_PARSED;
+            }
+            seconds -= offsetSeconds;
+        }
+        return seconds * MICROS_PER_SECOND + micros;
+    }
+
+    /**
+     * @return the offset in seconds, {@link Integer#MIN_VALUE} if it cannot be parsed.
+     */
+    private static int parseOffset(byte[] value, int start, int end) {
+        byte sign = value[start];
+        if (sign == 'Z') {
+            return start + 1 == end ? 0 : Integer.MIN_VALUE;
+        }
+        int length = end - start;
+        if ((sign != '+' && sign != '-') || (length != 3 && length != 6 && length != 9)) {
+            return Integer.MIN_VALUE;
+        }
+        int seconds = 0;
+        for (int i = start + 1; i < end; i += 3) {
+            int part = digits(value, i, 2);
+            if (part < 0 || (i > start + 1 && (value[i - 1] != ':' || part > 59))) {
+                return Integer.MIN_VALUE;
+            }
+            seconds += part * (i == start + 1 ? 3600 : i == start + 4 ? 60 : 1);
+        }
+        if (seconds > 18 * 3600) {
+            return Integer.MIN_VALUE;
+        }
+        return sign == '-' ? -seconds : seconds;
+    }
+
+    /**
+     * @return the value of {@code count} decimal digits, -1 if any of them is not a digit.
+     */
+    private static int digits(byte[] value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = value[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * @return the days since 1970-01-01 of the date in the proleptic Gregorian calendar.
+     */
+    private static long epochDay(int year, int month, int day) {
+        // shift the year to start in March, so that the leap day is the last day of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static boolean matches(byte[] value, int offset, int length, byte[] expected) {
+        return length == expected.length && Arrays.equals(value, offset, offset + length, expected, 0, length);
+    }
+
+    private static Timestamp parseTimestamp(byte[] value, int offset, int length, Calendar cal) throws PSQLException {
+        String s = toString(value, offset, length).trim();
+        if (s.equals("infinity")) {
+            return new Timestamp(PGStatement.DATE_POSITIVE_INFINITY);
+        } else if (s.equals("-infinity")) {
+            return new Timestamp(PGStatement.DATE_NEGATIVE_INFINITY);
+        }
+        try {
+            String iso = s.replace(' ', 'T');
+            if (iso.length() == 10) {
+                return Timestamp.from(LocalDate.parse(iso).atStartOfDay(zone(cal)).toInstant());
+            }
+            int offsetStart = offsetStart(iso, iso.indexOf('T') + 1);
+            if (offsetStart < 0) {
+                LocalDateTime dateTime = LocalDateTime.parse(iso);
+                return cal == null ? Timestamp.valueOf(dateTime) : Timestamp.from(dateTime.atZone(zone(cal)).toInstant());
+            }
+            return Timestamp.from(OffsetDateTime.parse(normalizeOffset(iso, offsetStart)).toInstant());
+        } catch (RuntimeException e) {
+            throw badDateTime(s);
+        }
+    }
+
+    static Date toDate(byte[] value, int offset, int length, Calendar cal) throws PSQLException {
+        if (length == 10) {
+            String s = toString(value, offset, length);
+            try {
+                LocalDate date = LocalDate.parse(s);
+                return cal == null ? Date.valueOf(date) : new Date(date.atStartOfDay(zone(cal)).toInstant().toEpochMilli());
+            } catch (RuntimeException e) {
+                throw badDateTime(s);
+            }
+        }
+        Timestamp timestamp = toTimestamp(value, offset, length, cal);
+        LocalDate date = timestamp.toInstant().atZone(zone(cal)).toLocalDate();
+        return new Date(date.atStartOfDay(zone(cal)).toInstant().toEpochMilli());
+    }
+
+    static Time toTime(byte[] value, int offset, int length, Calendar cal) throws PSQLException {
+        String s = toString(value, offset, length).trim();
+        try {
+            int offsetStart = offsetStart(s, 0);
+            if (offsetStart < 0) {
+                LocalTime time = LocalTime.parse(s);
+                return cal == null
+                    ? Time.valueOf(time)
+                    : new Time(time.atDate(LocalDate.ofEpochDay(0)).atZone(zone(cal)).toInstant().toEpochMilli());
+            }
+            OffsetTime time = OffsetTime.parse(normalizeOffset(s, offsetStart));
+            return new Time(time.atDate(LocalDate.ofEpochDay(0)).toInstant().toEpochMilli());
+        } catch (RuntimeException e) {
+            throw badDateTime(s);
+        }
+    }
+
+    private static ZoneId zone(Calendar cal) {
+        return (cal == null ? TimeZone.getDefault() : cal.getTimeZone()).toZoneId();
+    }
+
+    /**
+     * @return the index of the UTC offset following the time which starts at {@code timeStart}, -1 if there is none.
+     */
+    private static int offsetStart(String value, int timeStart) {
+        for (int i = timeStart; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '+' || c == '-' || c == 'Z') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * PostgreSQL omits the minutes of whole hour offsets, e.g. {@code +02}, which java.time does not accept.
+     */
+    private static String normalizeOffset(String value, int offsetStart) {
+        return value.length() - offsetStart == 3 ? value + ":00" : value;
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A parsed PostgreSQL {@code COPY ... FROM STDIN} or {@code COPY ... TO STDOUT} statement.
+ * <p>
+ * Supports the option list syntax {@code WITH (FORMAT csv, HEADER true, ...)} as well as the
+ * legacy syntax {@code WITH CSV HEADER DELIMITER ','}. In addition to the {@code text} and
+ * {@code csv} formats of PostgreSQL, the {@code json} format has one JSON object per line.
+ */
+final class CopyStatement {
+
+    enum Format {
+        TEXT,
+        CSV,
+        JSON
+    }
+
+    private final String schema;
+    private final String table;
+    private final List<String> columns;
+    private final String query;
+    private final boolean toStdout;
+    private final Format format;
+    private final char delimiter;
+    private final char quote;
+    private final char escape;
+    private final String nullString;
+    private final boolean header;
+
+    private CopyStatement(String schema,
+                          String table,
+                          List<String> columns,
+                          String query,
+                          boolean toStdout,
+                          Format format,
+                          char delimiter,
+                          char quote,
+                          char escape,
+                          String nullString,
+                          boolean header) {
+        this.schema = schema;
+        this.table = table;
+        this.columns = columns;
+        this.query = query;
+        this.toStdout = toStdout;
+        this.format = format;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.escape = escape;
+        this.nullString = nullString;
+        this.header = header;
+    }
+
+    /**
+     * @return the schema of the table, null if the table name is not qualified.
+     */
+    String schema() {
+        return schema;
+    }
+
+    String table() {
+        return table;
+    }
+
+    /**
+     * @return the quoted, possibly schema qualified, name of the table.
+     */
+    String quotedTable() {
+        return schema == null ? quoteIdentifier(table) : quoteIdentifier(schema) + '.' + quoteIdentifier(table);
+    }
+
+    /**
+     * @return the column names, empty if no column list was given.
+     */
+    List<String> columns() {
+        return columns;
+    }
+
+    /**
+     * @return true for {@code COPY ... TO STDOUT}, false for {@code COPY ... FROM STDIN}.
+     */
+    boolean toStdout() {
+        return toStdout;
+    }
+
+    /**
+     * @return the query whose result is copied to stdout.
+     */
+    String query() {
+        if (query != null) {
+            return query;
+        }
+        StringBuilder sb = new StringBuilder("SELECT ");
+        if (columns.isEmpty()) {
+            sb.append('*');
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(quoteIdentifier(columns.get(i)));
+        }
+        return sb.append(" FROM ").append(quotedTable()).toString();
+    }
+
+    Format format() {
+        return format;
+    }
+
+    char delimiter() {
+        return delimiter;
+    }
+
+    char quote() {
+        return quote;
+    }
+
+    char escape() {
+        return escape;
+    }
+
+    String nullString() {
+        return nullString;
+    }
+
+    boolean header() {
+        return header;
+    }
+
+    static CopyStatement parse(String sql) throws PSQLException {
+        Tokens tokens = new Tokens(sql);
+        tokens.expectKeyword("COPY");
+        String schema = null;
+        String table = null;
+        String query = null;
+        List<String> columns = Collections.emptyList();
+        if (tokens.peek("(")) {
+            query = tokens.parenthesized();
+        } else {
+            table = tokens.identifier();
+            if (tokens.consume(".")) {
+                schema = table;
+                table = tokens.identifier();
+            }
+            if (tokens.consume("(")) {
+                columns = new ArrayList<>();
+                do {
+                    columns.add(tokens.identifier());
+                } while (tokens.consume(","));
+                tokens.expect(")");
+            }
+        }
+        boolean toStdout;
+        if (query == null && tokens.consumeKeyword("FROM")) {
+            tokens.expectKeyword("STDIN");
+            toStdout = false;
+        } else {
+            tokens.expectKeyword("TO");
+            tokens.expectKeyword("STDOUT");
+            toStdout = true;
+        }
+
+        Format format = Format.TEXT;
+        Character delimiter = null;
+        Character quote = null;
+        Character escape = null;
+        String nullString = null;
+        boolean header = false;
+
+        tokens.consumeKeyword("WITH");
+        if (tokens.peek("(")) {
+            tokens.expect("(");
+            do {
+                String option = tokens.word().toUpperCase(Locale.ENGLISH);
+                switch (option) {
+                    case "FORMAT":
+                        format = format(tokens.word());
+                        break;
+                    case "DELIMITER":
+                        delimiter = singleChar(option, tokens.string());
+                        break;
+                    case "QUOTE":
+                        quote = singleChar(option, tokens.string());
+                        break;
+                    case "ESCAPE":
+                        escape = singleChar(option, tokens.string());
+                        break;
+                    case "NULL":
+                        nullString = tokens.string();
+                        break;
+                    case "HEADER":
+                        header = tokens.peek(",") || tokens.peek(")") || bool(tokens.word());
+                        break;
+                    default:
+                        throw new PSQLException(
+                            String.format("COPY option \"%s\" is not supported", option),
+                            PSQLState.NOT_IMPLEMENTED);
+                }
+            } while (tokens.consume(","));
+            tokens.expect(")");
+        } else {
+            while (!tokens.atEnd()) {
+                String option = tokens.word().toUpperCase(Locale.ENGLISH);
+                switch (option) {
+                    case "CSV":
+                        format = Format.CSV;
+                        break;
+                    case "HEADER":
+                        header = true;
+                        break;
+                    case "DELIMITER":
+                        tokens.consumeKeyword("AS");
+                        delimiter = singleChar(option, tokens.string());
+                        break;
+                    case "QUOTE":
+                        tokens.consumeKeyword("AS");
+                        quote = singleChar(option, tokens.string());
+                        break;
+                    case "ESCAPE":
+                        tokens.consumeKeyword("AS");
+                        escape = singleChar(option, tokens.string());
+                        break;
+                    case "NULL":
+                        tokens.consumeKeyword("AS");
+                        nullString = tokens.string();
+                        break;
+                    default:
+                        throw new PSQLException(
+                            String.format("COPY option \"%s\" is not supported", option),
+                            PSQLState.NOT_IMPLEMENTED);
+                }
+            }
+        }
+        tokens.consume(";");
+        if (!tokens.atEnd()) {
+            throw tokens.syntaxError();
+        }
+        if (header && format != Format.CSV) {
+            throw new PSQLException("COPY HEADER is only available in CSV mode", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        char defaultDelimiter = format == Format.CSV ? ',' : '\t';
+        char defaultQuote = '"';
+        return new CopyStatement(
+            schema,
+            table,
+            columns,
+            query,
+            toStdout,
+            format,
+            delimiter == null ? defaultDelimiter : delimiter,
+            quote == null ? defaultQuote : quote,
+            escape == null ? (quote == null ? defaultQuote : quote) : escape,
+            nullString == null ? (format == Format.CSV ? "" : "\\N") : nullString,
+            header);
+    }
+
+    private static Format format(String value) throws PSQLException {
+        try {
+            return Format.valueOf(value.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new PSQLException(
+                String.format("COPY format \"%s\" is not supported", value), PSQLState.NOT_IMPLEMENTED);
+        }
+    }
+
+    private static boolean bool(String value) throws PSQLException {
+        switch (value.toLowerCase(Locale.ENGLISH)) {
+            case "true":
+            case "on":
+            case "1":
+                return true;
+            case "false":
+            case "off":
+            case "0":
+                return false;
+            default:
+                throw new PSQLException(
+                    String.format("COPY option requires a boolean value but was: %s", value),
+                    PSQLState.INVALID_PARAMETER_VALUE);
+        }
+    }
+
+    private static char singleChar(String option, String value) throws PSQLException {
+        if (value.length() != 1) {
+            throw new PSQLException(
+                String.format("COPY %s must be a single one-byte character", option.toLowerCase(Locale.ENGLISH)),
+                PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        return value.charAt(0);
+    }
+
+    static String quoteIdentifier(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Minimal tokenizer for the COPY statement.
+     */
+    private static final class Tokens {
+
+        private final String sql;
+        private int pos;
+
+        Tokens(String sql) {
+            this.sql = sql;
+        }
+
+        private void skipWhitespace() {
+            while (pos < sql.length() && Character.isWhitespace(sql.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean atEnd() {
+            skipWhitespace();
+            return pos >= sql.length();
+        }
+
+        boolean peek(String symbol) {
+            skipWhitespace();
+            return sql.startsWith(symbol, pos);
+        }
+
+        boolean consume(String symbol) {
+            if (peek(symbol)) {
+                pos += symbol.length();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(String symbol) throws PSQLException {
+            if (!consume(symbol)) {
+                throw syntaxError();
+            }
+        }
+
+        boolean consumeKeyword(String keyword) {
+            skipWhitespace();
+            int end = pos + keyword.length();
+            if (sql.regionMatches(true, pos, keyword, 0, keyword.length())
+                && (end == sql.length() || !isWordChar(sql.charAt(end)))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        void expectKeyword(String keyword) throws PSQLException {
+            if (!consumeKeyword(keyword)) {
+                throw syntaxError();
+            }
+        }
+
+        String word() throws PSQLException {
+            skipWhitespace();
+            if (pos < sql.length() && sql.charAt(pos) == '\'') {
+                return string();
+            }
+            int start = pos;
+            while (pos < sql.length() && isWordChar(sql.charAt(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                throw syntaxError();
+            }
+            return sql.substring(start, pos);
+        }
+
+        String string() throws PSQLException {
+            skipWhitespace();
+            if (pos >= sql.length() || sql.charAt(pos) != '\'') {
+                throw syntaxError();
+            }
+            return delimited('\'');
+        }
+
+        String identifier() throws PSQLException {
+            skipWhitespace();
+            if (pos < sql.length() && sql.charAt(pos) == '"') {
+                return delimited('"');
+            }
+            // unquoted identifiers are case insensitive
+            return word().toLowerCase(Locale.ENGLISH);
+        }
+
+        /**
+         * @return the text between the opening parenthesis at the current position and its closing one.
+         */
+        String parenthesized() throws PSQLException {
+            expect("(");
+            int start = pos;
+            int depth = 1;
+            while (pos < sql.length()) {
+                char c = sql.charAt(pos);
+                if (c == '\'' || c == '"') {
+                    delimited(c);
+                    continue;
+                }
+                pos++;
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return sql.substring(start, pos - 1).trim();
+                }
+            }
+            throw syntaxError();
+        }
+
+        private String delimited(char delimiter) throws PSQLException {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while (pos < sql.length()) {
+                char c = sql.charAt(pos++);
+                if (c == delimiter) {
+                    if (pos < sql.length() && sql.charAt(pos) == delimiter) {
+                        sb.append(c);
+                        pos++;
+                    } else {
+                        return sb.toString();
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+            throw syntaxError();
+        }
+
+        private static boolean isWordChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+
+        PSQLException syntaxError() {
+            return new PSQLException(
+                String.format("Invalid COPY statement at position %d: %s", pos, sql), PSQLState.SYNTAX_ERROR);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link CopyIn} which turns the data of a {@code COPY ... FROM STDIN} statement into bulk inserts.
+ * <p>
+ * Records are parsed as soon as they are complete and collected column wise. Every
+ * {@code rowsPerInsert} rows become one {@code INSERT INTO ... (SELECT * FROM UNNEST(?, ...))}
+ * batch entry and every {@code insertsPerBatch} entries are sent with a single
+ * {@code executeBatch}, so at most {@code rowsPerInsert * insertsPerBatch} rows are held in memory.
+ */
+class CrateCopyIn implements CopyIn {
+
+    /**
+     * Holds the mapper, so that jackson-databind is only initialized once a JSON record is copied.
+     */
+    private static final class Mapper {
+
+        static final ObjectMapper INSTANCE = new ObjectMapper();
+    }
+
+    private final Connection connection;
+    private final CopyStatement statement;
+    private final int rowsPerInsert;
+    private final int insertsPerBatch;
+    private final RecordParser recordParser;
+    private final List<String> values = new ArrayList<>();
+
+    private byte[] buffer = new byte[8192];
+    private int length;
+    private int recordStart;
+    private int scanPos;
+    private boolean inQuotes;
+
+    private List<String> columns;
+    private String[][] columnValues;
+    private int rows;
+    private PreparedStatement insert;
+    private int pendingInserts;
+    private long handledRowCount;
+    private long record;
+    private boolean skipHeader;
+    private boolean endOfData;
+    private boolean active = true;
+
+    CrateCopyIn(Connection connection, CopyStatement statement, int rowsPerInsert, int insertsPerBatch) {
+        this.connection = connection;
+        this.statement = statement;
+        this.rowsPerInsert = rowsPerInsert;
+        this.insertsPerBatch = insertsPerBatch;
+        this.recordParser = new RecordParser(statement);
+        this.skipHeader = statement.header();
+        if (!statement.columns().isEmpty()) {
+            setColumns(statement.columns());
+        }
+    }
+
+    @Override
+    public void writeToCopy(byte[] buf, int off, int siz) throws SQLException {
+        ensureActive();
+        if (length + siz > buffer.length) {
+            // drop the records which have already been consumed before growing the buffer
+            System.arraycopy(buffer, recordStart, buffer, 0, length - recordStart);
+            length -= recordStart;
+            scanPos -= recordStart;
+            recordStart = 0;
+            if (length + siz > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + siz));
+            }
+        }
+        System.arraycopy(buf, off, buffer, length, siz);
+        length += siz;
+        try {
+            processRecords();
+        } catch (SQLException e) {
+            cancelCopy();
+            throw e;
+        }
+    }
+
+    @Override
+    public void flushCopy() throws SQLException {
+        ensureActive();
+    }
+
+    @Override
+    public long endCopy() throws SQLException {
+        ensureActive();
+        try {
+            if (inQuotes) {
+                throw new PSQLException(
+                    String.format("Unterminated CSV quoted field in record %d", record + 1), PSQLState.DATA_ERROR);
+            }
+            if (recordStart < length) {
+                handleRecord(recordStart, length);
+                recordStart = length;
+            }
+            flushRows();
+            executeInserts();
+        } catch (SQLException e) {
+            cancelCopy();
+            throw e;
+        }
+        close();
+        return handledRowCount;
+    }
+
+    @Override
+    public void cancelCopy() throws SQLException {
+        if (active) {
+            close();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public long getHandledRowCount() {
+        return handledRowCount;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return columns == null ? 0 : columns.size();
+    }
+
+    /**
+     * @return 0, only the textual formats are supported.
+     */
+    @Override
+    public int getFormat() {
+        return 0;
+    }
+
+    @Override
+    public int getFieldFormat(int field) {
+        return 0;
+    }
+
+    private void ensureActive() throws PSQLException {
+        if (!active) {
+            throw new PSQLException("This copy stream is closed.", PSQLState.OBJECT_NOT_IN_STATE);
+        }
+    }
+
+    private void close() throws SQLException {
+        active = false;
+        columnValues = null;
+        buffer = null;
+        if (insert != null) {
+            insert.close();
+        }
+    }
+
+    private void processRecords() throws SQLException {
+        boolean csv = statement.format() == CopyStatement.Format.CSV;
+        byte quote = (byte) statement.quote();
+        byte escape = (byte) statement.escape();
+        for (int i = scanPos; i < length; i++) {
+            byte b = buffer[i];
+            if (csv) {
+                if (inQuotes && b == escape && escape != quote) {
+                    if (i + 1 == length) {
+                        // wait for the escaped character
+                        scanPos = i;
+                        return;
+                    }
+                    if (buffer[i + 1] == quote || buffer[i + 1] == escape) {
+                        i++;
+                    }
+                    continue;
+                }
+                if (b == quote) {
+                    // doubled quotes toggle twice and keep the state
+                    inQuotes = !inQuotes;
+                    continue;
+                }
+            }
+            if (b == '\n' && !inQuotes) {
+                handleRecord(recordStart, i);
+                recordStart = i + 1;
+            }
+        }
+        scanPos = length;
+    }
+
+    private void handleRecord(int start, int end) throws SQLException {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        record++;
+        if (endOfData) {
+            return;
+        }
+        String line = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        if (statement.format() == CopyStatement.Format.JSON) {
+            if (!line.trim().isEmpty()) {
+                addJsonRecord(line);
+            }
+            return;
+        }
+        if (line.equals("\\.")) {
+            endOfData = true;
+            return;
+        }
+        values.clear();
+        recordParser.parse(line, values);
+        if (skipHeader) {
+            skipHeader = false;
+            if (columns == null) {
+                setColumns(new ArrayList<>(values));
+            }
+            return;
+        }
+        if (columns == null) {
+            setColumns(tableColumns());
+        }
+        if (values.size() != columns.size()) {
+            throw new PSQLException(
+                String.format("Record %d has %d values, but %d columns are copied", record, values.size(), columns.size()),
+                PSQLState.DATA_ERROR);
+        }
+        addRow(values);
+    }
+
+    private void addJsonRecord(String line) throws SQLException {
+        JsonNode node;
+        try {
+            node = Mapper.INSTANCE.readTree(line);
+        } catch (IOException e) {
+            throw new PSQLException(
+                String.format("Record %d is not valid JSON", record), PSQLState.DATA_ERROR, e);
+        }
+        if (!node.isObject()) {
+            throw new PSQLException(
+                String.format("Record %d is not a JSON object", record), PSQLState.DATA_ERROR);
+        }
+        if (columns == null) {
+            List<String> names = new ArrayList<>();
+            Iterator<String> it = node.fieldNames();
+            while (it.hasNext()) {
+                names.add(it.next());
+            }
+            setColumns(names);
+        }
+        values.clear();
+        int found = 0;
+        for (String column : columns) {
+            JsonNode value = node.get(column);
+            if (value != null) {
+                found++;
+            }
+            if (value == null || value.isNull()) {
+                values.add(null);
+            } else if (value.isTextual()) {
+                values.add(value.textValue());
+            } else {
+                values.add(value.toString());
+            }
+        }
+        if (found != node.size()) {
+            throw new PSQLException(
+                String.format("Record %d contains keys which are not copied columns: %s", record, line),
+                PSQLState.DATA_ERROR);
+        }
+        addRow(values);
+    }
+
+    private void setColumns(List<String> columns) {
+        this.columns = columns;
+        this.columnValues = new String[columns.size()][rowsPerInsert];
+    }
+
+    private List<String> tableColumns() throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(
+            "SELECT column_name FROM information_schema.columns " +
+            "WHERE table_schema = ? AND table_name = ? ORDER BY ordinal_position")) {
+            stmt.setString(1, statement.schema() == null ? connection.getSchema() : statement.schema());
+            stmt.setString(2, statement.table());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String column = rs.getString(1);
+                    // skip sub columns of objects, e.g. o['x']
+                    if (column.indexOf('[') < 0) {
+                        columns.add(column);
+                    }
+                }
+            }
+        }
+        if (columns.isEmpty()) {
+            throw new PSQLException(
+                String.format("Relation %s unknown", statement.quotedTable()), PSQLState.UNDEFINED_OBJECT);
+        }
+        return columns;
+    }
+
+    private void addRow(List<String> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            columnValues[i][rows] = values.get(i);
+        }
+        rows++;
+        if (rows == rowsPerInsert) {
+            flushRows();
+        }
+    }
+
+    private void flushRows() throws SQLException {
+        if (rows == 0) {
+            return;
+        }
+        if (insert == null) {
+            insert = connection.prepareStatement(insertStatement());
+        }
+        for (int i = 0; i < columnValues.length; i++) {
+            insert.setArray(i + 1, connection.createArrayOf("text", Arrays.copyOf(columnValues[i], rows)));
+        }
+        insert.addBatch();
+        rows = 0;
+        if (++pendingInserts == insertsPerBatch) {
+            executeInserts();
+        }
+    }
+
+    private void executeInserts() throws SQLException {
+        if (pendingInserts == 0) {
+            return;
+        }
+        for (int count : insert.executeBatch()) {
+            if (count > 0) {
+                handledRowCount += count;
+            }
+        }
+        pendingInserts = 0;
+    }
+
+    private String insertStatement() {
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(statement.quotedTable()).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(CopyStatement.quoteIdentifier(columns.get(i)));
+        }
+        sb.append(") (SELECT * FROM UNNEST(");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i > 0 ? ", ?" : "?");
+        }
+        return sb.append("))").toString();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import org.postgresql.copy.CopyDual;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * {@link CopyManager} for CrateDB.
+ * <p>
+ * CrateDB does not support the COPY sub-protocol of PostgreSQL. This manager parses
+ * {@code COPY table [(columns)] FROM STDIN [WITH (...)]} statements itself and loads the
+ * {@code text}, {@code csv} or {@code json} (one object per line) data which is written to the
+ * returned {@link CopyIn} with bulk inserts. The {@code copyIn} methods taking an
+ * {@code InputStream} or {@code Reader} work as usual and return the number of inserted rows.
+ * <p>
+ * {@code COPY table [(columns)] TO STDOUT} and {@code COPY (query) TO STDOUT} statements run the
+ * query and write its result in the same formats. The values are streamed fetch batch by fetch
+ * batch as they were received, only escaped as the format requires.
+ * <pre>
+ *     CopyManager copyManager = new CrateCopyManager(connection);
+ *     long rows = copyManager.copyIn("COPY doc.t FROM STDIN WITH (FORMAT csv, HEADER true)", reader);
+ *     copyManager.copyOut("COPY (SELECT * FROM doc.t) TO STDOUT WITH (FORMAT json)", outputStream);
+ * </pre>
+ */
+public class CrateCopyManager extends CopyManager {
+
+    public static final int DEFAULT_ROWS_PER_INSERT = 1000;
+    public static final int DEFAULT_INSERTS_PER_BATCH = 4;
+    public static final int DEFAULT_FETCH_SIZE = 10000;
+
+    private final Connection connection;
+    private final int rowsPerInsert;
+    private final int insertsPerBatch;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    public CrateCopyManager(Connection connection) throws SQLException {
+        this(connection, DEFAULT_ROWS_PER_INSERT, DEFAULT_INSERTS_PER_BATCH);
+    }
+
+    /**
+     * @param rowsPerInsert   the number of rows inserted by a single statement.
+     * @param insertsPerBatch the number of statements sent to CrateDB at once.
+     */
+    public CrateCopyManager(Connection connection, int rowsPerInsert, int insertsPerBatch) throws SQLException {
+        super(connection.unwrap(BaseConnection.class));
+        if (rowsPerInsert < 1 || insertsPerBatch < 1) {
+            throw new PSQLException(
+                "rowsPerInsert and insertsPerBatch must be greater than 0", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        this.connection = connection;
+        this.rowsPerInsert = rowsPerInsert;
+        this.insertsPerBatch = insertsPerBatch;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets the number of rows fetched at once by {@code COPY ... TO STDOUT}.
+     */
+    public void setFetchSize(int fetchSize) throws SQLException {
+        if (fetchSize < 1) {
+            throw new PSQLException("fetchSize must be greater than 0", PSQLState.INVALID_PARAMETER_VALUE);
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public CopyIn copyIn(String sql) throws SQLException {
+        CopyStatement statement = CopyStatement.parse(sql);
+        if (statement.toStdout()) {
+            throw new PSQLException("Requested CopyIn but got COPY TO STDOUT", PSQLState.WRONG_OBJECT_TYPE);
+        }
+        return new CrateCopyIn(connection, statement, rowsPerInsert, insertsPerBatch);
+    }
+
+    @Override
+    public CopyOut copyOut(String sql) throws SQLException {
+        return startCopyOut(sql);
+    }
+
+    private CrateCopyOut startCopyOut(String sql) throws SQLException {
+        CopyStatement statement = CopyStatement.parse(sql);
+        if (!statement.toStdout()) {
+            throw new PSQLException("Requested CopyOut but got COPY FROM STDIN", PSQLState.WRONG_OBJECT_TYPE);
+        }
+        return CrateCopyOut.start(connection, statement, fetchSize);
+    }
+
+    @Override
+    public long copyOut(String sql, OutputStream to) throws SQLException, IOException {
+        return copyOut(sql, buffer -> buffer.writeTo(to));
+    }
+
+    public long copyOut(String sql, WritableByteChannel to) throws SQLException, IOException {
+        return copyOut(sql, buffer -> buffer.writeTo(to));
+    }
+
+    /**
+     * CrateDB always uses UTF-8, so characters are decoded independent of the client encoding.
+     */
+    @Override
+    public long copyOut(String sql, Writer to) throws SQLException, IOException {
+        return copyOut(sql, buffer -> to.write(buffer.toString()));
+    }
+
+    private long copyOut(String sql, CrateCopyOut.Sink sink) throws SQLException, IOException {
+        CrateCopyOut cp = startCopyOut(sql);
+        try {
+            return cp.copyTo(sink);
+        } finally {
+            if (cp.isActive()) {
+                cp.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * CrateDB always uses UTF-8, so characters are encoded independent of the client encoding.
+     */
+    @Override
+    public long copyIn(String sql, Reader from, int bufferSize) throws SQLException, IOException {
+        char[] cbuf = new char[bufferSize];
+        int len;
+        CopyIn cp = copyIn(sql);
+        try {
+            while ((len = from.read(cbuf)) >= 0) {
+                if (len > 0) {
+                    byte[] buf = new String(cbuf, 0, len).getBytes(StandardCharsets.UTF_8);
+                    cp.writeToCopy(buf, 0, buf.length);
+                }
+            }
+            return cp.endCopy();
+        } finally {
+            if (cp.isActive()) {
+                cp.cancelCopy();
+            }
+        }
+    }
+
+    @Override
+    public CopyDual copyDual(String sql) throws SQLException {
+        throw new PSQLException("COPY BOTH is not supported by CrateDB", PSQLState.NOT_IMPLEMENTED);
+    }
+}
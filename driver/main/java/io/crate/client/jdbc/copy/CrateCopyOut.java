@@ -0,0 +1,218 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import org.postgresql.copy.CopyOut;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * {@link CopyOut} which runs the query of a {@code COPY ... TO STDOUT} statement and encodes its result.
+ * <p>
+ * The result is fetched in batches of {@code fetchSize} rows. To make the driver use a cursor,
+ * auto-commit is disabled while the copy is active.
+ */
+class CrateCopyOut implements CopyOut {
+
+    /**
+     * Rows are passed on once this many bytes are buffered.
+     */
+    static final int FLUSH_SIZE = 65536;
+
+    interface Sink {
+        void write(OutputBuffer buffer) throws IOException;
+    }
+
+    private final Connection connection;
+    private final boolean restoreAutoCommit;
+    private final Statement statement;
+    private final ResultSet rs;
+    private final RowEncoder encoder;
+    private final OutputBuffer buffer = new OutputBuffer(8192);
+    private boolean header;
+    private long handledRowCount;
+    private boolean active = true;
+
+    private CrateCopyOut(Connection connection,
+                         boolean restoreAutoCommit,
+                         Statement statement,
+                         ResultSet rs,
+                         RowEncoder encoder,
+                         boolean header) {
+        this.connection = connection;
+        this.restoreAutoCommit = restoreAutoCommit;
+        this.statement = statement;
+        this.rs = rs;
+        this.encoder = encoder;
+        this.header = header;
+    }
+
+    static CrateCopyOut start(Connection connection, CopyStatement copyStatement, int fetchSize) throws SQLException {
+        boolean restoreAutoCommit = false;
+        if (connection.getAutoCommit()) {
+            try {
+                connection.setAutoCommit(false);
+                restoreAutoCommit = true;
+            } catch (SQLException e) {
+                // strict mode, the fetch size is ignored and the whole result is received at once
+            }
+        }
+        Statement statement = null;
+        try {
+            statement = connection.createStatement();
+            statement.setFetchSize(fetchSize);
+            ResultSet rs = statement.executeQuery(copyStatement.query());
+            return new CrateCopyOut(
+                connection,
+                restoreAutoCommit,
+                statement,
+                rs,
+                new RowEncoder(copyStatement, rs),
+                copyStatement.header());
+        } catch (SQLException e) {
+            if (statement != null) {
+                statement.close();
+            }
+            if (restoreAutoCommit) {
+                connection.setAutoCommit(true);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] readFromCopy() throws SQLException {
+        ensureActive();
+        buffer.reset();
+        if (!nextRecord()) {
+            close();
+            return null;
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public byte[] readFromCopy(boolean block) throws SQLException {
+        return readFromCopy();
+    }
+
+    /**
+     * Writes all remaining records to the sink, in chunks of about {@link #FLUSH_SIZE} bytes
+     * which always end with a complete record.
+     *
+     * @return the number of copied rows.
+     */
+    long copyTo(Sink sink) throws SQLException, IOException {
+        ensureActive();
+        buffer.reset();
+        while (nextRecord()) {
+            if (buffer.size() >= FLUSH_SIZE) {
+                sink.write(buffer);
+                buffer.reset();
+            }
+        }
+        if (buffer.size() > 0) {
+            sink.write(buffer);
+        }
+        close();
+        return handledRowCount;
+    }
+
+    /**
+     * Appends the next record to the buffer.
+     *
+     * @return false if there are no more records.
+     */
+    private boolean nextRecord() throws SQLException {
+        if (header) {
+            header = false;
+            encoder.writeHeader(buffer);
+            return true;
+        }
+        if (!rs.next()) {
+            return false;
+        }
+        encoder.writeRow(buffer);
+        handledRowCount++;
+        return true;
+    }
+
+    @Override
+    public void cancelCopy() throws SQLException {
+        if (active) {
+            statement.cancel();
+            close();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public long getHandledRowCount() {
+        return handledRowCount;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return encoder.columnCount();
+    }
+
+    /**
+     * @return 0, only the textual formats are supported.
+     */
+    @Override
+    public int getFormat() {
+        return 0;
+    }
+
+    @Override
+    public int getFieldFormat(int field) {
+        return 0;
+    }
+
+    private void ensureActive() throws PSQLException {
+        if (!active) {
+            throw new PSQLException("This copy stream is closed.", PSQLState.OBJECT_NOT_IN_STATE);
+        }
+    }
+
+    private void close() throws SQLException {
+        active = false;
+        try {
+            statement.close();
+        } finally {
+            if (restoreAutoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.util.List;
+
+/**
+ * Splits a single record of the PostgreSQL {@code text} or {@code csv} COPY format into its
+ * field values.
+ */
+final class RecordParser {
+
+    private final CopyStatement.Format format;
+    private final char delimiter;
+    private final char quote;
+    private final char escape;
+    private final String nullString;
+    private final StringBuilder field = new StringBuilder();
+
+    RecordParser(CopyStatement statement) {
+        this.format = statement.format();
+        this.delimiter = statement.delimiter();
+        this.quote = statement.quote();
+        this.escape = statement.escape();
+        this.nullString = statement.nullString();
+    }
+
+    /**
+     * Adds the values of the record to the given list, null for NULL values.
+     */
+    void parse(String record, List<String> values) throws PSQLException {
+        if (format == CopyStatement.Format.CSV) {
+            parseCsv(record, values);
+        } else {
+            parseText(record, values);
+        }
+    }
+
+    /**
+     * Unescapes the fields while scanning for delimiters, so that an escaped delimiter is part of
+     * the field. NULL is recognized before unescaping, like PostgreSQL does.
+     */
+    private void parseText(String record, List<String> values) throws PSQLException {
+        field.setLength(0);
+        int start = 0;
+        int length = record.length();
+        for (int i = 0; i < length; i++) {
+            char c = record.charAt(i);
+            if (c == delimiter) {
+                addTextValue(values, record, start, i);
+                start = i + 1;
+            } else if (c == '\\') {
+                i = unescapeText(record, i + 1);
+            } else {
+                field.append(c);
+            }
+        }
+        addTextValue(values, record, start, length);
+    }
+
+    private void addTextValue(List<String> values, String record, int start, int end) {
+        boolean isNull = end - start == nullString.length() && record.startsWith(nullString, start);
+        values.add(isNull ? null : field.toString());
+        field.setLength(0);
+    }
+
+    /**
+     * Appends the character of the escape sequence which starts at the given index, after the backslash.
+     *
+     * @return the index of the last character of the escape sequence.
+     */
+    private int unescapeText(String record, int i) throws PSQLException {
+        if (i == record.length()) {
+            throw new PSQLException("Unterminated escape sequence in COPY data", PSQLState.DATA_ERROR);
+        }
+        char c = record.charAt(i);
+        switch (c) {
+            case 'b':
+                field.append('\b');
+                return i;
+            case 'f':
+                field.append('\f');
+                return i;
+            case 'n':
+                field.append('\n');
+                return i;
+            case 'r':
+                field.append('\r');
+                return i;
+            case 't':
+                field.append('\t');
+                return i;
+            case 'v':
+                field.append('\u000B');
+                return i;
+            case 'x':
+                int hexEnd = i + 1;
+                int value = 0;
+                while (hexEnd < record.length() && hexEnd < i + 3 && Character.digit(record.charAt(hexEnd), 16) >= 0) {
+                    value = value * 16 + Character.digit(record.charAt(hexEnd), 16);
+                    hexEnd++;
+                }
+                if (hexEnd == i + 1) {
+                    // not followed by a hex digit, the x stands for itself
+                    field.append(c);
+                    return i;
+                }
+                field.append((char) value);
+                return hexEnd - 1;
+            default:
+                if (c >= '0' && c <= '7') {
+                    int octalEnd = i;
+                    value = 0;
+                    while (octalEnd < record.length() && octalEnd < i + 3
+                        && record.charAt(octalEnd) >= '0' && record.charAt(octalEnd) <= '7') {
+                        value = value * 8 + record.charAt(octalEnd) - '0';
+                        octalEnd++;
+                    }
+                    field.append((char) (value & 0xFF));
+                    return octalEnd - 1;
+                }
+                field.append(c);
+                return i;
+        }
+    }
+
+    private void parseCsv(String record, List<String> values) throws PSQLException {
+        field.setLength(0);
+        boolean inQuotes = false;
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (inQuotes) {
+                if (c == escape && escape != quote && i + 1 < record.length()
+                    && (record.charAt(i + 1) == quote || record.charAt(i + 1) == escape)) {
+                    field.append(record.charAt(++i));
+                } else if (c == quote) {
+                    if (escape == quote && i + 1 < record.length() && record.charAt(i + 1) == quote) {
+                        field.append(quote);
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == quote) {
+                inQuotes = true;
+                quoted = true;
+            } else if (c == delimiter) {
+                addCsvValue(values, quoted);
+                quoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        if (inQuotes) {
+            throw new PSQLException("Unterminated CSV quoted field", PSQLState.DATA_ERROR);
+        }
+        addCsvValue(values, quoted);
+    }
+
+    private void addCsvValue(List<String> values, boolean quoted) {
+        String value = field.toString();
+        field.setLength(0);
+        // only unquoted values can represent NULL
+        values.add(!quoted && value.equals(nullString) ? null : value);
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import io.crate.client.jdbc.RawRow;
+import org.postgresql.util.PGobject;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Encodes the rows of a {@link ResultSet} in one of the COPY formats.
+ * <p>
+ * Values which the server sent in text format are taken as they are from the {@link RawRow} of
+ * the result set, without decoding or copying them, and only the escaping the format requires is
+ * applied while they are written to the {@link OutputBuffer}.
+ */
+final class RowEncoder {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private enum Kind {
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        JSON,
+        ARRAY
+    }
+
+    private final ResultSet rs;
+    private final RawRow rawRow;
+    private final CopyStatement.Format format;
+    private final byte delimiter;
+    private final byte quote;
+    private final byte escape;
+    private final byte[] nullString;
+    private final String[] names;
+    private final Kind[] kinds;
+    private final boolean[] raw;
+    private final byte[][] jsonKeys;
+
+    // the current value, set by value(int)
+    private byte[] array;
+    private int offset;
+    private int length;
+
+    RowEncoder(CopyStatement statement, ResultSet rs) throws SQLException {
+        this.rs = rs;
+        this.format = statement.format();
+        this.delimiter = (byte) statement.delimiter();
+        this.quote = (byte) statement.quote();
+        this.escape = (byte) statement.escape();
+        this.nullString = statement.nullString().getBytes(StandardCharsets.UTF_8);
+
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        rawRow = rs.isWrapperFor(RawRow.class) ? rs.unwrap(RawRow.class) : null;
+        names = new String[columnCount];
+        kinds = new Kind[columnCount];
+        raw = new boolean[columnCount];
+        jsonKeys = new byte[columnCount][];
+        for (int i = 0; i < columnCount; i++) {
+            int column = i + 1;
+            names[i] = metaData.getColumnLabel(column);
+            kinds[i] = kind(metaData.getColumnType(column), metaData.getColumnTypeName(column));
+            // binary values need to be decoded by the result set
+            raw[i] = rawRow != null && !rawRow.isBinary(column);
+            if (format == CopyStatement.Format.JSON) {
+                OutputBuffer key = new OutputBuffer(names[i].length() + 4);
+                key.write(i == 0 ? (byte) '{' : (byte) ',');
+                byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+                writeJsonString(key, name, 0, name.length);
+                key.write((byte) ':');
+                jsonKeys[i] = key.toByteArray();
+            }
+        }
+    }
+
+    private static Kind kind(int type, String typeName) {
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return Kind.BOOLEAN;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return Kind.NUMBER;
+            case Types.ARRAY:
+                return Kind.ARRAY;
+            default:
+                return "json".equals(typeName) || "jsonb".equals(typeName) ? Kind.JSON : Kind.STRING;
+        }
+    }
+
+    int columnCount() {
+        return names.length;
+    }
+
+    /**
+     * Writes the header line of the {@code csv} format.
+     */
+    void writeHeader(OutputBuffer out) {
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                out.write(delimiter);
+            }
+            byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+            writeCsv(out, name, 0, name.length);
+        }
+        out.write((byte) '\n');
+    }
+
+    /**
+     * Writes the current row of the result set, including the line terminator.
+     */
+    void writeRow(OutputBuffer out) throws SQLException {
+        if (format == CopyStatement.Format.JSON) {
+            for (int i = 0; i < names.length; i++) {
+                out.write(jsonKeys[i]);
+                if (kinds[i] == Kind.ARRAY) {
+                    java.sql.Array value = rs.getArray(i + 1);
+                    writeJsonValue(out, value == null ? null : value.getArray());
+                } else if (value(i)) {
+                    writeJson(out, kinds[i], array, offset, length);
+                } else {
+                    out.write(NULL);
+                }
+            }
+            if (names.length == 0) {
+                out.write((byte) '{');
+            }
+            out.write((byte) '}');
+        } else {
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0) {
+                    out.write(delimiter);
+                }
+                if (!value(i)) {
+                    out.write(nullString);
+                } else if (format == CopyStatement.Format.CSV) {
+                    writeCsv(out, array, offset, length);
+                } else {
+                    writeText(out, array, offset, length);
+                }
+            }
+        }
+        out.write((byte) '\n');
+    }
+
+    /**
+     * Points {@link #array}, {@link #offset} and {@link #length} to the value of the column.
+     *
+     * @return false if the value is NULL.
+     */
+    private boolean value(int i) throws SQLException {
+        int column = i + 1;
+        if (raw[i]) {
+            array = rawRow.getRawArray(column);
+            if (array == null) {
+                return false;
+            }
+            offset = rawRow.getRawOffset(column);
+            length = rawRow.getRawLength(column);
+            return true;
+        }
+        String value = rs.getString(column);
+        if (value == null) {
+            return false;
+        }
+        array = value.getBytes(StandardCharsets.UTF_8);
+        offset = 0;
+        length = array.length;
+        return true;
+    }
+
+    private void writeText(OutputBuffer out, byte[] value, int off, int len) {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            byte b = value[i];
+            byte escaped;
+            switch (b) {
+                case '\\':
+                    escaped = '\\';
+                    break;
+                case '\n':
+                    escaped = 'n';
+                    break;
+                case '\r':
+                    escaped = 'r';
+                    break;
+                case '\t':
+                    escaped = 't';
+                    break;
+                default:
+                    if (b != delimiter) {
+                        continue;
+                    }
+                    escaped = b;
+            }
+            out.write(value, start, i - start);
+            out.write((byte) '\\');
+            out.write(escaped);
+            start = i + 1;
+        }
+        out.write(value, start, end - start);
+    }
+
+    private void writeCsv(OutputBuffer out, byte[] value, int off, int len) {
+        int end = off + len;
+        // values which look like NULL must be quoted to tell them apart
+        boolean quoted = len == nullString.length
+            && Arrays.equals(value, off, end, nullString, 0, nullString.length);
+        for (int i = off; i < end && !quoted; i++) {
+            byte b = value[i];
+            quoted = b == delimiter || b == quote || b == escape || b == '\n' || b == '\r';
+        }
+        if (!quoted) {
+            out.write(value, off, len);
+            return;
+        }
+        out.write(quote);
+        int start = off;
+        for (int i = off; i < end; i++) {
+            byte b = value[i];
+            if (b == quote || b == escape) {
+                out.write(value, start, i - start);
+                out.write(escape);
+                start = i;
+            }
+        }
+        out.write(value, start, end - start);
+        out.write(quote);
+    }
+
+    private static void writeJson(OutputBuffer out, Kind kind, byte[] value, int off, int len) {
+        switch (kind) {
+            case BOOLEAN:
+                out.write(len > 0 && value[off] == 't' ? TRUE : FALSE);
+                break;
+            case NUMBER:
+                // NaN and Infinity are not valid JSON numbers
+                if (len > 0 && (value[off + len - 1] == 'N' || value[off + len - 1] == 'y')) {
+                    writeJsonString(out, value, off, len);
+                } else {
+                    out.write(value, off, len);
+                }
+                break;
+            case JSON:
+                out.write(value, off, len);
+                break;
+            default:
+                writeJsonString(out, value, off, len);
+        }
+    }
+
+    private static void writeJsonString(OutputBuffer out, byte[] value, int off, int len) {
+        out.write((byte) '"');
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            byte b = value[i];
+            // bytes of multi-byte UTF-8 sequences are negative and need no escaping
+            if (b != '"' && b != '\\' && (b >= 0x20 || b < 0)) {
+                continue;
+            }
+            out.write(value, start, i - start);
+            out.write((byte) '\\');
+            switch (b) {
+                case '"':
+                case '\\':
+                    out.write(b);
+                    break;
+                case '\n':
+                    out.write((byte) 'n');
+                    break;
+                case '\r':
+                    out.write((byte) 'r');
+                    break;
+                case '\t':
+                    out.write((byte) 't');
+                    break;
+                default:
+                    out.write((byte) 'u');
+                    out.write((byte) '0');
+                    out.write((byte) '0');
+                    out.write(HEX[b >> 4]);
+                    out.write(HEX[b & 0xF]);
+            }
+            start = i + 1;
+        }
+        out.write(value, start, end - start);
+        out.write((byte) '"');
+    }
+
+    private static void writeJsonString(OutputBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeJsonString(out, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes the elements of arrays, which are only available as objects.
+     */
+    private static void writeJsonValue(OutputBuffer out, Object value) {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Number) {
+            byte[] number = value.toString().getBytes(StandardCharsets.US_ASCII);
+            writeJson(out, Kind.NUMBER, number, 0, number.length);
+        } else if (value instanceof PGobject) {
+            String json = ((PGobject) value).getValue();
+            out.write(json == null ? NULL : json.getBytes(StandardCharsets.UTF_8));
+        } else if (value.getClass().isArray()) {
+            out.write((byte) '[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                if (i > 0) {
+                    out.write((byte) ',');
+                }
+                writeJsonValue(out, Array.get(value, i));
+            }
+            out.write((byte) ']');
+        } else if (value instanceof Map) {
+            out.write((byte) '{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.write((byte) ',');
+                }
+                first = false;
+                writeJsonString(out, String.valueOf(entry.getKey()));
+                out.write((byte) ':');
+                writeJsonValue(out, entry.getValue());
+            }
+            out.write((byte) '}');
+        } else {
+            writeJsonString(out, value.toString());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.postgresql.util.PSQLException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ArenaResultSetTest {
+
+    private ResultSet source;
+    private Array tags;
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static CrateStatement newStatement() throws SQLException {
+        return new CrateStatement(new CrateConnection(mock(Connection.class), new Properties()), mock(Statement.class));
+    }
+
+    @Before
+    public void setUpSource() throws Exception {
+        source = mock(ResultSet.class);
+        RawRow rawRow = mock(RawRow.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(source.getMetaData()).thenReturn(metaData);
+        when(source.isWrapperFor(RawRow.class)).thenReturn(true);
+        when(source.unwrap(RawRow.class)).thenReturn(rawRow);
+        when(source.getType()).thenReturn(ResultSet.TYPE_SCROLL_INSENSITIVE);
+        when(metaData.getColumnCount()).thenReturn(5);
+        when(metaData.getColumnLabel(1)).thenReturn("id");
+        when(metaData.getColumnLabel(2)).thenReturn("Name");
+        when(metaData.getColumnLabel(3)).thenReturn("ts");
+        when(metaData.getColumnLabel(4)).thenReturn("price");
+        when(metaData.getColumnLabel(5)).thenReturn("tags");
+        when(metaData.getColumnType(1)).thenReturn(Types.BIGINT);
+        when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+        when(metaData.getColumnType(3)).thenReturn(Types.TIMESTAMP);
+        when(metaData.getColumnType(4)).thenReturn(Types.NUMERIC);
+        when(metaData.getColumnType(5)).thenReturn(Types.ARRAY);
+
+        when(source.next()).thenReturn(true, true, false);
+        // the id column is in binary format and read with getString
+        when(rawRow.isBinary(1)).thenReturn(true);
+        when(source.getString(1)).thenReturn("1", "2");
+        raw(rawRow, 2, "foo", null);
+        raw(rawRow, 3, "2021-03-04 05:06:07.123+00", null);
+        raw(rawRow, 4, "1.50", "-3");
+        raw(rawRow, 5, "{a,b}", null);
+        tags = mock(Array.class);
+        // like PgArray, the text of the array is its string representation
+        when(tags.toString()).thenReturn("{a,b}");
+        when(source.getObject(5)).thenReturn(tags, null);
+    }
+
+    private static void raw(RawRow rawRow, int column, String first, String second) throws Exception {
+        when(rawRow.getRawArray(column)).thenReturn(utf8(first), utf8(second));
+        when(rawRow.getRawOffset(column)).thenReturn(0);
+        when(rawRow.getRawLength(column)).thenReturn(
+            first == null ? -1 : utf8(first).length, second == null ? -1 : utf8(second).length);
+    }
+
+    @Test
+    public void testLoadAndRead() throws Exception {
+        CrateStatement statement = newStatement();
+        ArenaResultSet rs = ArenaResultSet.load(statement, source, 0);
+        verify(source).close();
+        assertThat(rs.getStatement(), sameInstance(statement));
+
+        assertThat(rs.next(), is(true));
+        assertThat(rs.getLong(1), is(1L));
+        assertThat(rs.getObject("ID"), is(1L));
+        assertThat(rs.getString("name"), is("foo"));
+        assertThat(rs.getTimestamp(3).toInstant(), is(Instant.parse("2021-03-04T05:06:07.123Z")));
+        assertThat(rs.getObject(3, Instant.class), is(Instant.parse("2021-03-04T05:06:07.123Z")));
+        assertThat(rs.getBigDecimal(4), is(new BigDecimal("1.50")));
+        assertThat(rs.getInt(4), is(1));
+        assertThat(rs.getArray(5), sameInstance(tags));
+        assertThat(rs.getString(5), is("{a,b}"));
+        assertThat(rs.getRawLength(5), is(5));
+
+        assertThat(rs.next(), is(true));
+        assertThat(rs.getString(2), is(nullValue()));
+        assertThat(rs.wasNull(), is(true));
+        assertThat(rs.getLong(2), is(0L));
+        assertThat(rs.getTimestamp(3), is(nullValue()));
+        assertThat(rs.getObject(4), is(new BigDecimal("-3")));
+        assertThat(rs.wasNull(), is(false));
+        assertThat(rs.getArray(5), is(nullValue()));
+        assertThat(rs.next(), is(false));
+        assertThat(rs.isAfterLast(), is(true));
+    }
+
+    @Test
+    public void testScrolling() throws Exception {
+        ArenaResultSet rs = ArenaResultSet.load(newStatement(), source, 0);
+        assertThat(rs.last(), is(true));
+        assertThat(rs.getRow(), is(2));
+        assertThat(rs.previous(), is(true));
+        assertThat(rs.getLong(1), is(1L));
+        assertThat(rs.previous(), is(false));
+        assertThat(rs.isBeforeFirst(), is(true));
+        assertThat(rs.absolute(-1), is(true));
+        assertThat(rs.getLong(1), is(2L));
+        assertThat(rs.relative(5), is(false));
+        assertThat(rs.isAfterLast(), is(true));
+    }
+
+    @Test
+    public void testRawRowSlices() throws Exception {
+        ArenaResultSet rs = ArenaResultSet.load(newStatement(), source, 0);
+        rs.next();
+        RawRow rawRow = RawRow.of(rs);
+        assertThat(rawRow, sameInstance(rs));
+        int offset = rawRow.getRawOffset(2);
+        assertThat(offset > 0, is(true));
+        assertThat(new String(rawRow.getRawArray(2), offset, rawRow.getRawLength(2), StandardCharsets.UTF_8), is("foo"));
+    }
+
+    @Test
+    public void testSpilledRowsAreReadBackFromFile() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(CrateProperty.SPILL_THRESHOLD.getName(), "1");
+        CrateStatement statement =
+            new CrateStatement(new CrateConnection(mock(Connection.class), properties), mock(Statement.class));
+        ArenaResultSet rs = ArenaResultSet.load(statement, source, 0);
+
+        assertThat(rs.next(), is(true));
+        assertThat(rs.getLong(1), is(1L));
+        assertThat(rs.getString(2), is("foo"));
+        assertThat(rs.getBigDecimal(4), is(new BigDecimal("1.50")));
+        RawRow rawRow = RawRow.of(rs);
+        assertThat(new String(rawRow.getRawArray(2), rawRow.getRawOffset(2), rawRow.getRawLength(2),
+            StandardCharsets.UTF_8), is("foo"));
+        // the values are read into a buffer of the result set instead of a new array per read
+        assertThat(rawRow.getRawArray(2), sameInstance(rawRow.getRawArray(2)));
+        assertThat(rs.next(), is(true));
+        assertThat(rs.getString(2), is(nullValue()));
+        assertThat(rs.getObject(4), is(new BigDecimal("-3")));
+    }
+
+    @Test
+    public void testInvalidAccess() throws Exception {
+        when(source.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+        ArenaResultSet rs = ArenaResultSet.load(newStatement(), source, 0);
+        assertThrows(PSQLException.class, () -> rs.getString(1));
+        assertThrows(PSQLException.class, rs::previous);
+        rs.next();
+        assertThrows(PSQLException.class, () -> rs.getString(6));
+        assertThrows(PSQLException.class, () -> rs.getString("unknown"));
+        assertThrows(PSQLException.class, () -> rs.getLong(2));
+        assertThrows(PSQLException.class, () -> rs.updateString(2, "bar"));
+        rs.close();
+        assertThat(rs.isClosed(), is(true));
+        assertThrows(PSQLException.class, rs::next);
+    }
+
+    @Test
+    public void testStatementCompactsCompleteResults() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(CrateProperty.COMPACT_RESULTS.getName(), "true");
+        Connection connection = mock(Connection.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        Statement delegate = mock(Statement.class);
+        when(delegate.executeQuery("select")).thenReturn(source);
+        when(delegate.getResultSet()).thenReturn(source);
+        CrateStatement statement = new CrateStatement(new CrateConnection(connection, properties), delegate);
+
+        ResultSet rs = statement.executeQuery("select");
+        assertThat(rs, instanceOf(ArenaResultSet.class));
+        assertThat(statement.getResultSet(), sameInstance(rs));
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchSplitterTest {
+
+    private static ParameterRow row(int id) {
+        return new ParameterRow(new ParameterRow.Binder[]{s -> s.setInt(1, id)}, 15);
+    }
+
+    /**
+     * Adds a row like {@link CrateStatement#addToBatch} does, without a query timeout.
+     */
+    private static void add(BatchSplitter splitter, Statement statement, long rowBytes, ParameterRow row)
+        throws SQLException {
+        if (splitter.add(rowBytes, row)) {
+            splitter.flush(statement);
+        }
+    }
+
+    @Test
+    public void testNoLimitsDoesNotSplit() throws Exception {
+        Statement statement = mock(Statement.class);
+        when(statement.executeBatch()).thenReturn(new int[]{1, 1, 1});
+
+        BatchSplitter splitter = new BatchSplitter(0, 0, false);
+        for (int i = 0; i < 3; i++) {
+            add(splitter, statement, 10, null);
+        }
+        verify(statement, times(0)).executeBatch();
+        assertArrayEquals(new int[]{1, 1, 1}, splitter.finish(statement).getUpdateCounts());
+    }
+
+    @Test
+    public void testSplitByRows() throws Exception {
+        Statement statement = mock(Statement.class);
+        when(statement.executeBatch()).thenReturn(new int[]{1, 1}, new int[]{1, 1}, new int[]{1});
+
+        BatchSplitter splitter = new BatchSplitter(2, 0, false);
+        for (int i = 0; i < 5; i++) {
+            add(splitter, statement, 10, null);
+        }
+        verify(statement, times(2)).executeBatch();
+
+        BatchResult result = splitter.finish(statement);
+        verify(statement, times(3)).executeBatch();
+        assertArrayEquals(new int[]{1, 1, 1, 1, 1}, result.getUpdateCounts());
+        assertThat(result.hasFailures(), is(false));
+        assertThat(result.toException(), nullValue());
+    }
+
+    @Test
+    public void testSplitByBytes() throws Exception {
+        Statement statement = mock(Statement.class);
+        when(statement.executeBatch()).thenReturn(new int[]{1, 1, 1}, new int[]{1});
+
+        BatchSplitter splitter = new BatchSplitter(0, 100, false);
+        for (int i = 0; i < 4; i++) {
+            add(splitter, statement, 40, null);
+        }
+        verify(statement, times(1)).executeBatch();
+        assertArrayEquals(new int[]{1, 1, 1, 1}, splitter.finish(statement).getUpdateCounts());
+    }
+
+    @Test
+    public void testFailedChunkKeepsCountsInOrder() throws Exception {
+        Statement statement = mock(Statement.class);
+        BatchUpdateException failure = new BatchUpdateException("boom", new int[]{1});
+        when(statement.executeBatch())
+            .thenReturn(new int[]{1, 1})
+            .thenThrow(failure)
+            .thenReturn(new int[]{1});
+
+        BatchSplitter splitter = new BatchSplitter(2, 0, false);
+        for (int i = 0; i < 5; i++) {
+            add(splitter, statement, 10, null);
+        }
+        BatchResult result = splitter.finish(statement);
+        assertArrayEquals(new int[]{1, 1, 1, Statement.EXECUTE_FAILED, 1}, result.getUpdateCounts());
+        assertArrayEquals(new int[]{3}, result.getFailedRows());
+        assertThat(result.getErrorMessage(3), is("boom"));
+        assertThat(result.getErrorMessage(2), nullValue());
+
+        BatchUpdateException e = result.toException();
+        assertThat(e.getMessage(), is("boom"));
+        assertArrayEquals(new int[]{1, 1, 1, Statement.EXECUTE_FAILED, 1}, e.getUpdateCounts());
+
+        // state is reset after the batch has been executed
+        when(statement.executeBatch()).thenReturn(new int[]{1});
+        add(splitter, statement, 10, null);
+        assertArrayEquals(new int[]{1}, splitter.finish(statement).getUpdateCounts());
+    }
+
+    @Test
+    public void testOnlyTheRowWhichFailedHasTheMessage() throws Exception {
+        Statement statement = mock(Statement.class);
+        when(statement.executeBatch()).thenThrow(
+            new BatchUpdateException("duplicate key", new int[]{1, Statement.EXECUTE_FAILED}));
+
+        BatchSplitter splitter = new BatchSplitter(0, 0, false);
+        for (int i = 0; i < 3; i++) {
+            add(splitter, statement, 10, null);
+        }
+        BatchResult result = splitter.finish(statement);
+        assertArrayEquals(new int[]{1, 2}, result.getFailedRows());
+        assertThat(result.getErrorMessage(1), is("duplicate key"));
+        assertThat(result.getErrorMessage(2), nullValue());
+    }
+
+    @Test
+    public void testDecodeFailedBulkRows() throws Exception {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.executeBatch()).thenReturn(new int[]{1, -2}, new int[]{-2, 1});
+
+        BatchSplitter splitter = new BatchSplitter(2, 0, true);
+        ParameterRow[] rows = new ParameterRow[]{row(1), row(2), row(3), row(4)};
+        for (ParameterRow row : rows) {
+            add(splitter, statement, row.bytes(), row);
+        }
+        BatchResult result = splitter.finish(statement);
+        assertArrayEquals(
+            new int[]{1, Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED, 1}, result.getUpdateCounts());
+        assertArrayEquals(new int[]{1, 2}, result.getFailedRows());
+        assertThat(result.getErrorMessage(1), nullValue());
+        assertThat(result.toException(), nullValue());
+        assertThat(splitter.lastFailedParameters(), contains(rows[1], rows[2]));
+    }
+
+    @Test
+    public void testBulkRowsAreNotDecodedForRewrittenBatches() throws Exception {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.executeBatch()).thenReturn(new int[]{Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO});
+
+        BatchSplitter splitter = new BatchSplitter(0, 0, false);
+        add(splitter, statement, 10, row(1));
+        add(splitter, statement, 10, row(2));
+        BatchResult result = splitter.finish(statement);
+        assertThat(result.hasFailures(), is(false));
+        assertThat(splitter.lastFailedParameters(), empty());
+    }
+
+    @Test
+    public void testClearDiscardsCounts() throws Exception {
+        Statement statement = mock(Statement.class);
+        when(statement.executeBatch()).thenReturn(new int[]{1, 1}, new int[]{1});
+
+        BatchSplitter splitter = new BatchSplitter(2, 0, false);
+        add(splitter, statement, 10, null);
+        add(splitter, statement, 10, null);
+        splitter.clear();
+        add(splitter, statement, 10, null);
+        assertArrayEquals(new int[]{1}, splitter.finish(statement).getUpdateCounts());
+    }
+
+    @Test
+    public void testChunkWhichCouldNotBeExecutedEndsTheBatch() throws Exception {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.executeBatch())
+            .thenReturn(new int[]{1, 1})
+            .thenThrow(new SQLException("connection lost", "08006"))
+            .thenReturn(new int[]{1});
+
+        BatchSplitter splitter = new BatchSplitter(2, 0, true);
+        ParameterRow[] rows = new ParameterRow[]{row(1), row(2), row(3), row(4)};
+        add(splitter, statement, rows[0].bytes(), rows[0]);
+        add(splitter, statement, rows[1].bytes(), rows[1]);
+        add(splitter, statement, rows[2].bytes(), rows[2]);
+        SQLException error = assertThrows(
+            SQLException.class, () -> add(splitter, statement, rows[3].bytes(), rows[3]));
+
+        BatchResult result = splitter.abort(error);
+        int[] counts = new int[]{1, 1, Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED};
+        assertArrayEquals(counts, result.getUpdateCounts());
+        assertArrayEquals(new int[]{2, 3}, result.getFailedRows());
+        assertThat(result.getErrorMessage(2), is("connection lost"));
+        assertThat(splitter.lastFailedParameters(), contains(rows[2], rows[3]));
+        BatchUpdateException e = result.toException();
+        assertThat(e.getSQLState(), is("08006"));
+        assertArrayEquals(counts, e.getUpdateCounts());
+
+        // the rows of the failed chunk are not sent again with the next batch
+        add(splitter, statement, 10, row(5));
+        assertArrayEquals(new int[]{1}, splitter.finish(statement).getUpdateCounts());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.postgresql.util.PSQLException;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ColumnIndexTest {
+
+    private static ResultSetMetaData metaData(String... labels) throws Exception {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            when(metaData.getColumnLabel(i + 1)).thenReturn(labels[i]);
+        }
+        return metaData;
+    }
+
+    @Test
+    public void testCaseInsensitiveLookup() throws Exception {
+        ColumnIndex index = ColumnIndex.of(metaData("id", "Name", "name", "VALUE"), false);
+        assertThat(index.find("id"), is(1));
+        assertThat(index.find("ID"), is(1));
+        assertThat(index.find("name"), is(2));
+        assertThat(index.find("NAME"), is(2));
+        assertThat(index.find("value"), is(4));
+        assertThrows(PSQLException.class, () -> index.find("unknown"));
+    }
+
+    @Test
+    public void testSanitiserDisabled() throws Exception {
+        ColumnIndex index = ColumnIndex.of(metaData("Name", "name", "VALUE"), true);
+        assertThat(index.find("Name"), is(1));
+        assertThat(index.find("name"), is(2));
+        assertThat(index.find("value"), is(3));
+        // like pgjdbc, the lower and upper cased label are tried if there is no exact match
+        assertThat(index.find("nAmE"), is(2));
+        assertThrows(PSQLException.class, () -> index.find("values"));
+    }
+
+    @Test
+    public void testStatementReusesIndexOfSameColumns() throws Exception {
+        Statement delegate = mock(Statement.class);
+        CrateStatement statement =
+            new CrateStatement(new CrateConnection(mock(Connection.class), new Properties()), delegate);
+        ColumnIndex first = statement.columnIndex(metaData("id", "name"));
+        assertThat(statement.columnIndex(metaData("id", "name")), sameInstance(first));
+        assertThat(statement.columnIndex(metaData("id", "name", "value")), not(sameInstance(first)));
+        assertThat(statement.columnIndex(metaData("name", "id")).find("id"), is(2));
+    }
+
+    @Test
+    public void testResultSetsOfRepeatedExecutionsShareIndex() throws Exception {
+        Statement delegate = mock(Statement.class);
+        CrateStatement statement =
+            new CrateStatement(new CrateConnection(mock(Connection.class), new Properties()), delegate);
+        ResultSetMetaData metaData = metaData("id", "name");
+        for (int i = 0; i < 3; i++) {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getMetaData()).thenReturn(metaData);
+            when(delegate.executeQuery("select")).thenReturn(rs);
+            assertThat(statement.executeQuery("select").findColumn("NAME"), is(2));
+            verify(rs, never()).findColumn("NAME");
+        }
+        // read once to build the index and once to compare it for each later execution
+        verify(metaData, times(3)).getColumnLabel(2);
+    }
+}
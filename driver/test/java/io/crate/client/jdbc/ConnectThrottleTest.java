@@ -0,0 +1,194 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.postgresql.util.HostSpec;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+
+public class ConnectThrottleTest {
+
+    private static final HostSpec FIRST = new HostSpec("crate1", 5432);
+    private static final HostSpec SECOND = new HostSpec("crate2", 5432);
+    private static final HostSpec[] HOSTS = {FIRST, SECOND};
+
+    private long now = 1000;
+    private final List<HostSpec> attempts = new ArrayList<>();
+
+    /**
+     * Jitter of 0, so every backoff is half of its upper bound.
+     */
+    private final ConnectThrottle throttle = new ConnectThrottle(() -> now, new Random() {
+        @Override
+        public double nextDouble() {
+            return 0.0;
+        }
+    });
+
+    private ConnectThrottle.HostConnector failing(HostSpec down, String sqlState, Connection connection) {
+        return host -> {
+            attempts.add(host);
+            if (host.equals(down)) {
+                throw new SQLException("connection refused", sqlState);
+            }
+            return connection;
+        };
+    }
+
+    @Test
+    public void testUnreachableHostIsSkippedDuringBackoff() throws Exception {
+        Connection connection = mock(Connection.class);
+        ConnectThrottle.HostConnector connector = failing(FIRST, "08001", connection);
+
+        assertThat(throttle.connect(HOSTS, 0, 10_000, 0, 0, connector), sameInstance(connection));
+        assertThat(throttle.connect(HOSTS, 0, 10_000, 0, 0, connector), sameInstance(connection));
+        assertThat(attempts, contains(FIRST, SECOND, SECOND));
+
+        now += ConnectThrottle.INITIAL_BACKOFF_MILLIS / 2;
+        attempts.clear();
+        throttle.connect(HOSTS, 0, 10_000, 0, 0, connector);
+        assertThat(attempts, contains(FIRST, SECOND));
+    }
+
+    @Test
+    public void testDownHostIsSkippedUntilItIsRechecked() throws Exception {
+        Connection connection = mock(Connection.class);
+        ConnectThrottle.HostConnector connector = failing(FIRST, "08001", connection);
+
+        assertThat(throttle.connect(HOSTS, 1, 0, 10_000, 0, connector), sameInstance(connection));
+        assertThat(throttle.connect(HOSTS, 1, 0, 10_000, 0, connector), sameInstance(connection));
+        assertThat(attempts, contains(FIRST, SECOND, SECOND));
+
+        attempts.clear();
+        SQLException e =
+            assertThrows(SQLException.class, () -> throttle.connect(new HostSpec[]{FIRST}, 1, 0, 10_000, 0, connector));
+        assertThat(e.getMessage(), is("Could not connect to any host, all of them are marked down."));
+        assertThat(attempts.isEmpty(), is(true));
+
+        now += 10_000;
+        throttle.connect(HOSTS, 1, 0, 10_000, 0, connector);
+        assertThat(attempts, contains(FIRST, SECOND));
+    }
+
+    @Test
+    public void testHostWhoseConnectionBrokeIsDown() throws Exception {
+        throttle.failed(FIRST, 0, 10_000);
+        throttle.connect(HOSTS, 0, 0, 10_000, 0, failing(null, null, mock(Connection.class)));
+        assertThat(attempts, contains(SECOND));
+    }
+
+    @Test
+    public void testBackoffGrowsExponentiallyUpToTheMaximum() throws Exception {
+        ConnectThrottle.HostConnector connector = failing(FIRST, "08006", mock(Connection.class));
+        HostSpec[] hosts = {FIRST};
+        long[] expected = {50, 100, 200, 250, 250};
+        for (long backoff : expected) {
+            assertThrows(SQLException.class, () -> throttle.connect(hosts, 0, 500, 0, 0, connector));
+            now += backoff - 1;
+            SQLException e =
+                assertThrows(SQLException.class, () -> throttle.connect(hosts, 0, 500, 0, 0, connector));
+            assertThat(e.getSQLState(), is(PSQLState.CONNECTION_UNABLE_TO_CONNECT.getState()));
+            now += 1;
+        }
+    }
+
+    @Test
+    public void testSuccessResetsTheBackoff() throws Exception {
+        boolean[] down = {true};
+        HostSpec[] hosts = {FIRST};
+        ConnectThrottle.HostConnector connector = host -> {
+            if (down[0]) {
+                throw new PSQLException("connection refused", PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+            }
+            return mock(Connection.class);
+        };
+        assertThrows(SQLException.class, () -> throttle.connect(hosts, 0, 10_000, 0, 0, connector));
+        now += 50;
+        assertThrows(SQLException.class, () -> throttle.connect(hosts, 0, 10_000, 0, 0, connector));
+        now += 100;
+        down[0] = false;
+        throttle.connect(hosts, 0, 10_000, 0, 0, connector);
+        down[0] = true;
+        assertThrows(SQLException.class, () -> throttle.connect(hosts, 0, 10_000, 0, 0, connector));
+        now += 50;
+        SQLException e =
+            assertThrows(SQLException.class, () -> throttle.connect(hosts, 0, 10_000, 0, 0, connector));
+        assertThat(e.getMessage(), is("connection refused"));
+    }
+
+    @Test
+    public void testOtherErrorsDoNotCauseBackoff() throws Exception {
+        ConnectThrottle.HostConnector connector = failing(FIRST, "28P01", mock(Connection.class));
+        throttle.connect(HOSTS, 0, 10_000, 0, 0, connector);
+        throttle.connect(HOSTS, 0, 10_000, 0, 0, connector);
+        assertThat(attempts, contains(FIRST, SECOND, FIRST, SECOND));
+    }
+
+    @Test
+    public void testBusyHostIsSkippedAfterWaiting() throws Exception {
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Connection slow = mock(Connection.class);
+        Connection fast = mock(Connection.class);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Connection> first = executor.submit(() -> throttle.connect(HOSTS, 1, 0, 0, 0, host -> {
+                connecting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+                return slow;
+            }));
+            connecting.await();
+            assertThat(throttle.connect(HOSTS, 1, 0, 0, 10, host -> host.equals(SECOND) ? fast : slow),
+                sameInstance(fast));
+
+            release.countDown();
+            assertThat(first.get(), sameInstance(slow));
+            assertThat(throttle.connect(HOSTS, 1, 0, 0, 10, host -> host.equals(FIRST) ? fast : slow),
+                sameInstance(fast));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import io.crate.client.jdbc.copy.CrateCopyManager;
+import org.junit.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.core.BaseConnection;
+
+import java.io.StringReader;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CrateConnectionTest {
+
+    @Test
+    public void testCopyApiLoadsDataThroughCrateCopyManager() throws Exception {
+        BaseConnection delegate = mock(BaseConnection.class);
+        PreparedStatement insert = mock(PreparedStatement.class);
+        when(delegate.unwrap(BaseConnection.class)).thenReturn(delegate);
+        when(delegate.prepareStatement(anyString())).thenReturn(insert);
+        when(delegate.createArrayOf(eq("text"), any())).thenReturn(mock(Array.class));
+        when(insert.executeBatch()).thenReturn(new int[]{2});
+
+        PGConnection connection = new CrateConnection(delegate, new Properties());
+        assertThat(connection.getCopyAPI(), instanceOf(CrateCopyManager.class));
+        assertThat(connection.getCopyAPI(), sameInstance(connection.getCopyAPI()));
+
+        long rows = connection.getCopyAPI().copyIn("COPY doc.t (a) FROM STDIN", new StringReader("1\n2\n"));
+        assertThat(rows, is(2L));
+        verify(delegate).prepareStatement("INSERT INTO \"doc\".\"t\" (\"a\") (SELECT * FROM UNNEST(?))");
+        verify(delegate, never()).getCopyAPI();
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+import org.postgresql.core.QueryExecutor;
+import org.postgresql.util.PGobject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CratePreparedStatementTest {
+
+    private static CratePreparedStatement prepare(PreparedStatement delegate, Properties properties) throws Exception {
+        CrateConnection connection = new CrateConnection(mock(Connection.class), properties);
+        return new CratePreparedStatement(connection, delegate, "INSERT INTO t (x) VALUES (?)");
+    }
+
+    @Test
+    public void testRetryFailedRows() throws Exception {
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        when(delegate.executeBatch()).thenReturn(new int[]{1, -2, 1}, new int[]{1});
+
+        CratePreparedStatement stmt = prepare(delegate, new Properties());
+        stmt.setRetryEnabled(true);
+        for (int id = 1; id <= 3; id++) {
+            stmt.setInt(1, id);
+            stmt.setString(2, "row" + id);
+            stmt.addBatch();
+        }
+        assertArrayEquals(new int[]{1, Statement.EXECUTE_FAILED, 1}, stmt.executeBatch());
+        assertArrayEquals(new int[]{1}, stmt.getBatchResult().getFailedRows());
+
+        assertArrayEquals(new int[]{1}, stmt.retryFailedRows());
+        verify(delegate, times(2)).setInt(1, 2);
+        verify(delegate, times(2)).setString(2, "row2");
+        verify(delegate, times(1)).setInt(1, 3);
+        assertThat(stmt.getBatchResult().hasFailures(), is(false));
+    }
+
+    @Test
+    public void testFailedRowsAreOnlyKeptIfRetriesAreEnabled() throws Exception {
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        when(delegate.executeBatch()).thenReturn(new int[]{-2, -2});
+
+        CratePreparedStatement stmt = prepare(delegate, new Properties());
+        stmt.setInt(1, 1);
+        stmt.addBatch();
+        stmt.setRetryEnabled(true);
+        stmt.setInt(1, 2);
+        stmt.addBatch();
+        assertArrayEquals(new int[]{Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED}, stmt.executeBatch());
+        assertThrows(SQLFeatureNotSupportedException.class, stmt::retryFailedRows);
+    }
+
+    @Test
+    public void testRowsWithStreamsCannotBeRetried() throws Exception {
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        when(delegate.executeBatch()).thenReturn(new int[]{-2});
+        CratePreparedStatement stmt = prepare(delegate, new Properties());
+        stmt.setRetryEnabled(true);
+        InputStream in = new ByteArrayInputStream(new byte[3]);
+        stmt.setBinaryStream(1, in, 3);
+        stmt.addBatch();
+        assertArrayEquals(new int[]{Statement.EXECUTE_FAILED}, stmt.executeBatch());
+        assertThrows(SQLFeatureNotSupportedException.class, stmt::retryFailedRows);
+        verify(delegate, times(1)).setBinaryStream(1, in, 3);
+    }
+
+    @Test
+    public void testSplitByPayloadSize() throws Exception {
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        when(delegate.executeBatch()).thenReturn(new int[]{1, 1}, new int[]{1});
+
+        Properties properties = new Properties();
+        properties.setProperty(CrateProperty.BATCH_MAX_BYTES.getName(), "28");
+        CratePreparedStatement stmt = prepare(delegate, properties);
+        for (int i = 0; i < 3; i++) {
+            stmt.setString(1, "0123456789");
+            stmt.addBatch();
+        }
+        verify(delegate, times(1)).executeBatch();
+        assertArrayEquals(new int[]{1, 1, 1}, stmt.executeBatch());
+    }
+
+    @Test
+    public void testFailedRowsOfEarlierChunksCanBeRetried() throws Exception {
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        when(delegate.executeBatch()).thenReturn(new int[]{-2, 1}, new int[]{1, 1}, new int[]{1});
+
+        Properties properties = new Properties();
+        properties.setProperty(CrateProperty.BATCH_MAX_ROWS.getName(), "2");
+        CratePreparedStatement stmt = prepare(delegate, properties);
+        stmt.setRetryEnabled(true);
+        Timestamp timestamp = new Timestamp(1000L);
+        for (int i = 0; i < 4; i++) {
+            stmt.setLong(1, 100L + i);
+            stmt.setDouble(2, i / 2.0);
+            stmt.setTimestamp(3, timestamp);
+            if (i == 0) {
+                stmt.setNull(4, Types.VARCHAR);
+            } else {
+                stmt.setObject(4, "row" + i);
+            }
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+        assertArrayEquals(new int[]{0}, stmt.getBatchResult().getFailedRows());
+
+        assertArrayEquals(new int[]{1}, stmt.retryFailedRows());
+        verify(delegate, times(2)).setLong(1, 100L);
+        verify(delegate, times(2)).setDouble(2, 0.0);
+        verify(delegate, times(2)).setNull(4, Types.VARCHAR);
+        verify(delegate, times(1)).setObject(4, "row3");
+    }
+
+    @Test
+    public void testRowsOfRewrittenInsertsAreNotDecoded() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("reWriteBatchedInserts", "true");
+        CrateConnection connection = new CrateConnection(mock(Connection.class), properties);
+
+        PreparedStatement insert = mock(PreparedStatement.class);
+        when(insert.executeBatch()).thenReturn(new int[]{Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO});
+        CratePreparedStatement stmt = new CratePreparedStatement(connection, insert, " insert into t (x) values (?)");
+        stmt.setInt(1, 1);
+        stmt.addBatch();
+        stmt.setInt(1, 2);
+        stmt.addBatch();
+        assertArrayEquals(new int[]{Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO}, stmt.executeBatch());
+
+        PreparedStatement update = mock(PreparedStatement.class);
+        when(update.executeBatch()).thenReturn(new int[]{1, -2});
+        stmt = new CratePreparedStatement(connection, update, "UPDATE t SET x = ? WHERE x = 1");
+        stmt.setInt(1, 1);
+        stmt.addBatch();
+        stmt.setInt(1, 2);
+        stmt.addBatch();
+        assertArrayEquals(new int[]{1, Statement.EXECUTE_FAILED}, stmt.executeBatch());
+    }
+
+    @Test
+    public void testMapsAreStreamedAsBinaryJson() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(CrateProperty.BINARY_JSON.getName(), "true");
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        CratePreparedStatement stmt = prepare(delegate, properties);
+
+        stmt.setObject(1, Map.of("inner", "Zoon"));
+        stmt.setJson(2, "{\"a\": [1, 2]}".getBytes(StandardCharsets.UTF_8));
+        ArgumentCaptor<JsonParameter> captor = ArgumentCaptor.forClass(JsonParameter.class);
+        verify(delegate).setObject(eq(1), captor.capture());
+        verify(delegate).setObject(eq(2), captor.capture());
+        JsonParameter map = captor.getAllValues().get(0);
+        assertThat(map.getType(), is("json"));
+        assertThat(map.getValue(), is("{\"inner\":\"Zoon\"}"));
+        byte[] bytes = new byte[map.lengthInBytes() + 1];
+        map.toBytes(bytes, 1);
+        assertThat(new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8), is("{\"inner\":\"Zoon\"}"));
+        assertThat(captor.getAllValues().get(1).getValue(), is("{\"a\": [1, 2]}"));
+    }
+
+    @Test
+    public void testMapsArePassedOnWithoutBinaryJson() throws Exception {
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        CratePreparedStatement stmt = prepare(delegate, new Properties());
+        Map<String, Object> map = Map.of("inner", "Zoon");
+        stmt.setObject(1, map);
+        verify(delegate).setObject(1, map);
+    }
+
+    @Test
+    public void testParametersAreBoundWhenSet() throws Exception {
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        CratePreparedStatement stmt = prepare(delegate, new Properties());
+        stmt.setInt(1, 1);
+        stmt.setString(2, "x");
+        verify(delegate).setInt(1, 1);
+        verify(delegate).setString(2, "x");
+
+        stmt.execute();
+        verify(delegate, times(1)).setInt(1, 1);
+        verify(delegate, times(1)).setString(2, "x");
+    }
+
+    @Test
+    public void testJsonParametersAreComparedAndSerializedByValue() throws Exception {
+        byte[] bytes = "x{\"a\": 1}".getBytes(StandardCharsets.UTF_8);
+        JsonParameter parameter = new JsonParameter(ByteBuffer.wrap(bytes, 1, bytes.length - 1));
+        PGobject object = new PGobject();
+        object.setType("json");
+        object.setValue("{\"a\": 1}");
+        assertThat(parameter.equals(object), is(true));
+        assertThat(object.equals(parameter), is(true));
+        assertThat(parameter.hashCode(), is(object.hashCode()));
+        assertThat(parameter.clone(), is(parameter));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(out)) {
+            stream.writeObject(parameter);
+        }
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertThat(stream.readObject(), is(object));
+        }
+    }
+
+    @Test
+    public void testBinarySendIsEnabledForJson() throws Exception {
+        BaseConnection connection = mock(BaseConnection.class);
+        QueryExecutor queryExecutor = mock(QueryExecutor.class);
+        when(connection.isWrapperFor(BaseConnection.class)).thenReturn(true);
+        when(connection.unwrap(BaseConnection.class)).thenReturn(connection);
+        when(connection.getQueryExecutor()).thenReturn(queryExecutor);
+        when(connection.binaryTransferSend(Oid.INT8)).thenReturn(true);
+
+        JsonParameter.enableBinarySend(connection);
+        verify(queryExecutor).setBinarySendOids(Set.of(Oid.INT8, Oid.JSON));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CrateResultSetMetaDataTest {
+
+    private Connection pgConnection;
+    private PreparedStatement lookup;
+    private CrateConnection connection;
+    private ResultSetMetaData pgMetaData;
+
+    @Before
+    public void setUpConnection() throws Exception {
+        pgConnection = mock(Connection.class);
+        when(pgConnection.getSchema()).thenReturn("doc");
+        lookup = mock(PreparedStatement.class);
+        when(pgConnection.prepareStatement(anyString())).thenReturn(lookup);
+        when(lookup.executeQuery()).thenAnswer(invocation -> columns());
+        when(pgConnection.createStatement()).thenReturn(mock(Statement.class));
+        connection = new CrateConnection(pgConnection, new Properties());
+
+        pgMetaData = mock(ResultSetMetaData.class);
+        when(pgMetaData.getColumnCount()).thenReturn(4);
+        when(pgMetaData.getColumnLabel(anyInt())).thenAnswer(invocation -> {
+            int column = invocation.getArgument(0);
+            if (column < 1 || column > 4) {
+                throw new SQLException("The column index is out of range", "22023");
+            }
+            return new String[]{"id", "name", "city", "count(*)"}[column - 1];
+        });
+    }
+
+    /**
+     * Both tables have an id column, only users has a name and only addresses has a city.
+     */
+    private static ResultSet columns() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, true, true, true, false);
+        when(rs.getString(1)).thenReturn("doc", "doc", "geo", "geo");
+        when(rs.getString(2)).thenReturn("users", "users", "addresses", "addresses");
+        when(rs.getString(3)).thenReturn("id", "name", "id", "city");
+        when(rs.getBoolean(4)).thenReturn(false, true, false, false);
+        return rs;
+    }
+
+    @Test
+    public void testColumnsAreAttributedToTheirTable() throws Exception {
+        ResultSetMetaData metaData = new CrateResultSetMetaData(connection, pgMetaData,
+            "SELECT u.id, name, city, count(*) FROM users u JOIN geo.addresses a ON u.id = a.id GROUP BY 1, 2, 3");
+
+        assertThat(metaData.getTableName(1), is(""));
+        assertThat(metaData.isNullable(1), is(ResultSetMetaData.columnNullableUnknown));
+        assertThat(metaData.getTableName(2), is("users"));
+        assertThat(metaData.getSchemaName(2), is("doc"));
+        assertThat(metaData.isNullable(2), is(ResultSetMetaData.columnNullable));
+        assertThat(metaData.getTableName(3), is("addresses"));
+        assertThat(metaData.getSchemaName(3), is("geo"));
+        assertThat(metaData.isNullable(3), is(ResultSetMetaData.columnNoNulls));
+        assertThat(metaData.getTableName(4), is(""));
+        assertThat(metaData.isAutoIncrement(2), is(false));
+        // one lookup for both tables
+        verify(lookup, times(1)).executeQuery();
+        verify(lookup).setString(1, "doc");
+        verify(lookup).setString(2, "users");
+        verify(lookup).setString(3, "geo");
+        verify(lookup).setString(4, "addresses");
+    }
+
+    @Test
+    public void testSnapshotIsReusedUntilTheSchemaChanges() throws Exception {
+        new CrateResultSetMetaData(connection, pgMetaData, "SELECT * FROM users").isNullable(2);
+        new CrateResultSetMetaData(connection, pgMetaData, "SELECT name FROM doc.users").getTableName(2);
+        verify(lookup, times(1)).executeQuery();
+
+        Statement statement = connection.createStatement();
+        statement.execute("ALTER TABLE users ADD COLUMN age INT");
+        new CrateResultSetMetaData(connection, pgMetaData, "SELECT * FROM users").isNullable(2);
+        verify(lookup, times(2)).executeQuery();
+    }
+
+    @Test
+    public void testMetaDataOfResultsWithoutTables() throws Exception {
+        ResultSetMetaData metaData = new CrateResultSetMetaData(connection, pgMetaData, "SELECT 1, 2, 3, 4");
+        assertThat(metaData.getTableName(1), is(""));
+        assertThat(metaData.isNullable(1), is(ResultSetMetaData.columnNullableUnknown));
+        verify(pgConnection, times(0)).prepareStatement(anyString());
+    }
+
+    @Test
+    public void testTablesOfQuery() {
+        assertThat(TableColumns.tables(
+            "select * from Users join \"My\"\"Schema\".\"T\" on true, (select 1 from sys.nodes) n", "doc"),
+            contains(
+                new TableColumns.TableName("doc", "users"),
+                new TableColumns.TableName("My\"Schema", "T"),
+                new TableColumns.TableName("sys", "nodes")));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.postgresql.ssl.LibPQFactory;
+
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+public class CrateSSLFactoryTest {
+
+    private static Properties properties(String sslmode, String sslpassword) {
+        Properties properties = new Properties();
+        properties.setProperty("user", "crate");
+        properties.setProperty("sslmode", sslmode);
+        properties.setProperty("sslpassword", sslpassword);
+        return properties;
+    }
+
+    @Test
+    public void testFactoryIsSharedBySslProperties() throws Exception {
+        CrateSSLFactory first = new CrateSSLFactory(properties("require", "secret"));
+        Properties otherUser = properties("require", "secret");
+        otherUser.setProperty("user", "other");
+        assertThat(new CrateSSLFactory(otherUser).delegate(), sameInstance(first.delegate()));
+        assertThat(new CrateSSLFactory(properties("require", "other")).delegate(), not(sameInstance(first.delegate())));
+    }
+
+    @Test
+    public void testCacheKeyHoldsHashOfPassword() {
+        String key = CrateSSLFactory.sslProperties(properties("require", "secret")).toString();
+        assertThat(key.contains("secret"), is(false));
+        assertThat(CrateSSLFactory.sslProperties(properties("require", "secret")),
+            is(CrateSSLFactory.sslProperties(properties("require", "secret"))));
+    }
+
+    @Test
+    public void testKeyManagerErrorsAreReportedByPgjdbc() throws Exception {
+        // MakeSSL only asks instances of LibPQFactory for the errors of their key manager
+        assertThat(new CrateSSLFactory(properties("require", "secret")), instanceOf(LibPQFactory.class));
+    }
+
+    @Test
+    public void testNumberOfFactoriesIsBounded() throws Exception {
+        CrateSSLFactory first = new CrateSSLFactory(properties("require", "evicted"));
+        for (int i = 0; i < CrateSSLFactory.MAX_FACTORIES; i++) {
+            new CrateSSLFactory(properties("require", "password" + i));
+        }
+        assertThat(new CrateSSLFactory(properties("require", "evicted")).delegate(), not(sameInstance(first.delegate())));
+    }
+
+    @Test
+    public void testHandshakeMetrics() {
+        long count = CrateSSLFactory.getHandshakeCount();
+        long nanos = CrateSSLFactory.getHandshakeNanos();
+        CrateSSLFactory.recordHandshake(5_000_000_000L);
+        CrateSSLFactory.recordHandshake(1_000);
+        assertThat(CrateSSLFactory.getHandshakeCount(), is(count + 2));
+        assertThat(CrateSSLFactory.getHandshakeNanos(), is(nanos + 5_000_001_000L));
+        assertThat(CrateSSLFactory.getMaxHandshakeNanos(), is(5_000_000_000L));
+    }
+}
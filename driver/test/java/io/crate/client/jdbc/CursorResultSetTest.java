@@ -0,0 +1,322 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CursorResultSetTest {
+
+    /**
+     * Stands in for the meta data of the pgjdbc fork, which reports the version of CrateDB.
+     */
+    public abstract static class VersionedMetaData implements DatabaseMetaData {
+
+        public abstract Version getCrateVersion();
+    }
+
+    public static class Version {
+
+        private final int[] parts;
+
+        Version(int... parts) {
+            this.parts = parts;
+        }
+
+        public boolean before(String version) {
+            int[] other = Arrays.stream(version.split("\\.")).mapToInt(Integer::parseInt).toArray();
+            return Arrays.compare(parts, other) < 0;
+        }
+    }
+
+    private final List<String> commands = new ArrayList<>();
+    private Connection pgConnection;
+    private Statement fetches;
+    private ResultSetMetaData columns;
+    private int rows;
+    // the 1-based position of the simulated server-side cursor
+    private int position;
+    private boolean moveSupported = true;
+
+    @Before
+    public void setUpCursor() throws Exception {
+        pgConnection = mock(Connection.class);
+        VersionedMetaData metaData = mock(VersionedMetaData.class);
+        when(metaData.getCrateVersion()).thenReturn(new Version(5, 1, 0));
+        when(pgConnection.getMetaData()).thenReturn(metaData);
+
+        Statement declarations = mock(Statement.class);
+        when(declarations.execute(anyString())).thenAnswer(invocation -> {
+            commands.add(invocation.getArgument(0));
+            return false;
+        });
+        when(pgConnection.createStatement()).thenReturn(declarations);
+
+        columns = mock(ResultSetMetaData.class);
+        when(columns.getColumnCount()).thenReturn(1);
+        when(columns.getColumnType(1)).thenReturn(Types.INTEGER);
+        when(columns.getColumnLabel(1)).thenReturn("x");
+        fetches = mock(Statement.class);
+        when(fetches.executeQuery(anyString())).thenAnswer(invocation -> fetch(invocation.getArgument(0)));
+        when(fetches.executeUpdate(anyString())).thenAnswer(invocation -> move(invocation.getArgument(0)));
+        when(fetches.execute(anyString())).thenAnswer(invocation -> {
+            commands.add(invocation.getArgument(0));
+            return false;
+        });
+        when(pgConnection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY))
+            .thenReturn(fetches);
+    }
+
+    /**
+     * Simulates the FETCH commands on a cursor whose rows are the numbers from 1 to {@link #rows}.
+     */
+    private ResultSet fetch(String command) throws SQLException {
+        commands.add(command.replaceAll(" FROM .*", ""));
+        RowArena arena = new RowArena(1, 16);
+        String[] words = command.split(" ");
+        int count = Integer.parseInt(words[2]);
+        if (words[1].equals("ABSOLUTE")) {
+            position = Math.min(count, rows + 1);
+            if (count >= 1 && count <= rows) {
+                add(arena, count);
+            }
+        } else {
+            for (int i = 0; i < count && position < rows; i++) {
+                position++;
+                add(arena, position);
+            }
+            if (arena.rowCount() < count) {
+                position = rows + 1;
+            }
+        }
+        return new ArenaResultSet(null, columns, ResultSet.TYPE_SCROLL_INSENSITIVE,
+            ResultSet.HOLD_CURSORS_OVER_COMMIT, arena, new Object[1][], 0);
+    }
+
+    /**
+     * Simulates the MOVE commands, which return the number of rows the cursor moved over.
+     */
+    private int move(String command) throws SQLException {
+        commands.add(command.replaceAll(" FROM .*", ""));
+        if (!moveSupported) {
+            throw new PSQLException("line 1:1: mismatched input 'MOVE'", PSQLState.SYNTAX_ERROR);
+        }
+        if (command.startsWith("MOVE ABSOLUTE 0")) {
+            position = 0;
+            return 0;
+        }
+        int moved = Math.max(0, rows - position);
+        position = rows + 1;
+        return moved;
+    }
+
+    private static void add(RowArena arena, int value) throws SQLException {
+        byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        arena.add(bytes, 0, bytes.length);
+    }
+
+    private CrateStatement statement(int type) throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("scrollWindowSize", "3");
+        Statement delegate = mock(Statement.class);
+        when(delegate.getResultSetType()).thenReturn(type);
+        return new CrateStatement(new CrateConnection(pgConnection, properties), delegate);
+    }
+
+    @Test
+    public void testScrollsThroughWindows() throws Exception {
+        rows = 10;
+        ResultSet rs = statement(ResultSet.TYPE_SCROLL_INSENSITIVE).executeQuery("select x from t order by x;");
+        assertThat(rs, instanceOf(CursorResultSet.class));
+        assertThat(commands.get(0).matches(
+            "DECLARE crate_scroll_\\d+ INSENSITIVE SCROLL CURSOR WITH HOLD FOR select x from t order by x"), is(true));
+        assertThat(rs.isBeforeFirst(), is(true));
+        for (int i = 1; i <= 4; i++) {
+            assertThat(rs.next(), is(true));
+            assertThat(rs.getInt("x"), is(i));
+        }
+        assertThat(rs.previous(), is(true));
+        assertThat(rs.getInt(1), is(3));
+        assertThat(rs.getRow(), is(3));
+        assertThat(commands.subList(1, commands.size()), is(Arrays.asList(
+            "FETCH FORWARD 3", "FETCH FORWARD 3", "FETCH ABSOLUTE 0", "FETCH FORWARD 3")));
+
+        assertThat(rs.absolute(9), is(true));
+        assertThat(rs.getInt(1), is(9));
+        assertThat(rs.isLast(), is(false));
+        assertThat(rs.next(), is(true));
+        assertThat(rs.getInt(1), is(10));
+        assertThat(rs.isLast(), is(true));
+        assertThat(rs.next(), is(false));
+        assertThat(rs.isAfterLast(), is(true));
+        assertThat(rs.getRow(), is(0));
+        assertThat(rs.relative(-5), is(true));
+        assertThat(rs.getInt(1), is(6));
+        assertThat(rs.absolute(-1), is(true));
+        assertThat(rs.getInt(1), is(10));
+        assertThat(rs.absolute(11), is(false));
+        assertThat(rs.isAfterLast(), is(true));
+    }
+
+    @Test
+    public void testRowCountIsCountedWithMove() throws Exception {
+        rows = 10;
+        ResultSet rs = statement(ResultSet.TYPE_SCROLL_INSENSITIVE).executeQuery("select x from t");
+        assertThat(rs.last(), is(true));
+        assertThat(rs.getInt(1), is(10));
+        assertThat(rs.getRow(), is(10));
+        assertThat(commands.subList(1, commands.size()), is(Arrays.asList(
+            "FETCH FORWARD 3", "MOVE FORWARD ALL", "FETCH ABSOLUTE 9", "FETCH FORWARD 3")));
+        assertThat(rs.previous(), is(true));
+        assertThat(rs.getInt(1), is(9));
+    }
+
+    @Test
+    public void testRowCountIsSearchedWithSingleRowFetchesWithoutMove() throws Exception {
+        rows = 10;
+        moveSupported = false;
+        ResultSet rs = statement(ResultSet.TYPE_SCROLL_INSENSITIVE).executeQuery("select x from t");
+        assertThat(rs.last(), is(true));
+        assertThat(rs.getInt(1), is(10));
+        assertThat(rs.getRow(), is(10));
+        assertThat(commands.subList(1, commands.size()), is(Arrays.asList(
+            "FETCH FORWARD 3", "MOVE FORWARD ALL",
+            "FETCH ABSOLUTE 4", "FETCH ABSOLUTE 8", "FETCH ABSOLUTE 16", "FETCH ABSOLUTE 12",
+            "FETCH ABSOLUTE 10", "FETCH ABSOLUTE 11",
+            "FETCH ABSOLUTE 9", "FETCH FORWARD 3")));
+        assertThat(rs.previous(), is(true));
+        assertThat(rs.getInt(1), is(9));
+    }
+
+    @Test
+    public void testEmptyResult() throws Exception {
+        ResultSet rs = statement(ResultSet.TYPE_SCROLL_INSENSITIVE).executeQuery("select x from t");
+        assertThat(rs.isBeforeFirst(), is(false));
+        assertThat(commands.subList(1, commands.size()), is(Arrays.asList("FETCH FORWARD 3")));
+        assertThat(rs.next(), is(false));
+        assertThat(rs.isAfterLast(), is(false));
+        assertThat(rs.last(), is(false));
+        assertThat(rs.getRow(), is(0));
+    }
+
+    @Test
+    public void testCursorIsClosedWithTheStatement() throws Exception {
+        rows = 2;
+        CrateStatement statement = statement(ResultSet.TYPE_SCROLL_INSENSITIVE);
+        ResultSet rs = statement.executeQuery("select x from t");
+        assertThat(statement.getResultSet(), is(rs));
+        statement.close();
+        assertThat(rs.isClosed(), is(true));
+        assertThat(commands.get(commands.size() - 1).startsWith("CLOSE crate_scroll_"), is(true));
+        verify(fetches).close();
+    }
+
+    @Test
+    public void testCursorIsClosedByGetMoreResults() throws Exception {
+        rows = 2;
+        CrateStatement statement = statement(ResultSet.TYPE_SCROLL_INSENSITIVE);
+        ResultSet rs = statement.executeQuery("select x from t");
+        assertThat(statement.getMoreResults(), is(false));
+        assertThat(rs.isClosed(), is(true));
+        assertThat(commands.get(commands.size() - 1).startsWith("CLOSE crate_scroll_"), is(true));
+        assertThat(statement.getResultSet(), nullValue());
+        assertThat(statement.getUpdateCount(), is(-1));
+    }
+
+    @Test
+    public void testCursorIsKeptByGetMoreResults() throws Exception {
+        rows = 2;
+        CrateStatement statement = statement(ResultSet.TYPE_SCROLL_INSENSITIVE);
+        ResultSet rs = statement.executeQuery("select x from t");
+        assertThat(statement.getMoreResults(Statement.KEEP_CURRENT_RESULT), is(false));
+        assertThat(rs.isClosed(), is(false));
+        assertThat(statement.getResultSet(), nullValue());
+        statement.close();
+        assertThat(rs.isClosed(), is(true));
+    }
+
+    @Test
+    public void testOtherResultsAreReadDirectly() throws Exception {
+        CrateStatement forwardOnly = statement(ResultSet.TYPE_FORWARD_ONLY);
+        forwardOnly.executeQuery("select x from t");
+        CrateStatement show = statement(ResultSet.TYPE_SCROLL_INSENSITIVE);
+        show.executeQuery("show tables");
+
+        VersionedMetaData oldServer = mock(VersionedMetaData.class);
+        when(oldServer.getCrateVersion()).thenReturn(new Version(5, 0, 3));
+        when(pgConnection.getMetaData()).thenReturn(oldServer);
+        statement(ResultSet.TYPE_SCROLL_INSENSITIVE).executeQuery("select x from t");
+
+        assertThat(commands.isEmpty(), is(true));
+        assertThat(CrateConnection.isCrateVersionAtLeast(mock(DatabaseMetaData.class), "5.1.0"), is(false));
+    }
+
+    @Test
+    public void testCursorOfPreparedStatementIsDeclaredWithItsParameters() throws Exception {
+        rows = 1;
+        PreparedStatement declaration = mock(PreparedStatement.class);
+        when(pgConnection.prepareStatement(startsWith("DECLARE "))).thenReturn(declaration);
+        Properties properties = new Properties();
+        properties.setProperty("scrollWindowSize", "3");
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        when(delegate.getResultSetType()).thenReturn(ResultSet.TYPE_SCROLL_INSENSITIVE);
+        CratePreparedStatement statement = new CratePreparedStatement(
+            new CrateConnection(pgConnection, properties), delegate, "select x from t where x = ?");
+
+        statement.setInt(1, 1);
+        ResultSet rs = statement.executeQuery();
+        verify(pgConnection).prepareStatement(startsWith("DECLARE crate_scroll_"));
+        verify(declaration).setInt(1, 1);
+        verify(declaration).execute();
+        verify(delegate, never()).executeQuery();
+        assertThat(rs.next(), is(true));
+        assertThat(rs.getInt(1), is(1));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HedgedQueryTest {
+
+    private final Connection primary = mock(Connection.class);
+    private final Connection other = mock(Connection.class);
+    private int connects;
+
+    private CrateConnection connect(String hedgeDelay) throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("hedgeDelay", hedgeDelay);
+        return new CrateConnection(primary, properties, (current, failed) -> {
+            assertThat(failed, is(false));
+            connects++;
+            return other;
+        });
+    }
+
+    @Test
+    public void testSlowQueryIsHedgedAndCancelled() throws Exception {
+        CrateConnection connection = connect("1");
+        Statement slow = mock(Statement.class);
+        when(primary.createStatement()).thenReturn(slow);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        when(slow.executeQuery(anyString())).thenAnswer(invocation -> {
+            assertThat(cancelled.await(10, TimeUnit.SECONDS), is(true));
+            throw new SQLException("ERROR: Job killed", "57014");
+        });
+        doAnswer(invocation -> {
+            cancelled.countDown();
+            return null;
+        }).when(slow).cancel();
+        Statement hedge = mock(Statement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(other.createStatement(anyInt(), anyInt(), anyInt())).thenReturn(hedge);
+        when(hedge.executeQuery("SELECT * FROM t WHERE id = 1")).thenReturn(rs);
+        when(rs.getStatement()).thenReturn(hedge);
+        when(rs.next()).thenReturn(true);
+
+        Statement statement = connection.createStatement();
+        ResultSet result = statement.executeQuery("SELECT * FROM t WHERE id = 1");
+        assertThat(result.next(), is(true));
+        assertThat(connects, is(1));
+        verify(other).setAutoCommit(true);
+
+        statement.close();
+        verify(hedge).close();
+        connection.close();
+        verify(other).close();
+    }
+
+    @Test
+    public void testFastQueryIsNotHedged() throws Exception {
+        CrateConnection connection = connect("10000");
+        Statement fast = mock(Statement.class);
+        when(primary.createStatement()).thenReturn(fast);
+        when(fast.executeQuery(anyString())).thenReturn(mock(ResultSet.class));
+
+        connection.createStatement().executeQuery("SELECT * FROM t WHERE id = 1");
+        Thread.sleep(20);
+        assertThat(connects, is(0));
+    }
+
+    @Test
+    public void testWritesAreNotHedged() throws Exception {
+        CrateConnection connection = connect("1");
+        Statement slow = mock(Statement.class);
+        when(primary.createStatement()).thenReturn(slow);
+        when(slow.executeQuery(anyString())).thenAnswer(invocation -> {
+            Thread.sleep(20);
+            return mock(ResultSet.class);
+        });
+
+        connection.createStatement().executeQuery("DELETE FROM t RETURNING id");
+        assertThat(connects, is(0));
+        verify(slow, never()).cancel();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.postgresql.util.HostSpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LatencyTrackerTest {
+
+    private static final HostSpec HOST = new HostSpec("crate1", 5432);
+
+    @Test
+    public void testBucketsAreLogarithmic() {
+        assertThat(LatencyTracker.bucket(0), is(LatencyTracker.bucket(4)));
+        assertThat(LatencyTracker.upperBound(LatencyTracker.bucket(4)), is(5L));
+        assertThat(LatencyTracker.upperBound(LatencyTracker.bucket(1000)), is(1024L));
+        assertThat(LatencyTracker.upperBound(LatencyTracker.bucket(1024)), is(1280L));
+        for (long micros = 4; micros < 100_000; micros += 7) {
+            long upperBound = LatencyTracker.upperBound(LatencyTracker.bucket(micros));
+            assertThat(upperBound > micros && upperBound <= micros * 1.25 + 1, is(true));
+        }
+    }
+
+    @Test
+    public void testPercentileNeedsEnoughSamples() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 1; i < LatencyTracker.MIN_SAMPLES; i++) {
+            tracker.record(HOST, 1_000_000);
+        }
+        assertThat(tracker.percentileNanos(HOST, 50), is(-1L));
+        tracker.record(HOST, 1_000_000);
+        assertThat(tracker.percentileNanos(HOST, 50), is(1_024_000L));
+        assertThat(tracker.percentileNanos(new HostSpec("crate2", 5432), 50), is(-1L));
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < 90; i++) {
+            tracker.record(HOST, 1_000_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            tracker.record(HOST, 100_000_000);
+        }
+        assertThat(tracker.percentileNanos(HOST, 90), is(1_024_000L));
+        assertThat(tracker.percentileNanos(HOST, 95), is(114_688_000L));
+    }
+
+    @Test
+    public void testOldSamplesFadeOut() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < LatencyTracker.DECAY_SAMPLES; i++) {
+            tracker.record(HOST, 100_000_000);
+        }
+        for (int i = 0; i < LatencyTracker.DECAY_SAMPLES; i++) {
+            tracker.record(HOST, 1_000_000);
+        }
+        assertThat(tracker.percentileNanos(HOST, 50), is(1_024_000L));
+    }
+}
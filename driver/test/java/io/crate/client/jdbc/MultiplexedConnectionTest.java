@@ -0,0 +1,208 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.After;
+import org.junit.Test;
+import org.postgresql.util.PSQLException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MultiplexedConnectionTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Connection> opened = new ArrayList<>();
+
+    @After
+    public void shutDownExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return a physical connection whose queries return a single row with the given value.
+     */
+    private static Connection pgConnection(int value) throws SQLException {
+        return pgConnection(value, () -> null);
+    }
+
+    /**
+     * @param beforeQuery called before every query of the connection, for example to block it.
+     */
+    private static Connection pgConnection(int value, Callable<?> beforeQuery) throws SQLException {
+        ResultSetMetaData columns = mock(ResultSetMetaData.class);
+        when(columns.getColumnCount()).thenReturn(1);
+        when(columns.getColumnType(1)).thenReturn(Types.INTEGER);
+        when(columns.getColumnLabel(1)).thenReturn("x");
+        Statement statement = mock(Statement.class);
+        ResultSet[] result = new ResultSet[1];
+        when(statement.executeQuery(anyString())).thenAnswer(invocation -> {
+            beforeQuery.call();
+            RowArena arena = new RowArena(1, 16);
+            byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+            arena.add(bytes, 0, bytes.length);
+            result[0] = new ArenaResultSet(null, columns, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CLOSE_CURSORS_AT_COMMIT, arena, new Object[1][], 0);
+            return result[0];
+        });
+        when(statement.getResultSet()).thenAnswer(invocation -> result[0]);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        return connection;
+    }
+
+    private MultiplexedConnection connection(Connection first, int size) throws SQLException {
+        Properties properties = new Properties();
+        return new MultiplexedConnection(new CrateConnection(first, properties), size, () -> {
+            Connection connection = pgConnection(opened.size() + 2);
+            opened.add(connection);
+            return new CrateConnection(connection, properties);
+        });
+    }
+
+    private static int query(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("select x from t");
+            assertThat(rs.getStatement(), sameInstance(statement));
+            assertThat(rs.next(), is(true));
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testConcurrentExecutionsUseFurtherConnections() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Connection first = pgConnection(1, () -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        MultiplexedConnection connection = connection(first, 2);
+
+        Future<Integer> slow = executor.submit(() -> query(connection));
+        assertThat(running.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(executor.submit(() -> query(connection)).get(5, TimeUnit.SECONDS), is(2));
+        assertThat(opened.size(), is(1));
+
+        release.countDown();
+        assertThat(slow.get(5, TimeUnit.SECONDS), is(1));
+        // both connections are idle now, so no further one is opened
+        assertThat(query(connection), is(1));
+        assertThat(query(connection), is(2));
+        assertThat(opened.size(), is(1));
+    }
+
+    @Test
+    public void testExecutionsOnOneConnectionAreQueued() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Connection first = pgConnection(1, () -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        MultiplexedConnection connection = connection(first, 1);
+
+        Future<Integer> slow = executor.submit(() -> query(connection));
+        assertThat(running.await(5, TimeUnit.SECONDS), is(true));
+        Future<Integer> queued = executor.submit(() -> query(connection));
+        Thread.sleep(50);
+        assertThat(queued.isDone(), is(false));
+
+        release.countDown();
+        assertThat(slow.get(5, TimeUnit.SECONDS), is(1));
+        assertThat(queued.get(5, TimeUnit.SECONDS), is(1));
+        assertThat(opened.size(), is(0));
+    }
+
+    @Test
+    public void testBrokenConnectionIsOpenedAgain() throws Exception {
+        Connection first = pgConnection(1);
+        when(first.createStatement().executeQuery(anyString())).thenThrow(new SQLException("broken"));
+        when(first.isClosed()).thenReturn(true);
+        MultiplexedConnection connection = connection(first, 1);
+
+        assertThrows(SQLException.class, () -> query(connection));
+        assertThat(query(connection), is(2));
+        assertThat(opened.size(), is(1));
+    }
+
+    @Test
+    public void testParametersAreBoundOnThePhysicalStatement() throws Exception {
+        Connection first = pgConnection(1);
+        PreparedStatement pgStatement = mock(PreparedStatement.class);
+        when(pgStatement.executeUpdate()).thenReturn(1);
+        when(first.prepareStatement("update t set x = ?")).thenReturn(pgStatement);
+        MultiplexedConnection connection = connection(first, 1);
+
+        PreparedStatement statement = connection.prepareStatement("update t set x = ?");
+        statement.setInt(1, 5);
+        assertThat(statement.executeUpdate(), is(1));
+        verify(pgStatement).setInt(1, 5);
+        verify(pgStatement).close();
+    }
+
+    @Test
+    public void testCopiedResultsAreReadBackFromSpillFile() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(CrateProperty.SPILL_THRESHOLD.getName(), "1");
+        MultiplexedConnection connection = new MultiplexedConnection(
+            new CrateConnection(pgConnection(42), properties), 1, () -> {
+                throw new AssertionError("only one physical connection is used");
+            });
+        assertThat(query(connection), is(42));
+        assertThat(query(connection), is(42));
+    }
+
+    @Test
+    public void testAutoCommitCannotBeDisabled() throws Exception {
+        MultiplexedConnection connection = connection(pgConnection(1), 2);
+        assertThat(connection.getAutoCommit(), is(true));
+        assertThrows(PSQLException.class, () -> connection.setAutoCommit(false));
+        connection.close();
+        assertThrows(PSQLException.class, connection::createStatement);
+    }
+}
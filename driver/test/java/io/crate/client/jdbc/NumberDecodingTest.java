@@ -0,0 +1,213 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.postgresql.PGResultSetMetaData;
+import org.postgresql.jdbc.PgResultSet;
+import org.postgresql.util.PSQLException;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class NumberDecodingTest {
+
+    private static byte[] bytes(String value) {
+        return ("#" + value + "#").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long toLong(String value) throws PSQLException {
+        byte[] bytes = bytes(value);
+        return TextDecoder.toLong(bytes, 1, bytes.length - 2, "long", Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static int toInt(String value) throws PSQLException {
+        byte[] bytes = bytes(value);
+        return (int) TextDecoder.toLong(bytes, 1, bytes.length - 2, "int", Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    private static double toDouble(String value) throws PSQLException {
+        byte[] bytes = bytes(value);
+        return TextDecoder.toDouble(bytes, 1, bytes.length - 2, "double");
+    }
+
+    private static float toFloat(String value) throws PSQLException {
+        byte[] bytes = bytes(value);
+        return TextDecoder.toFloat(bytes, 1, bytes.length - 2, "float");
+    }
+
+    private static CrateStatement newStatement() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("decodeText", "true");
+        return new CrateStatement(new CrateConnection(mock(Connection.class), properties), mock(Statement.class));
+    }
+
+    @Test
+    public void testLongs() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            assertThat(toLong(Long.toString(value)), is(value));
+        }
+        assertThat(toLong("9223372036854775807"), is(Long.MAX_VALUE));
+        assertThat(toLong("-9223372036854775808"), is(Long.MIN_VALUE));
+        assertThat(toLong("-9223372036854775807"), is(Long.MIN_VALUE + 1));
+        assertThat(toLong("+12"), is(12L));
+        assertThat(toLong("0012"), is(12L));
+        assertThat(toLong(" 12 "), is(12L));
+        assertThat(toLong("12.9"), is(12L));
+        assertThat(toLong("1e3"), is(1000L));
+        assertThrows(PSQLException.class, () -> toLong("9223372036854775808"));
+        assertThrows(PSQLException.class, () -> toLong("-9223372036854775809"));
+        assertThrows(PSQLException.class, () -> toLong("12345678901234567890123"));
+        assertThrows(PSQLException.class, () -> toLong(""));
+        assertThrows(PSQLException.class, () -> toLong("-"));
+        assertThrows(PSQLException.class, () -> toLong("1x"));
+    }
+
+    @Test
+    public void testIntRange() throws Exception {
+        assertThat(toInt("2147483647"), is(Integer.MAX_VALUE));
+        assertThat(toInt("-2147483648"), is(Integer.MIN_VALUE));
+        assertThrows(PSQLException.class, () -> toInt("2147483648"));
+    }
+
+    @Test
+    public void testDoublesAreCorrectlyRounded() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            String value = randomDecimal(random);
+            assertThat(value, toDouble(value), is(Double.parseDouble(value)));
+            assertThat(value, toFloat(value), is(Float.parseFloat(value)));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            String string = Double.toString(value);
+            assertThat(string, toDouble(string), is(Double.parseDouble(string)));
+        }
+    }
+
+    private static String randomDecimal(Random random) {
+        StringBuilder sb = new StringBuilder();
+        if (random.nextBoolean()) {
+            sb.append('-');
+        }
+        int digits = 1 + random.nextInt(20);
+        int point = random.nextInt(digits + 1);
+        for (int i = 0; i < digits; i++) {
+            if (i == point) {
+                sb.append('.');
+            }
+            sb.append((char) ('0' + random.nextInt(10)));
+        }
+        if (random.nextInt(4) == 0) {
+            sb.append('e').append(random.nextInt(60) - 30);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSpecialDoubles() throws Exception {
+        assertThat(toDouble("NaN"), is(Double.NaN));
+        assertThat(toDouble("Infinity"), is(Double.POSITIVE_INFINITY));
+        assertThat(toDouble("-Infinity"), is(Double.NEGATIVE_INFINITY));
+        assertThat(Double.doubleToRawLongBits(toDouble("-0.0")), is(Double.doubleToRawLongBits(-0.0)));
+        assertThat(toDouble("1.5E10"), is(1.5E10));
+        assertThat(toDouble("1e400"), is(Double.POSITIVE_INFINITY));
+        assertThat(toFloat("3.4028235E38"), is(Float.MAX_VALUE));
+        assertThrows(PSQLException.class, () -> toDouble("1e"));
+        assertThrows(PSQLException.class, () -> toDouble("."));
+        assertThrows(PSQLException.class, () -> toDouble("1.2.3"));
+    }
+
+    @Test
+    public void testBooleans() throws Exception {
+        assertThat(TextDecoder.toBoolean(bytes("t"), 1, 1), is(true));
+        assertThat(TextDecoder.toBoolean(bytes("f"), 1, 1), is(false));
+        assertThat(TextDecoder.toBoolean(bytes("true"), 1, 4), is(true));
+        assertThrows(PSQLException.class, () -> TextDecoder.toBoolean(bytes("x"), 1, 1));
+    }
+
+    @Test
+    public void testCrateResultSetDecodesNumbers() throws Exception {
+        PgResultSet rs = mock(PgResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class, withSettings().extraInterfaces(PGResultSetMetaData.class));
+        when(rs.getMetaData()).thenReturn(metaData);
+        when(rs.isWrapperFor(PgResultSet.class)).thenReturn(true);
+        when(rs.unwrap(PgResultSet.class)).thenReturn(rs);
+        when(metaData.unwrap(PGResultSetMetaData.class)).thenReturn((PGResultSetMetaData) metaData);
+        when(metaData.getColumnCount()).thenReturn(4);
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        when(metaData.getColumnType(2)).thenReturn(Types.DOUBLE);
+        when(metaData.getColumnType(3)).thenReturn(Types.BOOLEAN);
+        when(metaData.getColumnType(4)).thenReturn(Types.VARCHAR);
+        for (int i = 1; i <= 4; i++) {
+            when(metaData.getColumnLabel(i)).thenReturn(i == 2 ? "d" : "c" + i);
+        }
+        when(rs.getInt(4)).thenReturn(7);
+        Field thisRow = PgResultSet.class.getDeclaredField("this_row");
+        thisRow.setAccessible(true);
+        thisRow.set(rs, new byte[][]{utf8("300"), utf8("0.1"), utf8("t"), utf8("7")});
+
+        CrateResultSet resultSet = new CrateResultSet(newStatement(), rs, 0);
+        assertThat(resultSet.getInt(1), is(300));
+        assertThat(resultSet.getLong(1), is(300L));
+        assertThrows(PSQLException.class, () -> resultSet.getByte(1));
+        assertThat(resultSet.getShort(1), is((short) 300));
+        assertThat(resultSet.getDouble("d"), is(0.1));
+        assertThat(resultSet.getFloat(2), is(0.1f));
+        assertThat(resultSet.getBoolean(3), is(true));
+        // other types are left to pgjdbc
+        assertThat(resultSet.getInt(4), is(7));
+
+        thisRow.set(rs, new byte[][]{null, null, null, null});
+        assertThat(resultSet.getInt(1), is(0));
+        assertThat(resultSet.getDouble(2), is(0.0));
+        assertThat(resultSet.getBoolean(3), is(false));
+
+        // without the decodeText connection property all values are left to pgjdbc
+        thisRow.set(rs, new byte[][]{utf8("300"), utf8("0.1"), utf8("t"), utf8("7")});
+        when(rs.getInt(1)).thenReturn(42);
+        CrateStatement plain = new CrateStatement(
+            new CrateConnection(mock(Connection.class), new Properties()), mock(Statement.class));
+        assertThat(new CrateResultSet(plain, rs, 0).getInt(1), is(42));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ParameterBufferTest {
+
+    private static final byte[] KINDS = {
+        ParameterBuffer.NULL, ParameterBuffer.BOOLEAN, ParameterBuffer.BYTE, ParameterBuffer.SHORT,
+        ParameterBuffer.INT, ParameterBuffer.LONG, ParameterBuffer.FLOAT, ParameterBuffer.DOUBLE,
+        ParameterBuffer.STRING, ParameterBuffer.BIG_DECIMAL, ParameterBuffer.TIMESTAMP, ParameterBuffer.BINDER,
+        ParameterBuffer.UNSET
+    };
+
+    @Test
+    public void testRowsAreBoundWithTheirTypes() throws Exception {
+        Timestamp timestamp = new Timestamp(1000L);
+        long[] values = {
+            Types.BIGINT, 1, -3, 300, -70000, 1L << 40, Float.floatToRawIntBits(1.5f), Double.doubleToRawLongBits(-0.25),
+            0, 0, 0, 0, 0
+        };
+        Object[] objects = {
+            null, null, null, null, null, null, null, null,
+            "foo", new BigDecimal("1.50"), timestamp, (ParameterRow.Binder) s -> s.setObject(12, "bar"), null
+        };
+        ParameterBuffer buffer = new ParameterBuffer(4);
+        buffer.add(new byte[]{ParameterBuffer.INT}, new long[]{42}, new Object[1], 1);
+        int row = buffer.add(KINDS, values, objects, KINDS.length);
+        assertThat(row, is(1));
+        assertThat(buffer.rows(), is(2));
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+        buffer.bind(row, statement);
+        verify(statement).setNull(1, Types.BIGINT);
+        verify(statement).setBoolean(2, true);
+        verify(statement).setByte(3, (byte) -3);
+        verify(statement).setShort(4, (short) 300);
+        verify(statement).setInt(5, -70000);
+        verify(statement).setLong(6, 1L << 40);
+        verify(statement).setFloat(7, 1.5f);
+        verify(statement).setDouble(8, -0.25);
+        verify(statement).setString(9, "foo");
+        verify(statement).setBigDecimal(10, new BigDecimal("1.50"));
+        verify(statement).setTimestamp(11, timestamp);
+        verify(statement).setObject(12, "bar");
+        verify(statement, never()).setInt(1, 42);
+    }
+
+    @Test
+    public void testCopyOfRowSurvivesReuseOfTheBuffer() throws Exception {
+        ParameterBuffer buffer = new ParameterBuffer(2);
+        buffer.add(new byte[]{ParameterBuffer.INT, ParameterBuffer.STRING}, new long[]{1, 0}, new Object[]{null, "a"}, 2);
+        buffer.add(new byte[]{ParameterBuffer.INT, ParameterBuffer.STRING}, new long[]{2, 0}, new Object[]{null, "b"}, 2);
+        ParameterRow row = new ParameterRow(buffer, 1, 10);
+        ParameterRow detached = row.detachFrom(buffer);
+        assertThat(detached.detachFrom(buffer) == detached, is(true));
+
+        buffer.clear();
+        assertThat(buffer.rows(), is(0));
+        buffer.add(new byte[]{ParameterBuffer.INT}, new long[]{3}, new Object[1], 1);
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+        detached.bind(statement);
+        InOrder inOrder = inOrder(statement);
+        inOrder.verify(statement).clearParameters();
+        inOrder.verify(statement).setInt(1, 2);
+        inOrder.verify(statement).setString(2, "b");
+        verify(statement, never()).setInt(1, 3);
+        verify(statement, never()).setNull(anyInt(), anyInt());
+        assertThat(detached.bytes(), is(10L));
+    }
+}
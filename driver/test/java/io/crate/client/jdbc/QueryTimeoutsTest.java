@@ -0,0 +1,160 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class QueryTimeoutsTest {
+
+    private long now = 5;
+
+    /**
+     * Ticks of 10ms on a wheel of 4 slots, whose cancels run right away.
+     */
+    private final QueryTimeouts timeouts = new QueryTimeouts(() -> now, 10, 4, Runnable::run, false);
+
+    @Test
+    public void testTimeoutExpiresAfterItsDeadline() throws Exception {
+        Statement statement = mock(Statement.class);
+        QueryTimeouts.Timeout timeout = timeouts.schedule(statement, 30);
+        now = 34;
+        timeouts.expire();
+        assertThat(timeouts.size(), is(1));
+        verify(statement, never()).cancel();
+
+        now = 35;
+        timeouts.expire();
+        verify(statement).cancel();
+        assertThat(timeouts.size(), is(0));
+        assertThat(timeout.hasExpired(), is(true));
+        assertThat(timeout.cancel(), is(false));
+    }
+
+    @Test
+    public void testTimeoutsLongerThanOneRoundOfTheWheel() throws Exception {
+        Statement statement = mock(Statement.class);
+        timeouts.schedule(statement, 95);
+        for (now = 5; now < 105; now += 10) {
+            timeouts.expire();
+        }
+        verify(statement, never()).cancel();
+        // the deadline is rounded up to the next tick
+        now = 105;
+        timeouts.expire();
+        verify(statement).cancel();
+    }
+
+    @Test
+    public void testCancelledTimeoutIsRemoved() throws Exception {
+        Statement statement = mock(Statement.class);
+        QueryTimeouts.Timeout timeout = timeouts.schedule(statement, 1000);
+        timeouts.expire();
+        assertThat(timeouts.size(), is(1));
+
+        assertThat(timeout.cancel(), is(true));
+        now = 15;
+        timeouts.expire();
+        assertThat(timeouts.size(), is(0));
+        now = 2000;
+        timeouts.expire();
+        verify(statement, never()).cancel();
+    }
+
+    @Test
+    public void testQueuedCancelIsDroppedOnceTheExecutionReturned() throws Exception {
+        List<Runnable> queue = new ArrayList<>();
+        QueryTimeouts queued = new QueryTimeouts(() -> now, 10, 4, queue::add, false);
+        Statement returned = mock(Statement.class);
+        Statement running = mock(Statement.class);
+        QueryTimeouts.Timeout first = queued.schedule(returned, 10);
+        QueryTimeouts.Timeout second = queued.schedule(running, 10);
+        now = 15;
+        queued.expire();
+        assertThat(queue.size(), is(2));
+
+        assertThat(first.cancel(), is(true));
+        assertThat(first.hasExpired(), is(false));
+        queue.forEach(Runnable::run);
+        verify(returned, never()).cancel();
+        verify(running).cancel();
+        assertThat(second.hasExpired(), is(true));
+        assertThat(second.cancel(), is(false));
+    }
+
+    @Test
+    public void testStatementWithTimeoutIsCancelled() throws Exception {
+        Statement delegate = mock(Statement.class);
+        Properties properties = new Properties();
+        properties.setProperty("sharedQueryTimeouts", "true");
+        CrateStatement statement =
+            new CrateStatement(new CrateConnection(mock(Connection.class), properties), delegate);
+        statement.setQueryTimeout(1);
+        assertThat(statement.getQueryTimeout(), is(1));
+        verify(delegate, never()).setQueryTimeout(anyInt());
+
+        CountDownLatch cancelled = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            cancelled.countDown();
+            return null;
+        }).when(delegate).cancel();
+        doAnswer(invocation -> {
+            // the shared wheel expires the timeout on its own thread
+            assertThat(cancelled.await(10, TimeUnit.SECONDS), is(true));
+            throw new SQLException("canceling statement due to user request", "57014");
+        }).when(delegate).executeUpdate(anyString());
+
+        PSQLException e = assertThrows(PSQLException.class, () -> statement.executeUpdate("UPDATE t SET x = 1"));
+        assertThat(e.getSQLState(), is(PSQLState.QUERY_CANCELED.getState()));
+        assertThrows(PSQLException.class, () -> statement.setQueryTimeout(-1));
+    }
+
+    @Test
+    public void testTimeoutIsLeftToPgjdbcByDefault() throws Exception {
+        Statement delegate = mock(Statement.class);
+        CrateStatement statement =
+            new CrateStatement(new CrateConnection(mock(Connection.class), new Properties()), delegate);
+        statement.setQueryTimeout(1);
+        verify(delegate).setQueryTimeout(1);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.postgresql.PGResultSetMetaData;
+import org.postgresql.core.Oid;
+import org.postgresql.jdbc.PgResultSet;
+import org.postgresql.util.PSQLException;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class RawRowTest {
+
+    private PgResultSet rs;
+
+    @Before
+    public void setUpResultSet() throws Exception {
+        rs = mock(PgResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class, withSettings().extraInterfaces(PGResultSetMetaData.class));
+        when(rs.getMetaData()).thenReturn(metaData);
+        when(rs.isWrapperFor(PgResultSet.class)).thenReturn(true);
+        when(rs.unwrap(PgResultSet.class)).thenReturn(rs);
+        when(metaData.unwrap(PGResultSetMetaData.class)).thenReturn((PGResultSetMetaData) metaData);
+        when(metaData.getColumnCount()).thenReturn(3);
+        when(((PGResultSetMetaData) metaData).getFormat(2)).thenReturn(1);
+        when(rs.getColumnOID(3)).thenReturn(Oid.BYTEA);
+    }
+
+    private void setRow(byte[]... row) throws Exception {
+        Field field = PgResultSet.class.getDeclaredField("this_row");
+        field.setAccessible(true);
+        field.set(rs, row);
+    }
+
+    @Test
+    public void testRawValues() throws Exception {
+        byte[] text = "foo".getBytes(StandardCharsets.UTF_8);
+        byte[] binary = new byte[]{0, 0, 0, 1};
+        byte[] bytea = "\\x0102".getBytes(StandardCharsets.UTF_8);
+        setRow(text, binary, bytea);
+
+        RawRow row = RawRow.of(rs);
+        assertThat(row.getColumnCount(), is(3));
+        assertThat(row.isBinary(1), is(false));
+        assertThat(row.isBinary(2), is(true));
+        assertThat(row.getRawArray(1), sameInstance(text));
+        assertThat(row.getRawOffset(1), is(0));
+        assertThat(row.getRawLength(1), is(3));
+        assertThat(row.getRawArray(3), sameInstance(bytea));
+
+        ByteBuffer value = row.getRawValue(2);
+        assertThat(value.isReadOnly(), is(true));
+        assertThat(value.remaining(), is(4));
+        assertThat(value.getInt(), is(1));
+    }
+
+    @Test
+    public void testNullValue() throws Exception {
+        setRow(null, null, null);
+        RawRow row = RawRow.of(rs);
+        assertThat(row.getRawArray(1), is(nullValue()));
+        assertThat(row.getRawLength(1), is(-1));
+        assertThat(row.getRawValue(1), is(nullValue()));
+    }
+
+    @Test
+    public void testInvalidPosition() throws Exception {
+        RawRow row = RawRow.of(rs);
+        setRow((byte[][]) null);
+        assertThrows(PSQLException.class, () -> row.getRawArray(1));
+        assertThrows(PSQLException.class, () -> row.getRawLength(1));
+        setRow(new byte[3][]);
+        assertThrows(PSQLException.class, () -> row.getRawArray(4));
+        assertThrows(PSQLException.class, () -> row.getRawLength(4));
+    }
+
+    @Test
+    public void testUnwrapCrateResultSet() throws Exception {
+        Statement delegate = mock(Statement.class);
+        when(delegate.executeQuery("select 1")).thenReturn(rs);
+        when(delegate.getResultSet()).thenReturn(rs);
+        CrateStatement statement = new CrateStatement(new CrateConnection(mock(Connection.class), new Properties()), delegate);
+
+        ResultSet resultSet = statement.executeQuery("select 1");
+        assertThat(resultSet.getStatement(), sameInstance(statement));
+        assertThat(statement.getResultSet(), sameInstance(resultSet));
+        assertThat(resultSet.isWrapperFor(RawRow.class), is(true));
+
+        setRow("1".getBytes(StandardCharsets.UTF_8), null, null);
+        assertThat(resultSet.unwrap(RawRow.class).getRawLength(1), is(1));
+        assertThat(resultSet.unwrap(RawRow.class), sameInstance(resultSet.unwrap(RawRow.class)));
+    }
+
+    @Test
+    public void testUnsupportedResultSet() {
+        assertThrows(PSQLException.class, () -> RawRow.of(mock(ResultSet.class)));
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReplayTest {
+
+    private final Connection failing = mock(Connection.class);
+    private final Connection replacement = mock(Connection.class);
+    private int reconnects;
+
+    private CrateConnection connect() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("failoverReadOnly", "true");
+        return new CrateConnection(failing, properties, (current, failed) -> {
+            assertThat(current, sameInstance(failing));
+            assertThat(failed, is(true));
+            reconnects++;
+            return replacement;
+        });
+    }
+
+    private static SQLException broken() {
+        return new SQLException("An I/O error occurred while sending to the backend.", "08006");
+    }
+
+    private Statement failingStatement() throws SQLException {
+        Statement statement = mock(Statement.class);
+        when(statement.getConnection()).thenReturn(failing);
+        when(failing.createStatement()).thenReturn(statement);
+        return statement;
+    }
+
+    @Test
+    public void testReadOnlyQueries() {
+        assertThat(Replay.isReadOnly("SELECT * FROM t"), is(true));
+        assertThat(Replay.isReadOnly("  /* comment */ -- line\n (select 1) ;"), is(true));
+        assertThat(Replay.isReadOnly("WITH x AS (SELECT 1) SELECT * FROM x"), is(true));
+        assertThat(Replay.isReadOnly("show tables"), is(true));
+        assertThat(Replay.isReadOnly("SELECT 1; DELETE FROM t"), is(false));
+        assertThat(Replay.isReadOnly("INSERT INTO t SELECT * FROM s"), is(false));
+        assertThat(Replay.isReadOnly("selected"), is(false));
+    }
+
+    @Test
+    public void testSortedScans() {
+        assertThat(Replay.sortedScan("SELECT * FROM t ORDER\n BY id").keys(), contains("id"));
+        assertThat(Replay.sortedScan("select a, b from doc.t x where a > ')' order by x.a desc nulls last, \"B\" "
+            + "limit 10").keys(), contains("a", "B"));
+        assertThat(Replay.sortedScan("SELECT border, by FROM t"), is(nullValue()));
+        // the ORDER BY clauses of subqueries and window functions do not sort the result
+        assertThat(Replay.sortedScan("SELECT * FROM (SELECT * FROM t ORDER BY id) s"), is(nullValue()));
+        assertThat(Replay.sortedScan("SELECT * FROM t WHERE id IN (SELECT id FROM s ORDER BY id)"), is(nullValue()));
+        assertThat(Replay.sortedScan("SELECT row_number() OVER (ORDER BY id) FROM t"), is(nullValue()));
+        assertThat(Replay.sortedScan("SELECT 'order by id' FROM t"), is(nullValue()));
+        // the rows of the table are not the rows of the result
+        assertThat(Replay.sortedScan("SELECT * FROM t JOIN s ON t.id = s.id ORDER BY t.id"), is(nullValue()));
+        assertThat(Replay.sortedScan("SELECT * FROM t, s ORDER BY id"), is(nullValue()));
+        assertThat(Replay.sortedScan("SELECT DISTINCT id FROM t ORDER BY id"), is(nullValue()));
+        assertThat(Replay.sortedScan("SELECT x FROM t GROUP BY x ORDER BY x"), is(nullValue()));
+        // sort keys which are not plain columns
+        assertThat(Replay.sortedScan("SELECT * FROM t ORDER BY 1"), is(nullValue()));
+        assertThat(Replay.sortedScan("SELECT * FROM t ORDER BY lower(name)"), is(nullValue()));
+        assertThat(Replay.sortedScan("SELECT name AS id FROM t ORDER BY id"), is(nullValue()));
+    }
+
+    @Test
+    public void testUniqueSortKeys() throws Exception {
+        assertThat(Replay.sortedScan("SELECT * FROM t ORDER BY _id").hasUniqueKeys(replacement), is(true));
+
+        PreparedStatement primaryKey = mock(PreparedStatement.class);
+        when(replacement.prepareStatement(anyString())).thenReturn(primaryKey);
+        ResultSet rs = mock(ResultSet.class);
+        when(primaryKey.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getString(1)).thenReturn("a", "b");
+        assertThat(Replay.sortedScan("SELECT * FROM s.t ORDER BY b, a").hasUniqueKeys(replacement), is(true));
+        verify(primaryKey).setString(1, "t");
+        verify(primaryKey).setString(2, "s");
+
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getString(1)).thenReturn("a", "b");
+        assertThat(Replay.sortedScan("SELECT * FROM t ORDER BY a").hasUniqueKeys(replacement), is(false));
+
+        // a table without primary key
+        when(rs.next()).thenReturn(false);
+        assertThat(Replay.sortedScan("SELECT * FROM t ORDER BY a").hasUniqueKeys(replacement), is(false));
+    }
+
+    @Test
+    public void testQueryIsReplayedOnNewConnection() throws Exception {
+        CrateConnection connection = connect();
+        connection.setSchema("doc");
+        Statement statement = failingStatement();
+        when(statement.executeQuery(anyString())).thenThrow(broken());
+        when(statement.getFetchSize()).thenReturn(100);
+        Statement replayed = mock(Statement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(replacement.createStatement(anyInt(), anyInt(), anyInt())).thenReturn(replayed);
+        when(replayed.executeQuery("SELECT id FROM t")).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+
+        ResultSet result = connection.createStatement().executeQuery("SELECT id FROM t");
+        assertThat(result.next(), is(true));
+        assertThat(reconnects, is(1));
+        verify(failing).close();
+        verify(replacement).setAutoCommit(true);
+        verify(replacement).setSchema("doc");
+        verify(replayed).setFetchSize(100);
+    }
+
+    @Test
+    public void testWritesAndOtherErrorsAreNotReplayed() throws Exception {
+        CrateConnection connection = connect();
+        Statement statement = failingStatement();
+        SQLException failure = broken();
+        when(statement.executeQuery("DELETE FROM t RETURNING id")).thenThrow(failure);
+        when(statement.executeQuery("SELECT x FROM t")).thenThrow(new SQLException("unknown column", "42703"));
+        Statement crateStatement = connection.createStatement();
+
+        assertThat(assertThrows(SQLException.class, () -> crateStatement.executeQuery("DELETE FROM t RETURNING id")),
+            sameInstance(failure));
+        assertThrows(SQLException.class, () -> crateStatement.executeQuery("SELECT x FROM t"));
+        assertThat(reconnects, is(0));
+    }
+
+    @Test
+    public void testReadRowsOfSortedResultAreSkipped() throws Exception {
+        CrateConnection connection = connect();
+        Statement statement = failingStatement();
+        ResultSet rs = mock(ResultSet.class);
+        when(statement.executeQuery(anyString())).thenReturn(rs);
+        when(rs.next()).thenReturn(true).thenReturn(true).thenThrow(broken());
+        Statement replayed = mock(Statement.class);
+        ResultSet replayedRs = mock(ResultSet.class);
+        when(replacement.createStatement(anyInt(), anyInt(), anyInt())).thenReturn(replayed);
+        when(replayed.executeQuery(anyString())).thenReturn(replayedRs);
+        when(replayedRs.next()).thenReturn(true, true, true, false);
+
+        ResultSet result = connection.createStatement().executeQuery("SELECT id FROM t ORDER BY _id");
+        assertThat(result.next(), is(true));
+        assertThat(result.next(), is(true));
+        assertThat(result.next(), is(true));
+        assertThat(result.next(), is(false));
+        verify(replayedRs, times(4)).next();
+    }
+
+    @Test
+    public void testResultWithoutUniqueSortKeysIsNotResumed() throws Exception {
+        CrateConnection connection = connect();
+        Statement statement = failingStatement();
+        ResultSet rs = mock(ResultSet.class);
+        when(statement.executeQuery(anyString())).thenReturn(rs);
+        SQLException failure = broken();
+        when(rs.next()).thenReturn(true).thenThrow(failure);
+        when(replacement.createStatement(anyInt(), anyInt(), anyInt())).thenReturn(mock(Statement.class));
+        PreparedStatement primaryKey = mock(PreparedStatement.class);
+        when(replacement.prepareStatement(anyString())).thenReturn(primaryKey);
+        ResultSet keys = mock(ResultSet.class);
+        when(primaryKey.executeQuery()).thenReturn(keys);
+        when(keys.next()).thenReturn(true, false);
+        when(keys.getString(1)).thenReturn("id");
+
+        ResultSet result = connection.createStatement().executeQuery("SELECT id FROM t ORDER BY name");
+        assertThat(result.next(), is(true));
+        assertThat(assertThrows(SQLException.class, result::next), sameInstance(failure));
+        assertThat(failure.getSuppressed().length, is(1));
+    }
+
+    @Test
+    public void testUnsortedResultIsNotReplayedAfterRowsWereRead() throws Exception {
+        CrateConnection connection = connect();
+        Statement statement = failingStatement();
+        ResultSet rs = mock(ResultSet.class);
+        when(statement.executeQuery(anyString())).thenReturn(rs);
+        when(rs.next()).thenReturn(true).thenThrow(broken());
+
+        ResultSet result = connection.createStatement().executeQuery("SELECT id FROM t");
+        assertThat(result.next(), is(true));
+        assertThrows(SQLException.class, result::next);
+        assertThat(reconnects, is(0));
+    }
+
+    @Test
+    public void testPreparedStatementIsPreparedAgainWithItsParameters() throws Exception {
+        CrateConnection connection = connect();
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.getConnection()).thenReturn(failing);
+        when(failing.prepareStatement("SELECT * FROM t WHERE id = ?")).thenReturn(statement);
+        when(statement.executeQuery()).thenThrow(broken());
+        PreparedStatement replayed = mock(PreparedStatement.class);
+        when(replacement.prepareStatement(anyString(), anyInt(), anyInt(), anyInt())).thenReturn(replayed);
+        when(replayed.executeQuery()).thenReturn(mock(ResultSet.class));
+
+        PreparedStatement crateStatement = connection.prepareStatement("SELECT * FROM t WHERE id = ?");
+        crateStatement.setInt(1, 42);
+        crateStatement.executeQuery();
+        verify(replayed).setInt(1, 42);
+        verify(replayed).executeQuery();
+
+        // the statement moved to the new connection, so the next execution does not replay the old one
+        crateStatement.executeQuery();
+        verify(statement, times(1)).executeQuery();
+        verify(replayed, times(2)).executeQuery();
+    }
+}
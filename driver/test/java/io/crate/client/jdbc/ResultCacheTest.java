@@ -0,0 +1,312 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+import org.postgresql.core.TypeInfo;
+import org.postgresql.jdbc.PgArray;
+import org.postgresql.util.PGobject;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResultCacheTest {
+
+    private static final long TTL = Long.MAX_VALUE;
+
+    private static ArenaResultSet result(String... values) throws SQLException {
+        RowArena arena = new RowArena(1, 16);
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            arena.add(bytes, 0, bytes.length);
+        }
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+        return new ArenaResultSet(null, metaData, ResultSet.TYPE_FORWARD_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT,
+            arena, new Object[1][], 0);
+    }
+
+    private static ResultCache.Key key(String sql) {
+        return new ResultCache.Key(null, sql, 0, null);
+    }
+
+    @Test
+    public void testKeysCompareParametersByValue() {
+        ResultCache.Key key = new ResultCache.Key("doc", "SELECT ?", 0, new Object[]{1, new byte[]{1, 2}});
+        assertThat(key.equals(new ResultCache.Key("doc", "SELECT ?", 0, new Object[]{1, new byte[]{1, 2}})), is(true));
+        assertThat(key.hashCode(), is(new ResultCache.Key("doc", "SELECT ?", 0, new Object[]{1, new byte[]{1, 2}}).hashCode()));
+        assertThat(key.equals(new ResultCache.Key("doc", "SELECT ?", 0, new Object[]{2, new byte[]{1, 2}})), is(false));
+        assertThat(key.equals(new ResultCache.Key("sys", "SELECT ?", 0, new Object[]{1, new byte[]{1, 2}})), is(false));
+        assertThat(key.equals(new ResultCache.Key("doc", "SELECT ?", 10, new Object[]{1, new byte[]{1, 2}})), is(false));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResultsAreEvicted() throws Exception {
+        ArenaResultSet first = result("a");
+        long bytes = first.retainedBytes();
+        ResultCache cache = new ResultCache(bytes * 2);
+        cache.put(key("SELECT 1"), first, cache.generation());
+        cache.put(key("SELECT 2"), result("b"), cache.generation());
+        assertThat(cache.get(key("SELECT 1"), TTL), sameInstance(first));
+        cache.put(key("SELECT 3"), result("c"), cache.generation());
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.bytes(), is(bytes * 2));
+        assertThat(cache.get(key("SELECT 1"), TTL), sameInstance(first));
+        assertThat(cache.get(key("SELECT 2"), TTL), nullValue());
+    }
+
+    @Test
+    public void testExpiredAndTooLargeResultsAreNotReturned() throws Exception {
+        ArenaResultSet result = result("a");
+        ResultCache cache = new ResultCache(result.retainedBytes());
+        cache.put(key("SELECT 1"), result, cache.generation());
+        assertThat(cache.get(key("SELECT 1"), -1), nullValue());
+        assertThat(cache.size(), is(0));
+
+        cache.put(key("SELECT 2"), result("a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l", "m", "n", "o", "p", "q"),
+            cache.generation());
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testWritesInvalidateResultsOfTheirTable() throws Exception {
+        ResultCache cache = new ResultCache(Long.MAX_VALUE);
+        cache.put(key("SELECT * FROM doc.users"), result("a"), cache.generation());
+        cache.put(key("SELECT * FROM users_archive"), result("b"), cache.generation());
+        cache.put(key("SELECT * FROM \"Orders\""), result("c"), cache.generation());
+
+        cache.invalidate("UPDATE users SET name = 'x'");
+        assertThat(cache.get(key("SELECT * FROM doc.users"), TTL), nullValue());
+        assertThat(cache.size(), is(2));
+
+        cache.invalidate("INSERT INTO doc.\"Orders\" (id) VALUES (1)");
+        assertThat(cache.size(), is(1));
+
+        cache.invalidate("/* unknown */ DELETE FROM users_archive");
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testResultOfQueryConcurrentToWriteIsNotCached() throws Exception {
+        ResultCache cache = new ResultCache(Long.MAX_VALUE);
+        long generation = cache.generation();
+        cache.invalidate("DELETE FROM t");
+        cache.put(key("SELECT * FROM t"), result("a"), generation);
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testConnectionsWithDifferentSizesHaveTheirOwnCache() throws Exception {
+        String dataSource = "cache-size-test-" + UUID.randomUUID();
+        int open = ResultCache.openCaches();
+        ResultCache small = ResultCache.of(dataSource, 10);
+        ResultCache large = ResultCache.of(dataSource, 1000);
+        assertThat(large, not(sameInstance(small)));
+        assertThat(ResultCache.of(dataSource, 10), sameInstance(small));
+        assertThat(ResultCache.openCaches(), is(open + 2));
+
+        // a write through any connection invalidates the caches of all sizes
+        large.put(key("SELECT * FROM t"), result("a"), large.generation());
+        small.invalidate("DELETE FROM t");
+        assertThat(large.size(), is(0));
+
+        large.release();
+        small.release();
+        assertThat(ResultCache.openCaches(), is(open + 1));
+        small.release();
+        assertThat(ResultCache.openCaches(), is(open));
+        assertThat(ResultCache.of(dataSource, 10), not(sameInstance(small)));
+    }
+
+    @Test
+    public void testDetachedResultHandsOutCopiesOfObjects() throws Exception {
+        RowArena arena = new RowArena(1, 16);
+        arena.addNull();
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnType(1)).thenReturn(Types.OTHER);
+        when(metaData.getColumnLabel(1)).thenReturn("o");
+        PGobject object = new PGobject();
+        object.setType("json");
+        object.setValue("{\"a\": 1}");
+        ArenaResultSet result = new ArenaResultSet(null, metaData, ResultSet.TYPE_FORWARD_ONLY,
+            ResultSet.HOLD_CURSORS_OVER_COMMIT, arena, new Object[][]{{object}}, 0);
+
+        ArenaResultSet detached = result.detach();
+        assertThat(detached.getStatement(), nullValue());
+        assertThat(detached.getMetaData().getColumnLabel(1), is("o"));
+        object.setValue("{}");
+
+        ArenaResultSet first = detached.view(null, ResultSet.TYPE_FORWARD_ONLY);
+        ArenaResultSet second = detached.view(null, ResultSet.TYPE_FORWARD_ONLY);
+        first.next();
+        second.next();
+        PGobject value = (PGobject) first.getObject(1);
+        assertThat(value.getValue(), is("{\"a\": 1}"));
+        value.setValue("{}");
+        assertThat(((PGobject) second.getObject(1)).getValue(), is("{\"a\": 1}"));
+        assertThat(first.getString(1), is("{\"a\": 1}"));
+    }
+
+    @Test
+    public void testArraysOfDetachedResultAreCreatedForTheConnectionOfTheView() throws Exception {
+        RowArena arena = new RowArena(1, 16);
+        arena.addNull();
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnType(1)).thenReturn(Types.ARRAY);
+        when(metaData.getColumnTypeName(1)).thenReturn("_int4");
+        Array array = mock(Array.class);
+        when(array.toString()).thenReturn("{1,2}");
+        ArenaResultSet detached = new ArenaResultSet(null, metaData, ResultSet.TYPE_FORWARD_ONLY,
+            ResultSet.HOLD_CURSORS_OVER_COMMIT, arena, new Object[][]{{array}}, 0).detach();
+
+        BaseConnection pgConnection = mock(BaseConnection.class);
+        when(pgConnection.isWrapperFor(BaseConnection.class)).thenReturn(true);
+        when(pgConnection.unwrap(BaseConnection.class)).thenReturn(pgConnection);
+        TypeInfo typeInfo = mock(TypeInfo.class);
+        when(pgConnection.getTypeInfo()).thenReturn(typeInfo);
+        when(typeInfo.getPGType("_int4")).thenReturn(Oid.INT4_ARRAY);
+        CrateStatement statement =
+            new CrateStatement(new CrateConnection(pgConnection, new Properties()), mock(Statement.class));
+
+        ArenaResultSet view = detached.view(statement, ResultSet.TYPE_FORWARD_ONLY);
+        view.next();
+        Array value = view.getArray(1);
+        assertThat(value, instanceOf(PgArray.class));
+        assertThat(value.toString(), is("{1,2}"));
+        assertThat(view.getArray(1), not(sameInstance(value)));
+    }
+
+    @Test
+    public void testWrittenTable() {
+        assertThat(ResultCache.writtenTable("insert into Doc.Users (id) values (1)"), is("users"));
+        assertThat(ResultCache.writtenTable("DELETE FROM \"My\"\"Table\""), is("My\"Table"));
+        assertThat(ResultCache.writtenTable("REFRESH TABLE t1"), is("t1"));
+        assertThat(ResultCache.writtenTable("SET GLOBAL stats.enabled = true"), nullValue());
+    }
+
+    @Test
+    public void testStatementsServeCachedResults() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("resultCacheSize", "1000000");
+        properties.setProperty("resultCachePattern", "information_schema");
+        properties.setProperty("PGHOST", "cache-test-" + UUID.randomUUID());
+        Connection pgConnection = mock(Connection.class);
+        when(pgConnection.getAutoCommit()).thenReturn(true);
+        PreparedStatement delegate = mock(PreparedStatement.class);
+        when(pgConnection.prepareStatement(anyString())).thenReturn(delegate);
+        when(pgConnection.createStatement()).thenReturn(mock(Statement.class));
+        when(delegate.executeQuery()).thenAnswer(invocation -> result("doc", "sys").view(null, ResultSet.TYPE_FORWARD_ONLY));
+        CrateConnection connection = new CrateConnection(pgConnection, properties);
+
+        String sql = "SELECT table_name FROM information_schema.tables WHERE table_schema = ?";
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setString(1, "doc");
+        ResultSet first = statement.executeQuery();
+        ResultSet second = statement.executeQuery();
+        assertThat(second.next(), is(true));
+        assertThat(second.getString(1), is("doc"));
+        assertThat(first.next(), is(true));
+        assertThat(statement.getResultSet(), sameInstance(second));
+        verify(delegate, times(1)).executeQuery();
+
+        statement.setString(1, "sys");
+        statement.executeQuery();
+        verify(delegate, times(2)).executeQuery();
+
+        connection.createStatement().executeUpdate("INSERT INTO information_schema.tables (x) VALUES (1)");
+        statement.setString(1, "doc");
+        statement.executeQuery();
+        verify(delegate, times(3)).executeQuery();
+
+        statement.unwrap(CrateStatement.class).setResultCacheEnabled(false);
+        statement.executeQuery();
+        verify(delegate, times(4)).executeQuery();
+
+        int open = ResultCache.openCaches();
+        connection.close();
+        connection.close();
+        assertThat(ResultCache.openCaches(), is(open - 1));
+    }
+
+    @Test
+    public void testExecuteOfReadOnlyQueryServesCachedResults() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("resultCacheSize", "1000000");
+        properties.setProperty("resultCachePattern", "information_schema");
+        properties.setProperty("PGHOST", "cache-test-" + UUID.randomUUID());
+        Connection pgConnection = mock(Connection.class);
+        when(pgConnection.getAutoCommit()).thenReturn(true);
+        Statement delegate = mock(Statement.class);
+        when(pgConnection.createStatement()).thenReturn(delegate);
+        when(delegate.executeQuery(anyString()))
+            .thenAnswer(invocation -> result("doc", "sys").view(null, ResultSet.TYPE_FORWARD_ONLY));
+
+        try (CrateConnection connection = new CrateConnection(pgConnection, properties)) {
+            Statement statement = connection.createStatement();
+            String sql = "SELECT table_name FROM information_schema.tables";
+            assertThat(statement.execute(sql), is(true));
+            assertThat(statement.execute(sql), is(true));
+            ResultSet rs = statement.getResultSet();
+            assertThat(rs.next(), is(true));
+            assertThat(rs.getString(1), is("doc"));
+            verify(delegate, times(1)).executeQuery(sql);
+            verify(delegate, never()).execute(anyString());
+
+            assertThat(statement.getMoreResults(), is(false));
+            assertThat(rs.isClosed(), is(true));
+            assertThat(statement.getResultSet(), nullValue());
+            assertThat(statement.getUpdateCount(), is(-1));
+            assertThat(statement.getMoreResults(), is(false));
+            verify(delegate, never()).getMoreResults(anyInt());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+public class RowArenaTest {
+
+    private static String value(RowArena arena, int row, int column) {
+        int length = arena.length(row, column);
+        if (length < 0) {
+            return null;
+        }
+        byte[] array = arena.array(row, column, null);
+        return new String(array, arena.arrayOffset(row, column), length, StandardCharsets.UTF_8);
+    }
+
+    private static void add(RowArena arena, String value) throws SQLException {
+        if (value == null) {
+            arena.addNull();
+        } else {
+            byte[] bytes = ("#" + value).getBytes(StandardCharsets.UTF_8);
+            arena.add(bytes, 1, bytes.length - 1);
+        }
+    }
+
+    @Test
+    public void testAddAndGrow() throws Exception {
+        RowArena arena = new RowArena(2, 4);
+        for (int i = 0; i < 100; i++) {
+            add(arena, "value" + i);
+            add(arena, i % 2 == 0 ? null : "");
+        }
+        assertThat(arena.rowCount(), is(100));
+        assertThat(value(arena, 0, 0), is("value0"));
+        assertThat(value(arena, 0, 1), is((String) null));
+        assertThat(value(arena, 99, 0), is("value99"));
+        assertThat(value(arena, 99, 1), is(""));
+    }
+
+    @Test
+    public void testClearKeepsCapacity() throws Exception {
+        RowArena arena = new RowArena(1, 4);
+        for (int i = 0; i < 1000; i++) {
+            add(arena, "some value");
+        }
+        long capacity = arena.capacity();
+        arena.clear();
+        assertThat(arena.rowCount(), is(0));
+        add(arena, "x");
+        assertThat(value(arena, 0, 0), is("x"));
+        assertThat(arena.capacity(), is(capacity));
+    }
+
+    @Test
+    public void testIncompleteRowIsNotCounted() throws Exception {
+        RowArena arena = new RowArena(3, 16);
+        add(arena, "a");
+        add(arena, "b");
+        assertThat(arena.rowCount(), is(0));
+        add(arena, "c");
+        assertThat(arena.rowCount(), is(1));
+    }
+
+    @Test
+    public void testSpillsValuesToFileAboveThreshold() throws Exception {
+        RowArena arena = new RowArena(2, 16, 64);
+        for (int i = 0; i < 100; i++) {
+            add(arena, "value" + i);
+            add(arena, i % 2 == 0 ? null : "");
+        }
+        assertThat(arena.isSpilled(), is(true));
+        assertThat(arena.rowCount(), is(100));
+        assertThat(value(arena, 0, 0), is("value0"));
+        assertThat(value(arena, 0, 1), is((String) null));
+        assertThat(value(arena, 99, 0), is("value99"));
+        assertThat(value(arena, 99, 1), is(""));
+        // the values are not kept on the heap anymore
+        assertThat(arena.data().length, is(16));
+        // and are read into the given buffer if it is large enough
+        byte[] buffer = new byte[8];
+        assertThat(arena.array(99, 0, buffer), sameInstance(buffer));
+        assertThat(arena.array(99, 1, buffer), sameInstance(buffer));
+
+        arena.clear();
+        assertThat(arena.isSpilled(), is(false));
+        add(arena, "x");
+        add(arena, null);
+        assertThat(value(arena, 0, 0), is("x"));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.postgresql.PGResultSetMetaData;
+import org.postgresql.jdbc.PgResultSet;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class StringDictionaryTest {
+
+    private static String get(StringDictionary dictionary, String value) {
+        byte[] bytes = ("__" + value).getBytes(StandardCharsets.UTF_8);
+        return dictionary.get(bytes, 2, bytes.length - 2);
+    }
+
+    private static CrateStatement newStatement() throws SQLException {
+        return new CrateStatement(new CrateConnection(mock(Connection.class), new Properties()), mock(Statement.class));
+    }
+
+    @Test
+    public void testRepeatedValuesReturnSameInstance() {
+        StringDictionary dictionary = new StringDictionary(16);
+        String first = get(dictionary, "eu-west-1");
+        assertThat(first, is("eu-west-1"));
+        assertThat(get(dictionary, "eu-west-1"), sameInstance(first));
+        assertThat(get(dictionary, "Zürich"), is("Zürich"));
+        assertThat(get(dictionary, "Zürich"), sameInstance(get(dictionary, "Zürich")));
+    }
+
+    @Test
+    public void testLongValuesAreNotCached() {
+        StringDictionary dictionary = new StringDictionary(16);
+        String value = "x".repeat(StringDictionary.MAX_LENGTH + 1);
+        assertThat(get(dictionary, value), not(sameInstance(get(dictionary, value))));
+    }
+
+    @Test
+    public void testDisabledForDistinctValues() {
+        StringDictionary dictionary = new StringDictionary(16);
+        for (int i = 0; i < StringDictionary.SAMPLE_SIZE; i++) {
+            assertThat(get(dictionary, "id-" + i), is("id-" + i));
+        }
+        assertThat(dictionary.isEnabled(), is(false));
+        assertThat(get(dictionary, "id-1"), is("id-1"));
+    }
+
+    @Test
+    public void testStaysEnabledForRepeatedValues() {
+        StringDictionary dictionary = new StringDictionary(16);
+        for (int i = 0; i < StringDictionary.SAMPLE_SIZE * 2; i++) {
+            get(dictionary, i % 3 == 0 ? "INFO" : "WARN");
+        }
+        assertThat(dictionary.isEnabled(), is(true));
+    }
+
+    @Test
+    public void testAsciiFastPath() {
+        byte[] ascii = "host-1".getBytes(StandardCharsets.UTF_8);
+        byte[] utf8 = "größe".getBytes(StandardCharsets.UTF_8);
+        assertThat(TextDecoder.isAscii(ascii, 0, ascii.length), is(true));
+        assertThat(TextDecoder.isAscii(utf8, 0, utf8.length), is(false));
+        assertThat(TextDecoder.isAscii(utf8, 0, 2), is(true));
+        assertThat(TextDecoder.toString(ascii, 0, ascii.length), is("host-1"));
+        assertThat(TextDecoder.toString(utf8, 0, utf8.length), is("größe"));
+    }
+
+    @Test
+    public void testCrateResultSetUsesDictionary() throws Exception {
+        PgResultSet rs = mock(PgResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class, withSettings().extraInterfaces(PGResultSetMetaData.class));
+        when(rs.getMetaData()).thenReturn(metaData);
+        when(rs.isWrapperFor(PgResultSet.class)).thenReturn(true);
+        when(rs.unwrap(PgResultSet.class)).thenReturn(rs);
+        when(metaData.unwrap(PGResultSetMetaData.class)).thenReturn((PGResultSetMetaData) metaData);
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnLabel(1)).thenReturn("region");
+        when(metaData.getColumnLabel(2)).thenReturn("other");
+        Field thisRow = PgResultSet.class.getDeclaredField("this_row");
+        thisRow.setAccessible(true);
+
+        CrateResultSet resultSet = new CrateResultSet(newStatement(), rs, 64);
+        thisRow.set(rs, new byte[][]{"eu".getBytes(StandardCharsets.UTF_8), null});
+        String first = resultSet.getString(1);
+        assertThat(first, is("eu"));
+        assertThat(resultSet.getString(2), is(nullValue()));
+        thisRow.set(rs, new byte[][]{"eu".getBytes(StandardCharsets.UTF_8), null});
+        assertThat(resultSet.getString("region"), sameInstance(first));
+    }
+}
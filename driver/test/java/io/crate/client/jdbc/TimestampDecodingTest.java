@@ -0,0 +1,158 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc;
+
+import org.junit.Test;
+import org.postgresql.PGResultSetMetaData;
+import org.postgresql.PGStatement;
+import org.postgresql.jdbc.PgResultSet;
+import org.postgresql.util.PSQLException;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Calendar;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class TimestampDecodingTest {
+
+    private static final Calendar UTC = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+    private static long micros(String value, Calendar cal) throws PSQLException {
+        byte[] bytes = ("  " + value).getBytes(StandardCharsets.UTF_8);
+        return TextDecoder.toEpochMicros(bytes, 2, bytes.length - 2, cal);
+    }
+
+    private static long micros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1000;
+    }
+
+    private static CrateStatement newStatement() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("decodeText", "true");
+        return new CrateStatement(new CrateConnection(mock(Connection.class), properties), mock(Statement.class));
+    }
+
+    @Test
+    public void testFormats() throws Exception {
+        assertThat(micros("1970-01-01 00:00:00+00", null), is(0L));
+        assertThat(micros("2021-03-04 05:06:07.123+00", null), is(micros(Instant.parse("2021-03-04T05:06:07.123Z"))));
+        assertThat(micros("2021-03-04T05:06:07.123456Z", null), is(micros(Instant.parse("2021-03-04T05:06:07.123456Z"))));
+        assertThat(micros("2021-03-04 05:06:07.1234567+00", null), is(micros(Instant.parse("2021-03-04T05:06:07.123456Z"))));
+        assertThat(micros("2021-03-04 07:36:07+02:30", null), is(micros(Instant.parse("2021-03-04T05:06:07Z"))));
+        assertThat(micros("2021-03-04 05:06:07-01:00:30", null), is(micros(Instant.parse("2021-03-04T06:06:37Z"))));
+        assertThat(micros("1969-12-31 23:59:59.5+00", null), is(-500_000L));
+        assertThat(micros("2020-02-29 00:00:00", UTC), is(micros(Instant.parse("2020-02-29T00:00:00Z"))));
+        assertThat(micros("2020-02-29", UTC), is(micros(Instant.parse("2020-02-29T00:00:00Z"))));
+    }
+
+    @Test
+    public void testMatchesJavaTime() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            // between the years 1000 and 9000, so that the local date time has four digit years for any offset
+            long seconds = -30610224000L + (long) (random.nextDouble() * 252455616000L);
+            Instant instant = Instant.ofEpochSecond(seconds, random.nextInt(1_000_000) * 1000);
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds((random.nextInt(37) - 18) * 1800);
+            OffsetDateTime dateTime = instant.atOffset(offset);
+            String value = dateTime.toLocalDateTime().toString().replace('T', ' ') + offset.getId().replace("Z", "+00");
+            assertThat(value, micros(value, null), is(micros(instant)));
+        }
+    }
+
+    @Test
+    public void testLocalTimestampUsesZone() throws Exception {
+        Calendar tokyo = Calendar.getInstance(TimeZone.getTimeZone("Asia/Tokyo"));
+        Calendar berlin = Calendar.getInstance(TimeZone.getTimeZone("Europe/Berlin"));
+        assertThat(micros("2021-03-04 05:06:07", tokyo), is(micros(Instant.parse("2021-03-03T20:06:07Z"))));
+        // zones with daylight saving time are handled by java.time
+        assertThat(micros("2021-07-04 05:06:07", berlin), is(micros(Instant.parse("2021-07-04T03:06:07Z"))));
+        assertThat(micros("2021-03-04 05:06:07", null),
+            is(micros(Timestamp.valueOf(LocalDateTime.parse("2021-03-04T05:06:07")).toInstant())));
+    }
+
+    @Test
+    public void testInfinity() throws Exception {
+        assertThat(micros("infinity", null), is(TextDecoder.MICROS_POSITIVE_INFINITY));
+        assertThat(micros("-infinity", null), is(TextDecoder.MICROS_NEGATIVE_INFINITY));
+        byte[] infinity = "infinity".getBytes(StandardCharsets.US_ASCII);
+        assertThat(TextDecoder.toEpochMillis(infinity, 0, infinity.length, null), is(PGStatement.DATE_POSITIVE_INFINITY));
+        assertThat(TextDecoder.toTimestamp(infinity, 0, infinity.length, null).getTime(), is(PGStatement.DATE_POSITIVE_INFINITY));
+        assertThat(TextDecoder.toInstant(infinity, 0, infinity.length, null), is(Instant.MAX));
+        assertThat(TextDecoder.toOffsetDateTime(infinity, 0, infinity.length, null), is(OffsetDateTime.MAX));
+    }
+
+    @Test
+    public void testInvalidValues() {
+        for (String value : new String[]{"2021-02-29 00:00:00+00", "2021-03-04 25:00:00+00", "2021-03-04 05:06:07+", "foo"}) {
+            assertThrows(value, PSQLException.class, () -> micros(value, null));
+        }
+    }
+
+    @Test
+    public void testCrateResultSetDecodesTimestamps() throws Exception {
+        PgResultSet rs = mock(PgResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class, withSettings().extraInterfaces(PGResultSetMetaData.class));
+        when(rs.getMetaData()).thenReturn(metaData);
+        when(rs.isWrapperFor(PgResultSet.class)).thenReturn(true);
+        when(rs.unwrap(PgResultSet.class)).thenReturn(rs);
+        when(metaData.unwrap(PGResultSetMetaData.class)).thenReturn((PGResultSetMetaData) metaData);
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnType(1)).thenReturn(Types.TIMESTAMP);
+        when(metaData.getColumnType(2)).thenReturn(Types.TIMESTAMP);
+        Field thisRow = PgResultSet.class.getDeclaredField("this_row");
+        thisRow.setAccessible(true);
+        thisRow.set(rs, new byte[][]{"2021-03-04 05:06:07.123+00".getBytes(StandardCharsets.UTF_8), null});
+
+        CrateResultSet resultSet = new CrateResultSet(newStatement(), rs, 0);
+        EpochTimestamps timestamps = resultSet.unwrap(EpochTimestamps.class);
+        Instant expected = Instant.parse("2021-03-04T05:06:07.123Z");
+        assertThat(timestamps.getEpochMillis(1), is(expected.toEpochMilli()));
+        assertThat(timestamps.getEpochMicros(1), is(micros(expected)));
+        assertThat(timestamps.getEpochMillis(2), is(0L));
+        assertThat(resultSet.getTimestamp(1).toInstant(), is(expected));
+        assertThat(resultSet.getTimestamp(2), is(nullValue()));
+        assertThat(resultSet.getObject(1, Instant.class), is(expected));
+        assertThat(resultSet.getObject(1, OffsetDateTime.class), is(expected.atOffset(ZoneOffset.UTC)));
+        assertThat(resultSet.getObject(2, Instant.class), is(nullValue()));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import org.junit.Test;
+import org.postgresql.util.PSQLException;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThrows;
+
+public class CopyStatementTest {
+
+    @Test
+    public void testDefaults() throws Exception {
+        CopyStatement stmt = CopyStatement.parse("copy t from stdin");
+        assertThat(stmt.schema(), is(nullValue()));
+        assertThat(stmt.quotedTable(), is("\"t\""));
+        assertThat(stmt.columns(), is(Collections.<String>emptyList()));
+        assertThat(stmt.format(), is(CopyStatement.Format.TEXT));
+        assertThat(stmt.delimiter(), is('\t'));
+        assertThat(stmt.nullString(), is("\\N"));
+        assertThat(stmt.header(), is(false));
+    }
+
+    @Test
+    public void testOptionList() throws Exception {
+        CopyStatement stmt = CopyStatement.parse(
+            "COPY doc.\"My\"\"Table\" (Id, \"Name\") FROM STDIN WITH (FORMAT csv, DELIMITER ';', HEADER, NULL 'NULL');");
+        assertThat(stmt.schema(), is("doc"));
+        assertThat(stmt.table(), is("My\"Table"));
+        assertThat(stmt.quotedTable(), is("\"doc\".\"My\"\"Table\""));
+        assertThat(stmt.columns(), is(Arrays.asList("id", "Name")));
+        assertThat(stmt.format(), is(CopyStatement.Format.CSV));
+        assertThat(stmt.delimiter(), is(';'));
+        assertThat(stmt.quote(), is('"'));
+        assertThat(stmt.escape(), is('"'));
+        assertThat(stmt.nullString(), is("NULL"));
+        assertThat(stmt.header(), is(true));
+    }
+
+    @Test
+    public void testLegacySyntax() throws Exception {
+        CopyStatement stmt = CopyStatement.parse("COPY t FROM STDIN CSV HEADER DELIMITER AS '|' QUOTE '''' ");
+        assertThat(stmt.format(), is(CopyStatement.Format.CSV));
+        assertThat(stmt.header(), is(true));
+        assertThat(stmt.delimiter(), is('|'));
+        assertThat(stmt.quote(), is('\''));
+        assertThat(stmt.escape(), is('\''));
+        assertThat(stmt.nullString(), is(""));
+    }
+
+    @Test
+    public void testJsonFormat() throws Exception {
+        CopyStatement stmt = CopyStatement.parse("COPY t FROM STDIN WITH (FORMAT json)");
+        assertThat(stmt.format(), is(CopyStatement.Format.JSON));
+    }
+
+    @Test
+    public void testCopyTableToStdout() throws Exception {
+        CopyStatement stmt = CopyStatement.parse("COPY doc.t (a, \"B\") TO STDOUT WITH (FORMAT csv)");
+        assertThat(stmt.toStdout(), is(true));
+        assertThat(stmt.query(), is("SELECT \"a\", \"B\" FROM \"doc\".\"t\""));
+        assertThat(CopyStatement.parse("COPY t TO STDOUT").query(), is("SELECT * FROM \"t\""));
+        assertThat(CopyStatement.parse("COPY t FROM STDIN").toStdout(), is(false));
+    }
+
+    @Test
+    public void testCopyQueryToStdout() throws Exception {
+        CopyStatement stmt = CopyStatement.parse(
+            "COPY (SELECT count(*), ')' AS \"(\" FROM t WHERE (a > 1)) TO STDOUT WITH (FORMAT json)");
+        assertThat(stmt.toStdout(), is(true));
+        assertThat(stmt.format(), is(CopyStatement.Format.JSON));
+        assertThat(stmt.query(), is("SELECT count(*), ')' AS \"(\" FROM t WHERE (a > 1)"));
+    }
+
+    @Test
+    public void testInvalidStatements() {
+        assertThrows(PSQLException.class, () -> CopyStatement.parse("COPY t TO '/tmp/t.csv'"));
+        assertThrows(PSQLException.class, () -> CopyStatement.parse("COPY (SELECT 1) FROM STDIN"));
+        assertThrows(PSQLException.class, () -> CopyStatement.parse("COPY t FROM STDIN WITH (FORMAT binary)"));
+        assertThrows(PSQLException.class, () -> CopyStatement.parse("COPY t FROM STDIN WITH (DELIMITER ';;')"));
+        assertThrows(PSQLException.class, () -> CopyStatement.parse("COPY t FROM STDIN WITH HEADER"));
+        assertThrows(PSQLException.class, () -> CopyStatement.parse("COPY t (a FROM STDIN"));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.util.PSQLException;
+
+import java.io.StringReader;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CrateCopyManagerTest {
+
+    private BaseConnection connection;
+    private PreparedStatement insert;
+    private final List<List<Object>> arrays = new ArrayList<>();
+
+    @Before
+    public void setUpConnection() throws Exception {
+        connection = mock(BaseConnection.class);
+        insert = mock(PreparedStatement.class);
+        when(connection.unwrap(BaseConnection.class)).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(insert);
+        when(connection.createArrayOf(eq("text"), any())).thenAnswer(invocation -> {
+            arrays.add(Arrays.asList((Object[]) invocation.getArgument(1)));
+            return mock(Array.class);
+        });
+        when(insert.executeBatch()).thenAnswer(invocation -> new int[]{2, 2});
+    }
+
+    @Test
+    public void testCopyInCsvWithHeader() throws Exception {
+        CrateCopyManager copyManager = new CrateCopyManager(connection, 2, 2);
+        String data = "id,name\r\n1,foo\r\n2,\"multi\nline\"\r\n3,\r\n4,\"\"\r\n5,bar";
+        when(insert.executeBatch()).thenReturn(new int[]{2, 2}, new int[]{1});
+
+        long rows = copyManager.copyIn("COPY doc.t FROM STDIN WITH (FORMAT csv, HEADER true)", new StringReader(data));
+
+        assertThat(rows, is(5L));
+        verify(connection).prepareStatement("INSERT INTO \"doc\".\"t\" (\"id\", \"name\") (SELECT * FROM UNNEST(?, ?))");
+        verify(insert, times(3)).addBatch();
+        verify(insert, times(2)).executeBatch();
+        assertThat(arrays.get(0), is(Arrays.<Object>asList("1", "2")));
+        assertThat(arrays.get(1), is(Arrays.<Object>asList("foo", "multi\nline")));
+        assertThat(arrays.get(3), is(Arrays.asList(null, "")));
+        assertThat(arrays.get(5), is(Arrays.<Object>asList("bar")));
+    }
+
+    @Test
+    public void testCopyInSplitWrites() throws Exception {
+        CrateCopyManager copyManager = new CrateCopyManager(connection, 10, 1);
+        when(insert.executeBatch()).thenReturn(new int[]{2});
+
+        // a buffer size of 1 splits every record and escape sequence across writes
+        long rows = copyManager.copyIn(
+            "COPY t (a, b) FROM STDIN WITH (FORMAT csv, ESCAPE '\\')",
+            new StringReader("\"x\\\"\n\",y\n\"\\\\\",z\n"),
+            1);
+
+        assertThat(rows, is(2L));
+        assertThat(arrays.get(0), is(Arrays.<Object>asList("x\"\n", "\\")));
+        assertThat(arrays.get(1), is(Arrays.<Object>asList("y", "z")));
+    }
+
+    @Test
+    public void testCopyInTextResolvesTableColumns() throws Exception {
+        PreparedStatement columns = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(connection.getSchema()).thenReturn("doc");
+        when(connection.prepareStatement(
+            "SELECT column_name FROM information_schema.columns " +
+            "WHERE table_schema = ? AND table_name = ? ORDER BY ordinal_position")).thenReturn(columns);
+        when(columns.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true, true, true, false);
+        when(rs.getString(1)).thenReturn("a", "o", "o['x']");
+        when(insert.executeBatch()).thenReturn(new int[]{2});
+
+        CrateCopyManager copyManager = new CrateCopyManager(connection);
+        long rows = copyManager.copyIn("COPY t FROM STDIN", new StringReader("1\t\\N\n2\t{}\n\\.\nignored\n"));
+
+        assertThat(rows, is(2L));
+        verify(columns).setString(1, "doc");
+        verify(columns).setString(2, "t");
+        verify(connection).prepareStatement("INSERT INTO \"t\" (\"a\", \"o\") (SELECT * FROM UNNEST(?, ?))");
+        assertThat(arrays.get(1), is(Arrays.asList(null, "{}")));
+    }
+
+    @Test
+    public void testCopyInJson() throws Exception {
+        CrateCopyManager copyManager = new CrateCopyManager(connection);
+        when(insert.executeBatch()).thenReturn(new int[]{2});
+
+        long rows = copyManager.copyIn(
+            "COPY t FROM STDIN WITH (FORMAT json)",
+            new StringReader("{\"id\": 1, \"o\": {\"x\": [1, 2]}}\n\n{\"o\": null, \"id\": 2}\n"));
+
+        assertThat(rows, is(2L));
+        verify(connection).prepareStatement("INSERT INTO \"t\" (\"id\", \"o\") (SELECT * FROM UNNEST(?, ?))");
+        assertThat(arrays.get(0), is(Arrays.<Object>asList("1", "2")));
+        assertThat(arrays.get(1), is(Arrays.asList("{\"x\":[1,2]}", null)));
+    }
+
+    @Test
+    public void testCopyInInvalidRecord() throws Exception {
+        CrateCopyManager copyManager = new CrateCopyManager(connection);
+        assertThrows(PSQLException.class, () -> copyManager.copyIn(
+            "COPY t (a, b) FROM STDIN WITH (FORMAT csv)", new StringReader("1,2\n3\n")));
+        assertThrows(PSQLException.class, () -> copyManager.copyIn(
+            "COPY t FROM STDIN WITH (FORMAT json)", new StringReader("{\"a\": 1}\n{\"b\": 2}\n")));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import io.crate.client.jdbc.RawRow;
+import org.junit.Before;
+import org.junit.Test;
+import org.postgresql.copy.CopyOut;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.util.PSQLException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Types;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CrateCopyOutTest {
+
+    private BaseConnection connection;
+    private Statement statement;
+    private ResultSet rs;
+    private ResultSetMetaData metaData;
+    private RawRow rawRow;
+
+    /**
+     * Lets the raw row return the values of two rows, which start at offset 2 of their arrays.
+     */
+    private void rawValues(int column, String first, String second) throws Exception {
+        byte[] firstBytes = first.getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = second == null ? null : second.getBytes(StandardCharsets.UTF_8);
+        when(rawRow.getRawArray(column)).thenReturn(firstBytes, secondBytes);
+        when(rawRow.getRawOffset(column)).thenReturn(2);
+        when(rawRow.getRawLength(column)).thenReturn(firstBytes.length - 2, secondBytes == null ? -1 : secondBytes.length - 2);
+    }
+
+    @Before
+    public void setUpResult() throws Exception {
+        connection = mock(BaseConnection.class);
+        statement = mock(Statement.class);
+        rs = mock(ResultSet.class);
+        metaData = mock(ResultSetMetaData.class);
+        rawRow = mock(RawRow.class);
+        when(connection.unwrap(BaseConnection.class)).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery("SELECT * FROM \"t\"")).thenReturn(rs);
+        when(rs.getMetaData()).thenReturn(metaData);
+        when(rs.isWrapperFor(RawRow.class)).thenReturn(true);
+        when(rs.unwrap(RawRow.class)).thenReturn(rawRow);
+
+        when(metaData.getColumnCount()).thenReturn(4);
+        when(metaData.getColumnLabel(1)).thenReturn("id");
+        when(metaData.getColumnLabel(2)).thenReturn("name");
+        when(metaData.getColumnLabel(3)).thenReturn("o");
+        when(metaData.getColumnLabel(4)).thenReturn("tags");
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+        when(metaData.getColumnType(3)).thenReturn(Types.OTHER);
+        when(metaData.getColumnTypeName(3)).thenReturn("json");
+        when(metaData.getColumnType(4)).thenReturn(Types.ARRAY);
+
+        when(rs.next()).thenReturn(true, true, false);
+        // the first column is in binary format and is read with getString
+        when(rawRow.isBinary(1)).thenReturn(true);
+        when(rs.getString(1)).thenReturn("1", "2");
+        rawValues(2, "__a,\"b\"\tc\\", "__");
+        rawValues(3, "__{\"x\": 1}", null);
+        Array tags = mock(Array.class);
+        when(tags.getArray()).thenReturn(new String[]{"x", null});
+        when(rs.getArray(4)).thenReturn(tags, (Array) null);
+        rawValues(4, "__{x,NULL}", null);
+    }
+
+    @Test
+    public void testCopyOutCsv() throws Exception {
+        CrateCopyManager copyManager = new CrateCopyManager(connection);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = copyManager.copyOut("COPY t TO STDOUT WITH (FORMAT csv, HEADER)", out);
+
+        assertThat(rows, is(2L));
+        assertThat(out.toString("UTF-8"), is(
+            "id,name,o,tags\n" +
+            "1,\"a,\"\"b\"\"\tc\\\",\"{\"\"x\"\": 1}\",\"{x,NULL}\"\n" +
+            "2,\"\",,\n"));
+        verify(statement).setFetchSize(CrateCopyManager.DEFAULT_FETCH_SIZE);
+        verify(connection).setAutoCommit(false);
+        verify(connection).setAutoCommit(true);
+        verify(rs, never()).getString(2);
+        verify(rs, never()).getBytes(2);
+    }
+
+    @Test
+    public void testCopyOutText() throws Exception {
+        CrateCopyManager copyManager = new CrateCopyManager(connection);
+        StringWriter out = new StringWriter();
+
+        long rows = copyManager.copyOut("COPY t TO STDOUT", out);
+
+        assertThat(rows, is(2L));
+        assertThat(out.toString(), is("1\ta,\"b\"\\tc\\\\\t{\"x\": 1}\t{x,NULL}\n2\t\t\\N\t\\N\n"));
+    }
+
+    @Test
+    public void testCopyOutJson() throws Exception {
+        CrateCopyManager copyManager = new CrateCopyManager(connection);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = copyManager.copyOut("COPY t TO STDOUT WITH (FORMAT json)", Channels.newChannel(out));
+
+        assertThat(rows, is(2L));
+        assertThat(out.toString("UTF-8"), is(
+            "{\"id\":1,\"name\":\"a,\\\"b\\\"\\tc\\\\\",\"o\":{\"x\": 1},\"tags\":[\"x\",null]}\n" +
+            "{\"id\":2,\"name\":\"\",\"o\":null,\"tags\":null}\n"));
+    }
+
+    @Test
+    public void testReadFromCopy() throws Exception {
+        CopyOut copyOut = new CrateCopyManager(connection).copyOut("COPY t TO STDOUT WITH (FORMAT csv)");
+
+        assertThat(new String(copyOut.readFromCopy(), StandardCharsets.UTF_8), is("1,\"a,\"\"b\"\"\tc\\\",\"{\"\"x\"\": 1}\",\"{x,NULL}\"\n"));
+        assertThat(copyOut.getFieldCount(), is(4));
+        copyOut.cancelCopy();
+        assertThat(copyOut.isActive(), is(false));
+        verify(statement).cancel();
+        verify(statement).close();
+        assertThrows(PSQLException.class, copyOut::readFromCopy);
+    }
+
+    @Test
+    public void testReadFromCopyUntilEnd() throws Exception {
+        CopyOut copyOut = new CrateCopyManager(connection).copyOut("COPY t TO STDOUT");
+        copyOut.readFromCopy();
+        copyOut.readFromCopy();
+        assertThat(copyOut.readFromCopy(), is(nullValue()));
+        assertThat(copyOut.getHandledRowCount(), is(2L));
+        assertThat(copyOut.isActive(), is(false));
+    }
+
+    @Test
+    public void testCopyDirectionMismatch() throws Exception {
+        CrateCopyManager copyManager = new CrateCopyManager(connection);
+        assertThrows(PSQLException.class, () -> copyManager.copyOut("COPY t FROM STDIN"));
+        assertThrows(PSQLException.class, () -> copyManager.copyIn("COPY t TO STDOUT"));
+    }
+}
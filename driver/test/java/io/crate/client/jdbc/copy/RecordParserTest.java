@@ -0,0 +1,85 @@
+/*
+ * Licensed to Crate under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.  Crate licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial
+ * agreement.
+ */
+
+package io.crate.client.jdbc.copy;
+
+import org.junit.Test;
+import org.postgresql.util.PSQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThrows;
+
+public class RecordParserTest {
+
+    private static List<String> parse(String sql, String record) throws Exception {
+        RecordParser parser = new RecordParser(CopyStatement.parse(sql));
+        List<String> values = new ArrayList<>();
+        parser.parse(record, values);
+        return values;
+    }
+
+    @Test
+    public void testText() throws Exception {
+        assertThat(parse("COPY t FROM STDIN", "1\tfoo\\tbar\\\\\t\\N\t"),
+            is(Arrays.asList("1", "foo\tbar\\", null, "")));
+    }
+
+    @Test
+    public void testTextEscapedDelimiter() throws Exception {
+        assertThat(parse("COPY t FROM STDIN", "a\\\tb\tc"), is(Arrays.asList("a\tb", "c")));
+        assertThat(parse("COPY t FROM STDIN WITH (DELIMITER '|')", "a\\|b|\\N|\\\\N"),
+            is(Arrays.asList("a|b", null, "\\N")));
+    }
+
+    @Test
+    public void testTextOctalAndHexEscapes() throws Exception {
+        assertThat(parse("COPY t FROM STDIN", "\\101\\1012\\x41\\x414\\xg\\0"),
+            is(Arrays.asList("AA2AA4xg\u0000")));
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        assertThat(parse("COPY t FROM STDIN CSV", "1,\"a,\"\"b\"\"\",,\"\",x y"),
+            is(Arrays.asList("1", "a,\"b\"", null, "", "x y")));
+    }
+
+    @Test
+    public void testCsvWithEscape() throws Exception {
+        assertThat(parse("COPY t FROM STDIN WITH (FORMAT csv, ESCAPE '\\')", "\"a\\\"b\\\\\",c"),
+            is(Arrays.asList("a\"b\\", "c")));
+    }
+
+    @Test
+    public void testCsvMultiLineValue() throws Exception {
+        assertThat(parse("COPY t FROM STDIN CSV", "\"a\nb\",c"), is(Arrays.asList("a\nb", "c")));
+    }
+
+    @Test
+    public void testUnterminatedQuote() {
+        assertThrows(PSQLException.class, () -> parse("COPY t FROM STDIN CSV", "\"a,b"));
+    }
+}
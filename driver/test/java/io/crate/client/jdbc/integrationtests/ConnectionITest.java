@@ -22,6 +22,7 @@
 
 package io.crate.client.jdbc.integrationtests;
 
+import io.crate.client.jdbc.CratePreparedStatement;
 import io.crate.testing.CrateTestServer;
 import org.hamcrest.Matchers;
 import org.junit.Ignore;
@@ -202,6 +203,24 @@ public class ConnectionITest extends BaseIntegrationTest {
         }
     }
 
+    @Test
+    public void testExecuteBatchPreparedStatementSplit() throws Exception {
+        try (Connection conn = DriverManager.getConnection(getConnectionString() + "&batchMaxRows=2")) {
+            PreparedStatement stmt = conn.prepareStatement("insert into test (id) values (?)");
+            for (int i = 0; i < 5; i++) {
+                stmt.setInt(1, i);
+                stmt.addBatch();
+            }
+
+            int[] results = stmt.executeBatch();
+            assertArrayEquals(new int[]{1, 1, 1, 1, 1}, results);
+            conn.createStatement().execute("refresh table test");
+            ResultSet resultSet = conn.createStatement().executeQuery("select count(*) from test");
+            assertThat(resultSet.next(), is(true));
+            assertThat(resultSet.getLong(1), is(5L));
+        }
+    }
+
     @Test
     public void testExecuteBatchPreparedStatementFailBulkTypes() throws Exception {
         try (Connection conn = DriverManager.getConnection(getConnectionString())) {
@@ -239,9 +258,9 @@ public class ConnectionITest extends BaseIntegrationTest {
     }
 
     @Test
-    @Ignore
     public void testExecuteBatchPreparedStatementFailOne() throws Exception {
-        try (Connection conn = DriverManager.getConnection(getConnectionString())) {
+        insertIntoTestTable();
+        try (Connection conn = DriverManager.getConnection(getConnectionString() + "&batchMaxRows=1000")) {
             PreparedStatement stmt = conn.prepareStatement("insert into test (id, string_field) values (?, ?)");
             stmt.setInt(1, 2);
             stmt.setString(2, "foo");
@@ -260,6 +279,40 @@ public class ConnectionITest extends BaseIntegrationTest {
         }
     }
 
+    @Test
+    public void testRetryFailedRowsOfPreparedStatementBatch() throws Exception {
+        insertIntoTestTable();
+        try (Connection conn = DriverManager.getConnection(getConnectionString() + "&batchMaxRows=1000")) {
+            PreparedStatement stmt = conn.prepareStatement("insert into test (id, string_field) values (?, ?)");
+            CratePreparedStatement crateStmt = stmt.unwrap(CratePreparedStatement.class);
+            crateStmt.setRetryEnabled(true);
+            stmt.setInt(1, 2);
+            stmt.setString(2, "foo");
+            stmt.addBatch();
+
+            // duplicate primary key
+            stmt.setInt(1, 1);
+            stmt.setObject(2, "baz");
+            stmt.addBatch();
+
+            assertArrayEquals(new int[]{1, Statement.EXECUTE_FAILED}, stmt.executeBatch());
+            assertArrayEquals(new int[]{1}, crateStmt.getBatchResult().getFailedRows());
+
+            conn.createStatement().execute("delete from test where id = 1");
+            conn.createStatement().execute("refresh table test");
+            assertArrayEquals(new int[]{1}, crateStmt.retryFailedRows());
+
+            conn.createStatement().execute("refresh table test");
+            ResultSet resultSet = conn.createStatement().executeQuery(
+                "select string_field from test order by id");
+            assertThat(resultSet.next(), is(true));
+            assertThat(resultSet.getString(1), is("baz"));
+            assertThat(resultSet.next(), is(true));
+            assertThat(resultSet.getString(1), is("foo"));
+            assertThat(resultSet.next(), is(false));
+        }
+    }
+
     @Test
     public void testExecuteBatchPreparedStatementFailSyntax() throws Exception {
         try (Connection conn = DriverManager.getConnection(getConnectionString())) {